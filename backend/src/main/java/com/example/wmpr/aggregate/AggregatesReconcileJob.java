@@ -0,0 +1,79 @@
+package com.example.wmpr.aggregate;
+
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.atlassian.scheduler.JobRunner;
+import com.atlassian.scheduler.JobRunnerRequest;
+import com.atlassian.scheduler.JobRunnerResponse;
+import com.atlassian.scheduler.SchedulerService;
+import com.atlassian.scheduler.SchedulerServiceException;
+import com.atlassian.scheduler.config.JobConfig;
+import com.atlassian.scheduler.config.JobId;
+import com.atlassian.scheduler.config.JobRunnerKey;
+import com.atlassian.scheduler.config.RunMode;
+import com.atlassian.scheduler.config.Schedule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Date;
+
+/**
+ * Keeps the status counts honest: every {@code wmpr.aggregates.intervalMillis} (default 60000) it rebuilds the
+ * counts an event could not be applied to, and checks the others against a count query once every
+ * {@code wmpr.aggregates.reconcileMillis} (default ten minutes). Runs on every node, as each keeps its own counts.
+ */
+@Named
+public class AggregatesReconcileJob implements JobRunner, InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(AggregatesReconcileJob.class);
+
+    static final JobRunnerKey JOB_RUNNER_KEY = JobRunnerKey.of(AggregatesReconcileJob.class.getName());
+    static final JobId JOB_ID = JobId.of(AggregatesReconcileJob.class.getName());
+
+    static final long INTERVAL_MILLIS = Long.getLong("wmpr.aggregates.intervalMillis", 60_000L);
+
+    @JiraImport
+    private final SchedulerService schedulerService;
+
+    private final StatusAggregates statusAggregates;
+
+    @Inject
+    public AggregatesReconcileJob(SchedulerService schedulerService, StatusAggregates statusAggregates) {
+        this.schedulerService = schedulerService;
+        this.statusAggregates = statusAggregates;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        schedulerService.registerJobRunner(JOB_RUNNER_KEY, this);
+        try {
+            schedulerService.scheduleJob(JOB_ID, JobConfig.forJobRunnerKey(JOB_RUNNER_KEY)
+                    .withRunMode(RunMode.RUN_LOCALLY)
+                    .withSchedule(Schedule.forInterval(INTERVAL_MILLIS,
+                            new Date(System.currentTimeMillis() + INTERVAL_MILLIS))));
+        } catch (SchedulerServiceException e) {
+            log.warn("Could not schedule the aggregates reconcile job", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        schedulerService.unscheduleJob(JOB_ID);
+        schedulerService.unregisterJobRunner(JOB_RUNNER_KEY);
+    }
+
+    @Override
+    public JobRunnerResponse runJob(JobRunnerRequest request) {
+        String requestId = "WMPR-aggregates-" + System.currentTimeMillis();
+        try {
+            int rebuilt = statusAggregates.reconcile(requestId);
+            return JobRunnerResponse.success("Rebuilt " + rebuilt + " projects");
+        } catch (RuntimeException e) {
+            log.warn("[{}] Reconciling status counts failed", requestId, e);
+            return JobRunnerResponse.failed(e);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.wmpr.aggregate;
+
+import com.atlassian.query.Query;
+import com.example.wmpr.cache.QueryScope;
+import com.example.wmpr.service.IssueFieldLookups;
+import com.example.wmpr.service.ProjectJqlConfig;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The issues one project's JQL matches and the status of each, so an issue event can move a single count without
+ * a search. Holds an issue key and a shared status id per matching issue.
+ *
+ * All changes are synchronized; readers get the last published {@link #snapshot()} without locking.
+ */
+final class ProjectStatusCounter {
+
+    // Always reported, so dashboards see a zero rather than a missing category
+    private static final String[] CATEGORIES = {"new", "indeterminate", "done"};
+
+    private final String projectKey;
+    private final String jql;
+    private final long settingsVersion;
+    private final Query query;
+    private final QueryScope scope;
+
+    private final Map<String, String> members = new HashMap<>();
+    private final Map<String, Long> perStatus = new HashMap<>();
+    // Keys changed by events while the counter was being built, checked again once it is
+    private final Set<String> touched = new HashSet<>();
+
+    private volatile StatusCounts snapshot;
+    private volatile long lastReadAt;
+    private volatile boolean stale;
+    private long reconciledAt;
+    private long updatedAt;
+
+    ProjectStatusCounter(String projectKey, ProjectJqlConfig config, long now) {
+        this.projectKey = projectKey;
+        this.jql = config.getExecutedJql();
+        this.settingsVersion = config.getSettingsVersion();
+        this.query = config.getQuery();
+        this.scope = QueryScope.of(query, jql);
+        this.lastReadAt = now;
+    }
+
+    String getProjectKey() {
+        return projectKey;
+    }
+
+    Query getQuery() {
+        return query;
+    }
+
+    QueryScope getScope() {
+        return scope;
+    }
+
+    /**
+     * Whether the counter counts what the configuration asks for.
+     */
+    boolean counts(ProjectJqlConfig config) {
+        return settingsVersion == config.getSettingsVersion() && jql.equals(config.getExecutedJql());
+    }
+
+    StatusCounts snapshot() {
+        return snapshot;
+    }
+
+    void markRead(long now) {
+        lastReadAt = now;
+    }
+
+    long getLastReadAt() {
+        return lastReadAt;
+    }
+
+    /**
+     * Whether an event could not be applied, so only a rebuild makes the counts right again.
+     */
+    boolean isStale() {
+        return stale;
+    }
+
+    void markStale() {
+        stale = true;
+    }
+
+    synchronized long getReconciledAt() {
+        return reconciledAt;
+    }
+
+    synchronized void reconciled(long now) {
+        reconciledAt = now;
+    }
+
+    synchronized boolean contains(String issueKey) {
+        return members.containsKey(issueKey);
+    }
+
+    synchronized int size() {
+        return members.size();
+    }
+
+    /**
+     * Records the issue's status, or that it is no longer matched when {@code statusId} is null.
+     *
+     * @return whether any count changed
+     */
+    synchronized boolean set(String issueKey, String statusId) {
+        String previous = statusId == null ? members.remove(issueKey) : members.put(issueKey, statusId.intern());
+        if (previous == null ? statusId == null : previous.equals(statusId)) {
+            return false;
+        }
+        if (previous != null) {
+            perStatus.merge(previous, -1L, (count, delta) -> count + delta == 0L ? null : count + delta);
+        }
+        if (statusId != null) {
+            perStatus.merge(statusId.intern(), 1L, Long::sum);
+        }
+        return true;
+    }
+
+    synchronized void touch(String issueKey) {
+        touched.add(issueKey);
+    }
+
+    synchronized Set<String> takeTouched() {
+        Set<String> keys = new HashSet<>(touched);
+        touched.clear();
+        return keys;
+    }
+
+    /**
+     * Makes the current counts visible to readers.
+     */
+    synchronized void publish(IssueFieldLookups lookups, long now) {
+        updatedAt = now;
+        Map<String, IssueFieldLookups.StatusInfo> infos = lookups.statuses(perStatus.keySet());
+        Map<String, Long> categories = new LinkedHashMap<>();
+        for (String category : CATEGORIES) {
+            categories.put(category, 0L);
+        }
+        Map<String, Long> statuses = new TreeMap<>();
+        long total = 0L;
+        for (Map.Entry<String, Long> entry : perStatus.entrySet()) {
+            IssueFieldLookups.StatusInfo info = infos.get(entry.getKey());
+            // Statuses of different workflows can share a name; they are counted together, as the portal shows them
+            statuses.merge(info.getName(), entry.getValue(), Long::sum);
+            categories.merge(info.getCategoryKey(), entry.getValue(), Long::sum);
+            total += entry.getValue();
+        }
+        snapshot = new StatusCounts(projectKey, jql, StatusAggregates.nextVersion(), total, categories, statuses,
+                updatedAt, reconciledAt);
+    }
+}
@@ -0,0 +1,359 @@
+package com.example.wmpr.aggregate;
+
+import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.IssueManager;
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.jql.builder.JqlQueryBuilder;
+import com.atlassian.jira.project.Project;
+import com.atlassian.jira.web.bean.PagerFilter;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.atlassian.query.Query;
+import com.example.wmpr.cache.QueryScope;
+import com.example.wmpr.service.InvalidJqlException;
+import com.example.wmpr.service.IssueChangeQueue;
+import com.example.wmpr.service.IssueFieldLookups;
+import com.example.wmpr.service.ProjectJqlConfig;
+import com.example.wmpr.service.ProjectJqlConfigCache;
+import com.example.wmpr.service.SearchExecutor;
+import com.example.wmpr.service.SearchUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request counts per status and status category for each project's configured JQL, kept up to date from issue
+ * events so reading them costs no search.
+ *
+ * A project is counted from the first time someone asks for it: one search pages through every matching issue
+ * (ignoring permissions, as the counts are the same for everybody) and remembers the status of each. From then on
+ * {@link com.example.wmpr.listener.WmprIssueEventListener} reports every change, which is only noted on the
+ * thread making it and applied in batches on the search pool: a change moves a single count, and issues whose
+ * change touches a field the JQL filters on are checked with one search per count and batch. {@link AggregatesReconcileJob} regularly compares the total against a count query and rebuilds the
+ * counts when they drifted, and drops projects nobody asked about for a day.
+ */
+@Named
+public class StatusAggregates {
+
+    private static final Logger log = LoggerFactory.getLogger(StatusAggregates.class);
+
+    static final int PAGE_SIZE = 1000;
+    static final int EVENT_BATCH_SIZE = 200;
+    static final long IDLE_MILLIS = 24 * 60 * 60_000L;
+    static final long RECONCILE_MILLIS = Long.getLong("wmpr.aggregates.reconcileMillis", 10 * 60_000L);
+
+    // Shared by all counters, so a rebuilt counter never reuses the version, and so the ETag, of an earlier one
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    @JiraImport
+    private final SearchService searchService;
+
+    @JiraImport
+    private final IssueManager issueManager;
+
+    private final ProjectJqlConfigCache jqlConfigCache;
+
+    private final IssueFieldLookups lookups;
+
+    private final SearchExecutor searchExecutor;
+
+    private final Map<String, ProjectStatusCounter> counters = new ConcurrentHashMap<>();
+    // Counters whose issues are still being searched; events only note the keys they touch
+    private final Map<String, ProjectStatusCounter> building = new ConcurrentHashMap<>();
+
+    // Changes noted by events, applied in batches on the search pool
+    private final IssueChangeQueue changes;
+
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong drifts = new AtomicLong();
+    private final AtomicLong eventsApplied = new AtomicLong();
+    private final AtomicLong membershipChecks = new AtomicLong();
+
+    @Inject
+    public StatusAggregates(SearchService searchService,
+                            IssueManager issueManager,
+                            ProjectJqlConfigCache jqlConfigCache,
+                            IssueFieldLookups lookups,
+                            SearchExecutor searchExecutor) {
+        this.searchService = searchService;
+        this.issueManager = issueManager;
+        this.jqlConfigCache = jqlConfigCache;
+        this.lookups = lookups;
+        this.searchExecutor = searchExecutor;
+        this.changes = new IssueChangeQueue("aggregates-events", searchExecutor, EVENT_BATCH_SIZE, this::applyChanges);
+    }
+
+    /**
+     * The current counts of the project, counting its issues first if nobody asked for them yet or its JQL
+     * changed since.
+     *
+     * @throws SearchUnavailableException when the counting doesn't finish within the search deadline; it keeps
+     *                                    running and a later call gets its result
+     */
+    public StatusCounts get(String projectKey) throws Exception {
+        String key = projectKey.trim();
+        ProjectJqlConfig config = jqlConfigCache.get(key);
+        if (!config.isValid()) {
+            throw new InvalidJqlException("Invalid JQL query");
+        }
+        long now = System.currentTimeMillis();
+        ProjectStatusCounter counter = counters.get(key);
+        if (counter == null || !counter.counts(config)) {
+            // Concurrent callers join the same rebuild
+            counter = searchExecutor.call("aggregates:" + key, () -> rebuild(key, config),
+                    SearchExecutor.DEFAULT_TIMEOUT_MILLIS);
+        }
+        counter.markRead(now);
+        return counter.snapshot();
+    }
+
+    /**
+     * Whether the project's JQL only matches issues of the project itself, so its counts say nothing about other
+     * projects.
+     */
+    public boolean countsOnly(Project project) {
+        ProjectJqlConfig config = jqlConfigCache.get(project.getKey());
+        return config.isValid() && QueryScope.of(config.getQuery(), config.getExecutedJql()).isLimitedTo(project);
+    }
+
+    /**
+     * Notes a created or updated issue; it is applied to every count it may be part of in the background.
+     *
+     * @param changedFields normalised names of the changed fields, or null when any field may have changed
+     */
+    public void issueChanged(Issue issue, Set<String> changedFields) {
+        String issueKey = issue.getKey();
+        for (ProjectStatusCounter counter : building.values()) {
+            counter.touch(issueKey);
+        }
+        changes.add(issueKey, changedFields);
+    }
+
+    public void issueDeleted(String issueKey) {
+        for (ProjectStatusCounter counter : building.values()) {
+            counter.touch(issueKey);
+        }
+        // Gone by the time it is applied, so it leaves every count
+        changes.add(issueKey, null);
+    }
+
+    /**
+     * For changes that can't be applied one issue at a time, such as a move that changes the key; every count is
+     * rebuilt on the next reconcile.
+     */
+    public void invalidateAll() {
+        for (ProjectStatusCounter counter : counters.values()) {
+            counter.markStale();
+        }
+        for (ProjectStatusCounter counter : building.values()) {
+            counter.markStale();
+        }
+    }
+
+    /**
+     * Drops idle projects, rebuilds stale ones and checks the total of those not checked for a while against a
+     * count query. Called by {@link AggregatesReconcileJob}.
+     *
+     * @return the number of projects whose counts were rebuilt
+     */
+    int reconcile(String requestId) {
+        // Changes left pending while the search pool was full
+        changes.flush();
+        long now = System.currentTimeMillis();
+        int rebuilt = 0;
+        Iterator<ProjectStatusCounter> it = counters.values().iterator();
+        while (it.hasNext()) {
+            ProjectStatusCounter counter = it.next();
+            String projectKey = counter.getProjectKey();
+            if (now - counter.getLastReadAt() >= IDLE_MILLIS) {
+                it.remove();
+                log.debug("[{}] Stopped counting idle project {}", requestId, projectKey);
+                continue;
+            }
+            ProjectJqlConfig config = jqlConfigCache.get(projectKey);
+            try {
+                if (!config.isValid()) {
+                    it.remove();
+                } else if (counter.isStale() || !counter.counts(config) || drifted(counter, now, requestId)) {
+                    searchExecutor.call("aggregates:" + projectKey, () -> rebuild(projectKey, config),
+                            SearchExecutor.DEFAULT_TIMEOUT_MILLIS);
+                    rebuilt++;
+                }
+            } catch (SearchUnavailableException e) {
+                // Leave the search pool to real requests; the next run tries again
+                log.debug("[{}] Could not reconcile project {}: {}", requestId, projectKey, e.getMessage());
+                break;
+            } catch (Exception e) {
+                log.warn("[{}] Could not reconcile project {}", requestId, projectKey, e);
+            }
+        }
+        return rebuilt;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        List<String> projects = new ArrayList<>(counters.keySet());
+        long issues = 0L;
+        for (ProjectStatusCounter counter : counters.values()) {
+            issues += counter.size();
+        }
+        stats.put("projects", projects);
+        stats.put("trackedIssues", issues);
+        stats.put("rebuilds", rebuilds.get());
+        stats.put("drifts", drifts.get());
+        stats.put("eventsApplied", eventsApplied.get());
+        stats.put("membershipChecks", membershipChecks.get());
+        stats.put("events", changes.getStatistics());
+        return stats;
+    }
+
+    static long nextVersion() {
+        return VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Compares the counted total with a count query once every {@link #RECONCILE_MILLIS}.
+     */
+    private boolean drifted(ProjectStatusCounter counter, long now, String requestId) throws SearchException {
+        if (now - counter.getReconciledAt() < RECONCILE_MILLIS) {
+            return false;
+        }
+        long counted = counter.snapshot().getTotal();
+        long actual = searchService.searchCountOverrideSecurity(null, counter.getQuery());
+        if (actual == counted) {
+            counter.reconciled(now);
+            return false;
+        }
+        drifts.incrementAndGet();
+        log.info("[{}] Counts of project {} drifted ({} counted, {} matching), rebuilding", requestId,
+                counter.getProjectKey(), counted, actual);
+        return true;
+    }
+
+    private ProjectStatusCounter rebuild(String projectKey, ProjectJqlConfig config) throws SearchException {
+        long start = System.currentTimeMillis();
+        ProjectStatusCounter counter = new ProjectStatusCounter(projectKey, config, start);
+        ProjectStatusCounter previous = counters.get(projectKey);
+        if (previous != null) {
+            counter.markRead(previous.getLastReadAt());
+        }
+        building.put(projectKey, counter);
+        try {
+            for (int offset = 0; ; offset += PAGE_SIZE) {
+                List<Issue> issues = searchService.searchOverrideSecurity(null, config.getQuery(),
+                        new PagerFilter(offset, PAGE_SIZE)).getResults();
+                for (Issue issue : issues) {
+                    counter.set(issue.getKey(), issue.getStatusId());
+                }
+                if (issues.size() < PAGE_SIZE) {
+                    break;
+                }
+            }
+            counter.reconciled(start);
+            counter.publish(lookups, start);
+            counters.put(projectKey, counter);
+        } finally {
+            building.remove(projectKey, counter);
+        }
+        // Issues changed while the search paged may be counted as they were before; count them as they are now
+        Map<String, Issue> existing = new HashMap<>();
+        Map<String, String> statuses = new HashMap<>();
+        for (String issueKey : counter.takeTouched()) {
+            Issue issue = issueManager.getIssueObject(issueKey);
+            if (issue != null) {
+                existing.put(issueKey, issue);
+            }
+            statuses.put(issueKey, null);
+        }
+        for (String issueKey : matching(counter, existing.keySet())) {
+            statuses.put(issueKey, existing.get(issueKey).getStatusId());
+        }
+        apply(counter, statuses);
+        rebuilds.incrementAndGet();
+        log.debug("Counted {} requests of project {} in {}ms", counter.size(), projectKey,
+                System.currentTimeMillis() - start);
+        return counter;
+    }
+
+    /**
+     * Applies a batch of changes noted by events: issues that may have joined or left a count are checked with
+     * one search per count, the others only move their status.
+     */
+    private void applyChanges(Map<String, Set<String>> batch) {
+        Map<String, Issue> issues = new HashMap<>();
+        for (String issueKey : batch.keySet()) {
+            issues.put(issueKey, issueManager.getIssueObject(issueKey));
+        }
+        for (ProjectStatusCounter counter : counters.values()) {
+            Map<String, String> statuses = new HashMap<>();
+            List<String> unsure = new ArrayList<>();
+            for (Map.Entry<String, Set<String>> change : batch.entrySet()) {
+                String issueKey = change.getKey();
+                Issue issue = issues.get(issueKey);
+                if (issue == null || !counter.getScope().mayContain(issue.getProjectObject())) {
+                    statuses.put(issueKey, null);
+                } else if (change.getValue() != null && !counter.getScope().dependsOnAny(change.getValue())) {
+                    statuses.put(issueKey, counter.contains(issueKey) ? issue.getStatusId() : null);
+                } else {
+                    unsure.add(issueKey);
+                }
+            }
+            try {
+                Set<String> matching = matching(counter, unsure);
+                for (String issueKey : unsure) {
+                    statuses.put(issueKey, matching.contains(issueKey) ? issues.get(issueKey).getStatusId() : null);
+                }
+            } catch (SearchException | RuntimeException e) {
+                log.warn("Could not tell whether {} changed requests count for project {}: {}", unsure.size(),
+                        counter.getProjectKey(), e.getMessage());
+                counter.markStale();
+            }
+            apply(counter, statuses);
+        }
+    }
+
+    /**
+     * Which of the issues the counter's JQL matches, with one search.
+     */
+    private Set<String> matching(ProjectStatusCounter counter, Collection<String> issueKeys) throws SearchException {
+        Set<String> matching = new HashSet<>();
+        if (issueKeys.isEmpty()) {
+            return matching;
+        }
+        membershipChecks.incrementAndGet();
+        Query query = JqlQueryBuilder.newBuilder(counter.getQuery())
+                .where().defaultAnd().issue(issueKeys.toArray(new String[0])).buildQuery();
+        for (Issue issue : searchService.searchOverrideSecurity(null, query, new PagerFilter(issueKeys.size()))
+                .getResults()) {
+            matching.add(issue.getKey());
+        }
+        return matching;
+    }
+
+    private void apply(ProjectStatusCounter counter, Map<String, String> statuses) {
+        boolean changed = false;
+        for (Map.Entry<String, String> status : statuses.entrySet()) {
+            if (counter.set(status.getKey(), status.getValue())) {
+                eventsApplied.incrementAndGet();
+                changed = true;
+            }
+        }
+        if (changed) {
+            counter.publish(lookups, System.currentTimeMillis());
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.example.wmpr.aggregate;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Number of requests a project's JQL matches, in total, per status category key ({@code new},
+ * {@code indeterminate}, {@code done}) and per status name, at one moment. Counts cover every matching issue
+ * regardless of who asks, as they are kept up to date from issue events rather than searched per user.
+ */
+public final class StatusCounts {
+
+    private final String projectKey;
+    private final String jql;
+    private final long version;
+    private final long total;
+    private final Map<String, Long> statusCategories;
+    private final Map<String, Long> statuses;
+    private final long updatedAt;
+    private final long reconciledAt;
+
+    StatusCounts(String projectKey, String jql, long version, long total, Map<String, Long> statusCategories,
+                 Map<String, Long> statuses, long updatedAt, long reconciledAt) {
+        this.projectKey = projectKey;
+        this.jql = jql;
+        this.version = version;
+        this.total = total;
+        this.statusCategories = Collections.unmodifiableMap(statusCategories);
+        this.statuses = Collections.unmodifiableMap(statuses);
+        this.updatedAt = updatedAt;
+        this.reconciledAt = reconciledAt;
+    }
+
+    public String getProjectKey() {
+        return projectKey;
+    }
+
+    /**
+     * The JQL that was counted.
+     */
+    public String getJql() {
+        return jql;
+    }
+
+    /**
+     * Goes up with every change of the counts; together with the project it makes a stable ETag.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public String getEtag() {
+        return "agg-" + projectKey + "-" + Integer.toHexString(jql.hashCode()) + "-" + version;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public Map<String, Long> getStatusCategories() {
+        return statusCategories;
+    }
+
+    public Map<String, Long> getStatuses() {
+        return statuses;
+    }
+
+    /**
+     * When an issue event last changed the counts.
+     */
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * When the counts were last rebuilt from a full search.
+     */
+    public long getReconciledAt() {
+        return reconciledAt;
+    }
+}
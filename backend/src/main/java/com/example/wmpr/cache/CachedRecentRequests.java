@@ -0,0 +1,207 @@
+package com.example.wmpr.cache;
+
+import com.example.wmpr.json.RecentRequestsJson;
+import com.example.wmpr.model.ServiceDeskRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Immutable snapshot of the mapped rows for one cache key, with what the client needs to fetch the next page.
+ * The rows are held in {@link CompactRows} form.
+ */
+public class CachedRecentRequests {
+
+    private final CompactRows rows;
+    private final List<ServiceDeskRequest> requests;
+    private final String executedJql;
+    private final QueryScope scope;
+    private final long createdAt;
+    private final boolean hasMore;
+    private final String nextCursor;
+    private final Long total;
+    private final String etag;
+
+    // JSON of the rows, encoded on first use and then shared by every response built from this entry
+    private volatile byte[] encodedRequests;
+
+    // Complete response bodies built from this entry, by encoding (JSON or columnar, compressed or not)
+    private final Map<String, EncodedBody> encodedBodies = new ConcurrentHashMap<>(4);
+
+    public CachedRecentRequests(List<ServiceDeskRequest> requests, String executedJql, QueryScope scope, long createdAt,
+                                boolean hasMore, String nextCursor, Long total) {
+        this.rows = new CompactRows(requests);
+        this.requests = rows.asList();
+        this.executedJql = executedJql;
+        this.scope = scope;
+        this.createdAt = createdAt;
+        this.hasMore = hasMore;
+        this.nextCursor = nextCursor;
+        this.total = total;
+        this.etag = computeEtag(requests, hasMore, nextCursor, total);
+    }
+
+    /**
+     * Returns a copy with the row for the same issue key replaced, keeping position and age.
+     */
+    public CachedRecentRequests withReplacedRow(ServiceDeskRequest replacement) {
+        List<ServiceDeskRequest> patched = new ArrayList<>(requests);
+        for (int i = 0; i < patched.size(); i++) {
+            if (patched.get(i).getKey().equals(replacement.getKey())) {
+                patched.set(i, replacement);
+            }
+        }
+        return new CachedRecentRequests(patched, executedJql, scope, createdAt, hasMore, nextCursor, total);
+    }
+
+    public boolean containsKey(String issueKey) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.getKey(i).equals(issueKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The rows, rebuilt from their compact form as they are read; prefer {@link #getEncodedRequests()} where the
+     * JSON will do.
+     */
+    public List<ServiceDeskRequest> getRequests() {
+        return requests;
+    }
+
+    /**
+     * The rows as a UTF-8 JSON array. Concurrent first calls may both encode; the results are identical.
+     */
+    public byte[] getEncodedRequests() {
+        byte[] encoded = encodedRequests;
+        if (encoded == null) {
+            encoded = RecentRequestsJson.encodeRows(requests);
+            encodedRequests = encoded;
+        }
+        return encoded;
+    }
+
+    /**
+     * The response body of the given variant, built by the encoder the first time it is asked for and then shared
+     * by every response in that variant until the entry is replaced.
+     */
+    public EncodedBody getEncodedBody(String variant, Supplier<EncodedBody> encoder) {
+        return encodedBodies.computeIfAbsent(variant, v -> encoder.get());
+    }
+
+    /**
+     * Approximate heap held by this entry: its rows and every body encoded from it so far.
+     */
+    public long getEstimatedBytes() {
+        long bytes = rows.getEstimatedBytes() + CompactRows.sizeOf(encodedRequests);
+        for (EncodedBody body : encodedBodies.values()) {
+            bytes += CompactRows.sizeOf(body.getBytes());
+        }
+        return bytes;
+    }
+
+    /**
+     * Approximate heap of the rows alone; see {@link #getUncompactedRowBytes()} for what they would take as plain
+     * objects.
+     */
+    public long getRowBytes() {
+        return rows.getEstimatedBytes();
+    }
+
+    public long getUncompactedRowBytes() {
+        return rows.getUncompactedBytes();
+    }
+
+    /**
+     * The JQL that actually produced the rows - differs from the key when the fallback query was used.
+     */
+    public String getExecutedJql() {
+        return executedJql;
+    }
+
+    public QueryScope getScope() {
+        return scope;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Whether more rows follow this page.
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Token for the page after this one, or null when there is none or the query isn't sorted by created date.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Total number of matches, or null when it wasn't requested.
+     */
+    public Long getTotal() {
+        return total;
+    }
+
+    /**
+     * Content-derived entity tag of the rows. Identical rows give the same tag on every node and after
+     * recomputation, so clients only download the list again when it actually changed.
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    // 64-bit FNV-1a over every row field - cheap, stable across JVMs and with negligible collision odds
+    private static String computeEtag(List<ServiceDeskRequest> requests, boolean hasMore, String nextCursor, Long total) {
+        long hash = 0xcbf29ce484222325L;
+        for (ServiceDeskRequest request : requests) {
+            hash = hash(hash, request.getKey());
+            hash = hash(hash, request.getSummary());
+            hash = hash(hash, request.getReporter());
+            hash = hash(hash, request.getCreated());
+            hash = hash(hash, request.getStatus());
+            hash = hash(hash, request.getStatusCategory());
+        }
+        hash = hash(hash, String.valueOf(hasMore));
+        hash = hash(hash, nextCursor);
+        hash = hash(hash, total == null ? null : total.toString());
+        return Long.toHexString(hash) + "-" + requests.size();
+    }
+
+    /**
+     * Hash of one row's fields, used to tell which rows changed between two versions of an entry.
+     */
+    static long rowHash(ServiceDeskRequest request) {
+        long hash = 0xcbf29ce484222325L;
+        hash = hash(hash, request.getKey());
+        hash = hash(hash, request.getSummary());
+        hash = hash(hash, request.getReporter());
+        hash = hash(hash, request.getCreated());
+        hash = hash(hash, request.getStatus());
+        hash = hash(hash, request.getStatusCategory());
+        return hash;
+    }
+
+    private static long hash(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        }
+        // Field separator so ("ab", "c") and ("a", "bc") differ
+        hash ^= 0x1F;
+        hash *= 0x100000001b3L;
+        return hash;
+    }
+}
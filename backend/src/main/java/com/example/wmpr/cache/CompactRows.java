@@ -0,0 +1,218 @@
+package com.example.wmpr.cache;
+
+import com.example.wmpr.model.ServiceDeskRequest;
+
+import java.sql.Timestamp;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Column-wise storage of the rows of one cache entry. Reporter, status and status category repeat across rows,
+ * so each row holds an index into a per-entry dictionary whose values are themselves shared by every entry (a
+ * thousand entries showing "Waiting for support" keep one copy of it). The created date is kept as epoch millis
+ * and turned back into the text the mapper produced when a row is read; text that would not come back identical
+ * is kept as is.
+ *
+ * Rows are rebuilt on every read, which only the projected, columnar and delta responses do - plain responses
+ * are served from the encoded bytes of the entry.
+ */
+final class CompactRows {
+
+    static final int MAX_SHARED_VALUES = 20_000;
+
+    // Low-cardinality values shared by all entries; once full, entries keep their own copies
+    private static final Map<String, String> SHARED_VALUES = new ConcurrentHashMap<>();
+
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    // Rough HotSpot sizes with compressed oops, for the footprint report
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int STRING_OVERHEAD = 24 + ARRAY_HEADER;
+
+    private final String[] keys;
+    private final String[] summaries;
+    private final long[] created;
+    // Only allocated when some created text isn't a timestamp
+    private final String[] createdText;
+    private final int[] reporters;
+    private final int[] statuses;
+    private final int[] statusCategories;
+    private final String[] dictionary;
+
+    private final long estimatedBytes;
+    private final long uncompactedBytes;
+
+    CompactRows(List<ServiceDeskRequest> requests) {
+        int size = requests.size();
+        keys = new String[size];
+        summaries = new String[size];
+        created = new long[size];
+        reporters = new int[size];
+        statuses = new int[size];
+        statusCategories = new int[size];
+        Map<String, Integer> codes = new HashMap<>();
+        String[] text = null;
+        long uncompacted = ARRAY_HEADER + (long) REFERENCE * size;
+        for (int i = 0; i < size; i++) {
+            ServiceDeskRequest request = requests.get(i);
+            keys[i] = request.getKey();
+            summaries[i] = request.getSummary();
+            created[i] = toMillis(request.getCreated());
+            if (created[i] == NO_TIMESTAMP) {
+                if (text == null) {
+                    text = new String[size];
+                }
+                text[i] = request.getCreated();
+            }
+            reporters[i] = code(codes, request.getReporter());
+            statuses[i] = code(codes, request.getStatus());
+            statusCategories[i] = code(codes, request.getStatusCategory());
+            uncompacted += align(OBJECT_HEADER + 6 * REFERENCE) + sizeOf(request.getKey())
+                    + sizeOf(request.getSummary()) + sizeOf(request.getReporter()) + sizeOf(request.getCreated())
+                    + sizeOf(request.getStatus()) + sizeOf(request.getStatusCategory());
+        }
+        createdText = text;
+        dictionary = new String[codes.size()];
+        for (Map.Entry<String, Integer> entry : codes.entrySet()) {
+            dictionary[entry.getValue()] = entry.getKey();
+        }
+        uncompactedBytes = uncompacted;
+        estimatedBytes = estimate();
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    String getKey(int index) {
+        return keys[index];
+    }
+
+    ServiceDeskRequest get(int index) {
+        return new ServiceDeskRequest(keys[index], summaries[index], value(reporters[index]),
+                created[index] == NO_TIMESTAMP ? createdText[index] : new Timestamp(created[index]).toString(),
+                value(statuses[index]), value(statusCategories[index]));
+    }
+
+    /**
+     * The rows as a read-only list, each built when it is read.
+     */
+    List<ServiceDeskRequest> asList() {
+        return new Rows();
+    }
+
+    /**
+     * Approximate heap held by the rows, counting shared values once per entry.
+     */
+    long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Approximate heap the same rows would hold as one object with six strings each.
+     */
+    long getUncompactedBytes() {
+        return uncompactedBytes;
+    }
+
+    static int sharedValueCount() {
+        return SHARED_VALUES.size();
+    }
+
+    static long sizeOf(byte[] bytes) {
+        return bytes == null ? 0L : align(ARRAY_HEADER + bytes.length);
+    }
+
+    private long estimate() {
+        long bytes = align(OBJECT_HEADER + 8 * REFERENCE + 2 * 8);
+        bytes += 2 * align(ARRAY_HEADER + (long) REFERENCE * keys.length);
+        bytes += align(ARRAY_HEADER + 8L * keys.length);
+        bytes += 3 * align(ARRAY_HEADER + 4L * keys.length);
+        bytes += align(ARRAY_HEADER + (long) REFERENCE * dictionary.length);
+        for (int i = 0; i < keys.length; i++) {
+            bytes += sizeOf(keys[i]) + sizeOf(summaries[i]);
+        }
+        if (createdText != null) {
+            bytes += align(ARRAY_HEADER + (long) REFERENCE * createdText.length);
+            for (String text : createdText) {
+                bytes += sizeOf(text);
+            }
+        }
+        for (String value : dictionary) {
+            bytes += sizeOf(value);
+        }
+        return bytes;
+    }
+
+    private String value(int code) {
+        return code < 0 ? null : dictionary[code];
+    }
+
+    private static int code(Map<String, Integer> codes, String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = codes.size();
+            codes.put(share(value), code);
+        }
+        return code;
+    }
+
+    private static String share(String value) {
+        String shared = SHARED_VALUES.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (SHARED_VALUES.size() >= MAX_SHARED_VALUES) {
+            return value;
+        }
+        shared = SHARED_VALUES.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+
+    /**
+     * Epoch millis of text written by {@link Timestamp#toString()}, or {@link #NO_TIMESTAMP} when the text would
+     * not be reproduced exactly from them.
+     */
+    private static long toMillis(String text) {
+        if (text == null || text.isEmpty()) {
+            return NO_TIMESTAMP;
+        }
+        try {
+            long millis = Timestamp.valueOf(text).getTime();
+            return millis != NO_TIMESTAMP && new Timestamp(millis).toString().equals(text) ? millis : NO_TIMESTAMP;
+        } catch (IllegalArgumentException e) {
+            return NO_TIMESTAMP;
+        }
+    }
+
+    private static long sizeOf(String value) {
+        // Java 8 strings keep two bytes per char
+        return value == null ? 0L : align(STRING_OVERHEAD + 2L * value.length());
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private final class Rows extends AbstractList<ServiceDeskRequest> implements RandomAccess {
+
+        @Override
+        public ServiceDeskRequest get(int index) {
+            return CompactRows.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+    }
+}
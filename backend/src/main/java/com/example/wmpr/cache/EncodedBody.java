@@ -0,0 +1,26 @@
+package com.example.wmpr.cache;
+
+/**
+ * A response body as it goes on the wire, with the content coding that was applied to it (null when none was).
+ */
+public final class EncodedBody {
+
+    private final byte[] bytes;
+    private final String contentEncoding;
+
+    public EncodedBody(byte[] bytes, String contentEncoding) {
+        this.bytes = bytes;
+        this.contentEncoding = contentEncoding;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Value for the Content-Encoding header, or null to send the body as is.
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+}
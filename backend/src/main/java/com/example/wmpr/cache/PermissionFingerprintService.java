@@ -0,0 +1,227 @@
+package com.example.wmpr.cache;
+
+import com.atlassian.jira.application.ApplicationRoleManager;
+import com.atlassian.jira.issue.security.IssueSecurityLevel;
+import com.atlassian.jira.issue.security.IssueSecurityLevelManager;
+import com.atlassian.jira.issue.security.IssueSecuritySchemeManager;
+import com.atlassian.jira.permission.PermissionSchemeEntry;
+import com.atlassian.jira.permission.PermissionSchemeManager;
+import com.atlassian.jira.permission.ProjectPermissions;
+import com.atlassian.jira.project.Project;
+import com.atlassian.jira.scheme.Scheme;
+import com.atlassian.jira.security.PermissionManager;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Computes a fingerprint of what a user is allowed to see, so that users with the same
+ * browsable projects and issue security levels can share cached search results.
+ *
+ * Only project-wide grants can be shared that way. Users who may browse a project whose permission scheme also
+ * grants Browse Projects per issue (reporter, assignee, user or group custom field, service desk customers), and
+ * portal customers without application access, who only see their own or their organisations' requests, get a
+ * fingerprint of their own.
+ */
+@Named
+public class PermissionFingerprintService {
+
+    // JQL functions whose result depends on who is searching - these can never be shared between users
+    private static final Pattern USER_SPECIFIC_JQL = Pattern.compile(
+            "(?i)\\b(currentUser|currentLogin|lastLogin|issueHistory|votedIssues|watchedIssues|myApproval|myPending)\\s*\\(");
+
+    // Permission scheme grant types whose holders depend on the issue
+    private static final Set<String> ISSUE_LEVEL_GRANTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "reporter", "reportercreate", "assignee", "assigneeassignable", "userCF", "groupCF",
+            "sd.customer.portal.only")));
+
+    private static final String PER_USER = "user:";
+
+    private static final long MEMO_TTL_MILLIS = 30_000L;
+    private static final int MEMO_MAX_USERS = 5000;
+
+    @JiraImport
+    private final PermissionManager permissionManager;
+
+    @JiraImport
+    private final IssueSecurityLevelManager issueSecurityLevelManager;
+
+    @JiraImport
+    private final IssueSecuritySchemeManager issueSecuritySchemeManager;
+
+    @JiraImport
+    private final PermissionSchemeManager permissionSchemeManager;
+
+    @JiraImport
+    private final ApplicationRoleManager applicationRoleManager;
+
+    // Per-user memo so the permission walk runs at most once per TTL for each user
+    private final Map<String, MemoizedFingerprint> memo = new ConcurrentHashMap<>();
+    // Per permission scheme, whether it grants Browse Projects per issue
+    private final Map<Long, MemoizedGrants> schemeGrants = new ConcurrentHashMap<>();
+
+    @Inject
+    public PermissionFingerprintService(PermissionManager permissionManager,
+                                        IssueSecurityLevelManager issueSecurityLevelManager,
+                                        IssueSecuritySchemeManager issueSecuritySchemeManager,
+                                        PermissionSchemeManager permissionSchemeManager,
+                                        ApplicationRoleManager applicationRoleManager) {
+        this.permissionManager = permissionManager;
+        this.issueSecurityLevelManager = issueSecurityLevelManager;
+        this.issueSecuritySchemeManager = issueSecuritySchemeManager;
+        this.permissionSchemeManager = permissionSchemeManager;
+        this.applicationRoleManager = applicationRoleManager;
+    }
+
+    public String fingerprint(ApplicationUser user, String jql) {
+        if (jql != null && USER_SPECIFIC_JQL.matcher(jql).find()) {
+            return PER_USER + user.getKey();
+        }
+
+        long now = System.currentTimeMillis();
+        MemoizedFingerprint memoized = memo.get(user.getKey());
+        if (memoized != null && now - memoized.computedAt < MEMO_TTL_MILLIS) {
+            return memoized.fingerprint;
+        }
+
+        String fingerprint = computePermissionFingerprint(user);
+        if (memo.size() >= MEMO_MAX_USERS) {
+            memo.clear();
+        }
+        memo.put(user.getKey(), new MemoizedFingerprint(fingerprint, now));
+        return fingerprint;
+    }
+
+    /**
+     * Whether results with this fingerprint were computed for one user, whose access may depend on single issues.
+     */
+    public static boolean isPerUser(String fingerprint) {
+        return fingerprint.startsWith(PER_USER);
+    }
+
+    /**
+     * Whether the user sees every issue of the project, so that counts or results computed without permissions
+     * tell them nothing they couldn't find themselves: they have application access, may browse the project,
+     * nobody is granted Browse Projects on it per issue and they hold every security level of its scheme.
+     */
+    public boolean seesEveryIssue(ApplicationUser user, Project project) {
+        return applicationRoleManager.hasAnyRole(user)
+                && permissionManager.hasPermission(ProjectPermissions.BROWSE_PROJECTS, project, user)
+                && !grantsPerIssue(project, System.currentTimeMillis())
+                && holdsEverySecurityLevel(user, project);
+    }
+
+    /**
+     * Whether no issue of the project can be hidden from the user by its security level.
+     */
+    public boolean holdsEverySecurityLevel(ApplicationUser user, Project project) {
+        Scheme scheme = issueSecuritySchemeManager.getSchemeFor(project);
+        if (scheme == null) {
+            return true;
+        }
+        Set<Long> held = new HashSet<>();
+        for (IssueSecurityLevel level : issueSecurityLevelManager.getUsersSecurityLevels(project, user)) {
+            held.add(level.getId());
+        }
+        for (IssueSecurityLevel level : issueSecurityLevelManager.getIssueSecurityLevels(scheme.getId())) {
+            if (!held.contains(level.getId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String computePermissionFingerprint(ApplicationUser user) {
+        if (!applicationRoleManager.hasAnyRole(user)) {
+            return PER_USER + user.getKey();
+        }
+        long now = System.currentTimeMillis();
+        Collection<Project> projects = permissionManager.getProjects(ProjectPermissions.BROWSE_PROJECTS, user);
+        long[] projectIds = new long[projects.size()];
+        int i = 0;
+        for (Project project : projects) {
+            if (grantsPerIssue(project, now)) {
+                return PER_USER + user.getKey();
+            }
+            projectIds[i++] = project.getId();
+        }
+        Arrays.sort(projectIds);
+
+        Collection<IssueSecurityLevel> levels = issueSecurityLevelManager.getAllSecurityLevelsForUser(user);
+        long[] levelIds = new long[levels.size()];
+        i = 0;
+        for (IssueSecurityLevel level : levels) {
+            levelIds[i++] = level.getId();
+        }
+        Arrays.sort(levelIds);
+
+        return "perm:" + sha256(Arrays.toString(projectIds) + "|" + Arrays.toString(levelIds));
+    }
+
+    private boolean grantsPerIssue(Project project, long now) {
+        Scheme scheme = permissionSchemeManager.getSchemeFor(project);
+        if (scheme == null) {
+            return false;
+        }
+        MemoizedGrants memoized = schemeGrants.get(scheme.getId());
+        if (memoized != null && now - memoized.computedAt < MEMO_TTL_MILLIS) {
+            return memoized.perIssue;
+        }
+        boolean perIssue = false;
+        for (PermissionSchemeEntry entry : permissionSchemeManager.getPermissionSchemeEntries(scheme,
+                ProjectPermissions.BROWSE_PROJECTS)) {
+            if (ISSUE_LEVEL_GRANTS.contains(entry.getType())) {
+                perIssue = true;
+                break;
+            }
+        }
+        schemeGrants.put(scheme.getId(), new MemoizedGrants(perIssue, now));
+        return perIssue;
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class MemoizedGrants {
+        private final boolean perIssue;
+        private final long computedAt;
+
+        private MemoizedGrants(boolean perIssue, long computedAt) {
+            this.perIssue = perIssue;
+            this.computedAt = computedAt;
+        }
+    }
+
+    private static final class MemoizedFingerprint {
+        private final String fingerprint;
+        private final long computedAt;
+
+        private MemoizedFingerprint(String fingerprint, long computedAt) {
+            this.fingerprint = fingerprint;
+            this.computedAt = computedAt;
+        }
+    }
+}
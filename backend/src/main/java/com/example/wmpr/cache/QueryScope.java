@@ -0,0 +1,225 @@
+package com.example.wmpr.cache;
+
+import com.atlassian.jira.project.Project;
+import com.atlassian.query.Query;
+import com.atlassian.query.clause.AndClause;
+import com.atlassian.query.clause.ChangedClause;
+import com.atlassian.query.clause.Clause;
+import com.atlassian.query.clause.TerminalClause;
+import com.atlassian.query.operand.FunctionOperand;
+import com.atlassian.query.operand.MultiValueOperand;
+import com.atlassian.query.operand.Operand;
+import com.atlassian.query.operand.SingleValueOperand;
+import com.atlassian.query.operator.Operator;
+import com.atlassian.query.order.SearchSort;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Describes which issues and fields a parsed query depends on.
+ * Used by the issue event listener to decide whether a cached result can be left alone,
+ * patched in place or must be evicted.
+ */
+public final class QueryScope {
+
+    /** Scope for queries we could not analyse: matches every project and depends on every field. */
+    public static final QueryScope UNKNOWN = new QueryScope(null, Collections.<String>emptySet(), true, true);
+
+    // Relative dates and date functions make a result change over time without any issue event
+    private static final Pattern TIME_SENSITIVE_JQL = Pattern.compile(
+            "(?i)(\\bnow\\s*\\(|\\bstartOf\\w*\\s*\\(|\\bendOf\\w*\\s*\\(|[\"'\\s=<>][-+]?\\d+\\s*[wdhm]\\b)");
+
+    private static final Set<String> KEY_FIELDS = new HashSet<>();
+    private static final Map<String, String> FIELD_ALIASES = new HashMap<>();
+
+    static {
+        KEY_FIELDS.add("issuekey");
+        KEY_FIELDS.add("key");
+        KEY_FIELDS.add("id");
+        KEY_FIELDS.add("issue");
+
+        FIELD_ALIASES.put("type", "issuetype");
+        FIELD_ALIASES.put("statuscategory", "status");
+        FIELD_ALIASES.put("resolved", "resolution");
+        FIELD_ALIASES.put("resolutiondate", "resolution");
+        FIELD_ALIASES.put("updateddate", "updated");
+        FIELD_ALIASES.put("createddate", "created");
+        FIELD_ALIASES.put("affectedversion", "version");
+        FIELD_ALIASES.put("level", "security");
+    }
+
+    private final Set<String> projectValues;
+    private final Set<String> fields;
+    private final boolean dependsOnEverything;
+    private final boolean timeSensitive;
+
+    private QueryScope(Set<String> projectValues, Set<String> fields, boolean dependsOnEverything, boolean timeSensitive) {
+        this.projectValues = projectValues;
+        this.fields = fields;
+        this.dependsOnEverything = dependsOnEverything;
+        this.timeSensitive = timeSensitive;
+    }
+
+    public static QueryScope of(Query query, String jql) {
+        if (query == null) {
+            return UNKNOWN;
+        }
+        Set<String> fields = new HashSet<>();
+        boolean[] unknown = new boolean[1];
+        Clause where = query.getWhereClause();
+        if (where != null) {
+            collectFields(where, fields, unknown);
+        }
+        if (query.getOrderByClause() != null) {
+            for (SearchSort sort : query.getOrderByClause().getSearchSorts()) {
+                fields.add(normalizeField(sort.getField()));
+            }
+        }
+        boolean timeSensitive = jql != null && TIME_SENSITIVE_JQL.matcher(jql).find();
+        return new QueryScope(collectProjectValues(where), Collections.unmodifiableSet(fields), unknown[0], timeSensitive);
+    }
+
+    /**
+     * Normalises JQL clause names and change history field names so that they can be compared,
+     * e.g. "Fix Version" and "fixVersion" both become "fixversion".
+     */
+    public static String normalizeField(String name) {
+        if (name == null) {
+            return "";
+        }
+        String normalized = name.replace(" ", "").toLowerCase(Locale.ENGLISH);
+        String alias = FIELD_ALIASES.get(normalized);
+        return alias != null ? alias : normalized;
+    }
+
+    /**
+     * Whether issues of the given project could be part of the result.
+     */
+    public boolean mayContain(Project project) {
+        if (projectValues == null || project == null) {
+            return true;
+        }
+        return projectValues.contains(project.getKey().toLowerCase(Locale.ENGLISH))
+                || projectValues.contains(project.getName().toLowerCase(Locale.ENGLISH))
+                || projectValues.contains(String.valueOf(project.getId()));
+    }
+
+    /**
+     * Whether the result can only hold issues of the given project, because a top level project clause names no
+     * other one.
+     */
+    public boolean isLimitedTo(Project project) {
+        if (projectValues == null || projectValues.isEmpty()) {
+            return false;
+        }
+        for (String value : projectValues) {
+            if (!value.equals(project.getKey().toLowerCase(Locale.ENGLISH))
+                    && !value.equals(project.getName().toLowerCase(Locale.ENGLISH))
+                    && !value.equals(String.valueOf(project.getId()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether a change to any of the given (normalised) fields could change membership or order of the result.
+     */
+    public boolean dependsOnAny(Collection<String> changedFields) {
+        if (dependsOnEverything) {
+            return true;
+        }
+        for (String field : changedFields) {
+            if (fields.contains(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the query is restricted to specific projects by a top level project clause.
+     */
+    public boolean isProjectRestricted() {
+        return projectValues != null;
+    }
+
+    public boolean isTimeSensitive() {
+        return timeSensitive;
+    }
+
+    private static void collectFields(Clause clause, Set<String> fields, boolean[] unknown) {
+        if (clause instanceof TerminalClause) {
+            TerminalClause terminal = (TerminalClause) clause;
+            String field = normalizeField(terminal.getName());
+            // Functions such as "issuekey in updatedBy()" change with every edit
+            if (KEY_FIELDS.contains(field) && terminal.getOperand() instanceof FunctionOperand) {
+                unknown[0] = true;
+            }
+            // Free text and custom field ids can't be matched against change history names
+            if ("text".equals(field) || field.startsWith("cf[")) {
+                unknown[0] = true;
+            }
+            fields.add(field);
+        } else if (clause instanceof ChangedClause) {
+            fields.add(normalizeField(((ChangedClause) clause).getField()));
+        } else if (clause.getClauses() != null && !clause.getClauses().isEmpty()) {
+            for (Clause child : clause.getClauses()) {
+                collectFields(child, fields, unknown);
+            }
+        } else {
+            unknown[0] = true;
+        }
+    }
+
+    /**
+     * Returns the lower-cased project keys, names or ids the query is restricted to, or null if it
+     * is not restricted by a top level "project =" / "project in" clause.
+     */
+    private static Set<String> collectProjectValues(Clause where) {
+        if (where == null) {
+            return null;
+        }
+        Collection<Clause> candidates = where instanceof AndClause ? where.getClauses() : Collections.singletonList(where);
+        for (Clause candidate : candidates) {
+            if (!(candidate instanceof TerminalClause) || !"project".equals(normalizeField(candidate.getName()))) {
+                continue;
+            }
+            TerminalClause terminal = (TerminalClause) candidate;
+            if (terminal.getOperator() != Operator.EQUALS && terminal.getOperator() != Operator.IN) {
+                continue;
+            }
+            Set<String> values = new HashSet<>();
+            if (collectOperandValues(terminal.getOperand(), values)) {
+                return values;
+            }
+        }
+        return null;
+    }
+
+    private static boolean collectOperandValues(Operand operand, Set<String> values) {
+        if (operand instanceof SingleValueOperand) {
+            SingleValueOperand single = (SingleValueOperand) operand;
+            values.add(single.getStringValue() != null
+                    ? single.getStringValue().toLowerCase(Locale.ENGLISH)
+                    : String.valueOf(single.getLongValue()));
+            return true;
+        }
+        if (operand instanceof MultiValueOperand) {
+            for (Operand value : ((MultiValueOperand) operand).getValues()) {
+                if (!collectOperandValues(value, values)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,364 @@
+package com.example.wmpr.cache;
+
+import javax.inject.Named;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Shared, bounded cache of mapped recent request lists.
+ * Entries are kept coherent by issue events, expire after a TTL as a safety net and the least recently used
+ * entry is evicted once the size limit is hit. Results of time-relative queries ("-7d", "startOfDay()")
+ * change without any event and use a short TTL instead.
+ * Callers can wait for the entry of a key to change, which is what the long-poll endpoint builds on.
+ * The last rows stored for each key outlive expiry and invalidation for a while, to be served as stale
+ * when a fresh search fails, and the keys and row hashes of the last few versions are kept so a client holding
+ * one of them can be sent only what changed since.
+ */
+@Named
+public class RecentRequestsCache {
+
+    static final long DEFAULT_TTL_MILLIS = 10 * 60_000L;
+    static final long TIME_SENSITIVE_TTL_MILLIS = 30_000L;
+    static final int DEFAULT_MAX_ENTRIES = 1000;
+    static final long MAX_STALE_MILLIS = 60 * 60_000L;
+    static final int HISTORY_DEPTH = 8;
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final LinkedHashMap<RecentRequestsCacheKey, CachedRecentRequests> entries;
+    // Last stored rows per key, guarded by the entries lock; the values are shared with entries
+    private final LinkedHashMap<RecentRequestsCacheKey, CachedRecentRequests> lastGood;
+    // Earlier versions per key, newest first, guarded by the entries lock
+    private final LinkedHashMap<RecentRequestsCacheKey, Deque<RecentRequestsDelta.Snapshot>> history;
+    private final Map<RecentRequestsCacheKey, CountDownLatch> changeSignals = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong patches = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+    private final AtomicLong deltasServed = new AtomicLong();
+    private volatile long lastInvalidatedAt;
+
+    public RecentRequestsCache() {
+        this(DEFAULT_TTL_MILLIS, DEFAULT_MAX_ENTRIES);
+    }
+
+    RecentRequestsCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        // Access order gives us LRU eviction for free
+        this.entries = new LinkedHashMap<RecentRequestsCacheKey, CachedRecentRequests>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RecentRequestsCacheKey, CachedRecentRequests> eldest) {
+                if (size() > RecentRequestsCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    signalChange(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.lastGood = new LinkedHashMap<RecentRequestsCacheKey, CachedRecentRequests>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RecentRequestsCacheKey, CachedRecentRequests> eldest) {
+                return size() > RecentRequestsCache.this.maxEntries;
+            }
+        };
+        this.history = new LinkedHashMap<RecentRequestsCacheKey, Deque<RecentRequestsDelta.Snapshot>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<RecentRequestsCacheKey, Deque<RecentRequestsDelta.Snapshot>> eldest) {
+                return size() > RecentRequestsCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached rows for the key, or null when absent or expired.
+     */
+    public CachedRecentRequests get(RecentRequestsCacheKey key) {
+        synchronized (entries) {
+            CachedRecentRequests cached = entries.get(key);
+            if (cached != null && isExpired(cached, System.currentTimeMillis())) {
+                entries.remove(key);
+                expirations.incrementAndGet();
+                cached = null;
+            }
+            if (cached == null) {
+                misses.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+            }
+            return cached;
+        }
+    }
+
+    /**
+     * Returns the cached rows for the key without touching statistics or LRU order, or null when absent or expired.
+     */
+    public CachedRecentRequests peek(RecentRequestsCacheKey key) {
+        synchronized (entries) {
+            CachedRecentRequests cached = entries.get(key);
+            return cached != null && !isExpired(cached, System.currentTimeMillis()) ? cached : null;
+        }
+    }
+
+    /**
+     * Milliseconds until the entry for the key expires, or -1 when there is no live entry.
+     */
+    public long expiresIn(RecentRequestsCacheKey key) {
+        synchronized (entries) {
+            CachedRecentRequests cached = entries.get(key);
+            long now = System.currentTimeMillis();
+            return cached != null && !isExpired(cached, now) ? ttl(cached) - (now - cached.getCreatedAt()) : -1L;
+        }
+    }
+
+    public void put(RecentRequestsCacheKey key, CachedRecentRequests value) {
+        CachedRecentRequests previous;
+        synchronized (entries) {
+            previous = entries.put(key, value);
+            lastGood.put(key, value);
+            remember(key, value);
+        }
+        if (previous == null || !previous.getEtag().equals(value.getEtag())) {
+            signalChange(key);
+        }
+    }
+
+    /**
+     * Returns the last rows stored for the key even if they have since expired or been invalidated, or null
+     * when there are none younger than {@link #MAX_STALE_MILLIS}. Only meant as a fallback when a search fails.
+     */
+    public CachedRecentRequests getStale(RecentRequestsCacheKey key) {
+        synchronized (entries) {
+            CachedRecentRequests stale = lastGood.get(key);
+            if (stale == null || System.currentTimeMillis() - stale.getCreatedAt() > MAX_STALE_MILLIS) {
+                return null;
+            }
+            staleServed.incrementAndGet();
+            return stale;
+        }
+    }
+
+    /**
+     * What changed in the entry for the key since the version {@code since}, or null when that version is not among
+     * the last {@link #HISTORY_DEPTH} stored for the key and the client needs the full rows.
+     *
+     * @param current the rows the delta leads to, normally the live entry for the key
+     */
+    public RecentRequestsDelta delta(RecentRequestsCacheKey key, String since, CachedRecentRequests current) {
+        RecentRequestsDelta.Snapshot previous = null;
+        synchronized (entries) {
+            Deque<RecentRequestsDelta.Snapshot> versions = history.get(key);
+            if (versions != null) {
+                for (RecentRequestsDelta.Snapshot snapshot : versions) {
+                    if (snapshot.etag.equals(since)) {
+                        previous = snapshot;
+                        break;
+                    }
+                }
+            }
+        }
+        if (previous == null) {
+            return null;
+        }
+        deltasServed.incrementAndGet();
+        return RecentRequestsDelta.between(previous, current);
+    }
+
+    /**
+     * Returns a latch that is released the next time the entry for the key is replaced with different rows,
+     * patched or removed. Callers should re-check the entry after obtaining the latch to avoid missing a change.
+     */
+    public CountDownLatch changeSignal(RecentRequestsCacheKey key) {
+        return changeSignals.computeIfAbsent(key, k -> new CountDownLatch(1));
+    }
+
+    /**
+     * Drops every entry that was computed for the given JQL, regardless of permission context.
+     */
+    public void invalidateJql(String jql) {
+        if (jql == null) {
+            return;
+        }
+        lastInvalidatedAt = System.currentTimeMillis();
+        synchronized (entries) {
+            Iterator<RecentRequestsCacheKey> it = entries.keySet().iterator();
+            while (it.hasNext()) {
+                RecentRequestsCacheKey key = it.next();
+                if (jql.equals(key.getJql())) {
+                    it.remove();
+                    invalidations.incrementAndGet();
+                    signalChange(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lets the caller decide the fate of every entry: returning the same instance keeps it, a new instance
+     * patches it in place and null evicts it.
+     */
+    public void updateEntries(BiFunction<RecentRequestsCacheKey, CachedRecentRequests, CachedRecentRequests> updater) {
+        lastInvalidatedAt = System.currentTimeMillis();
+        synchronized (entries) {
+            Iterator<Map.Entry<RecentRequestsCacheKey, CachedRecentRequests>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<RecentRequestsCacheKey, CachedRecentRequests> entry = it.next();
+                CachedRecentRequests updated = updater.apply(entry.getKey(), entry.getValue());
+                if (updated == null) {
+                    it.remove();
+                    invalidations.incrementAndGet();
+                    signalChange(entry.getKey());
+                } else if (updated != entry.getValue()) {
+                    entry.setValue(updated);
+                    lastGood.put(entry.getKey(), updated);
+                    remember(entry.getKey(), updated);
+                    patches.incrementAndGet();
+                    signalChange(entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every entry showing the issue, including the last good rows kept for {@link #getStale}, so that no
+     * one keeps seeing it after losing access to it.
+     */
+    public void evictIssue(String issueKey) {
+        lastInvalidatedAt = System.currentTimeMillis();
+        synchronized (entries) {
+            Iterator<Map.Entry<RecentRequestsCacheKey, CachedRecentRequests>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<RecentRequestsCacheKey, CachedRecentRequests> entry = it.next();
+                if (entry.getValue().containsKey(issueKey)) {
+                    it.remove();
+                    invalidations.incrementAndGet();
+                    signalChange(entry.getKey());
+                }
+            }
+            lastGood.values().removeIf(stale -> stale.containsKey(issueKey));
+        }
+    }
+
+    public void invalidateAll() {
+        lastInvalidatedAt = System.currentTimeMillis();
+        synchronized (entries) {
+            invalidations.addAndGet(entries.size());
+            entries.clear();
+        }
+        for (RecentRequestsCacheKey key : changeSignals.keySet()) {
+            signalChange(key);
+        }
+    }
+
+    /**
+     * When entries were last invalidated or patched, whether or not any entry here was affected. Results computed
+     * before then, here or on another node, may miss the change.
+     */
+    public long getLastInvalidatedAt() {
+        return lastInvalidatedAt;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlMillis", ttlMillis);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("evictions", evictions.get());
+        stats.put("expirations", expirations.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("patches", patches.get());
+        stats.put("staleServed", staleServed.get());
+        stats.put("deltasServed", deltasServed.get());
+        return stats;
+    }
+
+    /**
+     * Approximate heap held by the cached rows and their encoded bodies, including rows only kept as stale
+     * fallback, to size {@code maxEntries} against. Estimates only; walks every entry under the cache lock, so it is
+     * only offered to administrators on {@code /metrics} and never on the request path.
+     */
+    public Map<String, Object> getFootprint() {
+        long rows = 0L;
+        long rowBytes = 0L;
+        long uncompactedRowBytes = 0L;
+        long totalBytes = 0L;
+        int stored;
+        synchronized (entries) {
+            Set<CachedRecentRequests> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+            counted.addAll(entries.values());
+            counted.addAll(lastGood.values());
+            for (CachedRecentRequests cached : counted) {
+                rows += cached.getRequests().size();
+                rowBytes += cached.getRowBytes();
+                uncompactedRowBytes += cached.getUncompactedRowBytes();
+                totalBytes += cached.getEstimatedBytes();
+            }
+            stored = counted.size();
+        }
+        Map<String, Object> footprint = new LinkedHashMap<>();
+        footprint.put("storedResults", stored);
+        footprint.put("rows", rows);
+        footprint.put("rowBytes", rowBytes);
+        footprint.put("uncompactedRowBytes", uncompactedRowBytes);
+        footprint.put("encodedBodyBytes", totalBytes - rowBytes);
+        footprint.put("totalBytes", totalBytes);
+        footprint.put("bytesPerResult", stored == 0 ? 0L : totalBytes / stored);
+        footprint.put("sharedValues", CompactRows.sharedValueCount());
+        return footprint;
+    }
+
+    // Callers hold the entries lock
+    private void remember(RecentRequestsCacheKey key, CachedRecentRequests value) {
+        Deque<RecentRequestsDelta.Snapshot> versions = history.computeIfAbsent(key, k -> new ArrayDeque<>());
+        if (versions.isEmpty() || !versions.peekFirst().etag.equals(value.getEtag())) {
+            versions.addFirst(new RecentRequestsDelta.Snapshot(value));
+            if (versions.size() > HISTORY_DEPTH) {
+                versions.removeLast();
+            }
+        }
+    }
+
+    private void signalChange(RecentRequestsCacheKey key) {
+        CountDownLatch latch = changeSignals.remove(key);
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    private boolean isExpired(CachedRecentRequests cached, long now) {
+        return now - cached.getCreatedAt() > ttl(cached);
+    }
+
+    private long ttl(CachedRecentRequests cached) {
+        return cached.getScope().isTimeSensitive() ? Math.min(ttlMillis, TIME_SENSITIVE_TTL_MILLIS) : ttlMillis;
+    }
+}
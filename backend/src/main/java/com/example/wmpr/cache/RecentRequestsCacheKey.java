@@ -0,0 +1,58 @@
+package com.example.wmpr.cache;
+
+/**
+ * Cache key for recent request results.
+ * Users that resolve to the same JQL and the same permission fingerprint see the same rows,
+ * so they share a single cache entry. Each page of a result is cached on its own.
+ */
+public final class RecentRequestsCacheKey {
+
+    private final String jql;
+    private final String permissionFingerprint;
+    private final String page;
+
+    public RecentRequestsCacheKey(String jql, String permissionFingerprint, String page) {
+        this.jql = jql;
+        this.permissionFingerprint = permissionFingerprint;
+        this.page = page;
+    }
+
+    public String getJql() {
+        return jql;
+    }
+
+    public String getPermissionFingerprint() {
+        return permissionFingerprint;
+    }
+
+    public String getPage() {
+        return page;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RecentRequestsCacheKey)) {
+            return false;
+        }
+        RecentRequestsCacheKey that = (RecentRequestsCacheKey) o;
+        return jql.equals(that.jql) && permissionFingerprint.equals(that.permissionFingerprint)
+                && page.equals(that.page);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * jql.hashCode() + permissionFingerprint.hashCode()) + page.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "RecentRequestsCacheKey{" +
+                "jql='" + jql + '\'' +
+                ", permissionFingerprint='" + permissionFingerprint + '\'' +
+                ", page='" + page + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.wmpr.cache;
+
+import com.example.wmpr.model.ServiceDeskRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What changed in an entry between a version a client already has and the current one: the rows that are new or
+ * different, the keys that are gone, and the order of all current keys so the client can rebuild the list.
+ */
+public final class RecentRequestsDelta {
+
+    private final String since;
+    private final CachedRecentRequests current;
+    private final List<ServiceDeskRequest> upserts;
+    private final List<String> removed;
+    private final List<String> order;
+
+    private RecentRequestsDelta(String since, CachedRecentRequests current, List<ServiceDeskRequest> upserts,
+                                List<String> removed, List<String> order) {
+        this.since = since;
+        this.current = current;
+        this.upserts = Collections.unmodifiableList(upserts);
+        this.removed = Collections.unmodifiableList(removed);
+        this.order = Collections.unmodifiableList(order);
+    }
+
+    static RecentRequestsDelta between(Snapshot previous, CachedRecentRequests current) {
+        Map<String, Long> previousRows = new HashMap<>(previous.keys.length * 2);
+        for (int i = 0; i < previous.keys.length; i++) {
+            previousRows.put(previous.keys[i], previous.hashes[i]);
+        }
+        List<ServiceDeskRequest> upserts = new ArrayList<>();
+        List<String> order = new ArrayList<>(current.getRequests().size());
+        Set<String> currentKeys = new HashSet<>(current.getRequests().size() * 2);
+        for (ServiceDeskRequest request : current.getRequests()) {
+            Long previousHash = previousRows.get(request.getKey());
+            if (previousHash == null || previousHash != CachedRecentRequests.rowHash(request)) {
+                upserts.add(request);
+            }
+            order.add(request.getKey());
+            currentKeys.add(request.getKey());
+        }
+        List<String> removed = new ArrayList<>();
+        for (String key : previous.keys) {
+            if (!currentKeys.contains(key)) {
+                removed.add(key);
+            }
+        }
+        return new RecentRequestsDelta(previous.etag, current, upserts, removed, order);
+    }
+
+    /**
+     * The version the delta starts from.
+     */
+    public String getSince() {
+        return since;
+    }
+
+    public CachedRecentRequests getCurrent() {
+        return current;
+    }
+
+    public List<ServiceDeskRequest> getUpserts() {
+        return upserts;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    public List<String> getOrder() {
+        return order;
+    }
+
+    /**
+     * Keys and row hashes of one earlier version of an entry; all a delta against it needs.
+     */
+    static final class Snapshot {
+
+        final String etag;
+        final String[] keys;
+        final long[] hashes;
+
+        Snapshot(CachedRecentRequests cached) {
+            List<ServiceDeskRequest> requests = cached.getRequests();
+            this.etag = cached.getEtag();
+            this.keys = new String[requests.size()];
+            this.hashes = new long[requests.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = requests.get(i).getKey();
+                hashes[i] = CachedRecentRequests.rowHash(requests.get(i));
+            }
+        }
+    }
+}
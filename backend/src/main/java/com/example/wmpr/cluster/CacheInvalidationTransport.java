@@ -0,0 +1,27 @@
+package com.example.wmpr.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries short invalidation messages to the other nodes of the cluster. {@link JiraClusterTransport} is the one
+ * Jira uses; {@link LocalClusterTransport} connects several plugin instances within one JVM instead.
+ */
+public interface CacheInvalidationTransport {
+
+    /**
+     * Starts delivering messages sent by other nodes to the receiver.
+     */
+    void start(Consumer<String> receiver);
+
+    void stop();
+
+    /**
+     * Sends the message to every other node; the sender never receives its own messages.
+     */
+    void send(String message);
+
+    /**
+     * Whether there are other nodes to tell at all.
+     */
+    boolean isClustered();
+}
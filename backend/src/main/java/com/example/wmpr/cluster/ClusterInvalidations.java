@@ -0,0 +1,106 @@
+package com.example.wmpr.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Tells the other nodes about every change that invalidates cached state here, so issue events and settings
+ * saved on any node reach the caches of all of them instead of waiting for their entries to expire.
+ *
+ * A message is a type and a payload, {@code type:payload}. Components register a handler for their type and
+ * apply the change to their own state; the handler is only called for changes made on other nodes.
+ */
+@Named
+public class ClusterInvalidations implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterInvalidations.class);
+
+    static final int MAX_MESSAGE_LENGTH = 200;
+    private static final char SEPARATOR = ':';
+
+    private final CacheInvalidationTransport transport;
+
+    private final Map<String, Consumer<String>> handlers = new ConcurrentHashMap<>();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong unhandled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @Inject
+    public ClusterInvalidations(CacheInvalidationTransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        transport.start(this::receive);
+    }
+
+    @Override
+    public void destroy() {
+        transport.stop();
+    }
+
+    public void register(String type, Consumer<String> handler) {
+        handlers.put(type, handler);
+    }
+
+    /**
+     * Sends the change to the other nodes. Returns false, sending nothing, when the message would be longer than
+     * the transport allows; the caller should then send a coarser change that fits.
+     */
+    public boolean broadcast(String type, String payload) {
+        String message = type + SEPARATOR + payload;
+        if (message.length() > MAX_MESSAGE_LENGTH) {
+            return false;
+        }
+        if (transport.isClustered()) {
+            transport.send(message);
+            sent.incrementAndGet();
+        }
+        return true;
+    }
+
+    public boolean isClustered() {
+        return transport.isClustered();
+    }
+
+    void receive(String message) {
+        received.incrementAndGet();
+        int separator = message.indexOf(SEPARATOR);
+        Consumer<String> handler = separator > 0 ? handlers.get(message.substring(0, separator)) : null;
+        if (handler == null) {
+            // Sent by a newer version of the plugin on another node during a rolling upgrade
+            log.debug("No handler for invalidation {}", message);
+            unhandled.incrementAndGet();
+            return;
+        }
+        try {
+            handler.accept(message.substring(separator + 1));
+        } catch (RuntimeException e) {
+            log.warn("Failed to apply invalidation {} from another node", message, e);
+            failed.incrementAndGet();
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("clustered", transport.isClustered());
+        stats.put("sent", sent.get());
+        stats.put("received", received.get());
+        stats.put("unhandled", unhandled.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+}
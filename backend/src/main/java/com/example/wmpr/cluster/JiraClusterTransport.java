@@ -0,0 +1,66 @@
+package com.example.wmpr.cluster;
+
+import com.atlassian.jira.cluster.ClusterManager;
+import com.atlassian.jira.cluster.ClusterMessageConsumer;
+import com.atlassian.jira.cluster.ClusterMessagingService;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.function.Consumer;
+
+/**
+ * Sends invalidations over Jira's cluster messaging. Jira limits channel names to 20 characters and messages to
+ * 200; on a single node there is nobody to tell and nothing is sent.
+ */
+@Named
+public class JiraClusterTransport implements CacheInvalidationTransport, ClusterMessageConsumer {
+
+    static final String CHANNEL = "WMPR-Invalidate";
+
+    @JiraImport
+    private final ClusterMessagingService clusterMessagingService;
+
+    @JiraImport
+    private final ClusterManager clusterManager;
+
+    private volatile Consumer<String> receiver;
+
+    @Inject
+    public JiraClusterTransport(ClusterMessagingService clusterMessagingService, ClusterManager clusterManager) {
+        this.clusterMessagingService = clusterMessagingService;
+        this.clusterManager = clusterManager;
+    }
+
+    @Override
+    public void start(Consumer<String> receiver) {
+        this.receiver = receiver;
+        clusterMessagingService.registerListener(CHANNEL, this);
+    }
+
+    @Override
+    public void stop() {
+        clusterMessagingService.unregisterListener(CHANNEL, this);
+        receiver = null;
+    }
+
+    @Override
+    public void send(String message) {
+        if (clusterManager.isClustered()) {
+            clusterMessagingService.sendRemote(CHANNEL, message);
+        }
+    }
+
+    @Override
+    public boolean isClustered() {
+        return clusterManager.isClustered();
+    }
+
+    @Override
+    public void receive(String channel, String message, String senderId) {
+        Consumer<String> current = receiver;
+        if (CHANNEL.equals(channel) && current != null) {
+            current.accept(message);
+        }
+    }
+}
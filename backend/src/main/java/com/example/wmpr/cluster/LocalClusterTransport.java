@@ -0,0 +1,59 @@
+package com.example.wmpr.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Stand-in for Jira's cluster messaging that connects plugin instances running in the same JVM, for tests and
+ * benchmarks. Every transport that joined the same {@link Network} is a node; messages are delivered to the
+ * other nodes synchronously on the sending thread.
+ */
+public final class LocalClusterTransport implements CacheInvalidationTransport {
+
+    private final Network network;
+    private volatile Consumer<String> receiver;
+
+    private LocalClusterTransport(Network network) {
+        this.network = network;
+    }
+
+    @Override
+    public void start(Consumer<String> receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void stop() {
+        receiver = null;
+    }
+
+    @Override
+    public void send(String message) {
+        for (LocalClusterTransport node : network.nodes) {
+            Consumer<String> current = node.receiver;
+            if (node != this && current != null) {
+                current.accept(message);
+            }
+        }
+    }
+
+    @Override
+    public boolean isClustered() {
+        return network.nodes.size() > 1;
+    }
+
+    /**
+     * The simulated cluster.
+     */
+    public static final class Network {
+
+        private final List<LocalClusterTransport> nodes = new CopyOnWriteArrayList<>();
+
+        public LocalClusterTransport join() {
+            LocalClusterTransport node = new LocalClusterTransport(this);
+            nodes.add(node);
+            return node;
+        }
+    }
+}
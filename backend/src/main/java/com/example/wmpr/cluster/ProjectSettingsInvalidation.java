@@ -0,0 +1,79 @@
+package com.example.wmpr.cluster;
+
+import com.example.wmpr.cache.RecentRequestsCache;
+import com.example.wmpr.service.ProjectJqlConfigCache;
+import com.example.wmpr.settings.ProjectSettingsStore;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Drops everything derived from a project's settings once they are saved - the stored settings other nodes hold
+ * in memory, the cached configuration and the results for both the old and the new query - on this node and on
+ * every other one.
+ *
+ * Other nodes are only sent a hash of the old query, as a query can be longer than a cluster message; the rare
+ * entry of another query with the same hash is dropped as well and simply recomputed.
+ */
+@Named
+public class ProjectSettingsInvalidation implements InitializingBean {
+
+    static final String TYPE = "settings";
+
+    private final ClusterInvalidations clusterInvalidations;
+
+    private final ProjectJqlConfigCache jqlConfigCache;
+
+    private final RecentRequestsCache recentRequestsCache;
+
+    private final ProjectSettingsStore settingsStore;
+
+    @Inject
+    public ProjectSettingsInvalidation(ClusterInvalidations clusterInvalidations,
+                                       ProjectJqlConfigCache jqlConfigCache,
+                                       RecentRequestsCache recentRequestsCache,
+                                       ProjectSettingsStore settingsStore) {
+        this.clusterInvalidations = clusterInvalidations;
+        this.jqlConfigCache = jqlConfigCache;
+        this.recentRequestsCache = recentRequestsCache;
+        this.settingsStore = settingsStore;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        clusterInvalidations.register(TYPE, this::onRemoteChange);
+    }
+
+    /**
+     * Called once the new settings are stored.
+     *
+     * @param previousJql the query the project used before the change
+     */
+    public void settingsSaved(String projectKey, String previousJql) {
+        jqlConfigCache.invalidate(projectKey);
+        recentRequestsCache.invalidateJql(previousJql);
+        invalidateCurrentJql(projectKey);
+        clusterInvalidations.broadcast(TYPE, jqlHash(previousJql) + ":" + projectKey);
+    }
+
+    private void onRemoteChange(String payload) {
+        int separator = payload.indexOf(':');
+        String previousHash = payload.substring(0, separator);
+        String projectKey = payload.substring(separator + 1);
+        // The record was saved on the sending node; reload it rather than wait for it to expire here
+        settingsStore.invalidate(projectKey);
+        jqlConfigCache.invalidate(projectKey);
+        recentRequestsCache.updateEntries((key, cached) -> previousHash.equals(jqlHash(key.getJql())) ? null : cached);
+        invalidateCurrentJql(projectKey);
+    }
+
+    private void invalidateCurrentJql(String projectKey) {
+        // Reloads the configuration from the settings just stored
+        recentRequestsCache.invalidateJql(jqlConfigCache.get(projectKey).getJql());
+    }
+
+    private static String jqlHash(String jql) {
+        return jql == null ? "" : Integer.toHexString(jql.hashCode());
+    }
+}
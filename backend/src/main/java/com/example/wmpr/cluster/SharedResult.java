@@ -0,0 +1,124 @@
+package com.example.wmpr.cluster;
+
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.QueryScope;
+import com.example.wmpr.model.ServiceDeskRequest;
+import com.example.wmpr.service.ProjectJqlConfig;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A computed result as it is copied to the other nodes: the rows and the paging state, encoded as bytes. The
+ * replicated cache only ever holds the byte array, because the other nodes deserialize its values with Jira's own
+ * classloader, which can't see plugin classes - and a plugin upgrade would change them anyway. The query scope
+ * isn't sent; the receiving node derives it from its own parsed configuration.
+ */
+final class SharedResult {
+
+    // Bumped whenever the encoding changes; copies written by another version are ignored
+    private static final int FORMAT = 1;
+
+    private final List<ServiceDeskRequest> requests;
+    private final String executedJql;
+    private final long createdAt;
+    private final boolean hasMore;
+    private final String nextCursor;
+    private final Long total;
+
+    private SharedResult(List<ServiceDeskRequest> requests, String executedJql, long createdAt, boolean hasMore,
+                         String nextCursor, Long total) {
+        this.requests = requests;
+        this.executedJql = executedJql;
+        this.createdAt = createdAt;
+        this.hasMore = hasMore;
+        this.nextCursor = nextCursor;
+        this.total = total;
+    }
+
+    static byte[] encode(CachedRecentRequests cached) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT);
+            writeString(out, cached.getExecutedJql());
+            out.writeLong(cached.getCreatedAt());
+            out.writeBoolean(cached.hasMore());
+            writeString(out, cached.getNextCursor());
+            out.writeBoolean(cached.getTotal() != null);
+            if (cached.getTotal() != null) {
+                out.writeLong(cached.getTotal());
+            }
+            List<ServiceDeskRequest> rows = cached.getRequests();
+            out.writeInt(rows.size());
+            for (ServiceDeskRequest request : rows) {
+                writeString(out, request.getKey());
+                writeString(out, request.getSummary());
+                writeString(out, request.getReporter());
+                writeString(out, request.getCreated());
+                writeString(out, request.getStatus());
+                writeString(out, request.getStatusCategory());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The result encoded by {@link #encode}, or null when another plugin version wrote it.
+     */
+    static SharedResult decode(byte[] encoded) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            if (in.readInt() != FORMAT) {
+                return null;
+            }
+            String executedJql = readString(in);
+            long createdAt = in.readLong();
+            boolean hasMore = in.readBoolean();
+            String nextCursor = readString(in);
+            Long total = in.readBoolean() ? in.readLong() : null;
+            int size = in.readInt();
+            List<ServiceDeskRequest> requests = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                requests.add(new ServiceDeskRequest(readString(in), readString(in), readString(in), readString(in),
+                        readString(in), readString(in)));
+            }
+            return new SharedResult(requests, executedJql, createdAt, hasMore, nextCursor, total);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * The result for this node, or null when it was computed with a query this node isn't configured with.
+     */
+    CachedRecentRequests toCached(ProjectJqlConfig config) {
+        if (!config.getExecutedJql().equals(executedJql)) {
+            return null;
+        }
+        return new CachedRecentRequests(requests, executedJql, QueryScope.of(config.getQuery(), executedJql),
+                createdAt, hasMore, nextCursor, total);
+    }
+
+    // writeUTF can't write null, so every string is preceded by whether it is there
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
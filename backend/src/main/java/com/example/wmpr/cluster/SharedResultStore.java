@@ -0,0 +1,120 @@
+package com.example.wmpr.cluster;
+
+import com.atlassian.cache.Cache;
+import com.atlassian.cache.CacheManager;
+import com.atlassian.cache.CacheSettingsBuilder;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.RecentRequestsCache;
+import com.example.wmpr.cache.RecentRequestsCacheKey;
+import com.example.wmpr.service.ProjectJqlConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional "compute on one node, share the result" mode: every result searched here is copied to the other nodes
+ * through a replicated cache, and a miss here first looks for a result another node has computed. Start Jira with
+ * {@code -Dwmpr.cluster.shareResults=true} on every node to turn it on.
+ *
+ * Issue events reach each node's cache as invalidation messages, but a shared copy can't tell which of them
+ * touched it. A copy is therefore only used when it was computed after the last invalidation of any kind this
+ * node has seen, with a margin for clock skew between nodes. Sharing pays off for bursts of readers on several
+ * nodes between changes; busy instances mostly fall back to searching locally.
+ */
+@Named
+public class SharedResultStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedResultStore.class);
+
+    static final String ENABLED_PROPERTY = "wmpr.cluster.shareResults";
+    static final String CACHE_NAME = SharedResultStore.class.getName() + ".results";
+    static final long TTL_MILLIS = 60_000L;
+    static final int MAX_ENTRIES = 1000;
+    static final long CLOCK_SKEW_MILLIS = 1000L;
+
+    private final RecentRequestsCache recentRequestsCache;
+
+    // Encoded by SharedResult; null when sharing is off
+    private final Cache<String, byte[]> results;
+
+    private final AtomicLong shared = new AtomicLong();
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Inject
+    public SharedResultStore(@JiraImport CacheManager cacheManager, RecentRequestsCache recentRequestsCache) {
+        this.recentRequestsCache = recentRequestsCache;
+        this.results = Boolean.getBoolean(ENABLED_PROPERTY)
+                ? cacheManager.getCache(CACHE_NAME, null, new CacheSettingsBuilder()
+                .remote()
+                .replicateViaCopy()
+                .expireAfterWrite(TTL_MILLIS, TimeUnit.MILLISECONDS)
+                .maxEntries(MAX_ENTRIES)
+                .build()) : null;
+    }
+
+    /**
+     * A result for the key computed on any node and still current, or null.
+     */
+    public CachedRecentRequests get(RecentRequestsCacheKey key, ProjectJqlConfig config) {
+        if (results == null) {
+            return null;
+        }
+        try {
+            byte[] encoded = results.get(id(key));
+            SharedResult result = encoded != null ? SharedResult.decode(encoded) : null;
+            if (result == null) {
+                return null;
+            }
+            if (result.getCreatedAt() - CLOCK_SKEW_MILLIS <= recentRequestsCache.getLastInvalidatedAt()) {
+                rejected.incrementAndGet();
+                return null;
+            }
+            CachedRecentRequests cached = result.toCached(config);
+            if (cached != null) {
+                used.incrementAndGet();
+            }
+            return cached;
+        } catch (RuntimeException e) {
+            // Sharing is an optimisation; a failing cache must not fail the lookup
+            log.warn("Could not read shared result: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Offers a result searched on this node to the other nodes.
+     */
+    public void put(RecentRequestsCacheKey key, CachedRecentRequests cached) {
+        if (results == null) {
+            return;
+        }
+        try {
+            results.put(id(key), SharedResult.encode(cached));
+            shared.incrementAndGet();
+        } catch (RuntimeException e) {
+            log.warn("Could not share result: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", results != null);
+        stats.put("shared", shared.get());
+        stats.put("used", used.get());
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+
+    // Fingerprints are derived from project and security level ids or the user key, so they match on every node
+    private static String id(RecentRequestsCacheKey key) {
+        return key.getJql() + '\n' + key.getPermissionFingerprint() + '\n' + key.getPage();
+    }
+}
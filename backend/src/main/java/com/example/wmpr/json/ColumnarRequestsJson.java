@@ -0,0 +1,95 @@
+package com.example.wmpr.json;
+
+import com.example.wmpr.model.ServiceDeskRequest;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact encoding of request rows: field names once, each row as an array of values, and the low-cardinality
+ * fields (reporter, status, status category) as indexes into one shared string dictionary.
+ * <pre>
+ * {"columns":["key","summary","reporter",...],
+ *  "dictionaryColumns":["reporter","status","statusCategory"],
+ *  "dictionary":["Alice","Open","new"],
+ *  "rows":[["WMPR-2","Printer is down",0,"2024-05-02T09:30:00.000+0000",1,2], ...]}
+ * </pre>
+ * Fields missing from a row are written as null.
+ */
+public final class ColumnarRequestsJson {
+
+    public static final List<String> DICTIONARY_COLUMNS = Collections.unmodifiableList(Arrays.asList(
+            "reporter", "status", "statusCategory"));
+
+    private ColumnarRequestsJson() {
+    }
+
+    public static void writeRows(Utf8JsonWriter writer, List<ServiceDeskRequest> requests, Collection<String> columns) {
+        boolean[] coded = new boolean[columns.size()];
+        String[] names = columns.toArray(new String[0]);
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        for (int c = 0; c < names.length; c++) {
+            coded[c] = DICTIONARY_COLUMNS.contains(names[c]);
+            if (coded[c]) {
+                for (ServiceDeskRequest request : requests) {
+                    String value = value(request, names[c]);
+                    if (value != null) {
+                        dictionary.putIfAbsent(value, dictionary.size());
+                    }
+                }
+            }
+        }
+
+        writer.beginObject();
+        writer.name("columns").beginArray();
+        for (String name : names) {
+            writer.value(name);
+        }
+        writer.endArray();
+        writer.name("dictionaryColumns").beginArray();
+        for (int c = 0; c < names.length; c++) {
+            if (coded[c]) {
+                writer.value(names[c]);
+            }
+        }
+        writer.endArray();
+        writer.name("dictionary").beginArray();
+        for (String value : dictionary.keySet()) {
+            writer.value(value);
+        }
+        writer.endArray();
+        writer.name("rows").beginArray();
+        for (ServiceDeskRequest request : requests) {
+            writer.beginArray();
+            for (int c = 0; c < names.length; c++) {
+                String value = value(request, names[c]);
+                if (value == null) {
+                    writer.nullValue();
+                } else if (coded[c]) {
+                    writer.value(dictionary.get(value).intValue());
+                } else {
+                    writer.value(value);
+                }
+            }
+            writer.endArray();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private static String value(ServiceDeskRequest request, String column) {
+        switch (column) {
+            case "key": return request.getKey();
+            case "summary": return request.getSummary();
+            case "reporter": return request.getReporter();
+            case "created": return request.getCreated();
+            case "status": return request.getStatus();
+            case "statusCategory": return request.getStatusCategory();
+            default: return null;
+        }
+    }
+}
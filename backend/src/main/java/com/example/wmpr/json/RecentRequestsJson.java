@@ -0,0 +1,45 @@
+package com.example.wmpr.json;
+
+import com.example.wmpr.model.ServiceDeskRequest;
+
+import java.util.List;
+
+/**
+ * JSON encoding of request rows, field for field what Gson produces for {@link ServiceDeskRequest}.
+ */
+public final class RecentRequestsJson {
+
+    private RecentRequestsJson() {
+    }
+
+    public static void writeRows(Utf8JsonWriter writer, List<ServiceDeskRequest> requests) {
+        writer.beginArray();
+        for (ServiceDeskRequest request : requests) {
+            writer.beginObject();
+            writeField(writer, "key", request.getKey());
+            writeField(writer, "summary", request.getSummary());
+            writeField(writer, "reporter", request.getReporter());
+            writeField(writer, "created", request.getCreated());
+            writeField(writer, "status", request.getStatus());
+            writeField(writer, "statusCategory", request.getStatusCategory());
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+
+    /**
+     * Encodes the rows as a standalone JSON array, for caching alongside the rows.
+     */
+    public static byte[] encodeRows(List<ServiceDeskRequest> requests) {
+        Utf8JsonWriter writer = new Utf8JsonWriter();
+        writeRows(writer, requests);
+        return writer.toByteArray();
+    }
+
+    private static void writeField(Utf8JsonWriter writer, String name, String value) {
+        // Gson leaves out null fields, which is also how fields= projections drop unrequested fields
+        if (value != null) {
+            writer.name(name).value(value);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.wmpr.json;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Minimal JSON writer that encodes straight into a growable UTF-8 byte buffer, so a response is built
+ * without an intermediate String and its length is known up front.
+ *
+ * Output matches Gson's defaults: null members of beans are left out by the callers, and the characters
+ * Gson escapes for HTML safety are escaped the same way. Instances are not thread-safe; use {@link #local()}
+ * on request threads to reuse one buffer per thread.
+ */
+public final class Utf8JsonWriter {
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    // Buffers that grew beyond this for an unusually large response aren't kept around for the thread
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+    private static final int MAX_DEPTH = 32;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<Utf8JsonWriter> LOCAL = ThreadLocal.withInitial(Utf8JsonWriter::new);
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int length;
+
+    // Per nesting level: whether a value has been written, to know when a comma is due
+    private final boolean[] hasElement = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    /**
+     * Returns this thread's writer, emptied and ready for a new document.
+     */
+    public static Utf8JsonWriter local() {
+        Utf8JsonWriter writer = LOCAL.get();
+        if (writer.buffer.length > MAX_RETAINED_CAPACITY) {
+            writer = new Utf8JsonWriter();
+            LOCAL.set(writer);
+        }
+        writer.reset();
+        return writer;
+    }
+
+    public Utf8JsonWriter reset() {
+        length = 0;
+        depth = 0;
+        afterName = false;
+        hasElement[0] = false;
+        return this;
+    }
+
+    public Utf8JsonWriter beginObject() {
+        beforeValue();
+        write((byte) '{');
+        push();
+        return this;
+    }
+
+    public Utf8JsonWriter endObject() {
+        depth--;
+        write((byte) '}');
+        return this;
+    }
+
+    public Utf8JsonWriter beginArray() {
+        beforeValue();
+        write((byte) '[');
+        push();
+        return this;
+    }
+
+    public Utf8JsonWriter endArray() {
+        depth--;
+        write((byte) ']');
+        return this;
+    }
+
+    public Utf8JsonWriter name(String name) {
+        if (hasElement[depth]) {
+            write((byte) ',');
+        }
+        hasElement[depth] = true;
+        writeString(name);
+        write((byte) ':');
+        afterName = true;
+        return this;
+    }
+
+    public Utf8JsonWriter value(String value) {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public Utf8JsonWriter value(long value) {
+        beforeValue();
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    public Utf8JsonWriter value(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return nullValue();
+        }
+        beforeValue();
+        writeAscii(Double.toString(value));
+        return this;
+    }
+
+    public Utf8JsonWriter value(boolean value) {
+        beforeValue();
+        write(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public Utf8JsonWriter nullValue() {
+        beforeValue();
+        write(NULL);
+        return this;
+    }
+
+    /**
+     * Writes an already encoded JSON value, e.g. a pre-serialized cached fragment.
+     */
+    public Utf8JsonWriter rawValue(byte[] json) {
+        beforeValue();
+        write(json);
+        return this;
+    }
+
+    /**
+     * Writes strings, numbers, booleans, maps and collections of those; anything else is written as its string form.
+     */
+    public Utf8JsonWriter value(Object value) {
+        if (value == null) {
+            return nullValue();
+        } else if (value instanceof String) {
+            return value((String) value);
+        } else if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            return value(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            return value(((Number) value).longValue());
+        } else if (value instanceof Map) {
+            beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                // Gson leaves out null map values as well
+                if (entry.getValue() != null) {
+                    name(String.valueOf(entry.getKey()));
+                    value(entry.getValue());
+                }
+            }
+            return endObject();
+        } else if (value instanceof Collection) {
+            beginArray();
+            for (Object element : (Collection<?>) value) {
+                value(element);
+            }
+            return endArray();
+        }
+        return value(value.toString());
+    }
+
+    public int size() {
+        return length;
+    }
+
+    /**
+     * Copy of the encoded document, exactly as long as the content.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void push() {
+        depth++;
+        hasElement[depth] = false;
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+        } else {
+            if (hasElement[depth]) {
+                write((byte) ',');
+            }
+            hasElement[depth] = true;
+        }
+    }
+
+    private void writeString(String value) {
+        // Worst case is six bytes per char (\\u escapes); reserve once instead of checking per char
+        ensureCapacity(value.length() * 6 + 2);
+        byte[] buf = buffer;
+        int pos = length;
+        buf[pos++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    buf[pos++] = '\\';
+                    buf[pos++] = (byte) c;
+                } else if (c < 0x20 || c == '<' || c == '>' || c == '&' || c == '=' || c == '\'') {
+                    pos = writeEscapedChar(buf, pos, c);
+                } else {
+                    buf[pos++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (c == 0x2028 || c == 0x2029) {
+                // Line/paragraph separators are valid JSON but break JavaScript string literals
+                pos = writeEscapedChar(buf, pos, c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate - not encodable, same replacement String.getBytes(UTF_8) uses
+                buf[pos++] = '?';
+            } else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buf[pos++] = '"';
+        length = pos;
+    }
+
+    private static int writeEscapedChar(byte[] buf, int pos, char c) {
+        switch (c) {
+            case '\n':
+                buf[pos++] = '\\';
+                buf[pos++] = 'n';
+                return pos;
+            case '\r':
+                buf[pos++] = '\\';
+                buf[pos++] = 'r';
+                return pos;
+            case '\t':
+                buf[pos++] = '\\';
+                buf[pos++] = 't';
+                return pos;
+            case '\b':
+                buf[pos++] = '\\';
+                buf[pos++] = 'b';
+                return pos;
+            case '\f':
+                buf[pos++] = '\\';
+                buf[pos++] = 'f';
+                return pos;
+            default:
+                buf[pos++] = '\\';
+                buf[pos++] = 'u';
+                buf[pos++] = HEX[(c >> 12) & 0xF];
+                buf[pos++] = HEX[(c >> 8) & 0xF];
+                buf[pos++] = HEX[(c >> 4) & 0xF];
+                buf[pos++] = HEX[c & 0xF];
+                return pos;
+        }
+    }
+
+    private void writeAscii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[length++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void write(byte b) {
+        ensureCapacity(1);
+        buffer[length++] = b;
+    }
+
+    private void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
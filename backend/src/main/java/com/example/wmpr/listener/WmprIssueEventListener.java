@@ -0,0 +1,262 @@
+package com.example.wmpr.listener;
+
+import com.atlassian.event.api.EventListener;
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.jira.event.issue.IssueEvent;
+import com.atlassian.jira.event.type.EventType;
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.IssueManager;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.example.wmpr.aggregate.StatusAggregates;
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.PermissionFingerprintService;
+import com.example.wmpr.cache.QueryScope;
+import com.example.wmpr.cache.RecentRequestsCache;
+import com.example.wmpr.cluster.ClusterInvalidations;
+import com.example.wmpr.model.ServiceDeskRequest;
+import com.example.wmpr.service.ServiceDeskRequestMapper;
+import com.example.wmpr.typeahead.TypeaheadIndex;
+import org.ofbiz.core.entity.GenericEntityException;
+import org.ofbiz.core.entity.GenericValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps the recent requests cache coherent with issue changes so results don't have to expire to be fresh, and
+ * passes every change on to the {@link StatusAggregates} counts and the {@link TypeaheadIndex}.
+ *
+ * - created: evicts entries whose query can include the issue's project
+ * - deleted: evicts only entries that actually show the issue
+ * - updated/transitioned: evicts entries whose query filters or sorts on a changed field,
+ *   patches the row in place for entries that show the issue, and leaves everything else alone
+ * - a change to who may see the issue (security level, project, reporter, ...) evicts every entry showing it,
+ *   stale fallbacks included, whatever the query, and the per-user entries of its project, where it may now
+ *   belong; a security level or project change evicts the project's shared entries too
+ *
+ * Jira only fires issue events on the node where the change was made, so every event is also sent to the other
+ * nodes ({@code issue:<change>:<issue id or key>[:<changed fields>]}), which load the issue and apply the same
+ * rules to their own cache.
+ */
+@Named
+public class WmprIssueEventListener implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(WmprIssueEventListener.class);
+
+    static final String TYPE = "issue";
+    private static final String CREATED = "created";
+    private static final String UPDATED = "updated";
+    private static final String DELETED = "deleted";
+    private static final String MOVED = "moved";
+
+    // Fields Browse Projects grants and Service Desk customer access can depend on, as normalised change log names
+    private static final Set<String> ACCESS_FIELDS = new HashSet<>(Arrays.asList(
+            "security", "project", "reporter", "assignee", "organizations", "requestparticipants"));
+
+    // Of those, the ones shared results depend on too; the others only matter for per-issue grants
+    private static final Set<String> SHARED_ACCESS_FIELDS = new HashSet<>(Arrays.asList("security", "project"));
+
+    @JiraImport
+    private final EventPublisher eventPublisher;
+
+    @JiraImport
+    private final IssueManager issueManager;
+
+    private final RecentRequestsCache recentRequestsCache;
+
+    private final ServiceDeskRequestMapper requestMapper;
+
+    private final ClusterInvalidations clusterInvalidations;
+
+    private final StatusAggregates statusAggregates;
+
+    private final TypeaheadIndex typeaheadIndex;
+
+    @Inject
+    public WmprIssueEventListener(EventPublisher eventPublisher,
+                                  IssueManager issueManager,
+                                  RecentRequestsCache recentRequestsCache,
+                                  ServiceDeskRequestMapper requestMapper,
+                                  ClusterInvalidations clusterInvalidations,
+                                  StatusAggregates statusAggregates,
+                                  TypeaheadIndex typeaheadIndex) {
+        this.eventPublisher = eventPublisher;
+        this.issueManager = issueManager;
+        this.recentRequestsCache = recentRequestsCache;
+        this.requestMapper = requestMapper;
+        this.clusterInvalidations = clusterInvalidations;
+        this.statusAggregates = statusAggregates;
+        this.typeaheadIndex = typeaheadIndex;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        clusterInvalidations.register(TYPE, this::onRemoteIssueChange);
+        eventPublisher.register(this);
+    }
+
+    @Override
+    public void destroy() {
+        eventPublisher.unregister(this);
+    }
+
+    @EventListener
+    public void onIssueEvent(IssueEvent issueEvent) {
+        Issue issue = issueEvent.getIssue();
+        if (issue == null) {
+            return;
+        }
+
+        try {
+            Long eventTypeId = issueEvent.getEventTypeId();
+            if (EventType.ISSUE_CREATED_ID.equals(eventTypeId)) {
+                onIssueCreated(issue);
+                broadcast(CREATED + ":" + issue.getId());
+            } else if (EventType.ISSUE_DELETED_ID.equals(eventTypeId)) {
+                onIssueDeleted(issue.getKey());
+                broadcast(DELETED + ":" + issue.getKey());
+            } else if (EventType.ISSUE_MOVED_ID.equals(eventTypeId)) {
+                // Key and project both change - not worth being clever about
+                recentRequestsCache.invalidateAll();
+                statusAggregates.invalidateAll();
+                typeaheadIndex.invalidateAll();
+                broadcast(MOVED + ":" + issue.getId());
+            } else {
+                Set<String> changedFields = changedFields(issueEvent);
+                onIssueUpdated(issue, changedFields);
+                // Without the fields, other nodes treat every field as changed
+                String fieldList = fieldList(changedFields);
+                if (fieldList == null || !clusterInvalidations.broadcast(TYPE,
+                        UPDATED + ":" + issue.getId() + ":" + fieldList)) {
+                    broadcast(UPDATED + ":" + issue.getId());
+                }
+            }
+        } catch (Exception e) {
+            // Never break issue operations because of the cache - just drop everything
+            log.warn("Error handling issue event for {}, dropping cached results", issue.getKey(), e);
+            recentRequestsCache.invalidateAll();
+            statusAggregates.invalidateAll();
+            typeaheadIndex.invalidateAll();
+            broadcast(MOVED + ":" + issue.getId());
+        }
+    }
+
+    /**
+     * Applies an issue change made on another node.
+     */
+    private void onRemoteIssueChange(String payload) {
+        String[] parts = payload.split(":", 3);
+        String change = parts[0];
+        if (DELETED.equals(change)) {
+            onIssueDeleted(parts[1]);
+            return;
+        }
+        Issue issue = MOVED.equals(change) ? null : issueManager.getIssueObject(Long.valueOf(parts[1]));
+        if (issue == null) {
+            // Moved, or gone again before we got to it
+            recentRequestsCache.invalidateAll();
+            statusAggregates.invalidateAll();
+            typeaheadIndex.invalidateAll();
+        } else if (CREATED.equals(change)) {
+            onIssueCreated(issue);
+        } else {
+            onIssueUpdated(issue, parts.length > 2 ? new HashSet<>(Arrays.asList(parts[2].split(","))) : null);
+        }
+    }
+
+    private static String fieldList(Set<String> fields) {
+        if (fields == null) {
+            return null;
+        }
+        for (String field : fields) {
+            if (field.indexOf(',') >= 0) {
+                return null;
+            }
+        }
+        return String.join(",", fields);
+    }
+
+    private void broadcast(String payload) {
+        clusterInvalidations.broadcast(TYPE, payload);
+    }
+
+    private void onIssueCreated(Issue issue) {
+        recentRequestsCache.updateEntries((key, cached) ->
+                cached.getScope().mayContain(issue.getProjectObject()) ? null : cached);
+        statusAggregates.issueChanged(issue, null);
+        typeaheadIndex.issueChanged(issue, null);
+    }
+
+    private void onIssueDeleted(String issueKey) {
+        recentRequestsCache.evictIssue(issueKey);
+        statusAggregates.issueDeleted(issueKey);
+        typeaheadIndex.issueDeleted(issueKey);
+    }
+
+    private void onIssueUpdated(Issue issue, Set<String> changedFields) {
+        String issueKey = issue.getKey();
+        boolean accessChanged = changedFields == null || changedFields.stream().anyMatch(ACCESS_FIELDS::contains);
+        boolean sharedAccessChanged = changedFields == null
+                || changedFields.stream().anyMatch(SHARED_ACCESS_FIELDS::contains);
+        if (accessChanged) {
+            // Users who just lost access must not be served the patched row, nor the old one as a fallback
+            recentRequestsCache.evictIssue(issueKey);
+        }
+        // Mapped before the cache lock is taken, so lookups for the row don't hold up every reader
+        ServiceDeskRequest patchedRow = accessChanged ? null : requestMapper.map(issue);
+
+        recentRequestsCache.updateEntries((key, cached) -> {
+            QueryScope scope = cached.getScope();
+            if (!scope.mayContain(issue.getProjectObject())) {
+                return cached;
+            }
+            if (changedFields == null || scope.dependsOnAny(changedFields)) {
+                // Membership or order may have changed - only a new search can tell
+                return null;
+            }
+            if (accessChanged) {
+                // Users who just got access don't have the issue yet; nothing to patch, it is only ever evicted
+                boolean gainable = sharedAccessChanged
+                        || PermissionFingerprintService.isPerUser(key.getPermissionFingerprint());
+                return gainable || cached.containsKey(issueKey) ? null : cached;
+            }
+            if (!cached.containsKey(issueKey)) {
+                return cached;
+            }
+            return cached.withReplacedRow(patchedRow);
+        });
+        statusAggregates.issueChanged(issue, changedFields);
+        typeaheadIndex.issueChanged(issue, changedFields);
+    }
+
+    /**
+     * Returns the normalised names of the fields changed by the event, or null if they can't be determined.
+     */
+    private Set<String> changedFields(IssueEvent issueEvent) {
+        Set<String> fields = new HashSet<>();
+        // Every edit bumps the updated date, even when there is no change log
+        fields.add("updated");
+        if (EventType.ISSUE_COMMENTED_ID.equals(issueEvent.getEventTypeId())) {
+            fields.add("comment");
+        }
+
+        GenericValue changeLog = issueEvent.getChangeLog();
+        if (changeLog != null) {
+            try {
+                for (GenericValue changeItem : changeLog.getRelated("ChildChangeItem")) {
+                    fields.add(QueryScope.normalizeField(changeItem.getString("field")));
+                }
+            } catch (GenericEntityException e) {
+                return null;
+            }
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.wmpr.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values in power-of-two buckets. Recording is a couple of adds, so it can
+ * sit on the request path; percentiles are approximate (upper bound of the bucket), which is plenty for
+ * telling a 2ms search from a 200ms one.
+ */
+public final class Histogram {
+
+    // Bucket i counts values below 2^i; the last one also takes everything larger
+    private static final int BUCKETS = 40;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        long v = Math.max(0L, value);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(v));
+        buckets[bucket].increment();
+        count.increment();
+        sum.add(v);
+        long current;
+        while (v > (current = max.get()) && !max.compareAndSet(current, v)) {
+            // retry
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Approximate value at the given quantile (0..1) - the upper bound of the bucket it falls in, capped at the max.
+     */
+    public long quantile(double quantile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+                return Math.min(i == 0 ? 0L : (1L << i) - 1, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Count, mean, p50/p95/p99 and max, each divided by {@code unit} (e.g. 1000 to report microseconds as millis).
+     */
+    public Map<String, Object> snapshot(double unit) {
+        long total = count.sum();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", total);
+        snapshot.put("mean", total == 0 ? 0.0 : sum.sum() / unit / total);
+        snapshot.put("p50", quantile(0.50) / unit);
+        snapshot.put("p95", quantile(0.95) / unit);
+        snapshot.put("p99", quantile(0.99) / unit);
+        snapshot.put("max", max.get() / unit);
+        return snapshot;
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        sum.reset();
+        max.set(0L);
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.wmpr.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.inject.Named;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process metrics for the recent requests endpoints: latency per stage, counters for notable paths and
+ * result sizes. Exposed over JMX and the /metrics REST resource.
+ *
+ * Callers time a stage with {@code long start = metrics.start(); ...; metrics.record(Stage.SEARCH, start);}.
+ * When disabled (system property {@code wmpr.metrics.enabled=false}, or the JMX attribute) that is one volatile
+ * read per call and nothing else.
+ */
+@Named
+public class WmprMetrics implements WmprMetricsMXBean, InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(WmprMetrics.class);
+
+    static final String OBJECT_NAME = "com.example.wmpr:type=Metrics";
+
+    public enum Stage {
+        AUTH, SETTINGS, PARSE, SEARCH, MAP, SERIALIZE, TOTAL, TYPEAHEAD
+    }
+
+    public static final String REQUESTS = "requests";
+    public static final String CACHE_HITS = "cacheHits";
+    public static final String CACHE_MISSES = "cacheMisses";
+    public static final String COALESCED = "coalesced";
+    public static final String NOT_MODIFIED = "notModified";
+    public static final String FALLBACK_JQL = "fallbackJql";
+    public static final String INVALID_JQL = "invalidJql";
+    public static final String BAD_REQUESTS = "badRequests";
+    public static final String UNAUTHORIZED = "unauthorized";
+    public static final String ERRORS = "errors";
+    public static final String STALE = "stale";
+    public static final String SEARCH_UNAVAILABLE = "searchUnavailable";
+    public static final String THROTTLED = "throttled";
+    public static final String PRERENDERED = "prerendered";
+    public static final String DELTAS = "deltas";
+    public static final String BATCH_REQUESTS = "batchRequests";
+    public static final String BATCH_FAILURES = "batchFailures";
+    public static final String AGGREGATE_REQUESTS = "aggregateRequests";
+    public static final String TYPEAHEAD_REQUESTS = "typeaheadRequests";
+    public static final String STREAM_REQUESTS = "streamRequests";
+    public static final String STREAM_WAITS = "streamWaits";
+    public static final String STREAM_POLL_FALLBACKS = "streamPollFallbacks";
+
+    private volatile boolean enabled = Boolean.parseBoolean(System.getProperty("wmpr.metrics.enabled", "true"));
+
+    private final Map<Stage, Histogram> stages = new EnumMap<>(Stage.class);
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Histogram resultRows = new Histogram();
+    private final Histogram responseBytes = new Histogram();
+
+    public WmprMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new Histogram());
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // A previous instance is still registered when the plugin is reloaded without a clean shutdown
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            log.warn("Could not register metrics MBean {}: {}", OBJECT_NAME, e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            log.warn("Could not unregister metrics MBean {}: {}", OBJECT_NAME, e.getMessage());
+        }
+    }
+
+    /**
+     * Start time for {@link #record}, or 0 when metrics are disabled.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public void record(Stage stage, long start) {
+        if (start != 0L && enabled) {
+            stages.get(stage).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        }
+    }
+
+    public void increment(String counter) {
+        if (enabled) {
+            counters.computeIfAbsent(counter, name -> new LongAdder()).increment();
+        }
+    }
+
+    public void recordResult(int rows, int bytes) {
+        if (enabled) {
+            resultRows.record(rows);
+            responseBytes.record(bytes);
+        }
+    }
+
+    /**
+     * Everything recorded so far: latency per stage in milliseconds, counters and result sizes.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> latency = new LinkedHashMap<>();
+        for (Map.Entry<Stage, Histogram> entry : stages.entrySet()) {
+            latency.put(entry.getKey().name().toLowerCase(Locale.ROOT), entry.getValue().snapshot(1000.0));
+        }
+        Map<String, Object> sizes = new LinkedHashMap<>();
+        sizes.put("rows", resultRows.snapshot(1.0));
+        sizes.put("bytes", responseBytes.snapshot(1.0));
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("latencyMillis", latency);
+        snapshot.put("counters", getCounters());
+        snapshot.put("resultSizes", sizes);
+        return snapshot;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        log.info("WMPR metrics {}", enabled ? "enabled" : "disabled");
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().sum());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMillis() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Map.Entry<Stage, Histogram> entry : stages.entrySet()) {
+            values.put(entry.getKey().name().toLowerCase(Locale.ROOT), (Double) entry.getValue().snapshot(1000.0).get("mean"));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getP99LatencyMillis() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Map.Entry<Stage, Histogram> entry : stages.entrySet()) {
+            values.put(entry.getKey().name().toLowerCase(Locale.ROOT), entry.getValue().quantile(0.99) / 1000.0);
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getStageCounts() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<Stage, Histogram> entry : stages.entrySet()) {
+            values.put(entry.getKey().name().toLowerCase(Locale.ROOT), entry.getValue().getCount());
+        }
+        return values;
+    }
+
+    @Override
+    public void reset() {
+        for (Histogram histogram : stages.values()) {
+            histogram.reset();
+        }
+        counters.clear();
+        resultRows.reset();
+        responseBytes.reset();
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.wmpr.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the plugin metrics, registered as {@code com.example.wmpr:type=Metrics}.
+ * The /rest/wmpr-requests/1.0/metrics endpoint serves the same data with full histograms.
+ */
+public interface WmprMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    Map<String, Long> getCounters();
+
+    Map<String, Double> getMeanLatencyMillis();
+
+    Map<String, Double> getP99LatencyMillis();
+
+    Map<String, Long> getStageCounts();
+
+    void reset();
+}
@@ -0,0 +1,32 @@
+package com.example.wmpr.ratelimit;
+
+/**
+ * Whether a call may proceed and, if not, which limit it hit and when to come back.
+ */
+public final class RateLimitDecision {
+
+    static final RateLimitDecision ALLOWED = new RateLimitDecision(null, 0L);
+
+    private final String limit;
+    private final long retryAfterSeconds;
+
+    RateLimitDecision(String limit, long retryAfterSeconds) {
+        this.limit = limit;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public boolean isAllowed() {
+        return limit == null;
+    }
+
+    /**
+     * "user" or "ip" for a throttled call, null when allowed.
+     */
+    public String getLimit() {
+        return limit;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
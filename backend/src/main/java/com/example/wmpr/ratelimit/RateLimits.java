@@ -0,0 +1,47 @@
+package com.example.wmpr.ratelimit;
+
+/**
+ * Request rates allowed per user and per client address for one project. A rate of 0 means unlimited.
+ */
+public final class RateLimits {
+
+    public static final int DEFAULT_USER_PER_MINUTE = 60;
+    public static final int DEFAULT_IP_PER_MINUTE = 300;
+
+    private static final int MIN_BURST = 5;
+
+    private final int userPerMinute;
+    private final int ipPerMinute;
+
+    RateLimits(int userPerMinute, int ipPerMinute) {
+        this.userPerMinute = userPerMinute;
+        this.ipPerMinute = ipPerMinute;
+    }
+
+    public int getUserPerMinute() {
+        return userPerMinute;
+    }
+
+    public int getIpPerMinute() {
+        return ipPerMinute;
+    }
+
+    static long intervalNanos(int perMinute) {
+        return 60_000_000_000L / perMinute;
+    }
+
+    /**
+     * Calls allowed back to back, e.g. a page opening several tabs, before the steady rate applies.
+     */
+    static int burst(int perMinute) {
+        return Math.max(MIN_BURST, perMinute / 3);
+    }
+
+    /**
+     * Limits with the given rates; null takes the default.
+     */
+    public static RateLimits of(Integer userPerMinute, Integer ipPerMinute) {
+        return new RateLimits(userPerMinute != null ? userPerMinute : DEFAULT_USER_PER_MINUTE,
+                ipPerMinute != null ? ipPerMinute : DEFAULT_IP_PER_MINUTE);
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.wmpr.ratelimit;
+
+import com.atlassian.jira.user.ApplicationUser;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.settings.ProjectSettingsStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-user and per-client-address throttling of the REST resources, so one noisy script or forgotten tab
+ * can't take a large share of search capacity. Each (project, user) and (project, address) pair has its own
+ * {@link TokenBucket}; limits come from the project's {@link com.example.wmpr.settings.ProjectSettings}, which the
+ * store keeps in memory.
+ *
+ * Buckets are independent and lock-free, so throttling adds no shared contention point. Full buckets are
+ * dropped once the map grows past {@link #SWEEP_THRESHOLD}. Disabled with {@code -Dwmpr.rateLimit.enabled=false}.
+ *
+ * Behind a load balancer every call comes from the balancer's address and all users would share one address
+ * bucket, so addresses are only limited once the proxies are listed in {@code -Dwmpr.rateLimit.trustedProxies};
+ * calls are then counted against the client address those proxies forward.
+ */
+@Named
+public class RequestRateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestRateLimiter.class);
+
+    static final int SWEEP_THRESHOLD = 10_000;
+
+    private static final String NO_PROJECT = "";
+
+    static final String FORWARDED_FOR = "X-Forwarded-For";
+
+    // Load balancers and reverse proxies whose X-Forwarded-For is believed, as comma separated addresses
+    static final Set<String> TRUSTED_PROXIES = addresses(System.getProperty("wmpr.rateLimit.trustedProxies", ""));
+
+    private final ProjectSettingsStore settingsStore;
+
+    private final WmprMetrics metrics;
+
+    private final boolean enabled = Boolean.parseBoolean(System.getProperty("wmpr.rateLimit.enabled", "true"));
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder throttledUser = new LongAdder();
+    private final LongAdder throttledIp = new LongAdder();
+
+    @Inject
+    public RequestRateLimiter(ProjectSettingsStore settingsStore, WmprMetrics metrics) {
+        this.settingsStore = settingsStore;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Takes {@code permits} from the caller's user and address buckets for the project. A null address
+     * (no servlet request available) is only limited per user.
+     */
+    public RateLimitDecision acquire(ApplicationUser user, String clientAddress, String projectKey, int permits) {
+        return acquireAll(user, clientAddress, Collections.singleton(projectKey), permits);
+    }
+
+    /**
+     * Takes {@code permits} from the caller's buckets of every project, or from none of them: when one bucket is
+     * empty, whatever was already taken from the others is given back.
+     */
+    public RateLimitDecision acquireAll(ApplicationUser user, String clientAddress, Collection<String> projectKeys,
+                                        int permits) {
+        if (!enabled) {
+            return RateLimitDecision.ALLOWED;
+        }
+        long now = System.nanoTime();
+        List<Taken> taken = new ArrayList<>();
+        for (String projectKey : projectKeys) {
+            String project = projectKey == null ? NO_PROJECT : projectKey.trim();
+            RateLimits projectLimits = settingsStore.get(project).getRateLimits();
+
+            long wait = take(taken, "u:" + project + ":" + user.getKey(), projectLimits.getUserPerMinute(),
+                    permits, now);
+            if (wait > 0) {
+                release(taken, permits);
+                throttledUser.increment();
+                return throttled("user", wait);
+            }
+            if (clientAddress != null) {
+                wait = take(taken, "a:" + project + ":" + clientAddress, projectLimits.getIpPerMinute(), permits,
+                        now);
+                if (wait > 0) {
+                    release(taken, permits);
+                    throttledIp.increment();
+                    return throttled("ip", wait);
+                }
+            }
+        }
+        allowed.increment();
+        return RateLimitDecision.ALLOWED;
+    }
+
+    /**
+     * The address the call came from, looking past trusted proxies, or null - not limited by address - without a
+     * servlet request or when no trusted proxies are configured.
+     */
+    public static String clientAddress(HttpServletRequest request) {
+        if (request == null) {
+            return null;
+        }
+        return clientAddress(request.getRemoteAddr(), request.getHeader(FORWARDED_FOR), TRUSTED_PROXIES);
+    }
+
+    static String clientAddress(String remoteAddress, String forwardedFor, Set<String> trustedProxies) {
+        if (trustedProxies.isEmpty()) {
+            // Can't tell a load balancer from a client
+            return null;
+        }
+        if (forwardedFor == null || !trustedProxies.contains(remoteAddress)) {
+            return remoteAddress;
+        }
+        // Each proxy appends the address it got the call from, so walk back from the nearest hop until one
+        // isn't ours; anything further left was written by the client and could be made up
+        String address = remoteAddress;
+        String[] hops = forwardedFor.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (hop.isEmpty()) {
+                continue;
+            }
+            address = hop;
+            if (!trustedProxies.contains(hop)) {
+                break;
+            }
+        }
+        return address;
+    }
+
+    public RateLimits getLimits(String projectKey) {
+        return settingsStore.get(projectKey).getRateLimits();
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("addressLimited", !TRUSTED_PROXIES.isEmpty());
+        stats.put("buckets", buckets.size());
+        stats.put("allowed", allowed.sum());
+        stats.put("throttledUser", throttledUser.sum());
+        stats.put("throttledIp", throttledIp.sum());
+        return stats;
+    }
+
+    private long take(List<Taken> taken, String bucketKey, int perMinute, int permits, long now) {
+        if (perMinute <= 0) {
+            return 0L;
+        }
+        TokenBucket bucket = buckets.get(bucketKey);
+        if (bucket == null) {
+            if (buckets.size() >= SWEEP_THRESHOLD) {
+                sweep(now);
+            }
+            bucket = buckets.computeIfAbsent(bucketKey, key -> new TokenBucket(now));
+        }
+        long intervalNanos = RateLimits.intervalNanos(perMinute);
+        long wait = bucket.tryAcquire(permits, intervalNanos, RateLimits.burst(perMinute), now);
+        if (wait == 0L) {
+            taken.add(new Taken(bucket, intervalNanos));
+        }
+        return wait;
+    }
+
+    private static void release(List<Taken> taken, int permits) {
+        for (Taken each : taken) {
+            each.bucket.release(permits, each.intervalNanos);
+        }
+    }
+
+    static Set<String> addresses(String list) {
+        Set<String> addresses = new HashSet<>();
+        for (String address : list.split(",")) {
+            if (!address.trim().isEmpty()) {
+                addresses.add(address.trim());
+            }
+        }
+        return Collections.unmodifiableSet(addresses);
+    }
+
+    private RateLimitDecision throttled(String limit, long waitNanos) {
+        metrics.increment(WmprMetrics.THROTTLED);
+        return new RateLimitDecision(limit, Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1));
+    }
+
+    /**
+     * Removes buckets that have refilled completely - forgetting them changes nothing. One thread sweeps at a time.
+     */
+    private void sweep(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Iterator<TokenBucket> it = buckets.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().isFull(now)) {
+                    it.remove();
+                }
+            }
+            log.debug("Swept rate limit buckets, {} left", buckets.size());
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private static final class Taken {
+        final TokenBucket bucket;
+        final long intervalNanos;
+
+        Taken(TokenBucket bucket, long intervalNanos) {
+            this.bucket = bucket;
+            this.intervalNanos = intervalNanos;
+        }
+    }
+}
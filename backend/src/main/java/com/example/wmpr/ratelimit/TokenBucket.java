@@ -0,0 +1,49 @@
+package com.example.wmpr.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, kept as a single "theoretical arrival time" (the GCRA formulation): a bucket that
+ * refills one token every {@code intervalNanos} and holds {@code burst} tokens admits a call as long as the
+ * arrival time it pushes forward stays within {@code burst * intervalNanos} of now. One CAS per call, no timer.
+ */
+final class TokenBucket {
+
+    private final AtomicLong theoreticalArrival;
+
+    TokenBucket(long now) {
+        this.theoreticalArrival = new AtomicLong(now);
+    }
+
+    /**
+     * Takes the permits if the bucket holds them and returns 0, otherwise takes nothing and returns the
+     * nanoseconds until they would be available.
+     */
+    long tryAcquire(int permits, long intervalNanos, int burst, long now) {
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            long next = Math.max(arrival, now) + intervalNanos * permits;
+            long excess = next - now - intervalNanos * burst;
+            if (excess > 0) {
+                return excess;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return 0L;
+            }
+        }
+    }
+
+    /**
+     * Gives back permits taken by {@link #tryAcquire}, for calls that were refused by another bucket after all.
+     */
+    void release(int permits, long intervalNanos) {
+        theoreticalArrival.addAndGet(-intervalNanos * permits);
+    }
+
+    /**
+     * A full bucket carries no state worth keeping.
+     */
+    boolean isFull(long now) {
+        return theoreticalArrival.get() <= now;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.wmpr.rest;
+
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.EncodedBody;
+import com.example.wmpr.cache.RecentRequestsDelta;
+import com.example.wmpr.json.ColumnarRequestsJson;
+import com.example.wmpr.json.RecentRequestsJson;
+import com.example.wmpr.json.Utf8JsonWriter;
+import com.example.wmpr.service.RequestFields;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * What the client asked for with Accept and Accept-Encoding: rows as JSON objects or in the compact columnar
+ * layout ({@value #COLUMNAR_TYPE}), and whether the body may be gzip compressed. Bodies below
+ * {@link #MIN_GZIP_BYTES} are sent uncompressed, as compressing them saves next to nothing.
+ */
+final class ResponseEncoding {
+
+    static final String COLUMNAR_TYPE = "application/vnd.wmpr.columnar+json";
+    static final String VARY = "Accept, Accept-Encoding";
+    static final int MIN_GZIP_BYTES = 1024;
+
+    static final ResponseEncoding JSON = new ResponseEncoding(false, false);
+
+    private final boolean columnar;
+    private final boolean gzip;
+
+    private ResponseEncoding(boolean columnar, boolean gzip) {
+        this.columnar = columnar;
+        this.gzip = gzip;
+    }
+
+    static ResponseEncoding negotiate(String accept, String acceptEncoding) {
+        boolean columnar = accept != null && accept.toLowerCase(Locale.ROOT).contains(COLUMNAR_TYPE);
+        boolean gzip = acceptsGzip(acceptEncoding);
+        return columnar || gzip ? new ResponseEncoding(columnar, gzip) : JSON;
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String candidate : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            String[] parts = candidate.split(";");
+            String coding = parts[0].trim();
+            if ("gzip".equals(coding) || "*".equals(coding)) {
+                // gzip;q=0 explicitly refuses it
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    boolean isColumnar() {
+        return columnar;
+    }
+
+    String contentType() {
+        return (columnar ? COLUMNAR_TYPE : MediaType.APPLICATION_JSON) + ";charset=UTF-8";
+    }
+
+    /**
+     * Name of this encoding of a response body, to keep it with the cached entry it was built from.
+     */
+    String variant(String body) {
+        return body + (columnar ? "/columnar" : "/json") + (gzip ? "/gzip" : "");
+    }
+
+    void writeRows(Utf8JsonWriter json, CachedRecentRequests cached, RequestFields requestFields) {
+        if (columnar) {
+            ColumnarRequestsJson.writeRows(json, cached.getRequests(), requestFields.getFields());
+        } else if (requestFields.isAll()) {
+            // Unprojected rows are already encoded in the cache
+            json.rawValue(cached.getEncodedRequests());
+        } else {
+            RecentRequestsJson.writeRows(json, requestFields.project(cached.getRequests()));
+        }
+    }
+
+    /**
+     * Writes the changed rows of a delta in the negotiated layout, then the removed keys and the new order.
+     */
+    void writeDelta(Utf8JsonWriter json, RecentRequestsDelta delta, RequestFields requestFields) {
+        json.name("since").value(delta.getSince());
+        json.name("upserts");
+        if (columnar) {
+            ColumnarRequestsJson.writeRows(json, delta.getUpserts(), requestFields.getFields());
+        } else {
+            RecentRequestsJson.writeRows(json, requestFields.project(delta.getUpserts()));
+        }
+        json.name("removed").beginArray();
+        for (String key : delta.getRemoved()) {
+            json.value(key);
+        }
+        json.endArray();
+        json.name("order").beginArray();
+        for (String key : delta.getOrder()) {
+            json.value(key);
+        }
+        json.endArray();
+    }
+
+    /**
+     * The body as it goes on the wire: compressed when the client accepts gzip and it is large enough, together
+     * with the coding that was applied.
+     */
+    EncodedBody encode(byte[] body) {
+        if (gzip && body.length >= MIN_GZIP_BYTES) {
+            return new EncodedBody(gzip(body), "gzip");
+        }
+        return new EncodedBody(body, null);
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
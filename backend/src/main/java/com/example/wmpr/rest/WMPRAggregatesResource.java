@@ -0,0 +1,189 @@
+package com.example.wmpr.rest;
+
+import com.atlassian.jira.application.ApplicationRoleManager;
+import com.atlassian.jira.permission.ProjectPermissions;
+import com.atlassian.jira.project.Project;
+import com.atlassian.jira.project.ProjectManager;
+import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.security.PermissionManager;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.example.wmpr.aggregate.StatusAggregates;
+import com.example.wmpr.aggregate.StatusCounts;
+import com.example.wmpr.cache.PermissionFingerprintService;
+import com.example.wmpr.json.Utf8JsonWriter;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.ratelimit.RateLimitDecision;
+import com.example.wmpr.ratelimit.RequestRateLimiter;
+import com.example.wmpr.service.InvalidJqlException;
+import com.example.wmpr.service.SearchUnavailableException;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Number of requests per status category and per status for a project's configured JQL, for the portal and for
+ * dashboards. Served from counts kept up to date by issue events (see {@link StatusAggregates}), so a refresh
+ * costs no search; unchanged counts are answered with 304 when the client sends the ETag it has.
+ *
+ * Counts include every matching request, whatever its security level or reporter, so they are only given for
+ * projects whose JQL is limited to the project itself, and only to users holding every security level of it who
+ * either see all of its issues anyway or are agents (may edit issues) or project administrators. Portal customers,
+ * who only see their own requests, never get them.
+ */
+@Path("/aggregates")
+public class WMPRAggregatesResource {
+
+    private static final Logger log = LoggerFactory.getLogger(WMPRAggregatesResource.class);
+
+    @JiraImport
+    private final JiraAuthenticationContext authenticationContext;
+
+    @JiraImport
+    private final ProjectManager projectManager;
+
+    @JiraImport
+    private final PermissionManager permissionManager;
+
+    @JiraImport
+    private final ApplicationRoleManager applicationRoleManager;
+
+    private final PermissionFingerprintService permissions;
+
+    private final StatusAggregates statusAggregates;
+
+    private final WmprMetrics metrics;
+
+    private final RequestRateLimiter rateLimiter;
+
+    private final Gson gson;
+
+    @Inject
+    public WMPRAggregatesResource(JiraAuthenticationContext authenticationContext,
+                                  ProjectManager projectManager,
+                                  PermissionManager permissionManager,
+                                  ApplicationRoleManager applicationRoleManager,
+                                  PermissionFingerprintService permissions,
+                                  StatusAggregates statusAggregates,
+                                  WmprMetrics metrics,
+                                  RequestRateLimiter rateLimiter) {
+        this.authenticationContext = authenticationContext;
+        this.projectManager = projectManager;
+        this.permissionManager = permissionManager;
+        this.applicationRoleManager = applicationRoleManager;
+        this.permissions = permissions;
+        this.statusAggregates = statusAggregates;
+        this.metrics = metrics;
+        this.rateLimiter = rateLimiter;
+        this.gson = new Gson();
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getStatusAggregates(@QueryParam("projectKey") String projectKey,
+                                        @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                                        @Context HttpServletRequest httpRequest) {
+        String requestId = "WMPR-AGG-" + System.currentTimeMillis();
+        metrics.increment(WmprMetrics.AGGREGATE_REQUESTS);
+
+        ApplicationUser user = authenticationContext.getLoggedInUser();
+        if (user == null) {
+            metrics.increment(WmprMetrics.UNAUTHORIZED);
+            return errorResponse("Authentication required", requestId, Response.Status.UNAUTHORIZED);
+        }
+        if (projectKey == null || projectKey.trim().isEmpty()) {
+            metrics.increment(WmprMetrics.BAD_REQUESTS);
+            return errorResponse("projectKey is required", requestId, Response.Status.BAD_REQUEST);
+        }
+        Project project = projectManager.getProjectByCurrentKey(projectKey.trim());
+        // Same answer for projects that don't exist and those the user can't see
+        if (project == null || !permissionManager.hasPermission(ProjectPermissions.BROWSE_PROJECTS, project, user)) {
+            return errorResponse("Project not found", requestId, Response.Status.NOT_FOUND);
+        }
+        if (!statusAggregates.countsOnly(project)) {
+            return errorResponse("Counts are only available for projects whose JQL is limited to the project",
+                    requestId, Response.Status.FORBIDDEN);
+        }
+        if (!mayReadCounts(user, project)) {
+            return errorResponse("Counts are only available to agents and administrators", requestId,
+                    Response.Status.FORBIDDEN);
+        }
+        RateLimitDecision decision = rateLimiter.acquire(user, WMPRRequestsRestResource.clientAddress(httpRequest),
+                projectKey, 1);
+        if (!decision.isAllowed()) {
+            log.debug("[{}] Throttled by {} limit", requestId, decision.getLimit());
+            return WMPRRequestsRestResource.createTooManyRequestsResponse(decision, requestId);
+        }
+
+        try {
+            StatusCounts counts = statusAggregates.get(project.getKey());
+            if (WMPRRequestsRestResource.etagMatches(ifNoneMatch, counts.getEtag())) {
+                metrics.increment(WmprMetrics.NOT_MODIFIED);
+                return WMPRRequestsRestResource.createNotModifiedResponse(counts.getEtag());
+            }
+            return WMPRRequestsRestResource.createOptimizedResponse(createBody(counts), Response.Status.OK,
+                    counts.getEtag());
+        } catch (InvalidJqlException e) {
+            metrics.increment(WmprMetrics.BAD_REQUESTS);
+            return errorResponse("Invalid JQL query", requestId, Response.Status.BAD_REQUEST);
+        } catch (SearchUnavailableException e) {
+            // The first count of a project is still running; it finishes in the background
+            log.warn("[{}] Counting project {} not finished: {}", requestId, projectKey, e.getMessage());
+            metrics.increment(WmprMetrics.SEARCH_UNAVAILABLE);
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            errorResponse.put("requestId", requestId);
+            return WMPRRequestsRestResource.createServiceUnavailableResponse(gson.toJson(errorResponse));
+        } catch (Exception e) {
+            log.error("[{}] Counting project {} failed", requestId, projectKey, e);
+            metrics.increment(WmprMetrics.ERRORS);
+            return errorResponse("Failed to count WMPR requests: " + e.getMessage(), requestId,
+                    Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Counts are made without permissions, so only users who could count the same requests themselves get them.
+     */
+    private boolean mayReadCounts(ApplicationUser user, Project project) {
+        if (permissions.seesEveryIssue(user, project)) {
+            return true;
+        }
+        return applicationRoleManager.hasAnyRole(user) && permissions.holdsEverySecurityLevel(user, project)
+                && (permissionManager.hasPermission(ProjectPermissions.ADMINISTER_PROJECTS, project, user)
+                || permissionManager.hasPermission(ProjectPermissions.EDIT_ISSUES, project, user));
+    }
+
+    private static byte[] createBody(StatusCounts counts) {
+        Utf8JsonWriter json = Utf8JsonWriter.local().beginObject();
+        json.name("projectKey").value(counts.getProjectKey());
+        json.name("total").value(counts.getTotal());
+        json.name("statusCategories").value(counts.getStatusCategories());
+        json.name("statuses").value(counts.getStatuses());
+        json.name("version").value(counts.getEtag());
+        json.name("updatedAt").value(counts.getUpdatedAt());
+        json.name("reconciledAt").value(counts.getReconciledAt());
+        return json.endObject().toByteArray();
+    }
+
+    private Response errorResponse(String message, String requestId, Response.Status status) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("error", message);
+        errorResponse.put("requestId", requestId);
+        return WMPRRequestsRestResource.createOptimizedResponse(gson.toJson(errorResponse), status, null);
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.wmpr.rest;
+
+import com.atlassian.jira.project.ProjectManager;
+import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.EncodedBody;
+import com.example.wmpr.json.Utf8JsonWriter;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.ratelimit.RateLimitDecision;
+import com.example.wmpr.ratelimit.RequestRateLimiter;
+import com.example.wmpr.service.BatchLookupResult;
+import com.example.wmpr.service.BatchRecentRequestsService;
+import com.example.wmpr.service.InvalidPageRequestException;
+import com.example.wmpr.service.PageRequest;
+import com.example.wmpr.service.RecentRequestsLookup;
+import com.example.wmpr.service.RequestFields;
+import com.example.wmpr.service.SearchExecutor;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Recent requests for several projects in one call, for pages that show a panel per service desk.
+ * Each project gets either its rows or an error; one slow or broken project doesn't fail the others.
+ */
+@Path("/batch")
+public class WMPRBatchRestResource {
+
+    private static final Logger log = LoggerFactory.getLogger(WMPRBatchRestResource.class);
+
+    static final long DEFAULT_TIMEOUT_MILLIS = 10_000L;
+    static final long MAX_TIMEOUT_MILLIS = 30_000L;
+
+    @JiraImport
+    private final JiraAuthenticationContext authenticationContext;
+
+    @JiraImport
+    private final ProjectManager projectManager;
+
+    private final BatchRecentRequestsService batchService;
+
+    private final SearchExecutor searchExecutor;
+
+    private final WmprMetrics metrics;
+
+    private final RequestRateLimiter rateLimiter;
+
+    private final Gson gson;
+
+    @Inject
+    public WMPRBatchRestResource(JiraAuthenticationContext authenticationContext,
+                                 ProjectManager projectManager,
+                                 BatchRecentRequestsService batchService,
+                                 SearchExecutor searchExecutor,
+                                 WmprMetrics metrics,
+                                 RequestRateLimiter rateLimiter) {
+        this.authenticationContext = authenticationContext;
+        this.projectManager = projectManager;
+        this.batchService = batchService;
+        this.searchExecutor = searchExecutor;
+        this.metrics = metrics;
+        this.rateLimiter = rateLimiter;
+        this.gson = new Gson();
+    }
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, ResponseEncoding.COLUMNAR_TYPE})
+    public Response getRecentWMPRRequestsBatch(@QueryParam("projectKeys") String projectKeys,
+                                               @QueryParam("limit") Integer limit,
+                                               @QueryParam("fields") String fields,
+                                               @QueryParam("timeout") Long timeoutMillis,
+                                               @QueryParam("diagnostics") @DefaultValue("false") boolean includeDiagnostics,
+                                               @HeaderParam(HttpHeaders.ACCEPT) String accept,
+                                               @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+                                               @Context HttpServletRequest httpRequest) {
+        long startTime = System.currentTimeMillis();
+        String requestId = "WMPR-BATCH-" + startTime;
+        metrics.increment(WmprMetrics.BATCH_REQUESTS);
+
+        ApplicationUser user = authenticationContext.getLoggedInUser();
+        if (user == null) {
+            metrics.increment(WmprMetrics.UNAUTHORIZED);
+            return errorResponse("Authentication required", requestId, Response.Status.UNAUTHORIZED);
+        }
+
+        Set<String> keys = parseProjectKeys(projectKeys);
+        if (keys.isEmpty()) {
+            metrics.increment(WmprMetrics.BAD_REQUESTS);
+            return errorResponse("projectKeys is required", requestId, Response.Status.BAD_REQUEST);
+        }
+        if (keys.size() > BatchRecentRequestsService.MAX_PROJECTS) {
+            metrics.increment(WmprMetrics.BAD_REQUESTS);
+            return errorResponse("At most " + BatchRecentRequestsService.MAX_PROJECTS + " projects per call",
+                    requestId, Response.Status.BAD_REQUEST);
+        }
+        for (String key : keys) {
+            if (WMPRRequestsRestResource.isUnknownProject(projectManager, key)) {
+                return errorResponse("Project not found: " + key, requestId, Response.Status.NOT_FOUND);
+            }
+        }
+        // Charged against each project's limits like the single project calls it replaces, and all or nothing
+        String clientAddress = WMPRRequestsRestResource.clientAddress(httpRequest);
+        RateLimitDecision decision = rateLimiter.acquireAll(user, clientAddress, keys, 1);
+        if (!decision.isAllowed()) {
+            log.debug("[{}] Throttled by {} limit", requestId, decision.getLimit());
+            return WMPRRequestsRestResource.createTooManyRequestsResponse(decision, requestId);
+        }
+        PageRequest page;
+        try {
+            page = PageRequest.of(null, limit, null, false);
+        } catch (InvalidPageRequestException e) {
+            metrics.increment(WmprMetrics.BAD_REQUESTS);
+            return errorResponse(e.getMessage(), requestId, Response.Status.BAD_REQUEST);
+        }
+        long timeout = timeoutMillis == null || timeoutMillis <= 0
+                ? DEFAULT_TIMEOUT_MILLIS : Math.min(timeoutMillis, MAX_TIMEOUT_MILLIS);
+
+        try {
+            Map<String, BatchLookupResult> results = batchService.lookupAll(user, keys, page, timeout, requestId);
+
+            RequestFields requestFields = RequestFields.parse(fields);
+            ResponseEncoding encoding = ResponseEncoding.negotiate(accept, acceptEncoding);
+            int failed = 0;
+            Utf8JsonWriter json = Utf8JsonWriter.local().beginObject();
+            json.name("projects").beginObject();
+            for (Map.Entry<String, BatchLookupResult> entry : results.entrySet()) {
+                BatchLookupResult result = entry.getValue();
+                json.name(entry.getKey()).beginObject();
+                if (result.isSuccess()) {
+                    RecentRequestsLookup lookup = result.getLookup();
+                    CachedRecentRequests cached = lookup.getResult();
+                    json.name("data");
+                    encoding.writeRows(json, cached, requestFields);
+                    json.name("page").value(WMPRRequestsRestResource.createPageInfo(cached));
+                    json.name("etag").value(cached.getEtag());
+                    json.name("cacheHit").value(lookup.isCacheHit());
+                    json.name("stale").value(lookup.isStale());
+                    json.name("sharedSearch").value(result.isSharedSearch());
+                } else {
+                    failed++;
+                    json.name("error").value(result.getErrorMessage());
+                    json.name("errorType").value(result.getErrorType());
+                }
+                json.endObject();
+            }
+            json.endObject();
+
+            if (includeDiagnostics) {
+                Map<String, Object> diagnostics = new LinkedHashMap<>();
+                diagnostics.put("requestId", requestId);
+                diagnostics.put("duration", System.currentTimeMillis() - startTime);
+                diagnostics.put("projects", results.size());
+                diagnostics.put("failed", failed);
+                diagnostics.put("timeoutMillis", timeout);
+                diagnostics.put("executor", searchExecutor.getStatistics());
+                json.name("diagnostics").value(diagnostics);
+            }
+            EncodedBody body = encoding.encode(json.endObject().toByteArray());
+
+            if (failed > 0) {
+                metrics.increment(WmprMetrics.BATCH_FAILURES);
+            }
+            log.debug("[{}] Batch of {} projects completed in {}ms, {} failed", requestId, results.size(),
+                    System.currentTimeMillis() - startTime, failed);
+            return WMPRRequestsRestResource.encodedResponse(body, Response.Status.OK.getStatusCode(), null, encoding)
+                    .build();
+        } catch (Exception e) {
+            log.error("[{}] Batch failed", requestId, e);
+            metrics.increment(WmprMetrics.ERRORS);
+            return errorResponse("Failed to fetch WMPR requests: " + e.getMessage(), requestId,
+                    Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    static Set<String> parseProjectKeys(String projectKeys) {
+        Set<String> keys = new LinkedHashSet<>();
+        if (projectKeys != null) {
+            for (String key : projectKeys.split(",")) {
+                if (!key.trim().isEmpty()) {
+                    keys.add(key.trim());
+                }
+            }
+        }
+        return keys;
+    }
+
+    private Response errorResponse(String message, String requestId, Response.Status status) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("error", message);
+        errorResponse.put("requestId", requestId);
+        return WMPRRequestsRestResource.createOptimizedResponse(gson.toJson(errorResponse), status, null);
+    }
+}
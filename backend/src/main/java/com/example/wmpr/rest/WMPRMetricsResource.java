@@ -0,0 +1,125 @@
+package com.example.wmpr.rest;
+
+import com.atlassian.jira.permission.GlobalPermissionKey;
+import com.atlassian.jira.security.GlobalPermissionManager;
+import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.example.wmpr.aggregate.StatusAggregates;
+import com.example.wmpr.cache.RecentRequestsCache;
+import com.example.wmpr.cluster.ClusterInvalidations;
+import com.example.wmpr.cluster.SharedResultStore;
+import com.example.wmpr.json.Utf8JsonWriter;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.ratelimit.RequestRateLimiter;
+import com.example.wmpr.service.RecentRequestsService;
+import com.example.wmpr.settings.ProjectSettingsStore;
+import com.example.wmpr.typeahead.TypeaheadIndex;
+import com.example.wmpr.warmup.HotContextTracker;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Administrator view of the plugin's metrics: stage latencies, counters and result sizes, together with the
+ * statistics of the result cache, the search pool, the JQL configuration cache, the project settings, the
+ * rate limiter, the background warm-up, the status counts, the long-poll waiters and the invalidations exchanged
+ * with other cluster nodes.
+ * The same metrics are published over JMX as {@code com.example.wmpr:type=Metrics}.
+ */
+@Path("/metrics")
+public class WMPRMetricsResource {
+
+    @JiraImport
+    private final JiraAuthenticationContext authenticationContext;
+
+    @JiraImport
+    private final GlobalPermissionManager globalPermissionManager;
+
+    private final WmprMetrics metrics;
+
+    private final RecentRequestsService recentRequestsService;
+
+    private final RecentRequestsCache recentRequestsCache;
+
+    private final RequestRateLimiter rateLimiter;
+
+    private final HotContextTracker hotContexts;
+
+    private final ClusterInvalidations clusterInvalidations;
+
+    private final SharedResultStore sharedResults;
+
+    private final ProjectSettingsStore settingsStore;
+
+    private final StatusAggregates statusAggregates;
+
+    private final TypeaheadIndex typeaheadIndex;
+
+    @Inject
+    public WMPRMetricsResource(JiraAuthenticationContext authenticationContext,
+                               GlobalPermissionManager globalPermissionManager,
+                               WmprMetrics metrics,
+                               RecentRequestsService recentRequestsService,
+                               RecentRequestsCache recentRequestsCache,
+                               RequestRateLimiter rateLimiter,
+                               HotContextTracker hotContexts,
+                               ClusterInvalidations clusterInvalidations,
+                               SharedResultStore sharedResults,
+                               ProjectSettingsStore settingsStore,
+                               StatusAggregates statusAggregates,
+                               TypeaheadIndex typeaheadIndex) {
+        this.authenticationContext = authenticationContext;
+        this.globalPermissionManager = globalPermissionManager;
+        this.metrics = metrics;
+        this.recentRequestsService = recentRequestsService;
+        this.recentRequestsCache = recentRequestsCache;
+        this.rateLimiter = rateLimiter;
+        this.hotContexts = hotContexts;
+        this.clusterInvalidations = clusterInvalidations;
+        this.sharedResults = sharedResults;
+        this.settingsStore = settingsStore;
+        this.statusAggregates = statusAggregates;
+        this.typeaheadIndex = typeaheadIndex;
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getMetrics() {
+        ApplicationUser user = authenticationContext.getLoggedInUser();
+        if (user == null) {
+            return WMPRRequestsRestResource.createOptimizedResponse("{\"error\":\"Authentication required\"}",
+                    Response.Status.UNAUTHORIZED, null);
+        }
+        if (!globalPermissionManager.hasPermission(GlobalPermissionKey.ADMINISTER, user)) {
+            return WMPRRequestsRestResource.createOptimizedResponse("{\"error\":\"Administrator access required\"}",
+                    Response.Status.FORBIDDEN, null);
+        }
+
+        Utf8JsonWriter json = Utf8JsonWriter.local().beginObject();
+        json.name("metrics").value(metrics.snapshot());
+        Map<String, Object> cache = new LinkedHashMap<>(recentRequestsCache.getStatistics());
+        cache.put("footprint", recentRequestsCache.getFootprint());
+        json.name("cache").value(cache);
+        json.name("jqlConfig").value(recentRequestsService.getJqlConfigStatistics());
+        json.name("searchExecutor").value(recentRequestsService.getSearchExecutorStatistics());
+        Map<String, Object> settings = new LinkedHashMap<>(settingsStore.getStatistics());
+        settings.put("projects", settingsStore.getConfiguredProjects());
+        json.name("settings").value(settings);
+        json.name("rateLimiter").value(rateLimiter.getStatistics());
+        json.name("warmup").value(hotContexts.getStatistics());
+        json.name("aggregates").value(statusAggregates.getStatistics());
+        json.name("typeahead").value(typeaheadIndex.getStatistics());
+        json.name("stream").value(WMPRRequestsStreamResource.getStatistics());
+        Map<String, Object> cluster = new LinkedHashMap<>(clusterInvalidations.getStatistics());
+        cluster.put("sharedResults", sharedResults.getStatistics());
+        json.name("cluster").value(cluster);
+        return WMPRRequestsRestResource.createOptimizedResponse(json.endObject().toByteArray(), Response.Status.OK, null);
+    }
+}
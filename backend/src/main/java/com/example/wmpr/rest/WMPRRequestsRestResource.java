@@ -1,30 +1,43 @@
 package com.example.wmpr.rest;
 
 import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
-import com.atlassian.jira.issue.search.SearchProvider;
-import com.atlassian.jira.jql.parser.JqlQueryParser;
-import com.atlassian.jira.web.bean.PagerFilter;
-import com.atlassian.jira.issue.search.SearchResults;
-import com.atlassian.jira.issue.Issue;
-import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.project.ProjectManager;
 import com.atlassian.jira.user.ApplicationUser;
 import com.atlassian.jira.security.JiraAuthenticationContext;
-import com.atlassian.sal.api.pluginsettings.PluginSettings;
-import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
-import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
-import com.example.wmpr.model.ServiceDeskRequest;
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.EncodedBody;
+import com.example.wmpr.cache.RecentRequestsCache;
+import com.example.wmpr.cache.RecentRequestsDelta;
+import com.example.wmpr.json.Utf8JsonWriter;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.ratelimit.RateLimitDecision;
+import com.example.wmpr.ratelimit.RequestRateLimiter;
+import com.example.wmpr.service.InvalidJqlException;
+import com.example.wmpr.service.InvalidPageRequestException;
+import com.example.wmpr.service.PageRequest;
+import com.example.wmpr.service.RecentRequestsLookup;
+import com.example.wmpr.service.RecentRequestsService;
+import com.example.wmpr.service.RequestFields;
+import com.example.wmpr.service.SearchUnavailableException;
 import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.inject.Inject;
-import java.util.List;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -32,114 +45,156 @@ import java.util.Map;
 @Path("/recent")
 public class WMPRRequestsRestResource {
 
-    private static final String DEFAULT_JQL = "project = WMPR ORDER BY created DESC";
-    private static final String SETTINGS_KEY_PREFIX = "wmpr.settings.";
+    private static final Logger log = LoggerFactory.getLogger(WMPRRequestsRestResource.class);
+
+    static final String STALE_WARNING = "110 - \"Response is Stale\"";
+    static final int RETRY_AFTER_SECONDS = 10;
+    static final int TOO_MANY_REQUESTS = 429;
 
-    @JiraImport
-    private final SearchService searchService;
-    
     @JiraImport
     private final JiraAuthenticationContext authenticationContext;
+
+    @JiraImport
+    private final ProjectManager projectManager;
+    
+    private final RecentRequestsService recentRequestsService;
     
-    @ComponentImport
-    private final PluginSettingsFactory pluginSettingsFactory;
+    private final RecentRequestsCache recentRequestsCache;
+    
+    private final WmprMetrics metrics;
+    
+    private final RequestRateLimiter rateLimiter;
     
     private final Gson gson;
 
     @Inject
     public WMPRRequestsRestResource(
-            SearchService searchService,
             JiraAuthenticationContext authenticationContext,
-            PluginSettingsFactory pluginSettingsFactory) {
-        this.searchService = searchService;
+            ProjectManager projectManager,
+            RecentRequestsService recentRequestsService,
+            RecentRequestsCache recentRequestsCache,
+            WmprMetrics metrics,
+            RequestRateLimiter rateLimiter) {
         this.authenticationContext = authenticationContext;
-        this.pluginSettingsFactory = pluginSettingsFactory;
+        this.projectManager = projectManager;
+        this.recentRequestsService = recentRequestsService;
+        this.recentRequestsCache = recentRequestsCache;
+        this.metrics = metrics;
+        this.rateLimiter = rateLimiter;
         this.gson = new Gson();
     }
 
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response getRecentWMPRRequests(@QueryParam("projectKey") String projectKey) {
+    @Produces({MediaType.APPLICATION_JSON, ResponseEncoding.COLUMNAR_TYPE})
+    public Response getRecentWMPRRequests(@QueryParam("projectKey") String projectKey,
+                                          @QueryParam("startAt") Integer startAt,
+                                          @QueryParam("limit") Integer limit,
+                                          @QueryParam("cursor") String cursor,
+                                          @QueryParam("includeTotal") @DefaultValue("false") boolean includeTotal,
+                                          @QueryParam("fields") String fields,
+                                          @QueryParam("diagnostics") @DefaultValue("false") boolean includeDiagnostics,
+                                          @QueryParam("since") String since,
+                                          @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                                          @HeaderParam(HttpHeaders.ACCEPT) String accept,
+                                          @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+                                          @Context HttpServletRequest httpRequest) {
         long startTime = System.currentTimeMillis();
+        long totalStart = metrics.start();
         String requestId = "WMPR-" + startTime;
-        
-        // Enhanced logging for diagnostics
-        System.out.println("[" + requestId + "] WMPR REST API called at: " + new Date());
-        System.out.println("[" + requestId + "] Project key: " + projectKey);
+        metrics.increment(WmprMetrics.REQUESTS);
+        log.debug("[{}] WMPR REST API called for project {}", requestId, projectKey);
         
         try {
             // Check authentication
+            long authStart = metrics.start();
             ApplicationUser user = authenticationContext.getLoggedInUser();
-            System.out.println("[" + requestId + "] User: " + (user != null ? user.getName() : "null"));
+            metrics.record(WmprMetrics.Stage.AUTH, authStart);
             
             if (user == null) {
-                System.out.println("[" + requestId + "] Authentication failed - no user");
+                log.debug("[{}] Authentication failed - no user", requestId);
+                metrics.increment(WmprMetrics.UNAUTHORIZED);
                 String errorResponse = "{\"error\":\"Authentication required\",\"requestId\":\"" + requestId + "\"}";
-                return createOptimizedResponse(errorResponse, Response.Status.UNAUTHORIZED);
+                return createOptimizedResponse(errorResponse, Response.Status.UNAUTHORIZED, null);
+            }
+            if (isUnknownProject(projectManager, projectKey)) {
+                String errorResponse = "{\"error\":\"Project not found\",\"requestId\":\"" + requestId + "\"}";
+                return createOptimizedResponse(errorResponse, Response.Status.NOT_FOUND, null);
             }
-
-            // Get configured JQL from plugin settings
-            String jql = getConfiguredJql(projectKey);
-            System.out.println("[" + requestId + "] Using JQL: " + jql);
             
-            SearchService.ParseResult parseResult = searchService.parseQuery(user, jql);
-            if (!parseResult.isValid()) {
-                System.out.println("[" + requestId + "] Configured JQL invalid, trying fallback");
-                // Fallback to a more generic JQL if configured one fails
-                jql = "project = WMPR ORDER BY created DESC";
-                parseResult = searchService.parseQuery(user, jql);
-                System.out.println("[" + requestId + "] Fallback JQL: " + jql);
-                
-                if (!parseResult.isValid()) {
-                    System.out.println("[" + requestId + "] Both JQL queries invalid");
-                    String errorResponse = "{\"error\":\"Invalid JQL query\",\"requestId\":\"" + requestId + "\"}";
-                    return createOptimizedResponse(errorResponse, Response.Status.BAD_REQUEST);
-                }
+            RateLimitDecision decision = rateLimiter.acquire(user, clientAddress(httpRequest), projectKey, 1);
+            if (!decision.isAllowed()) {
+                log.debug("[{}] Throttled by {} limit", requestId, decision.getLimit());
+                return createTooManyRequestsResponse(decision, requestId);
             }
 
-            // Execute search with limit of 10
-            PagerFilter pagerFilter = new PagerFilter(0, 10);
-            System.out.println("[" + requestId + "] Executing search with limit 10");
-            
-            SearchResults searchResults = searchService.search(user, parseResult.getQuery(), pagerFilter);
-            List<Issue> issues = searchResults.getResults();
+            RecentRequestsLookup lookup;
+            try {
+                PageRequest page = PageRequest.of(startAt, limit, cursor, includeTotal);
+                lookup = recentRequestsService.lookup(user, projectKey, page, requestId);
+            } catch (InvalidJqlException e) {
+                metrics.increment(WmprMetrics.BAD_REQUESTS);
+                String errorResponse = "{\"error\":\"Invalid JQL query\",\"requestId\":\"" + requestId + "\"}";
+                return createOptimizedResponse(errorResponse, Response.Status.BAD_REQUEST, null);
+            } catch (InvalidPageRequestException e) {
+                metrics.increment(WmprMetrics.BAD_REQUESTS);
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("error", e.getMessage());
+                errorResponse.put("requestId", requestId);
+                return createOptimizedResponse(gson.toJson(errorResponse), Response.Status.BAD_REQUEST, null);
+            } catch (SearchUnavailableException e) {
+                // Nothing cached to fall back on - shed the load and let the client come back later
+                log.warn("[{}] Search unavailable: {}", requestId, e.getMessage());
+                metrics.increment(WmprMetrics.SEARCH_UNAVAILABLE);
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("error", e.getMessage());
+                errorResponse.put("requestId", requestId);
+                return createServiceUnavailableResponse(gson.toJson(errorResponse));
+            }
+            CachedRecentRequests cached = lookup.getResult();
             
-            System.out.println("[" + requestId + "] Found " + issues.size() + " issues");
-
-            List<ServiceDeskRequest> requests = new ArrayList<>();
-            for (int i = 0; i < issues.size(); i++) {
-                Issue issue = issues.get(i);
-                try {
-                    ServiceDeskRequest request = new ServiceDeskRequest();
-                    request.setKey(issue.getKey());
-                    request.setSummary(issue.getSummary());
-                    request.setReporter(issue.getReporter() != null ? issue.getReporter().getDisplayName() : "Unknown");
-                    request.setCreated(issue.getCreated() != null ? issue.getCreated().toString() : "");
-                    request.setStatus(issue.getStatus() != null ? issue.getStatus().getName() : "Unknown");
-                    request.setStatusCategory(issue.getStatus() != null && issue.getStatus().getStatusCategory() != null 
-                        ? issue.getStatus().getStatusCategory().getKey() : "unknown");
-                    
-                    requests.add(request);
-                } catch (Exception e) {
-                    System.err.println("[" + requestId + "] Error processing issue " + issue.getKey() + ": " + e.getMessage());
-                }
+            if (etagMatches(ifNoneMatch, cached.getEtag()) || cached.getEtag().equals(since)) {
+                log.debug("[{}] Client copy is current - 304", requestId);
+                metrics.increment(WmprMetrics.NOT_MODIFIED);
+                return createNotModifiedResponse(cached.getEtag());
             }
-
-            // Create response with diagnostics
-            Map<String, Object> response = new HashMap<>();
-            response.put("data", requests);
-            response.put("diagnostics", createDiagnostics(requestId, startTime, user, jql, issues.size()));
-
-            String jsonResponse = gson.toJson(response);
-            System.out.println("[" + requestId + "] Response size: " + jsonResponse.length() + " characters");
-            System.out.println("[" + requestId + "] Request completed in " + (System.currentTimeMillis() - startTime) + "ms");
+            long serializeStart = metrics.start();
+            RequestFields requestFields = RequestFields.parse(fields);
+            ResponseEncoding encoding = ResponseEncoding.negotiate(accept, acceptEncoding);
+            // The client's version is recent enough to be patched: send only the rows that changed
+            RecentRequestsDelta delta = since != null && !includeDiagnostics
+                    ? recentRequestsCache.delta(lookup.getCacheKey(), since, cached) : null;
+            EncodedBody jsonResponse;
+            if (delta != null) {
+                metrics.increment(WmprMetrics.DELTAS);
+                jsonResponse = requestFields.isAll()
+                        ? cached.getEncodedBody(encoding.variant("delta:" + since),
+                                () -> encoding.encode(createDeltaBody(delta, requestFields, encoding)))
+                        : encoding.encode(createDeltaBody(delta, requestFields, encoding));
+            } else if (requestFields.isAll() && !includeDiagnostics) {
+                // Every reader of this entry gets the same bytes, so each encoding is built and compressed once
+                jsonResponse = cached.getEncodedBody(encoding.variant("recent"),
+                        () -> encoding.encode(createBody(cached, requestFields, encoding, null)));
+            } else {
+                Map<String, Object> diagnostics = includeDiagnostics ? createDiagnostics(requestId, startTime, user,
+                        cached.getExecutedJql(), cached.getRequests().size(), lookup) : null;
+                jsonResponse = encoding.encode(createBody(cached, requestFields, encoding, diagnostics));
+            }
+            metrics.record(WmprMetrics.Stage.SERIALIZE, serializeStart);
+            metrics.recordResult(cached.getRequests().size(), jsonResponse.getBytes().length);
+            log.debug("[{}] Request completed in {}ms, response size {} bytes", requestId,
+                    System.currentTimeMillis() - startTime, jsonResponse.getBytes().length);
             
-            return createOptimizedResponse(jsonResponse, Response.Status.OK);
+            Response.ResponseBuilder response = encodedResponse(jsonResponse, Response.Status.OK.getStatusCode(),
+                    cached.getEtag(), encoding);
+            if (lookup.isStale()) {
+                response.header("Warning", STALE_WARNING);
+            }
+            return response.build();
 
         } catch (Exception e) {
             long duration = System.currentTimeMillis() - startTime;
-            System.err.println("[" + requestId + "] ERROR after " + duration + "ms: " + e.getMessage());
-            e.printStackTrace();
+            log.error("[{}] Failed after {}ms", requestId, duration, e);
+            metrics.increment(WmprMetrics.ERRORS);
             
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("error", "Failed to fetch WMPR requests: " + e.getMessage());
@@ -147,80 +202,195 @@ public class WMPRRequestsRestResource {
             errorResponse.put("duration", duration);
             errorResponse.put("errorType", e.getClass().getSimpleName());
             
-            return createOptimizedResponse(gson.toJson(errorResponse), Response.Status.INTERNAL_SERVER_ERROR);
+            return createOptimizedResponse(gson.toJson(errorResponse), Response.Status.INTERNAL_SERVER_ERROR, null);
+        } finally {
+            metrics.record(WmprMetrics.Stage.TOTAL, totalStart);
         }
     }
     
     /**
-     * Gets the configured JQL for the specified project, or returns default if not configured
+     * Creates an optimized HTTP response to avoid chunked encoding issues in load balancer environments.
+     * Successful responses carry a weak ETag and must be revalidated on every poll, which turns
+     * unchanged polls into empty 304s; error responses are never stored.
      */
-    private String getConfiguredJql(String projectKey) {
-        try {
-            // If no project key provided, use default JQL which works across projects
-            if (projectKey == null || projectKey.trim().isEmpty()) {
-                System.out.println("No project key provided, using default JQL");
-                return DEFAULT_JQL;
-            }
-            
-            PluginSettings settings = pluginSettingsFactory.createGlobalSettings();
-            String configuredJql = (String) settings.get(SETTINGS_KEY_PREFIX + projectKey + ".jql");
-            Object useCustomJqlObj = settings.get(SETTINGS_KEY_PREFIX + projectKey + ".useCustom");
-            
-            // Handle both Boolean and String values for useCustom setting
-            boolean useCustomJql = false;
-            if (useCustomJqlObj instanceof Boolean) {
-                useCustomJql = (Boolean) useCustomJqlObj;
-            } else if (useCustomJqlObj instanceof String) {
-                useCustomJql = "true".equals(useCustomJqlObj);
-            }
-            
-            if (useCustomJql && configuredJql != null && !configuredJql.trim().isEmpty()) {
-                System.out.println("Found custom JQL for project " + projectKey + ": " + configuredJql);
-                return configuredJql;
-            } else {
-                System.out.println("Using default JQL for project " + projectKey);
-                return DEFAULT_JQL;
-            }
-        } catch (Exception e) {
-            System.err.println("Error loading JQL settings for project " + projectKey + ": " + e.getMessage());
-            return DEFAULT_JQL;
-        }
+    static Response createOptimizedResponse(String jsonContent, Response.Status status, String etag) {
+        return createOptimizedResponse(jsonContent.getBytes(StandardCharsets.UTF_8), status, etag);
     }
     
     /**
-     * Creates an optimized HTTP response to avoid chunked encoding issues in load balancer environments
+     * Same as {@link #createOptimizedResponse(String, Response.Status, String)} for an already encoded UTF-8 body,
+     * which is sent as is.
      */
-    private Response createOptimizedResponse(String jsonContent, Response.Status status) {
+    static Response createOptimizedResponse(byte[] jsonContent, Response.Status status, String etag) {
+        return optimizedResponse(jsonContent, status.getStatusCode(), etag).build();
+    }
+    
+    private static Response.ResponseBuilder optimizedResponse(byte[] jsonContent, int status, String etag) {
         // Calculate content length to avoid chunked encoding
-        byte[] contentBytes = jsonContent.getBytes();
-        int contentLength = contentBytes.length;
-        
-        // Create cache control for better performance
-        CacheControl cacheControl = new CacheControl();
-        cacheControl.setMaxAge(30); // 30 seconds cache
-        cacheControl.setNoCache(false);
-        cacheControl.setMustRevalidate(false);
+        int contentLength = jsonContent.length;
         
-        return Response.status(status)
+        Response.ResponseBuilder builder = Response.status(status)
                 .entity(jsonContent)
-                .type(MediaType.APPLICATION_JSON)
-                .cacheControl(cacheControl)
+                .type(MediaType.APPLICATION_JSON + ";charset=UTF-8")
+                .cacheControl(etag != null ? revalidateCacheControl() : noStoreCacheControl())
                 // Explicitly set content length to prevent chunked encoding
-                .header("Content-Length", String.valueOf(contentLength))
+                .header("Content-Length", String.valueOf(contentLength));
+        if (etag != null) {
+            builder.tag(new EntityTag(etag, true));
+        }
+        return withCommonHeaders(builder);
+    }
+    
+    /**
+     * Same as {@link #optimizedResponse} for a body in the negotiated encoding.
+     */
+    static Response.ResponseBuilder encodedResponse(EncodedBody body, int status, String etag,
+                                                    ResponseEncoding encoding) {
+        Response.ResponseBuilder builder = optimizedResponse(body.getBytes(), status, etag)
+                .type(encoding.contentType());
+        if (body.getContentEncoding() != null) {
+            builder.header("Content-Encoding", body.getContentEncoding());
+        }
+        return builder;
+    }
+    
+    /**
+     * The rows and page of the entry, plus diagnostics when asked for them, encoded into this thread's buffer.
+     */
+    private static byte[] createBody(CachedRecentRequests cached, RequestFields requestFields,
+                                     ResponseEncoding encoding, Map<String, Object> diagnostics) {
+        Utf8JsonWriter json = Utf8JsonWriter.local().beginObject();
+        json.name("data");
+        encoding.writeRows(json, cached, requestFields);
+        json.name("page").value(createPageInfo(cached));
+        if (diagnostics != null) {
+            json.name("diagnostics").value(diagnostics);
+        }
+        return json.endObject().toByteArray();
+    }
+    
+    /**
+     * The changes since the client's version and the page of the entry, encoded into this thread's buffer.
+     */
+    private static byte[] createDeltaBody(RecentRequestsDelta delta, RequestFields requestFields,
+                                          ResponseEncoding encoding) {
+        Utf8JsonWriter json = Utf8JsonWriter.local().beginObject();
+        json.name("delta").value(true);
+        encoding.writeDelta(json, delta, requestFields);
+        json.name("page").value(createPageInfo(delta.getCurrent()));
+        return json.endObject().toByteArray();
+    }
+    
+    /**
+     * 503 for searches that were shed or timed out with no earlier result to fall back on.
+     */
+    static Response createServiceUnavailableResponse(String jsonContent) {
+        return optimizedResponse(jsonContent.getBytes(StandardCharsets.UTF_8),
+                Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), null)
+                .header("Retry-After", String.valueOf(RETRY_AFTER_SECONDS))
+                .build();
+    }
+    
+    /**
+     * 429 for callers over their rate limit. JAX-RS 1.1 has no constant for it.
+     */
+    static Response createTooManyRequestsResponse(RateLimitDecision decision, String requestId) {
+        String jsonContent = "{\"error\":\"Too many requests\",\"limit\":\"" + decision.getLimit()
+                + "\",\"retryAfter\":" + decision.getRetryAfterSeconds() + ",\"requestId\":\"" + requestId + "\"}";
+        return optimizedResponse(jsonContent.getBytes(StandardCharsets.UTF_8), TOO_MANY_REQUESTS, null)
+                .header("Retry-After", String.valueOf(decision.getRetryAfterSeconds()))
+                .build();
+    }
+    
+    static String clientAddress(HttpServletRequest httpRequest) {
+        return RequestRateLimiter.clientAddress(httpRequest);
+    }
+    
+    /**
+     * Whether a project key was given that names no project. Keys are only looked up once they resolve, so
+     * made-up keys can't add entries to the per-project caches.
+     */
+    static boolean isUnknownProject(ProjectManager projectManager, String projectKey) {
+        return projectKey != null && !projectKey.trim().isEmpty()
+                && projectManager.getProjectByCurrentKey(projectKey.trim()) == null;
+    }
+    
+    static Response createNotModifiedResponse(String etag) {
+        return withCommonHeaders(Response.notModified(new EntityTag(etag, true))
+                .cacheControl(revalidateCacheControl()))
+                .build();
+    }
+    
+    private static Response.ResponseBuilder withCommonHeaders(Response.ResponseBuilder builder) {
+        return builder
                 // CORS headers for load balancer environments
                 .header("Access-Control-Allow-Origin", "*")
                 .header("Access-Control-Allow-Methods", "GET, OPTIONS")
-                .header("Access-Control-Allow-Headers", "Content-Type, Authorization")
-                // Compression hints for load balancers
+                .header("Access-Control-Allow-Headers", "Content-Type, Authorization, If-None-Match")
+                .header("Access-Control-Expose-Headers", "ETag, Warning, Retry-After")
+                .header("Vary", ResponseEncoding.VARY)
                 .header("X-Content-Type-Options", "nosniff")
-                .header("X-Frame-Options", "SAMEORIGIN")
-                // Prevent proxy caching issues
-                .header("Pragma", "no-cache")
-                .header("Expires", "0")
-                .build();
+                .header("X-Frame-Options", "SAMEORIGIN");
+    }
+    
+    /**
+     * Results depend on the user's permissions, so only the browser may keep them, and only if it
+     * revalidates with If-None-Match first.
+     */
+    private static CacheControl revalidateCacheControl() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setPrivate(true);
+        cacheControl.setNoCache(true);
+        return cacheControl;
+    }
+    
+    private static CacheControl noStoreCacheControl() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+        cacheControl.setNoStore(true);
+        return cacheControl;
+    }
+    
+    /**
+     * Weak comparison of an If-None-Match header against our tag, as required for conditional GETs
+     */
+    static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if ("*".equals(value)) {
+                return true;
+            }
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+            if (etag.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    static Map<String, Object> createPageInfo(CachedRecentRequests cached) {
+        Map<String, Object> page = new HashMap<>();
+        page.put("size", cached.getRequests().size());
+        page.put("hasMore", cached.hasMore());
+        if (cached.getNextCursor() != null) {
+            page.put("nextCursor", cached.getNextCursor());
+        }
+        if (cached.getTotal() != null) {
+            page.put("total", cached.getTotal());
+        }
+        return page;
     }
     
-    private Map<String, Object> createDiagnostics(String requestId, long startTime, ApplicationUser user, String jql, int resultCount) {
+    private Map<String, Object> createDiagnostics(String requestId, long startTime, ApplicationUser user, String jql, 
+                                                  int resultCount, RecentRequestsLookup lookup) {
         Map<String, Object> diagnostics = new HashMap<>();
         diagnostics.put("requestId", requestId);
         diagnostics.put("timestamp", new Date().toString());
@@ -228,6 +398,12 @@ public class WMPRRequestsRestResource {
         diagnostics.put("user", user.getName());
         diagnostics.put("jql", jql);
         diagnostics.put("resultCount", resultCount);
+        diagnostics.put("cacheHit", lookup.isCacheHit());
+        diagnostics.put("coalesced", lookup.isCoalesced());
+        diagnostics.put("stale", lookup.isStale());
+        diagnostics.put("cache", recentRequestsCache.getStatistics());
+        diagnostics.put("jqlConfig", recentRequestsService.getJqlConfigStatistics());
+        diagnostics.put("searchExecutor", recentRequestsService.getSearchExecutorStatistics());
         diagnostics.put("version", "1.0.0-optimized");
         return diagnostics;
     }
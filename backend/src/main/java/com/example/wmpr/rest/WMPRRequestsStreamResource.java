@@ -0,0 +1,286 @@
+package com.example.wmpr.rest;
+
+import com.atlassian.jira.project.ProjectManager;
+import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.EncodedBody;
+import com.example.wmpr.cache.RecentRequestsCache;
+import com.example.wmpr.cache.RecentRequestsDelta;
+import com.example.wmpr.json.Utf8JsonWriter;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.ratelimit.RateLimitDecision;
+import com.example.wmpr.ratelimit.RequestRateLimiter;
+import com.example.wmpr.service.InvalidJqlException;
+import com.example.wmpr.service.RecentRequestsLookup;
+import com.example.wmpr.service.RecentRequestsService;
+import com.example.wmpr.service.RequestFields;
+import com.example.wmpr.service.SearchUnavailableException;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-poll endpoint for the requests table: the client passes the version (ETag) it already has and the call
+ * only returns once the project's result has a different version, or the wait times out. With {@code delta=true}
+ * the change is sent as a patch against the client's version whenever that version is still known.
+ *
+ * The REST stack of this plugin (JAX-RS 1.1 on a Servlet 2.4 API) has no asynchronous responses, so a waiting
+ * client does occupy a request thread for up to a minute. The number of waiters is therefore kept to a small
+ * share of Jira's HTTP threads: a tenth of the connector threads Tomcat reports, or 16 when it reports none, unless
+ * {@code wmpr.stream.maxWaiters} is set. Once it is reached clients are told to fall back to plain polling.
+ */
+@Path("/stream")
+public class WMPRRequestsStreamResource {
+
+    private static final Logger log = LoggerFactory.getLogger(WMPRRequestsStreamResource.class);
+
+    static final long DEFAULT_WAIT_MILLIS = 25_000L;
+    static final long MAX_WAIT_MILLIS = 55_000L;
+    static final int CONNECTOR_THREADS_PER_WAITER = 10;
+    static final int FALLBACK_MAX_WAITERS = 16;
+    static final int MAX_WAITERS = Integer.getInteger("wmpr.stream.maxWaiters", defaultMaxWaiters());
+    static final int FALLBACK_POLL_SECONDS = 30;
+
+    static final String POLL_MODE_HEADER = "X-WMPR-Poll-Mode";
+
+    // Resources are instantiated per request, so the waiter budget has to live at class level
+    private static final Semaphore WAITER_SLOTS = new Semaphore(Math.max(0, MAX_WAITERS));
+
+    @JiraImport
+    private final JiraAuthenticationContext authenticationContext;
+
+    @JiraImport
+    private final ProjectManager projectManager;
+
+    private final RecentRequestsService recentRequestsService;
+
+    private final RecentRequestsCache recentRequestsCache;
+
+    private final RequestRateLimiter rateLimiter;
+
+    private final WmprMetrics metrics;
+
+    private final Gson gson;
+
+    @Inject
+    public WMPRRequestsStreamResource(JiraAuthenticationContext authenticationContext,
+                                      ProjectManager projectManager,
+                                      RecentRequestsService recentRequestsService,
+                                      RecentRequestsCache recentRequestsCache,
+                                      RequestRateLimiter rateLimiter,
+                                      WmprMetrics metrics) {
+        this.authenticationContext = authenticationContext;
+        this.projectManager = projectManager;
+        this.recentRequestsService = recentRequestsService;
+        this.recentRequestsCache = recentRequestsCache;
+        this.rateLimiter = rateLimiter;
+        this.metrics = metrics;
+        this.gson = new Gson();
+    }
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, ResponseEncoding.COLUMNAR_TYPE})
+    public Response awaitRecentWMPRRequests(@QueryParam("projectKey") String projectKey,
+                                            @QueryParam("version") String version,
+                                            @QueryParam("timeout") Long timeoutMillis,
+                                            @QueryParam("fields") String fields,
+                                            @QueryParam("delta") @DefaultValue("false") boolean delta,
+                                            @HeaderParam(HttpHeaders.ACCEPT) String accept,
+                                            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+                                            @Context HttpServletRequest httpRequest) {
+        String requestId = "WMPR-STREAM-" + System.currentTimeMillis();
+        metrics.increment(WmprMetrics.STREAM_REQUESTS);
+
+        ApplicationUser user = authenticationContext.getLoggedInUser();
+        if (user == null) {
+            String errorResponse = "{\"error\":\"Authentication required\",\"requestId\":\"" + requestId + "\"}";
+            return WMPRRequestsRestResource.createOptimizedResponse(errorResponse, Response.Status.UNAUTHORIZED, null);
+        }
+        if (WMPRRequestsRestResource.isUnknownProject(projectManager, projectKey)) {
+            String errorResponse = "{\"error\":\"Project not found\",\"requestId\":\"" + requestId + "\"}";
+            return WMPRRequestsRestResource.createOptimizedResponse(errorResponse, Response.Status.NOT_FOUND, null);
+        }
+
+        RateLimitDecision decision = rateLimiter.acquire(user,
+                WMPRRequestsRestResource.clientAddress(httpRequest), projectKey, 1);
+        if (!decision.isAllowed()) {
+            log.debug("[{}] Throttled by {} limit", requestId, decision.getLimit());
+            return WMPRRequestsRestResource.createTooManyRequestsResponse(decision, requestId);
+        }
+
+        RequestFields requestFields = RequestFields.parse(fields);
+        ResponseEncoding encoding = ResponseEncoding.negotiate(accept, acceptEncoding);
+        try {
+            RecentRequestsLookup lookup = recentRequestsService.lookup(user, projectKey, requestId);
+            CachedRecentRequests current = lookup.getResult();
+            if (!current.getEtag().equals(version)) {
+                return createChangedResponse(lookup, current, version, delta, requestFields, encoding);
+            }
+
+            if (!WAITER_SLOTS.tryAcquire()) {
+                log.debug("[{}] Long-poll capacity reached, asking client to poll", requestId);
+                return createUnchangedResponse(current.getEtag(), "poll");
+            }
+            metrics.increment(WmprMetrics.STREAM_WAITS);
+            try {
+                long wait = timeoutMillis == null ? DEFAULT_WAIT_MILLIS : Math.max(0L, Math.min(timeoutMillis, MAX_WAIT_MILLIS));
+                long deadline = System.currentTimeMillis() + wait;
+                while (true) {
+                    // Take the signal before re-checking, so a change in between can't be missed
+                    CountDownLatch changed = recentRequestsCache.changeSignal(lookup.getCacheKey());
+                    current = recentRequestsCache.peek(lookup.getCacheKey());
+                    if (current == null) {
+                        // Evicted by an issue event - recompute, which also tells us whether the rows changed
+                        lookup = recentRequestsService.lookup(user, projectKey, requestId);
+                        current = lookup.getResult();
+                    }
+                    if (!current.getEtag().equals(version)) {
+                        return createChangedResponse(lookup, current, version, delta, requestFields, encoding);
+                    }
+
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return createUnchangedResponse(current.getEtag(), "long-poll");
+                    }
+                    changed.await(remaining, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                WAITER_SLOTS.release();
+            }
+        } catch (InvalidJqlException e) {
+            String errorResponse = "{\"error\":\"Invalid JQL query\",\"requestId\":\"" + requestId + "\"}";
+            return WMPRRequestsRestResource.createOptimizedResponse(errorResponse, Response.Status.BAD_REQUEST, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return createUnchangedResponse(version, "poll");
+        } catch (SearchUnavailableException e) {
+            // Searches are being shed - have the client back off to interval polling
+            log.warn("[{}] Search unavailable: {}", requestId, e.getMessage());
+            return createUnchangedResponse(version, "poll");
+        } catch (Exception e) {
+            log.error("[{}] Long-poll failed", requestId, e);
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Failed to fetch WMPR requests: " + e.getMessage());
+            errorResponse.put("requestId", requestId);
+            return WMPRRequestsRestResource.createOptimizedResponse(gson.toJson(errorResponse),
+                    Response.Status.INTERNAL_SERVER_ERROR, null);
+        }
+    }
+
+    /**
+     * A change is sent to every waiting client at once, so unprojected bodies are built once per entry, encoding
+     * and, for deltas, starting version.
+     */
+    private Response createChangedResponse(RecentRequestsLookup lookup, CachedRecentRequests current, String version,
+                                           boolean delta, RequestFields requestFields, ResponseEncoding encoding) {
+        RecentRequestsDelta changes = delta && version != null
+                ? recentRequestsCache.delta(lookup.getCacheKey(), version, current) : null;
+        EncodedBody body;
+        if (changes != null) {
+            body = requestFields.isAll()
+                    ? current.getEncodedBody(encoding.variant("stream-delta:" + version),
+                            () -> createDeltaBody(changes, requestFields, encoding))
+                    : createDeltaBody(changes, requestFields, encoding);
+        } else {
+            body = requestFields.isAll()
+                    ? current.getEncodedBody(encoding.variant("stream"),
+                            () -> createBody(current, requestFields, encoding))
+                    : createBody(current, requestFields, encoding);
+        }
+        return WMPRRequestsRestResource.encodedResponse(body, Response.Status.OK.getStatusCode(), current.getEtag(),
+                encoding).build();
+    }
+
+    private static EncodedBody createBody(CachedRecentRequests current, RequestFields requestFields,
+                                     ResponseEncoding encoding) {
+        Utf8JsonWriter json = Utf8JsonWriter.local().beginObject();
+        json.name("data");
+        encoding.writeRows(json, current, requestFields);
+        json.name("version").value(current.getEtag());
+        return encoding.encode(json.endObject().toByteArray());
+    }
+
+    private static EncodedBody createDeltaBody(RecentRequestsDelta delta, RequestFields requestFields,
+                                          ResponseEncoding encoding) {
+        Utf8JsonWriter json = Utf8JsonWriter.local().beginObject();
+        json.name("delta").value(true);
+        encoding.writeDelta(json, delta, requestFields);
+        json.name("version").value(delta.getCurrent().getEtag());
+        return encoding.encode(json.endObject().toByteArray());
+    }
+
+    /**
+     * 204 tells the client its copy is still current. The poll mode header says whether it may reconnect
+     * immediately ("long-poll") or should back off to interval polling ("poll").
+     */
+    private Response createUnchangedResponse(String etag, String pollMode) {
+        if ("poll".equals(pollMode)) {
+            metrics.increment(WmprMetrics.STREAM_POLL_FALLBACKS);
+        }
+        Response.ResponseBuilder builder = Response.noContent()
+                .tag(new EntityTag(etag == null ? "" : etag, true))
+                .header(POLL_MODE_HEADER, pollMode)
+                .header("Access-Control-Expose-Headers", "ETag, " + POLL_MODE_HEADER);
+        if ("poll".equals(pollMode)) {
+            builder.header("Retry-After", String.valueOf(FALLBACK_POLL_SECONDS));
+        }
+        return builder.build();
+    }
+
+    /**
+     * The waiter budget and how much of it is in use, for {@code /metrics}.
+     */
+    static Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxWaiters", MAX_WAITERS);
+        stats.put("waiters", MAX_WAITERS - WAITER_SLOTS.availablePermits());
+        return stats;
+    }
+
+    /**
+     * A tenth of the threads of Tomcat's connectors, as published over JMX, or {@link #FALLBACK_MAX_WAITERS} when
+     * there are none to read, e.g. connectors sharing an executor.
+     */
+    static int defaultMaxWaiters() {
+        int connectorThreads = 0;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (ObjectName pool : server.queryNames(new ObjectName("Catalina:type=ThreadPool,*"), null)) {
+                Object maxThreads = server.getAttribute(pool, "maxThreads");
+                if (maxThreads instanceof Number && ((Number) maxThreads).intValue() > 0) {
+                    connectorThreads += ((Number) maxThreads).intValue();
+                }
+            }
+        } catch (JMException | RuntimeException e) {
+            log.debug("Could not read the connector threads: {}", e.getMessage());
+        }
+        return connectorThreads > 0 ? Math.max(1, connectorThreads / CONNECTOR_THREADS_PER_WAITER)
+                : FALLBACK_MAX_WAITERS;
+    }
+}
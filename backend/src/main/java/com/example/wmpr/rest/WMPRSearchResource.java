@@ -0,0 +1,154 @@
+package com.example.wmpr.rest;
+
+import com.atlassian.jira.project.Project;
+import com.atlassian.jira.project.ProjectManager;
+import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.example.wmpr.json.RecentRequestsJson;
+import com.example.wmpr.json.Utf8JsonWriter;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.ratelimit.RateLimitDecision;
+import com.example.wmpr.ratelimit.RequestRateLimiter;
+import com.example.wmpr.service.InvalidJqlException;
+import com.example.wmpr.service.RequestFields;
+import com.example.wmpr.service.SearchUnavailableException;
+import com.example.wmpr.typeahead.TypeaheadIndex;
+import com.example.wmpr.typeahead.TypeaheadResult;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Type-ahead for the requests table: the project's requests whose key or summary has words starting with the
+ * typed ones ({@code q}), newest first and only those the user may see. Answered from the in-memory index of
+ * {@link TypeaheadIndex}, so a keystroke costs a lookup of a few keys rather than a text search.
+ */
+@Path("/search")
+public class WMPRSearchResource {
+
+    private static final Logger log = LoggerFactory.getLogger(WMPRSearchResource.class);
+
+    private static final int DEFAULT_LIMIT = 10;
+
+    @JiraImport
+    private final JiraAuthenticationContext authenticationContext;
+
+    @JiraImport
+    private final ProjectManager projectManager;
+
+    private final TypeaheadIndex typeaheadIndex;
+
+    private final WmprMetrics metrics;
+
+    private final RequestRateLimiter rateLimiter;
+
+    private final Gson gson;
+
+    @Inject
+    public WMPRSearchResource(JiraAuthenticationContext authenticationContext,
+                              ProjectManager projectManager,
+                              TypeaheadIndex typeaheadIndex,
+                              WmprMetrics metrics,
+                              RequestRateLimiter rateLimiter) {
+        this.authenticationContext = authenticationContext;
+        this.projectManager = projectManager;
+        this.typeaheadIndex = typeaheadIndex;
+        this.metrics = metrics;
+        this.rateLimiter = rateLimiter;
+        this.gson = new Gson();
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response searchRequests(@QueryParam("projectKey") String projectKey,
+                                   @QueryParam("q") String text,
+                                   @QueryParam("limit") Integer limit,
+                                   @QueryParam("fields") String fields,
+                                   @Context HttpServletRequest httpRequest) {
+        long startTime = System.currentTimeMillis();
+        long totalStart = metrics.start();
+        String requestId = "WMPR-SEARCH-" + startTime;
+        metrics.increment(WmprMetrics.TYPEAHEAD_REQUESTS);
+
+        ApplicationUser user = authenticationContext.getLoggedInUser();
+        if (user == null) {
+            metrics.increment(WmprMetrics.UNAUTHORIZED);
+            return errorResponse("Authentication required", requestId, Response.Status.UNAUTHORIZED);
+        }
+        if (limit != null && (limit < 1 || limit > TypeaheadIndex.MAX_LIMIT)) {
+            metrics.increment(WmprMetrics.BAD_REQUESTS);
+            return errorResponse("limit must be between 1 and " + TypeaheadIndex.MAX_LIMIT, requestId,
+                    Response.Status.BAD_REQUEST);
+        }
+        // Like /recent, no project key means the default JQL
+        Project project = null;
+        if (projectKey != null && !projectKey.trim().isEmpty()) {
+            project = projectManager.getProjectByCurrentKey(projectKey.trim());
+            if (project == null) {
+                return errorResponse("Project not found", requestId, Response.Status.NOT_FOUND);
+            }
+        }
+        RateLimitDecision decision = rateLimiter.acquire(user, WMPRRequestsRestResource.clientAddress(httpRequest),
+                projectKey, 1);
+        if (!decision.isAllowed()) {
+            log.debug("[{}] Throttled by {} limit", requestId, decision.getLimit());
+            return WMPRRequestsRestResource.createTooManyRequestsResponse(decision, requestId);
+        }
+
+        try {
+            TypeaheadResult result = typeaheadIndex.search(user, project != null ? project.getKey() : null, text,
+                    limit != null ? limit : DEFAULT_LIMIT, requestId);
+            byte[] body = createBody(result, RequestFields.parse(fields));
+            log.debug("[{}] Found {} requests for '{}' in {}ms", requestId, result.getRequests().size(), text,
+                    System.currentTimeMillis() - startTime);
+            return WMPRRequestsRestResource.createOptimizedResponse(body, Response.Status.OK, null);
+        } catch (InvalidJqlException e) {
+            metrics.increment(WmprMetrics.BAD_REQUESTS);
+            return errorResponse("Invalid JQL query", requestId, Response.Status.BAD_REQUEST);
+        } catch (SearchUnavailableException e) {
+            // The first indexing of a project is still running; it finishes in the background
+            log.warn("[{}] Indexing project {} not finished: {}", requestId, projectKey, e.getMessage());
+            metrics.increment(WmprMetrics.SEARCH_UNAVAILABLE);
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            errorResponse.put("requestId", requestId);
+            return WMPRRequestsRestResource.createServiceUnavailableResponse(gson.toJson(errorResponse));
+        } catch (Exception e) {
+            log.error("[{}] Searching project {} failed", requestId, projectKey, e);
+            metrics.increment(WmprMetrics.ERRORS);
+            return errorResponse("Failed to search WMPR requests: " + e.getMessage(), requestId,
+                    Response.Status.INTERNAL_SERVER_ERROR);
+        } finally {
+            metrics.record(WmprMetrics.Stage.TYPEAHEAD, totalStart);
+        }
+    }
+
+    private static byte[] createBody(TypeaheadResult result, RequestFields requestFields) {
+        Utf8JsonWriter json = Utf8JsonWriter.local().beginObject();
+        json.name("data");
+        RecentRequestsJson.writeRows(json, requestFields.project(result.getRequests()));
+        json.name("complete").value(result.isComplete());
+        json.name("indexedAt").value(result.getIndexedAt());
+        return json.endObject().toByteArray();
+    }
+
+    private Response errorResponse(String message, String requestId, Response.Status status) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("error", message);
+        errorResponse.put("requestId", requestId);
+        return WMPRRequestsRestResource.createOptimizedResponse(gson.toJson(errorResponse), status, null);
+    }
+}
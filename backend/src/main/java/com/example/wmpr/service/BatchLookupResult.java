@@ -0,0 +1,58 @@
+package com.example.wmpr.service;
+
+/**
+ * Outcome for one project of a batch lookup: either its recent requests or the reason they couldn't be fetched.
+ */
+public final class BatchLookupResult {
+
+    public static final String TIMEOUT = "timeout";
+    public static final String REJECTED = "rejected";
+    public static final String INVALID_JQL = "invalidJql";
+    public static final String SEARCH_FAILED = "searchFailed";
+
+    private final RecentRequestsLookup lookup;
+    private final boolean sharedSearch;
+    private final String errorType;
+    private final String errorMessage;
+
+    private BatchLookupResult(RecentRequestsLookup lookup, boolean sharedSearch, String errorType, String errorMessage) {
+        this.lookup = lookup;
+        this.sharedSearch = sharedSearch;
+        this.errorType = errorType;
+        this.errorMessage = errorMessage;
+    }
+
+    static BatchLookupResult success(RecentRequestsLookup lookup, boolean sharedSearch) {
+        return new BatchLookupResult(lookup, sharedSearch, null, null);
+    }
+
+    static BatchLookupResult failure(String errorType, String errorMessage) {
+        return new BatchLookupResult(null, false, errorType, errorMessage);
+    }
+
+    public boolean isSuccess() {
+        return lookup != null;
+    }
+
+    /**
+     * The project's result, or null when it failed.
+     */
+    public RecentRequestsLookup getLookup() {
+        return lookup;
+    }
+
+    /**
+     * Whether other projects of the same batch resolved to the same JQL and were served by the same search.
+     */
+    public boolean isSharedSearch() {
+        return sharedSearch;
+    }
+
+    public String getErrorType() {
+        return errorType;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.wmpr.service;
+
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.user.ApplicationUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fetches the recent requests of several projects at once. Projects are grouped by their configured JQL so
+ * projects sharing a query (typically the default one) share a single search, and the groups are searched in
+ * parallel on the {@link SearchExecutor}. A project whose search fails gets its last good rows, marked stale,
+ * when there are any. A project that fails or misses the deadline gets an error entry
+ * without affecting the others.
+ */
+@Named
+public class BatchRecentRequestsService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchRecentRequestsService.class);
+
+    public static final int MAX_PROJECTS = 20;
+
+    private final RecentRequestsService recentRequestsService;
+
+    @Inject
+    public BatchRecentRequestsService(RecentRequestsService recentRequestsService) {
+        this.recentRequestsService = recentRequestsService;
+    }
+
+    /**
+     * Looks up the page for every project, waiting at most {@code timeoutMillis} for the searches. Results are
+     * returned in the order of the given keys; duplicate keys are looked up once.
+     */
+    public Map<String, BatchLookupResult> lookupAll(ApplicationUser user, Collection<String> projectKeys,
+                                                    PageRequest page, long timeoutMillis, String requestId) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        // One search per distinct JQL, however many projects use it
+        Map<String, JqlGroup> groups = new LinkedHashMap<>();
+        Map<String, JqlGroup> projectGroups = new LinkedHashMap<>();
+        for (String projectKey : projectKeys) {
+            if (!projectGroups.containsKey(projectKey)) {
+                ProjectJqlConfig config = recentRequestsService.config(projectKey);
+                JqlGroup group = groups.computeIfAbsent(config.getJql(), jql -> new JqlGroup(config));
+                group.projectKeys.add(projectKey);
+                projectGroups.put(projectKey, group);
+            }
+        }
+        log.debug("[{}] Batch of {} projects resolved to {} searches", requestId, projectGroups.size(), groups.size());
+
+        // Start every search first so they run side by side, then collect them within the deadline
+        for (JqlGroup group : groups.values()) {
+            recentRequestsService.prefetch(user, group.config, page, requestId);
+        }
+        for (JqlGroup group : groups.values()) {
+            long remaining = Math.max(0L, deadline - System.currentTimeMillis());
+            group.failure = lookup(user, group, page, remaining, requestId);
+        }
+
+        Map<String, BatchLookupResult> results = new LinkedHashMap<>();
+        for (Map.Entry<String, JqlGroup> entry : projectGroups.entrySet()) {
+            JqlGroup group = entry.getValue();
+            results.put(entry.getKey(), group.failure != null ? group.failure
+                    : BatchLookupResult.success(group.lookup, group.projectKeys.size() > 1));
+        }
+        return results;
+    }
+
+    /**
+     * Looks up the group's page and returns the failure, if any. A search that misses the deadline is left
+     * running, so its result still lands in the cache for the next call.
+     */
+    private BatchLookupResult lookup(ApplicationUser user, JqlGroup group, PageRequest page, long timeoutMillis,
+                                     String requestId) {
+        try {
+            group.lookup = recentRequestsService.lookup(user, group.config, page, requestId, timeoutMillis);
+            return null;
+        } catch (InvalidJqlException e) {
+            return BatchLookupResult.failure(BatchLookupResult.INVALID_JQL, e.getMessage());
+        } catch (SearchUnavailableException e) {
+            log.warn("[{}] Batch search unavailable for projects {}: {}", requestId, group.projectKeys, e.getMessage());
+            return BatchLookupResult.failure(e.isTimeout() ? BatchLookupResult.TIMEOUT : BatchLookupResult.REJECTED,
+                    e.getMessage());
+        } catch (SearchException e) {
+            log.warn("[{}] Batch search failed for projects {}", requestId, group.projectKeys, e);
+            return BatchLookupResult.failure(BatchLookupResult.SEARCH_FAILED, e.getMessage());
+        } catch (Exception e) {
+            log.error("[{}] Batch lookup failed for projects {}", requestId, group.projectKeys, e);
+            return BatchLookupResult.failure(e.getClass().getSimpleName(), String.valueOf(e.getMessage()));
+        }
+    }
+
+    private static final class JqlGroup {
+        private final ProjectJqlConfig config;
+        private final List<String> projectKeys = new ArrayList<>();
+        private RecentRequestsLookup lookup;
+        private BatchLookupResult failure;
+
+        private JqlGroup(ProjectJqlConfig config) {
+            this.config = config;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.wmpr.service;
+
+/**
+ * Thrown when neither the configured JQL nor the fallback JQL can be parsed.
+ */
+public class InvalidJqlException extends Exception {
+
+    public InvalidJqlException(String message) {
+        super(message);
+    }
+}
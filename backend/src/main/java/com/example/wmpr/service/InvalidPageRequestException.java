@@ -0,0 +1,11 @@
+package com.example.wmpr.service;
+
+/**
+ * Thrown when paging parameters are malformed or can't be applied to the configured JQL.
+ */
+public class InvalidPageRequestException extends Exception {
+
+    public InvalidPageRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.wmpr.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Issue changes waiting to be applied away from the thread that made them. Issue events run on the thread
+ * creating or editing the issue, so they only note the issue key and the changed fields here, merged per issue;
+ * the first one starts a drain on the {@link SearchExecutor}, which hands the pending changes to the consumer in
+ * batches until none are left.
+ *
+ * Batches map issue keys to the normalised names of the changed fields, or to null when any field may have
+ * changed. The consumer should look issues up again, as they may have changed more since. When the search pool
+ * is full the changes stay pending until the next change or {@link #flush()} starts a drain.
+ */
+public final class IssueChangeQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(IssueChangeQueue.class);
+
+    // Stands for "any field" in the pending map, which can't hold null
+    private static final Set<String> ANY_FIELD = new HashSet<>();
+
+    private final String name;
+    private final SearchExecutor searchExecutor;
+    private final int batchSize;
+    private final Consumer<Map<String, Set<String>>> consumer;
+
+    private final Map<String, Set<String>> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicLong drains = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public IssueChangeQueue(String name, SearchExecutor searchExecutor, int batchSize,
+                            Consumer<Map<String, Set<String>>> consumer) {
+        this.name = name;
+        this.searchExecutor = searchExecutor;
+        this.batchSize = batchSize;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Notes the change and makes sure a drain will pick it up.
+     *
+     * @param changedFields normalised names of the changed fields, or null when any field may have changed
+     */
+    public void add(String issueKey, Set<String> changedFields) {
+        pending.merge(issueKey, changedFields == null ? ANY_FIELD : new HashSet<>(changedFields),
+                IssueChangeQueue::union);
+        flush();
+    }
+
+    /**
+     * Starts a drain unless one is running or nothing is pending.
+     */
+    public void flush() {
+        if (pending.isEmpty() || !draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // A key of its own per drain, so a drain never joins one that is about to finish
+            searchExecutor.start(name + ":" + drains.incrementAndGet(), this::drain);
+        } catch (SearchUnavailableException e) {
+            draining.set(false);
+            log.debug("No room to apply {} pending {} changes: {}", pending.size(), name, e.getMessage());
+        }
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", pending.size());
+        stats.put("drains", drains.get());
+        stats.put("batches", batches.get());
+        return stats;
+    }
+
+    private Void drain() {
+        while (true) {
+            try {
+                Map<String, Set<String>> batch;
+                while (!(batch = takeBatch()).isEmpty()) {
+                    batches.incrementAndGet();
+                    try {
+                        consumer.accept(batch);
+                    } catch (RuntimeException e) {
+                        log.warn("Could not apply {} {} changes", batch.size(), name, e);
+                    }
+                }
+            } finally {
+                draining.set(false);
+            }
+            // A change noted after the last batch was taken but before the flag dropped would be stranded
+            if (pending.isEmpty() || !draining.compareAndSet(false, true)) {
+                return null;
+            }
+        }
+    }
+
+    private Map<String, Set<String>> takeBatch() {
+        Map<String, Set<String>> batch = new HashMap<>();
+        Iterator<String> keys = pending.keySet().iterator();
+        while (keys.hasNext() && batch.size() < batchSize) {
+            String issueKey = keys.next();
+            Set<String> fields = pending.remove(issueKey);
+            if (fields != null) {
+                batch.put(issueKey, fields == ANY_FIELD ? null : fields);
+            }
+        }
+        return batch;
+    }
+
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        if (a == ANY_FIELD || b == ANY_FIELD) {
+            return ANY_FIELD;
+        }
+        Set<String> fields = new HashSet<>(a);
+        fields.addAll(b);
+        return fields;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.wmpr.service;
+
+import com.atlassian.jira.config.ConstantsManager;
+import com.atlassian.jira.issue.status.Status;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.user.util.UserManager;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Small lookup caches for the values a row shows but an issue only references by id: reporter display names
+ * and status names/categories. A page of results usually has a handful of distinct reporters and statuses,
+ * so resolving them once per id instead of once per issue removes most of the mapping cost.
+ */
+@Named
+public class IssueFieldLookups {
+
+    static final String UNKNOWN_REPORTER = "Unknown";
+    static final StatusInfo UNKNOWN_STATUS = new StatusInfo("Unknown", "unknown");
+
+    // Display names and status names change rarely; a few minutes of staleness is fine for a recent list
+    private static final long TTL_MILLIS = 5 * 60_000L;
+    private static final int MAX_ENTRIES = 5000;
+
+    @JiraImport
+    private final UserManager userManager;
+
+    @JiraImport
+    private final ConstantsManager constantsManager;
+
+    private final Map<String, Memoized<String>> reporterNames = new ConcurrentHashMap<>();
+    private final Map<String, Memoized<StatusInfo>> statuses = new ConcurrentHashMap<>();
+
+    @Inject
+    public IssueFieldLookups(UserManager userManager, ConstantsManager constantsManager) {
+        this.userManager = userManager;
+        this.constantsManager = constantsManager;
+    }
+
+    /**
+     * Resolves the display names for the given user keys, hitting the user store once per key not yet cached.
+     */
+    public Map<String, String> reporterNames(Collection<String> userKeys) {
+        long now = System.currentTimeMillis();
+        Map<String, String> names = new HashMap<>();
+        for (String userKey : userKeys) {
+            if (userKey == null || names.containsKey(userKey)) {
+                continue;
+            }
+            Memoized<String> memoized = reporterNames.get(userKey);
+            if (memoized == null || now - memoized.computedAt >= TTL_MILLIS) {
+                ApplicationUser user = userManager.getUserByKey(userKey);
+                memoized = new Memoized<>(user != null ? user.getDisplayName() : UNKNOWN_REPORTER, now);
+                remember(reporterNames, userKey, memoized);
+            }
+            names.put(userKey, memoized.value);
+        }
+        return names;
+    }
+
+    /**
+     * Resolves name and category key for the given status ids.
+     */
+    public Map<String, StatusInfo> statuses(Collection<String> statusIds) {
+        long now = System.currentTimeMillis();
+        Map<String, StatusInfo> infos = new HashMap<>();
+        for (String statusId : statusIds) {
+            if (statusId == null || infos.containsKey(statusId)) {
+                continue;
+            }
+            Memoized<StatusInfo> memoized = statuses.get(statusId);
+            if (memoized == null || now - memoized.computedAt >= TTL_MILLIS) {
+                memoized = new Memoized<>(loadStatus(statusId), now);
+                remember(statuses, statusId, memoized);
+            }
+            infos.put(statusId, memoized.value);
+        }
+        return infos;
+    }
+
+    private StatusInfo loadStatus(String statusId) {
+        Status status = constantsManager.getStatus(statusId);
+        if (status == null) {
+            return UNKNOWN_STATUS;
+        }
+        return new StatusInfo(status.getName(),
+                status.getStatusCategory() != null ? status.getStatusCategory().getKey() : UNKNOWN_STATUS.getCategoryKey());
+    }
+
+    private static <V> void remember(Map<String, Memoized<V>> memo, String key, Memoized<V> value) {
+        if (memo.size() >= MAX_ENTRIES) {
+            memo.clear();
+        }
+        memo.put(key, value);
+    }
+
+    /**
+     * Status name and category key, the two status values a row shows.
+     */
+    public static final class StatusInfo {
+        private final String name;
+        private final String categoryKey;
+
+        StatusInfo(String name, String categoryKey) {
+            this.name = name;
+            this.categoryKey = categoryKey;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getCategoryKey() {
+            return categoryKey;
+        }
+    }
+
+    private static final class Memoized<V> {
+        private final V value;
+        private final long computedAt;
+
+        private Memoized(V value, long computedAt) {
+            this.value = value;
+            this.computedAt = computedAt;
+        }
+    }
+}
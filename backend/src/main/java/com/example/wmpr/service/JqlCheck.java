@@ -0,0 +1,105 @@
+package com.example.wmpr.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of checking a JQL query before it is saved: problems that block saving, warnings about
+ * expensive patterns, and what a test run of the query cost.
+ */
+public final class JqlCheck {
+
+    private static final String SEPARATOR = "\n";
+
+    private final String jql;
+    private final List<String> errors;
+    private final List<String> warnings;
+    private final long executionMillis;
+    private final long matchCount;
+    private final long checkedAt;
+
+    JqlCheck(String jql, List<String> errors, List<String> warnings, long executionMillis, long matchCount,
+             long checkedAt) {
+        this.jql = jql;
+        this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+        this.warnings = Collections.unmodifiableList(new ArrayList<>(warnings));
+        this.executionMillis = executionMillis;
+        this.matchCount = matchCount;
+        this.checkedAt = checkedAt;
+    }
+
+    public String getJql() {
+        return jql;
+    }
+
+    /**
+     * Whether the query must not be saved.
+     */
+    public boolean isBlocked() {
+        return !errors.isEmpty();
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public List<String> getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * Duration of the test run in milliseconds, or -1 when the query wasn't run.
+     */
+    public long getExecutionMillis() {
+        return executionMillis;
+    }
+
+    /**
+     * Number of issues the test run matched for the saving user, or -1 when the query wasn't run.
+     */
+    public long getMatchCount() {
+        return matchCount;
+    }
+
+    public long getCheckedAt() {
+        return checkedAt;
+    }
+
+    /**
+     * Plugin settings form of the check, stored next to the project's JQL.
+     */
+    public Map<String, String> toSettings() {
+        Map<String, String> settings = new HashMap<>();
+        settings.put("jql", jql);
+        settings.put("warnings", String.join(SEPARATOR, warnings));
+        settings.put("executionMillis", String.valueOf(executionMillis));
+        settings.put("matchCount", String.valueOf(matchCount));
+        settings.put("checkedAt", String.valueOf(checkedAt));
+        return settings;
+    }
+
+    /**
+     * Reads a check stored with {@link #toSettings()}, or returns null when there is none or it can't be read.
+     */
+    public static JqlCheck fromSettings(Object stored) {
+        if (!(stored instanceof Map)) {
+            return null;
+        }
+        Map<?, ?> settings = (Map<?, ?>) stored;
+        try {
+            String warnings = (String) settings.get("warnings");
+            return new JqlCheck((String) settings.get("jql"), Collections.<String>emptyList(),
+                    warnings == null || warnings.isEmpty()
+                            ? Collections.<String>emptyList() : Arrays.asList(warnings.split(SEPARATOR)),
+                    Long.parseLong((String) settings.get("executionMillis")),
+                    Long.parseLong((String) settings.get("matchCount")),
+                    Long.parseLong((String) settings.get("checkedAt")));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
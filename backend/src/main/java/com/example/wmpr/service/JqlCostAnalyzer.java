@@ -0,0 +1,199 @@
+package com.example.wmpr.service;
+
+import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.jql.parser.JqlParseException;
+import com.atlassian.jira.jql.parser.JqlQueryParser;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.util.MessageSet;
+import com.atlassian.jira.web.bean.PagerFilter;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.atlassian.query.Query;
+import com.atlassian.query.clause.ChangedClause;
+import com.atlassian.query.clause.Clause;
+import com.atlassian.query.clause.TerminalClause;
+import com.atlassian.query.clause.WasClause;
+import com.atlassian.query.operand.FunctionOperand;
+import com.atlassian.query.operand.MultiValueOperand;
+import com.atlassian.query.operand.Operand;
+import com.atlassian.query.operator.Operator;
+import com.example.wmpr.cache.QueryScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Checks a JQL query before it is saved as a project's configuration: it has to parse and validate, it is
+ * scanned for patterns that are expensive to search, and it is test-run to measure what it costs.
+ * Queries that can't run, or that would be slow for every portal page, are blocked.
+ */
+@Named
+public class JqlCostAnalyzer {
+
+    private static final Logger log = LoggerFactory.getLogger(JqlCostAnalyzer.class);
+
+    static final long MAX_EXECUTION_MILLIS = 3_000L;
+    static final long WARN_EXECUTION_MILLIS = 500L;
+    static final long LARGE_RESULT = 100_000L;
+
+    // Functions that run their own searches or walk change history instead of reading the index
+    private static final Set<String> EXPENSIVE_FUNCTIONS = new HashSet<>(Arrays.asList(
+            "issuehistory", "linkedissues", "updatedby", "watchedissues", "votedissues", "lastviewed"));
+
+    // ScriptRunner's JQL functions all go through this pseudo field
+    private static final String SCRIPT_FUNCTION_FIELD = "issuefunction";
+
+    @JiraImport
+    private final JqlQueryParser jqlQueryParser;
+
+    @JiraImport
+    private final SearchService searchService;
+
+    private final SearchExecutor searchExecutor;
+
+    @Inject
+    public JqlCostAnalyzer(JqlQueryParser jqlQueryParser, SearchService searchService, SearchExecutor searchExecutor) {
+        this.jqlQueryParser = jqlQueryParser;
+        this.searchService = searchService;
+        this.searchExecutor = searchExecutor;
+    }
+
+    public JqlCheck check(ApplicationUser user, String jql) {
+        List<String> errors = new ArrayList<>();
+        List<String> warnings = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        Query query;
+        try {
+            query = jqlQueryParser.parseQuery(jql);
+        } catch (JqlParseException e) {
+            errors.add("The query does not parse: " + e.getMessage());
+            return new JqlCheck(jql, errors, warnings, -1L, -1L, now);
+        }
+        MessageSet messages = searchService.validateQuery(user, query);
+        if (messages != null && messages.hasAnyErrors()) {
+            errors.addAll(messages.getErrorMessages());
+            return new JqlCheck(jql, errors, warnings, -1L, -1L, now);
+        }
+
+        analyse(query, jql, errors, warnings);
+        if (!errors.isEmpty()) {
+            return new JqlCheck(jql, errors, warnings, -1L, -1L, now);
+        }
+
+        // Run what the panel runs - the first page - and count the matches, bounded like any other search
+        long start = System.nanoTime();
+        long matches;
+        try {
+            matches = searchExecutor.call("jql-check:" + jql, () -> {
+                searchService.search(user, query, new PagerFilter(PageRequest.DEFAULT_LIMIT + 1));
+                return searchService.searchCount(user, query);
+            }, MAX_EXECUTION_MILLIS);
+        } catch (SearchUnavailableException e) {
+            if (e.isTimeout()) {
+                errors.add("The query did not complete within " + MAX_EXECUTION_MILLIS + "ms");
+            } else {
+                warnings.add("The query could not be test-run right now, so its cost is unknown");
+            }
+            return new JqlCheck(jql, errors, warnings, -1L, -1L, now);
+        } catch (SearchException e) {
+            errors.add("The query failed to run: " + e.getMessage());
+            return new JqlCheck(jql, errors, warnings, -1L, -1L, now);
+        } catch (Exception e) {
+            log.warn("Test run of JQL failed: {}", jql, e);
+            errors.add("The query failed to run: " + e.getMessage());
+            return new JqlCheck(jql, errors, warnings, -1L, -1L, now);
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000L;
+
+        if (millis > WARN_EXECUTION_MILLIS) {
+            warnings.add("The query took " + millis + "ms to run; it runs whenever the cached result expires");
+        }
+        if (matches > LARGE_RESULT) {
+            warnings.add("The query matches " + matches + " issues; narrowing it makes every search cheaper");
+        }
+        log.debug("Checked JQL in {}ms, {} matches, {} warnings: {}", millis, matches, warnings.size(), jql);
+        return new JqlCheck(jql, errors, warnings, millis, matches, now);
+    }
+
+    /**
+     * Flags expensive patterns. Each is a warning on its own; text and history searches across every project
+     * are blocked.
+     */
+    private static void analyse(Query query, String jql, List<String> errors, List<String> warnings) {
+        Set<String> textFields = new LinkedHashSet<>();
+        Set<String> historyFields = new LinkedHashSet<>();
+        Set<String> functions = new LinkedHashSet<>();
+        if (query.getWhereClause() != null) {
+            collect(query.getWhereClause(), textFields, historyFields, functions);
+        }
+        boolean projectRestricted = QueryScope.of(query, jql).isProjectRestricted();
+
+        if (!projectRestricted) {
+            warnings.add("The query has no project clause, so it searches every project");
+        }
+        if (!textFields.isEmpty()) {
+            String message = "Text search (~) on " + String.join(", ", textFields);
+            if (projectRestricted) {
+                warnings.add(message + " reads the full-text index on every search");
+            } else {
+                errors.add(message + " without a project clause scans the whole instance; add a project clause");
+            }
+        }
+        if (!historyFields.isEmpty()) {
+            String message = "History search (WAS/CHANGED) on " + String.join(", ", historyFields);
+            if (projectRestricted) {
+                warnings.add(message + " reads change history on every search");
+            } else {
+                errors.add(message + " without a project clause scans the whole instance; add a project clause");
+            }
+        }
+        for (String function : functions) {
+            warnings.add(function + " can't be answered from the index and is evaluated on every search");
+        }
+    }
+
+    private static void collect(Clause clause, Set<String> textFields, Set<String> historyFields,
+                                Set<String> functions) {
+        if (clause instanceof WasClause) {
+            historyFields.add(((WasClause) clause).getField());
+        } else if (clause instanceof ChangedClause) {
+            historyFields.add(((ChangedClause) clause).getField());
+        } else if (clause instanceof TerminalClause) {
+            TerminalClause terminal = (TerminalClause) clause;
+            if (terminal.getOperator() == Operator.LIKE || terminal.getOperator() == Operator.NOT_LIKE) {
+                textFields.add(terminal.getName());
+            }
+            if (SCRIPT_FUNCTION_FIELD.equals(QueryScope.normalizeField(terminal.getName()))) {
+                functions.add(terminal.getName());
+            }
+            collectFunctions(terminal.getOperand(), functions);
+        } else if (clause.getClauses() != null) {
+            for (Clause child : clause.getClauses()) {
+                collect(child, textFields, historyFields, functions);
+            }
+        }
+    }
+
+    private static void collectFunctions(Operand operand, Set<String> functions) {
+        if (operand instanceof FunctionOperand) {
+            String name = ((FunctionOperand) operand).getName();
+            if (name != null && EXPENSIVE_FUNCTIONS.contains(name.toLowerCase(Locale.ENGLISH))) {
+                functions.add(name + "()");
+            }
+        } else if (operand instanceof MultiValueOperand) {
+            for (Operand value : ((MultiValueOperand) operand).getValues()) {
+                collectFunctions(value, functions);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.wmpr.service;
+
+/**
+ * Which slice of the recent requests a caller wants: either an offset page (startAt/limit) or the page
+ * following a cursor, optionally with the total number of matches.
+ */
+public final class PageRequest {
+
+    public static final int DEFAULT_LIMIT = 10;
+    public static final int MAX_LIMIT = 50;
+
+    public static final PageRequest FIRST_PAGE = new PageRequest(0, DEFAULT_LIMIT, null, false);
+
+    private final int startAt;
+    private final int limit;
+    private final RequestCursor cursor;
+    private final boolean includeTotal;
+
+    private PageRequest(int startAt, int limit, RequestCursor cursor, boolean includeTotal) {
+        this.startAt = startAt;
+        this.limit = limit;
+        this.cursor = cursor;
+        this.includeTotal = includeTotal;
+    }
+
+    /**
+     * Builds a page request from raw query parameters. Missing values take the defaults and the limit is
+     * clamped to {@link #MAX_LIMIT}; a cursor takes precedence over startAt.
+     */
+    public static PageRequest of(Integer startAt, Integer limit, String cursor, boolean includeTotal)
+            throws InvalidPageRequestException {
+        if (startAt != null && startAt < 0) {
+            throw new InvalidPageRequestException("startAt must not be negative");
+        }
+        if (limit != null && limit < 1) {
+            throw new InvalidPageRequestException("limit must be at least 1");
+        }
+        int effectiveLimit = limit == null ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+        if (cursor != null && !cursor.trim().isEmpty()) {
+            return new PageRequest(0, effectiveLimit, RequestCursor.decode(cursor.trim()), includeTotal);
+        }
+        return new PageRequest(startAt == null ? 0 : startAt, effectiveLimit, null, includeTotal);
+    }
+
+    public int getStartAt() {
+        return startAt;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Position to continue from, or null for offset paging.
+     */
+    public RequestCursor getCursor() {
+        return cursor;
+    }
+
+    public boolean isIncludeTotal() {
+        return includeTotal;
+    }
+
+    /**
+     * Stable description of the slice, part of the cache key so every page is cached on its own.
+     */
+    public String describe() {
+        String position = cursor != null ? "after:" + cursor.encode() : "at:" + startAt;
+        return position + "/" + limit + (includeTotal ? "/total" : "");
+    }
+}
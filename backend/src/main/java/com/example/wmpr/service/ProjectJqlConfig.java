@@ -0,0 +1,66 @@
+package com.example.wmpr.service;
+
+import com.atlassian.query.Query;
+
+/**
+ * Resolved search configuration of one project: the configured JQL, and the parsed query actually run for it.
+ */
+public final class ProjectJqlConfig {
+
+    private final String projectKey;
+    private final String jql;
+    private final String executedJql;
+    private final Query query;
+    private final long settingsVersion;
+
+    ProjectJqlConfig(String projectKey, String jql, String executedJql, Query query, long settingsVersion) {
+        this.projectKey = projectKey;
+        this.jql = jql;
+        this.executedJql = executedJql;
+        this.query = query;
+        this.settingsVersion = settingsVersion;
+    }
+
+    /**
+     * The project the configuration belongs to, or null for calls without a project.
+     */
+    public String getProjectKey() {
+        return projectKey;
+    }
+
+    /**
+     * The JQL configured for the project, or the default when there is no custom JQL.
+     */
+    public String getJql() {
+        return jql;
+    }
+
+    /**
+     * The JQL that is actually searched - the default JQL when the configured one doesn't parse.
+     */
+    public String getExecutedJql() {
+        return executedJql;
+    }
+
+    /**
+     * Parsed form of {@link #getExecutedJql()}, or null when neither the configured nor the default JQL parses.
+     */
+    public Query getQuery() {
+        return query;
+    }
+
+    public boolean isValid() {
+        return query != null;
+    }
+
+    public boolean isFallback() {
+        return query != null && !jql.equals(executedJql);
+    }
+
+    /**
+     * Version of the project settings the configuration was resolved from.
+     */
+    public long getSettingsVersion() {
+        return settingsVersion;
+    }
+}
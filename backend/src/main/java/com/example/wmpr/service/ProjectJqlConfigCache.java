@@ -0,0 +1,125 @@
+package com.example.wmpr.service;
+
+import com.atlassian.jira.jql.parser.JqlParseException;
+import com.atlassian.jira.jql.parser.JqlQueryParser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.atlassian.query.Query;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.settings.ProjectSettings;
+import com.example.wmpr.settings.ProjectSettingsStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of each project's JQL configuration, holding the parsed query so the request path doesn't
+ * parse JQL. An entry stays valid while the version of the project's {@link ProjectSettings} it was resolved
+ * from is current, so a save - or the store reloading a save made on another node - replaces it on the next
+ * read. Projects are also invalidated on every node when their configuration is saved (see
+ * {@link com.example.wmpr.cluster.ProjectSettingsInvalidation}). Projects that were never configured all share
+ * the entry of the default JQL, so keys sent by clients can't grow the cache.
+ */
+@Named
+public class ProjectJqlConfigCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ProjectJqlConfigCache.class);
+
+    // Requests without a project key all use the default JQL
+    private static final String NO_PROJECT = "";
+
+    private final ProjectSettingsStore settingsStore;
+
+    @JiraImport
+    private final JqlQueryParser jqlQueryParser;
+
+    private final WmprMetrics metrics;
+
+    private final Map<String, ProjectJqlConfig> configs = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Inject
+    public ProjectJqlConfigCache(ProjectSettingsStore settingsStore, JqlQueryParser jqlQueryParser,
+                                 WmprMetrics metrics) {
+        this.settingsStore = settingsStore;
+        this.jqlQueryParser = jqlQueryParser;
+        this.metrics = metrics;
+    }
+
+    public ProjectJqlConfig get(String projectKey) {
+        String key = projectKey == null ? NO_PROJECT : projectKey.trim();
+        ProjectSettings settings = settingsStore.get(key);
+        if (!key.isEmpty() && settings.getVersion() == 0L) {
+            // Never configured, so it runs the default JQL: share that entry rather than adding one per key
+            ProjectJqlConfig defaults = get(NO_PROJECT);
+            return new ProjectJqlConfig(key, defaults.getJql(), defaults.getExecutedJql(), defaults.getQuery(), 0L);
+        }
+        ProjectJqlConfig config = configs.get(key);
+        if (config != null && config.getSettingsVersion() == settings.getVersion()) {
+            hits.incrementAndGet();
+            return config;
+        }
+        misses.incrementAndGet();
+        config = load(key, settings);
+        configs.put(key, config);
+        return config;
+    }
+
+    public void invalidate(String projectKey) {
+        if (projectKey != null && configs.remove(projectKey.trim()) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    public void invalidateAll() {
+        configs.clear();
+        invalidations.incrementAndGet();
+    }
+
+    public Map<String, Object> getStatistics() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", configs.size());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    private ProjectJqlConfig load(String projectKey, ProjectSettings settings) {
+        String jql = settings.getEffectiveJql();
+        Query query = parse(jql);
+        if (query != null) {
+            return new ProjectJqlConfig(projectKey(projectKey), jql, jql, query, settings.getVersion());
+        }
+        log.warn("Configured JQL invalid for project {}, using fallback: {}", projectKey, RecentRequestsService.DEFAULT_JQL);
+        // Fallback to a more generic JQL if configured one fails
+        return new ProjectJqlConfig(projectKey(projectKey), jql, RecentRequestsService.DEFAULT_JQL,
+                parse(RecentRequestsService.DEFAULT_JQL), settings.getVersion());
+    }
+
+    private static String projectKey(String key) {
+        return NO_PROJECT.equals(key) ? null : key;
+    }
+
+    private Query parse(String jql) {
+        long start = metrics.start();
+        try {
+            return jqlQueryParser.parseQuery(jql);
+        } catch (JqlParseException e) {
+            return null;
+        } finally {
+            metrics.record(WmprMetrics.Stage.PARSE, start);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.wmpr.service;
+
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.RecentRequestsCacheKey;
+
+/**
+ * Result of resolving the recent requests for one user and project.
+ */
+public class RecentRequestsLookup {
+
+    private final RecentRequestsCacheKey cacheKey;
+    private final CachedRecentRequests result;
+    private final boolean cacheHit;
+    private final boolean coalesced;
+    private final boolean stale;
+
+    public RecentRequestsLookup(RecentRequestsCacheKey cacheKey, CachedRecentRequests result,
+                                boolean cacheHit, boolean coalesced) {
+        this(cacheKey, result, cacheHit, coalesced, false);
+    }
+
+    public RecentRequestsLookup(RecentRequestsCacheKey cacheKey, CachedRecentRequests result,
+                                boolean cacheHit, boolean coalesced, boolean stale) {
+        this.cacheKey = cacheKey;
+        this.result = result;
+        this.cacheHit = cacheHit;
+        this.coalesced = coalesced;
+        this.stale = stale;
+    }
+
+    public RecentRequestsCacheKey getCacheKey() {
+        return cacheKey;
+    }
+
+    public CachedRecentRequests getResult() {
+        return result;
+    }
+
+    public boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    /**
+     * Whether the result was shared from a search another caller already had in flight.
+     */
+    public boolean isCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * Whether the result is the last good one, served because a fresh search failed or missed its deadline.
+     */
+    public boolean isStale() {
+        return stale;
+    }
+}
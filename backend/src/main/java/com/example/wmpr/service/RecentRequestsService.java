@@ -0,0 +1,347 @@
+package com.example.wmpr.service;
+
+import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.issue.search.SearchResults;
+import com.atlassian.jira.jql.builder.JqlQueryBuilder;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.web.bean.PagerFilter;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.atlassian.query.Query;
+import com.atlassian.query.order.OrderBy;
+import com.atlassian.query.order.SearchSort;
+import com.atlassian.query.order.SortOrder;
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.PermissionFingerprintService;
+import com.example.wmpr.cache.QueryScope;
+import com.example.wmpr.cache.RecentRequestsCache;
+import com.example.wmpr.cache.RecentRequestsCacheKey;
+import com.example.wmpr.cluster.SharedResultStore;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.model.ServiceDeskRequest;
+import com.example.wmpr.warmup.HotContextTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resolves the configured JQL for a project and returns its recent requests through the shared cache.
+ * Used by every endpoint that serves the recent requests list.
+ */
+@Named
+public class RecentRequestsService {
+
+    private static final Logger log = LoggerFactory.getLogger(RecentRequestsService.class);
+
+    public static final String DEFAULT_JQL = "project = WMPR ORDER BY created DESC";
+    public static final String SETTINGS_KEY_PREFIX = "wmpr.settings.";
+
+    private static final long JQL_DATE_PRECISION_MILLIS = 60_000L;
+
+    // Rows created in the cursor's last minute that may have to be skipped before the next page starts
+    private static final int CURSOR_OVERFETCH = 10;
+
+    // Only the first page is kept warm in the background
+    private static final String FIRST_PAGE_KEY = PageRequest.FIRST_PAGE.describe();
+
+    @JiraImport
+    private final SearchService searchService;
+
+    private final ProjectJqlConfigCache jqlConfigCache;
+
+    private final RecentRequestsCache recentRequestsCache;
+
+    private final PermissionFingerprintService permissionFingerprintService;
+
+    private final ServiceDeskRequestMapper requestMapper;
+
+    private final SearchExecutor searchExecutor;
+
+    private final WmprMetrics metrics;
+
+    private final HotContextTracker hotContexts;
+
+    private final SharedResultStore sharedResults;
+
+    @Inject
+    public RecentRequestsService(SearchService searchService,
+                                 ProjectJqlConfigCache jqlConfigCache,
+                                 RecentRequestsCache recentRequestsCache,
+                                 PermissionFingerprintService permissionFingerprintService,
+                                 ServiceDeskRequestMapper requestMapper,
+                                 SearchExecutor searchExecutor,
+                                 WmprMetrics metrics,
+                                 HotContextTracker hotContexts,
+                                 SharedResultStore sharedResults) {
+        this.searchService = searchService;
+        this.jqlConfigCache = jqlConfigCache;
+        this.recentRequestsCache = recentRequestsCache;
+        this.permissionFingerprintService = permissionFingerprintService;
+        this.requestMapper = requestMapper;
+        this.searchExecutor = searchExecutor;
+        this.metrics = metrics;
+        this.hotContexts = hotContexts;
+        this.sharedResults = sharedResults;
+    }
+
+    /**
+     * Returns the first page of recent requests for the user and project, running the search only on a cache miss.
+     */
+    public RecentRequestsLookup lookup(ApplicationUser user, String projectKey, String requestId)
+            throws SearchException, InvalidJqlException, SearchUnavailableException {
+        try {
+            return lookup(user, projectKey, PageRequest.FIRST_PAGE, requestId);
+        } catch (InvalidPageRequestException e) {
+            // The first page needs no cursor, so it applies to any query
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the requested page of recent requests for the user and project, running the search only on a cache miss.
+     */
+    public RecentRequestsLookup lookup(ApplicationUser user, String projectKey, PageRequest page, String requestId)
+            throws SearchException, InvalidJqlException, InvalidPageRequestException, SearchUnavailableException {
+        return lookup(user, config(projectKey), page, requestId);
+    }
+
+    /**
+     * Returns the project's configured JQL, already parsed - no settings reads or parsing on the request path.
+     */
+    public ProjectJqlConfig config(String projectKey) {
+        long settingsStart = metrics.start();
+        ProjectJqlConfig config = jqlConfigCache.get(projectKey);
+        metrics.record(WmprMetrics.Stage.SETTINGS, settingsStart);
+        return config;
+    }
+
+    /**
+     * Returns the requested page of recent requests for an already resolved configuration.
+     */
+    public RecentRequestsLookup lookup(ApplicationUser user, ProjectJqlConfig config, PageRequest page, String requestId)
+            throws SearchException, InvalidJqlException, InvalidPageRequestException, SearchUnavailableException {
+        return lookup(user, config, page, requestId, SearchExecutor.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Returns the requested page, waiting at most {@code timeoutMillis} for a search. When the search fails, misses
+     * the deadline or can't get a search thread, the last good result for the key is returned marked as stale;
+     * only without one does the failure reach the caller.
+     */
+    public RecentRequestsLookup lookup(ApplicationUser user, ProjectJqlConfig config, PageRequest page, String requestId,
+                                       long timeoutMillis)
+            throws SearchException, InvalidJqlException, InvalidPageRequestException, SearchUnavailableException {
+        String jql = config.getJql();
+        log.debug("[{}] Using JQL: {}, page {}", requestId, jql, page.describe());
+        if (!config.isValid()) {
+            log.warn("[{}] Neither the configured JQL nor the default JQL is valid: {}", requestId, jql);
+            metrics.increment(WmprMetrics.INVALID_JQL);
+            throw new InvalidJqlException("Invalid JQL query");
+        }
+
+        // Users with the same JQL and permission view share one cached result
+        RecentRequestsCacheKey cacheKey = cacheKey(user, jql, page);
+        if (FIRST_PAGE_KEY.equals(cacheKey.getPage())) {
+            hotContexts.recordRead(config.getProjectKey(), user, cacheKey);
+        }
+        CachedRecentRequests cached = recentRequestsCache.get(cacheKey);
+        if (cached != null) {
+            log.debug("[{}] Cache hit, {} cached requests", requestId, cached.getRequests().size());
+            metrics.increment(WmprMetrics.CACHE_HITS);
+            return new RecentRequestsLookup(cacheKey, cached, true, false);
+        }
+
+        // Concurrent misses for the same key join one search on the bounded search pool, each waiting no longer
+        // than its own deadline; the flag tells whether this caller's task ran or it joined another one
+        AtomicBoolean searchedHere = new AtomicBoolean();
+        Callable<CachedRecentRequests> search = searchTask(user, config, page, cacheKey, requestId);
+        CachedRecentRequests result;
+        try {
+            result = searchExecutor.call(cacheKey, () -> {
+                searchedHere.set(true);
+                // A search that finished between our miss and now has already filled the cache
+                CachedRecentRequests filled = recentRequestsCache.peek(cacheKey);
+                if (filled != null) {
+                    return filled;
+                }
+                // Another node may have searched already
+                CachedRecentRequests shared = sharedResults.get(cacheKey, config);
+                if (shared != null) {
+                    recentRequestsCache.put(cacheKey, shared);
+                    return shared;
+                }
+                return search.call();
+            }, timeoutMillis);
+        } catch (SearchException | SearchUnavailableException e) {
+            CachedRecentRequests stale = recentRequestsCache.getStale(cacheKey);
+            if (stale == null) {
+                throw e;
+            }
+            log.warn("[{}] Serving stale result for {}: {}", requestId, jql, e.getMessage());
+            metrics.increment(WmprMetrics.STALE);
+            return new RecentRequestsLookup(cacheKey, stale, false, false, true);
+        } catch (InvalidPageRequestException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        boolean joined = !searchedHere.get();
+        if (joined) {
+            log.debug("[{}] Joined in-flight search for {}", requestId, jql);
+            metrics.increment(WmprMetrics.COALESCED);
+        } else {
+            metrics.increment(WmprMetrics.CACHE_MISSES);
+        }
+        return new RecentRequestsLookup(cacheKey, result, false, joined);
+    }
+
+    /**
+     * Starts the search for the page in the background unless its result is cached, so several searches can run
+     * at once; a following {@link #lookup} for the same page joins the running search. Does nothing when the
+     * configuration is invalid or the search pool is saturated - the lookup reports those.
+     */
+    public void prefetch(ApplicationUser user, ProjectJqlConfig config, PageRequest page, String requestId) {
+        if (!config.isValid()) {
+            return;
+        }
+        RecentRequestsCacheKey cacheKey = cacheKey(user, config.getJql(), page);
+        if (recentRequestsCache.peek(cacheKey) == null) {
+            try {
+                searchExecutor.start(cacheKey, searchTask(user, config, page, cacheKey, requestId));
+            } catch (SearchUnavailableException e) {
+                log.debug("[{}] Could not prefetch {}: {}", requestId, config.getJql(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Recomputes the first page in the background even if it is still cached, and encodes its rows so the first
+     * reader only copies them. A search already running for the page is returned instead of starting another.
+     *
+     * @throws SearchUnavailableException when the search pool is saturated
+     */
+    public Future<CachedRecentRequests> refresh(ApplicationUser user, ProjectJqlConfig config, String requestId)
+            throws SearchUnavailableException {
+        RecentRequestsCacheKey cacheKey = cacheKey(user, config.getJql(), PageRequest.FIRST_PAGE);
+        Callable<CachedRecentRequests> search = searchTask(user, config, PageRequest.FIRST_PAGE, cacheKey, requestId);
+        return searchExecutor.start(cacheKey, () -> {
+            CachedRecentRequests searched = search.call();
+            searched.getEncodedRequests();
+            return searched;
+        });
+    }
+
+    public Map<String, Object> getSearchExecutorStatistics() {
+        return searchExecutor.getStatistics();
+    }
+
+    public Map<String, Object> getJqlConfigStatistics() {
+        return jqlConfigCache.getStatistics();
+    }
+
+    public RecentRequestsCacheKey cacheKey(ApplicationUser user, String jql, PageRequest page) {
+        return new RecentRequestsCacheKey(jql, permissionFingerprintService.fingerprint(user, jql), page.describe());
+    }
+
+    private Callable<CachedRecentRequests> searchTask(ApplicationUser user, ProjectJqlConfig config, PageRequest page,
+                                                      RecentRequestsCacheKey cacheKey, String requestId) {
+        return () -> {
+            // Filling the cache here means a search that outlives its caller's deadline still pays off
+            CachedRecentRequests searched = search(user, config, page, requestId);
+            recentRequestsCache.put(cacheKey, searched);
+            sharedResults.put(cacheKey, searched);
+            return searched;
+        };
+    }
+
+    private CachedRecentRequests search(ApplicationUser user, ProjectJqlConfig config, PageRequest page, String requestId)
+            throws SearchException, InvalidPageRequestException {
+        String executedJql = config.getExecutedJql();
+        if (config.isFallback()) {
+            log.debug("[{}] Configured JQL invalid, using fallback: {}", requestId, executedJql);
+            metrics.increment(WmprMetrics.FALLBACK_JQL);
+        }
+        Query query = config.getQuery();
+        boolean keysetSortable = sortsByCreatedDescending(query);
+
+        log.debug("[{}] Cache miss, executing search with limit {}", requestId, page.getLimit());
+        long searchStart = metrics.start();
+        List<Issue> issues;
+        if (page.getCursor() != null) {
+            if (!keysetSortable) {
+                throw new InvalidPageRequestException("Cursor paging requires the JQL to be ordered by created DESC");
+            }
+            issues = searchAfter(user, query, page.getCursor(), page.getLimit() + 1);
+        } else {
+            // One extra row tells whether another page follows without counting every match
+            PagerFilter pagerFilter = new PagerFilter(page.getStartAt(), page.getLimit() + 1);
+            SearchResults searchResults = searchService.search(user, query, pagerFilter);
+            issues = searchResults.getResults();
+        }
+        boolean hasMore = issues.size() > page.getLimit();
+        if (hasMore) {
+            issues = issues.subList(0, page.getLimit());
+        }
+
+        String nextCursor = hasMore && keysetSortable ? RequestCursor.after(issues, page.getCursor()).encode() : null;
+        // Counting is the expensive part of a search, so it only happens on request
+        Long total = page.isIncludeTotal() ? searchService.searchCount(user, query) : null;
+        metrics.record(WmprMetrics.Stage.SEARCH, searchStart);
+        log.debug("[{}] Found {} issues", requestId, issues.size());
+
+        long mapStart = metrics.start();
+        List<ServiceDeskRequest> requests = requestMapper.mapAll(requestId, issues);
+        metrics.record(WmprMetrics.Stage.MAP, mapStart);
+
+        return new CachedRecentRequests(requests, executedJql,
+                QueryScope.of(query, executedJql), System.currentTimeMillis(), hasMore, nextCursor, total);
+    }
+
+    /**
+     * Returns up to {@code max} issues following the cursor. The query is narrowed to issues created no later
+     * than the cursor, so the index skips everything already served instead of paging through it. JQL dates only
+     * have minute precision, so the bound is widened by a minute and rows already served within it are skipped here.
+     */
+    private List<Issue> searchAfter(ApplicationUser user, Query query, RequestCursor cursor, int max)
+            throws SearchException {
+        Query bounded = JqlQueryBuilder.newBuilder(query).where().defaultAnd()
+                .created().ltEq(new Date(cursor.getCreatedMillis() + JQL_DATE_PRECISION_MILLIS))
+                .buildQuery();
+
+        List<Issue> collected = new ArrayList<>(max);
+        int batchSize = max + CURSOR_OVERFETCH;
+        for (int start = 0; collected.size() < max; start += batchSize) {
+            SearchResults searchResults = searchService.search(user, bounded, new PagerFilter(start, batchSize));
+            List<Issue> batch = searchResults.getResults();
+            for (Issue issue : batch) {
+                if (!cursor.hasServed(issue) && collected.size() < max) {
+                    collected.add(issue);
+                }
+            }
+            if (batch.size() < batchSize) {
+                break;
+            }
+        }
+        return collected;
+    }
+
+    private static boolean sortsByCreatedDescending(Query query) {
+        OrderBy orderBy = query.getOrderByClause();
+        if (orderBy == null || orderBy.getSearchSorts().size() != 1) {
+            return false;
+        }
+        SearchSort sort = orderBy.getSearchSorts().get(0);
+        // Dates sort newest first unless told otherwise
+        return "created".equalsIgnoreCase(sort.getField()) && sort.getSortOrder() != SortOrder.ASC;
+    }
+}
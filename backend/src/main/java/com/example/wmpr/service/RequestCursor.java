@@ -0,0 +1,87 @@
+package com.example.wmpr.service;
+
+import com.atlassian.jira.issue.Issue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Keyset position in a result sorted by created date, newest first.
+ *
+ * Holds the created time of the last row served and the ids of the served rows sharing that time,
+ * so the next page starts right after them without re-scanning everything before.
+ * Serialized as an opaque URL-safe token.
+ */
+public final class RequestCursor {
+
+    private final long createdMillis;
+    private final Set<Long> boundaryIssueIds;
+
+    public RequestCursor(long createdMillis, Set<Long> boundaryIssueIds) {
+        this.createdMillis = createdMillis;
+        this.boundaryIssueIds = Collections.unmodifiableSet(new LinkedHashSet<>(boundaryIssueIds));
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    /**
+     * Whether the issue sorts at or before this position, i.e. was already served by earlier pages.
+     */
+    public boolean hasServed(Issue issue) {
+        long created = issue.getCreated().getTime();
+        return created > createdMillis || (created == createdMillis && boundaryIssueIds.contains(issue.getId()));
+    }
+
+    /**
+     * Cursor positioned after the given page, which must be non-empty and sorted newest first.
+     * Rows of this cursor on the same millisecond stay in the boundary, as they were skipped, not re-served.
+     */
+    public static RequestCursor after(Iterable<Issue> page, RequestCursor previous) {
+        long lastCreated = Long.MAX_VALUE;
+        for (Issue issue : page) {
+            lastCreated = issue.getCreated().getTime();
+        }
+        Set<Long> boundary = new LinkedHashSet<>();
+        if (previous != null && previous.createdMillis == lastCreated) {
+            boundary.addAll(previous.boundaryIssueIds);
+        }
+        for (Issue issue : page) {
+            if (issue.getCreated().getTime() == lastCreated) {
+                boundary.add(issue.getId());
+            }
+        }
+        return new RequestCursor(lastCreated, boundary);
+    }
+
+    public String encode() {
+        StringBuilder token = new StringBuilder().append(createdMillis).append(':');
+        String separator = "";
+        for (Long id : boundaryIssueIds) {
+            token.append(separator).append(id);
+            separator = ",";
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static RequestCursor decode(String token) throws InvalidPageRequestException {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int colon = decoded.indexOf(':');
+            long createdMillis = Long.parseLong(decoded.substring(0, colon));
+            Set<Long> ids = new LinkedHashSet<>();
+            for (String id : decoded.substring(colon + 1).split(",")) {
+                if (!id.isEmpty()) {
+                    ids.add(Long.valueOf(id));
+                }
+            }
+            return new RequestCursor(createdMillis, ids);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidPageRequestException("Malformed cursor");
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.wmpr.service;
+
+import com.example.wmpr.model.ServiceDeskRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The row fields a client asked for with {@code fields=}. Unrequested fields are left out of the response;
+ * like Jira's own REST API, unknown names are ignored. The key is always included as it identifies the row.
+ */
+public final class RequestFields {
+
+    public static final List<String> ALL_FIELDS = Collections.unmodifiableList(Arrays.asList(
+            "key", "summary", "reporter", "created", "status", "statusCategory"));
+
+    public static final RequestFields ALL = new RequestFields(new LinkedHashSet<>(ALL_FIELDS));
+
+    private final Set<String> fields;
+
+    private RequestFields(Set<String> fields) {
+        this.fields = Collections.unmodifiableSet(fields);
+    }
+
+    /**
+     * Parses a comma separated field list; a missing or empty list selects every field.
+     */
+    public static RequestFields parse(String fieldList) {
+        if (fieldList == null || fieldList.trim().isEmpty()) {
+            return ALL;
+        }
+        Set<String> requested = new LinkedHashSet<>();
+        requested.add("key");
+        for (String name : fieldList.split(",")) {
+            String trimmed = name.trim();
+            for (String field : ALL_FIELDS) {
+                if (field.toLowerCase(Locale.ROOT).equals(trimmed.toLowerCase(Locale.ROOT))) {
+                    requested.add(field);
+                }
+            }
+        }
+        return requested.size() == ALL_FIELDS.size() ? ALL : new RequestFields(requested);
+    }
+
+    public boolean isAll() {
+        return fields.size() == ALL_FIELDS.size();
+    }
+
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Copies the rows with unrequested fields cleared, which drops them from the JSON.
+     * Cached rows are shared by every projection, so they are never modified.
+     */
+    public List<ServiceDeskRequest> project(List<ServiceDeskRequest> requests) {
+        if (isAll()) {
+            return requests;
+        }
+        List<ServiceDeskRequest> projected = new ArrayList<>(requests.size());
+        for (ServiceDeskRequest request : requests) {
+            projected.add(new ServiceDeskRequest(
+                    request.getKey(),
+                    fields.contains("summary") ? request.getSummary() : null,
+                    fields.contains("reporter") ? request.getReporter() : null,
+                    fields.contains("created") ? request.getCreated() : null,
+                    fields.contains("status") ? request.getStatus() : null,
+                    fields.contains("statusCategory") ? request.getStatusCategory() : null));
+        }
+        return projected;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.wmpr.service;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.inject.Named;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small, bounded pool the plugin runs its searches on, so slow or expensive queries can never take more than a
+ * fixed number of threads and never hold a Tomcat request thread past its deadline. Work beyond the pool and its
+ * queue is rejected straight away instead of piling up.
+ *
+ * Searches are keyed: a search that missed a caller's deadline keeps running, and later callers for the same key
+ * join it instead of starting another copy of a query that is already known to be slow.
+ *
+ * Sized through the system properties {@code wmpr.search.threads} (default 4), {@code wmpr.search.queue}
+ * (default 50) and {@code wmpr.search.timeoutMillis} (default 5000).
+ */
+@Named
+public class SearchExecutor implements DisposableBean {
+
+    static final int THREADS = Integer.getInteger("wmpr.search.threads", 4);
+    static final int QUEUE_CAPACITY = Integer.getInteger("wmpr.search.queue", 50);
+    public static final long DEFAULT_TIMEOUT_MILLIS = Long.getLong("wmpr.search.timeoutMillis", 5_000L);
+
+    private final ThreadPoolExecutor executor;
+
+    private final Map<Object, Future<?>> running = new ConcurrentHashMap<>();
+
+    private final AtomicLong joined = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public SearchExecutor() {
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), new SearchThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts the call for the key without waiting for it, or returns the one already running for the key.
+     *
+     * @throws SearchUnavailableException right away when the pool and its queue are full
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> start(Object key, Callable<T> call) throws SearchUnavailableException {
+        Future<T> existing = (Future<T>) running.get(key);
+        if (existing != null) {
+            joined.incrementAndGet();
+            return existing;
+        }
+        FutureTask<T> task = new FutureTask<T>(call) {
+            @Override
+            protected void done() {
+                running.remove(key, this);
+            }
+        };
+        existing = (Future<T>) running.putIfAbsent(key, task);
+        if (existing != null) {
+            joined.incrementAndGet();
+            return existing;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            running.remove(key, task);
+            rejected.incrementAndGet();
+            throw new SearchUnavailableException("Search capacity exhausted", false);
+        }
+        return task;
+    }
+
+    /**
+     * Runs the call for the key on the pool and waits at most {@code timeoutMillis} for its result. Exceptions
+     * thrown by the call are rethrown as they are.
+     *
+     * @throws SearchUnavailableException when the pool is saturated or the deadline passes
+     */
+    public <T> T call(Object key, Callable<T> call, long timeoutMillis) throws Exception {
+        return await(start(key, call), timeoutMillis);
+    }
+
+    /**
+     * Waits at most {@code timeoutMillis} for a started call. On timeout the call is left running, so its result
+     * can still be used by whoever asks next.
+     */
+    public <T> T await(Future<T> future, long timeoutMillis) throws Exception {
+        try {
+            return future.get(Math.max(0L, timeoutMillis), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.incrementAndGet();
+            throw new SearchUnavailableException("Search did not complete within " + timeoutMillis + "ms", true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchUnavailableException("Interrupted while waiting for the search", false);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threads", THREADS);
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queueCapacity", QUEUE_CAPACITY);
+        stats.put("timeoutMillis", DEFAULT_TIMEOUT_MILLIS);
+        stats.put("completed", executor.getCompletedTaskCount());
+        stats.put("joined", joined.get());
+        stats.put("rejected", rejected.get());
+        stats.put("timeouts", timeouts.get());
+        return stats;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static final class SearchThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "wmpr-search-" + count.incrementAndGet());
+            // Never hold up Jira's shutdown
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.wmpr.service;
+
+/**
+ * Thrown when a search could not be run in time: the search pool was saturated, or the search missed its deadline.
+ */
+public class SearchUnavailableException extends Exception {
+
+    private final boolean timeout;
+
+    public SearchUnavailableException(String message, boolean timeout) {
+        super(message);
+        this.timeout = timeout;
+    }
+
+    /**
+     * True when the search started but missed its deadline, false when it was turned away without running.
+     */
+    public boolean isTimeout() {
+        return timeout;
+    }
+}
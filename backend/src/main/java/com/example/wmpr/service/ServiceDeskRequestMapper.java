@@ -0,0 +1,85 @@
+package com.example.wmpr.service;
+
+import com.atlassian.jira.issue.Issue;
+import com.example.wmpr.model.ServiceDeskRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps Jira issues to the rows served by the REST endpoint.
+ * Shared by the request path and the issue event listener so patched cache rows look exactly like searched ones.
+ *
+ * Only plain values are read from the issue - the issues returned by a search are backed by the index document,
+ * so key, summary, created date, reporter key and status id come straight from it. Reporters and statuses are
+ * then resolved in bulk through {@link IssueFieldLookups} instead of one user and status lookup per issue.
+ */
+@Named
+public class ServiceDeskRequestMapper {
+
+    private static final Logger log = LoggerFactory.getLogger(ServiceDeskRequestMapper.class);
+
+    private final IssueFieldLookups fieldLookups;
+
+    @Inject
+    public ServiceDeskRequestMapper(IssueFieldLookups fieldLookups) {
+        this.fieldLookups = fieldLookups;
+    }
+
+    public ServiceDeskRequest map(Issue issue) {
+        return map(issue,
+                fieldLookups.reporterNames(Collections.singleton(issue.getReporterId())),
+                fieldLookups.statuses(Collections.singleton(issue.getStatusId())));
+    }
+
+    /**
+     * Maps all issues, skipping (and logging) any issue that fails to map
+     */
+    public List<ServiceDeskRequest> mapAll(String requestId, List<Issue> issues) {
+        Set<String> reporterKeys = new HashSet<>();
+        Set<String> statusIds = new HashSet<>();
+        for (Issue issue : issues) {
+            reporterKeys.add(issue.getReporterId());
+            statusIds.add(issue.getStatusId());
+        }
+        Map<String, String> reporterNames = fieldLookups.reporterNames(reporterKeys);
+        Map<String, IssueFieldLookups.StatusInfo> statuses = fieldLookups.statuses(statusIds);
+
+        List<ServiceDeskRequest> requests = new ArrayList<>(issues.size());
+        for (int i = 0; i < issues.size(); i++) {
+            Issue issue = issues.get(i);
+            try {
+                requests.add(map(issue, reporterNames, statuses));
+            } catch (Exception e) {
+                log.warn("[{}] Error processing issue {}: {}", requestId, issue.getKey(), e.getMessage());
+            }
+        }
+        return requests;
+    }
+
+    private ServiceDeskRequest map(Issue issue, Map<String, String> reporterNames,
+                                   Map<String, IssueFieldLookups.StatusInfo> statuses) {
+        String reporter = issue.getReporterId() != null ? reporterNames.get(issue.getReporterId()) : null;
+        IssueFieldLookups.StatusInfo status = issue.getStatusId() != null ? statuses.get(issue.getStatusId()) : null;
+        if (status == null) {
+            status = IssueFieldLookups.UNKNOWN_STATUS;
+        }
+
+        ServiceDeskRequest request = new ServiceDeskRequest();
+        request.setKey(issue.getKey());
+        request.setSummary(issue.getSummary());
+        request.setReporter(reporter != null ? reporter : IssueFieldLookups.UNKNOWN_REPORTER);
+        request.setCreated(issue.getCreated() != null ? issue.getCreated().toString() : "");
+        request.setStatus(status.getName());
+        request.setStatusCategory(status.getCategoryKey());
+        return request;
+    }
+}
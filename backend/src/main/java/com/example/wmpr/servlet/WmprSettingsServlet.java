@@ -1,14 +1,23 @@
 package com.example.wmpr.servlet;
 
 import com.atlassian.jira.component.ComponentAccessor;
+import com.atlassian.jira.permission.GlobalPermissionKey;
+import com.atlassian.jira.permission.ProjectPermissions;
 import com.atlassian.jira.project.Project;
 import com.atlassian.jira.project.ProjectManager;
 import com.atlassian.jira.security.JiraAuthenticationContext;
 import com.atlassian.jira.user.ApplicationUser;
-import com.atlassian.sal.api.pluginsettings.PluginSettings;
-import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
 import com.atlassian.templaterenderer.TemplateRenderer;
+import com.example.wmpr.cluster.ProjectSettingsInvalidation;
+import com.example.wmpr.ratelimit.RateLimits;
+import com.example.wmpr.service.JqlCheck;
+import com.example.wmpr.service.JqlCostAnalyzer;
+import com.example.wmpr.settings.ProjectSettings;
+import com.example.wmpr.settings.ProjectSettingsStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.inject.Inject;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -19,8 +28,23 @@ import java.util.Map;
 
 public class WmprSettingsServlet extends HttpServlet {
     
+    private static final Logger log = LoggerFactory.getLogger(WmprSettingsServlet.class);
+    
     private static final String DEFAULT_JQL = "project = WMPR ORDER BY created DESC";
-    private static final String SETTINGS_KEY_PREFIX = "wmpr.settings.";
+    
+    private final ProjectSettingsInvalidation settingsInvalidation;
+    
+    private final JqlCostAnalyzer jqlCostAnalyzer;
+    
+    private final ProjectSettingsStore settingsStore;
+    
+    @Inject
+    public WmprSettingsServlet(ProjectSettingsInvalidation settingsInvalidation, JqlCostAnalyzer jqlCostAnalyzer,
+                               ProjectSettingsStore settingsStore) {
+        this.settingsInvalidation = settingsInvalidation;
+        this.jqlCostAnalyzer = jqlCostAnalyzer;
+        this.settingsStore = settingsStore;
+    }
     
     private TemplateRenderer getTemplateRenderer() {
         try {
@@ -33,15 +57,11 @@ public class WmprSettingsServlet extends HttpServlet {
             // Alternative approach using component manager
             return ComponentAccessor.getComponentOfType(TemplateRenderer.class);
         } catch (Exception e) {
-            System.err.println("Failed to get TemplateRenderer: " + e.getMessage());
+            log.warn("Failed to get TemplateRenderer", e);
             return null;
         }
     }
     
-    private PluginSettingsFactory getPluginSettingsFactory() {
-        return ComponentAccessor.getOSGiComponentInstanceOfType(PluginSettingsFactory.class);
-    }
-    
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         String projectKey = request.getParameter("projectKey");
@@ -68,61 +88,66 @@ public class WmprSettingsServlet extends HttpServlet {
             return;
         }
         
+        if (!canConfigure(user, project)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "Project administrator access required");
+            return;
+        }
+        
         try {
-            // Get current settings - handle both Boolean and String values for compatibility
-            PluginSettingsFactory pluginSettingsFactory = getPluginSettingsFactory();
-            PluginSettings settings = pluginSettingsFactory.createGlobalSettings();
-            String currentJql = (String) settings.get(SETTINGS_KEY_PREFIX + projectKey + ".jql");
-            
-            // Handle both Boolean and String values for useCustom setting
-            Object useCustomJqlObj = settings.get(SETTINGS_KEY_PREFIX + projectKey + ".useCustom");
-            boolean useCustomJql = false;
-            if (useCustomJqlObj instanceof Boolean) {
-                useCustomJql = (Boolean) useCustomJqlObj;
-            } else if (useCustomJqlObj instanceof String) {
-                useCustomJql = "true".equals(useCustomJqlObj);
-            }
-            
-            if (currentJql == null) {
-                currentJql = DEFAULT_JQL;
-            }
+            ProjectSettings settings = settingsStore.get(projectKey);
+            String currentJql = settings.getEffectiveJql();
+            boolean useCustomJql = settings.isUseCustomJql();
             
             // Check for success message
             boolean showSuccess = "true".equals(request.getParameter("saved"));
             
-            // Force Velocity template loading with detailed error reporting
-            try {
-                System.out.println("[WMPR-SERVLET-001] Attempting to render Velocity template...");
-                renderVelocityTemplate(response, projectKey, project.getName(), currentJql, useCustomJql, showSuccess);
-                System.out.println("[WMPR-SERVLET-002] Velocity template rendered successfully");
-            } catch (Exception velocityError) {
-                System.err.println("[WMPR-SERVLET-003] Velocity template failed: " + velocityError.getMessage());
-                velocityError.printStackTrace();
-                System.err.println("[WMPR-SERVLET-004] Falling back to HTML generation");
-                renderProjectSettingsHtml(response, projectKey, project.getName(), currentJql, useCustomJql, showSuccess);
+            // Outcome of the check made when the custom JQL was saved
+            JqlCheck jqlCheck = settings.getJqlCheck();
+            if (jqlCheck != null && !(useCustomJql && currentJql.equals(jqlCheck.getJql()))) {
+                jqlCheck = null;
             }
             
+            // The form offers the stored custom JQL even while the default is in use
+            String editableJql = settings.getCustomJql() != null ? settings.getCustomJql() : currentJql;
+            renderSettingsPage(response, projectKey, project.getName(), editableJql, useCustomJql, showSuccess,
+                    jqlCheck, settings.getRateLimits());
+            
         } catch (Exception e) {
-            System.err.println("Error in WMPR settings servlet: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error in WMPR settings servlet for project {}", projectKey, e);
             // Fallback to simple HTML if everything fails
             try {
                 renderProjectSettingsHtml(response, projectKey, project != null ? project.getName() : "Unknown", 
-                    DEFAULT_JQL, false, false);
+                    DEFAULT_JQL, false, false, null, RateLimits.of(null, null));
             } catch (IOException ioError) {
                 response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Unable to render settings page");
             }
         }
     }
     
+    private void renderSettingsPage(HttpServletResponse response, String projectKey, String projectName,
+                                    String currentJql, boolean useCustomJql, boolean showSuccess,
+                                    JqlCheck jqlCheck, RateLimits rateLimits) throws IOException {
+        // Force Velocity template loading with detailed error reporting
+        try {
+            log.debug("Attempting to render Velocity template for project {}", projectKey);
+            renderVelocityTemplate(response, projectKey, projectName, currentJql, useCustomJql, showSuccess, jqlCheck,
+                    rateLimits);
+            log.debug("Velocity template rendered successfully");
+        } catch (Exception velocityError) {
+            log.warn("Velocity template failed, falling back to HTML generation", velocityError);
+            renderProjectSettingsHtml(response, projectKey, projectName, currentJql, useCustomJql, showSuccess, jqlCheck,
+                    rateLimits);
+        }
+    }
+    
     private void renderVelocityTemplate(HttpServletResponse response, String projectKey, String projectName, 
-                                       String currentJql, boolean useCustomJql, boolean showSuccess) throws Exception {
-        System.out.println("[WMPR-SERVLET-005] Getting TemplateRenderer...");
+                                       String currentJql, boolean useCustomJql, boolean showSuccess,
+                                       JqlCheck jqlCheck, RateLimits rateLimits) throws Exception {
         TemplateRenderer templateRenderer = getTemplateRenderer();
         if (templateRenderer == null) {
             throw new Exception("TemplateRenderer not available - check OSGi component registration");
         }
-        System.out.println("[WMPR-SERVLET-006] TemplateRenderer obtained: " + templateRenderer.getClass().getName());
+        log.debug("TemplateRenderer obtained: {}", templateRenderer.getClass().getName());
         
         Map<String, Object> context = new HashMap<>();
         context.put("projectKey", projectKey);
@@ -131,22 +156,25 @@ public class WmprSettingsServlet extends HttpServlet {
         context.put("useCustomJql", useCustomJql);
         context.put("defaultJql", DEFAULT_JQL);
         context.put("showSuccess", showSuccess);
+        context.put("jqlCheck", jqlCheck);
+        context.put("rateLimits", rateLimits);
         
-        System.out.println("[WMPR-SERVLET-007] Template context prepared, rendering template...");
-        System.out.println("[WMPR-SERVLET-008] Template path: /templates/wmpr-settings.vm");
         
         response.setContentType("text/html;charset=UTF-8");
         templateRenderer.render("/templates/wmpr-settings.vm", context, response.getWriter());
     }
     
     private void renderProjectSettingsHtml(HttpServletResponse response, String projectKey, String projectName, 
-                                          String currentJql, boolean useCustomJql, boolean showSuccess) throws IOException {
+                                          String currentJql, boolean useCustomJql, boolean showSuccess,
+                                          JqlCheck jqlCheck, RateLimits rateLimits) throws IOException {
         response.setContentType("text/html;charset=UTF-8");
-        response.getWriter().write(generateProjectSettingsHtml(projectKey, projectName, currentJql, useCustomJql, showSuccess));
+        response.getWriter().write(generateProjectSettingsHtml(projectKey, projectName, currentJql, useCustomJql,
+                showSuccess, jqlCheck, rateLimits));
     }
     
     private String generateProjectSettingsHtml(String projectKey, String projectName, String currentJql, 
-                                              boolean useCustomJql, boolean showSuccess) {
+                                              boolean useCustomJql, boolean showSuccess, JqlCheck jqlCheck,
+                                              RateLimits rateLimits) {
         return "<!DOCTYPE html>\n" +
             "<html>\n" +
             "<head>\n" +
@@ -218,6 +246,22 @@ public class WmprSettingsServlet extends HttpServlet {
             "            color: white;\n" +
             "            border-color: #0052cc;\n" +
             "        }\n" +
+            "        .wmpr-error {\n" +
+            "            background: #ffebe6;\n" +
+            "            border: 1px solid #de350b;\n" +
+            "            color: #bf2600;\n" +
+            "            padding: 10px;\n" +
+            "            border-radius: 3px;\n" +
+            "            margin-bottom: 20px;\n" +
+            "        }\n" +
+            "        .wmpr-warning {\n" +
+            "            background: #fffae6;\n" +
+            "            border: 1px solid #ffab00;\n" +
+            "            color: #172b4d;\n" +
+            "            padding: 10px;\n" +
+            "            border-radius: 3px;\n" +
+            "            margin-bottom: 20px;\n" +
+            "        }\n" +
             "        .wmpr-code {\n" +
             "            background: #f8f9fa;\n" +
             "            padding: 8px;\n" +
@@ -237,6 +281,7 @@ public class WmprSettingsServlet extends HttpServlet {
             (showSuccess ? "        <div class='wmpr-success'>\n" +
             "            ✅ <strong>Settings saved successfully!</strong> Changes will take effect immediately.\n" +
             "        </div>\n" : "") +
+            generateJqlCheckHtml(jqlCheck) +
             "        \n" +
             "        <form method='post' class='aui'>\n" +
             "            <input type='hidden' name='projectKey' value='" + projectKey + "'>\n" +
@@ -260,13 +305,15 @@ public class WmprSettingsServlet extends HttpServlet {
             "                        <strong>Use Custom JQL Query</strong>\n" +
             "                    </label>\n" +
             "                    <textarea name='customJql' class='wmpr-custom-jql' placeholder='project = WMPR AND status != Done ORDER BY created DESC'>" + 
-            (useCustomJql ? currentJql : "") + "</textarea>\n" +
+            (useCustomJql || !DEFAULT_JQL.equals(currentJql) ? escapeHtml(currentJql) : "") + "</textarea>\n" +
             "                    <small>Enter your custom JQL query. Examples:<br>\n" +
             "                    • <code>project = WMPR AND status != Done ORDER BY created DESC</code><br>\n" +
             "                    • <code>project = WMPR AND reporter = currentUser() ORDER BY updated DESC</code></small>\n" +
             "                </div>\n" +
             "            </div>\n" +
             "            \n" +
+            generateRateLimitHtml(rateLimits) +
+            "            \n" +
             "            <div class='aui-buttons'>\n" +
             "                <input type='submit' value='Save Settings' class='aui-button aui-button-primary'>\n" +
             "                <a href='/plugins/servlet/project-config/" + projectKey + "' class='aui-button aui-button-link'>Cancel</a>\n" +
@@ -297,27 +344,141 @@ public class WmprSettingsServlet extends HttpServlet {
             return;
         }
         
+        // Checked before the JQL is test-run, which takes a search thread shared with the portal panels
+        Project project = ComponentAccessor.getProjectManager().getProjectByCurrentKey(projectKey);
+        if (project == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Project not found");
+            return;
+        }
+        
+        // The JQL and the rate limits decide what every portal user sees and how often they may ask for it
+        if (!canConfigure(user, project)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "Project administrator access required");
+            return;
+        }
+        
         try {
-            // Save settings - use strings instead of Boolean objects
-            PluginSettingsFactory pluginSettingsFactory = getPluginSettingsFactory();
-            PluginSettings settings = pluginSettingsFactory.createGlobalSettings();
-            boolean useCustom = "custom".equals(jqlOption);
+            ProjectSettings settings = settingsStore.get(projectKey);
+            boolean useCustom = "custom".equals(jqlOption) && customJql != null && !customJql.trim().isEmpty();
+            Integer userPerMinute;
+            Integer ipPerMinute;
+            try {
+                userPerMinute = parseRate(request.getParameter("userRequestsPerMinute"));
+                ipPerMinute = parseRate(request.getParameter("ipRequestsPerMinute"));
+            } catch (NumberFormatException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Rate limits must be whole numbers of 0 or more");
+                return;
+            }
+            String previousJql = settings.getEffectiveJql();
             
-            // Save as strings to avoid Boolean serialization issues
-            settings.put(SETTINGS_KEY_PREFIX + projectKey + ".useCustom", String.valueOf(useCustom));
+            // Custom JQL is parsed and test-run before it is saved, so a broken or runaway query never reaches the panel
+            JqlCheck jqlCheck = useCustom ? jqlCostAnalyzer.check(user, customJql.trim()) : null;
+            if (jqlCheck != null && jqlCheck.isBlocked()) {
+                log.info("Rejected JQL for project {}: {}", projectKey, jqlCheck.getErrors());
+                renderSettingsPage(response, projectKey, project.getName(), customJql.trim(), true, false, jqlCheck,
+                        settings.getRateLimits());
+                return;
+            }
             
-            if (useCustom && customJql != null && !customJql.trim().isEmpty()) {
-                settings.put(SETTINGS_KEY_PREFIX + projectKey + ".jql", customJql.trim());
-            } else {
-                settings.put(SETTINGS_KEY_PREFIX + projectKey + ".jql", DEFAULT_JQL);
+            // Choosing the default keeps the custom JQL (the form disables its field then), so switching back
+            // restores it; its check only stays with the JQL it was made for
+            String keptJql = customJql != null && !customJql.trim().isEmpty()
+                    ? customJql.trim() : settings.getCustomJql();
+            if (!useCustom) {
+                JqlCheck storedCheck = settings.getJqlCheck();
+                jqlCheck = storedCheck != null && storedCheck.getJql().equals(keptJql) ? storedCheck : null;
             }
+
+            // One record per project, stored as the next version
+            settingsStore.save(settings.withJql(useCustom, keptJql, jqlCheck)
+                    .withRateLimits(userPerMinute, ipPerMinute));
+            
+            // Drop the cached configuration and results for both the old and the new query
+            // on every node so the change shows up immediately
+            settingsInvalidation.settingsSaved(projectKey, previousJql);
             
             // Fixed redirect URL to match servlet URL pattern
             response.sendRedirect("/plugins/servlet/wmpr-settings?projectKey=" + projectKey + "&saved=true");
         } catch (Exception e) {
-            System.err.println("Error saving WMPR settings: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error saving WMPR settings for project {}", projectKey, e);
             response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Error saving settings: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Project administrators of the project, and Jira administrators for any project
+     */
+    private static boolean canConfigure(ApplicationUser user, Project project) {
+        if (project != null && ComponentAccessor.getPermissionManager()
+                .hasPermission(ProjectPermissions.ADMINISTER_PROJECTS, project, user)) {
+            return true;
+        }
+        return ComponentAccessor.getGlobalPermissionManager().hasPermission(GlobalPermissionKey.ADMINISTER, user);
+    }
+    
+    /**
+     * Blank means the default rate, so only limits an administrator actually set are stored
+     */
+    private static Integer parseRate(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        int rate = Integer.parseInt(value.trim());
+        if (rate < 0) {
+            throw new NumberFormatException("Negative rate: " + rate);
+        }
+        return rate;
+    }
+    
+    /**
+     * Per-user and per-address request limits of the fallback form
+     */
+    private static String generateRateLimitHtml(RateLimits rateLimits) {
+        return "            <div class='wmpr-form-group'>\n" +
+            "                <label>Request Rate Limits:</label>\n" +
+            "                <p>Requests per minute allowed against this project's panel. Leave blank for the default, 0 for unlimited.\n" +
+            "                Client addresses are only limited once the load balancers in front of Jira are listed in\n" +
+            "                <code>-Dwmpr.rateLimit.trustedProxies</code>.</p>\n" +
+            "                <label>Per user <input type='number' min='0' name='userRequestsPerMinute' value='" +
+            rateLimits.getUserPerMinute() + "' placeholder='" + RateLimits.DEFAULT_USER_PER_MINUTE + "'></label>\n" +
+            "                <label>Per client address <input type='number' min='0' name='ipRequestsPerMinute' value='" +
+            rateLimits.getIpPerMinute() + "' placeholder='" + RateLimits.DEFAULT_IP_PER_MINUTE + "'></label>\n" +
+            "            </div>\n";
+    }
+    
+    /**
+     * Errors, warnings and test-run cost of the last JQL check, as shown above the form
+     */
+    private static String generateJqlCheckHtml(JqlCheck jqlCheck) {
+        if (jqlCheck == null) {
+            return "";
+        }
+        StringBuilder html = new StringBuilder();
+        if (jqlCheck.isBlocked()) {
+            html.append("        <div class='wmpr-error'>\n")
+                .append("            <strong>The JQL was not saved.</strong>\n            <ul>\n");
+            for (String error : jqlCheck.getErrors()) {
+                html.append("                <li>").append(escapeHtml(error)).append("</li>\n");
+            }
+            html.append("            </ul>\n        </div>\n");
+        }
+        if (!jqlCheck.getWarnings().isEmpty()) {
+            html.append("        <div class='wmpr-warning'>\n")
+                .append("            <strong>This query may be expensive:</strong>\n            <ul>\n");
+            for (String warning : jqlCheck.getWarnings()) {
+                html.append("                <li>").append(escapeHtml(warning)).append("</li>\n");
+            }
+            html.append("            </ul>\n        </div>\n");
+        }
+        if (jqlCheck.getExecutionMillis() >= 0) {
+            html.append("        <p><small>Test run: ").append(jqlCheck.getMatchCount()).append(" matching issues in ")
+                .append(jqlCheck.getExecutionMillis()).append("ms</small></p>\n");
+        }
+        return html.toString();
+    }
+    
+    private static String escapeHtml(String value) {
+        return value == null ? "" : value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                .replace("\"", "&quot;").replace("'", "&#39;");
+    }
+}
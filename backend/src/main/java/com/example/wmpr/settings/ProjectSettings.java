@@ -0,0 +1,200 @@
+package com.example.wmpr.settings;
+
+import com.example.wmpr.ratelimit.RateLimits;
+import com.example.wmpr.service.JqlCheck;
+import com.example.wmpr.service.RecentRequestsService;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Everything configured for one project, stored as a single plugin settings record. The version goes up with
+ * every save, so whatever is derived from the settings can tell whether it is still current by comparing it.
+ */
+public final class ProjectSettings {
+
+    private static final String VERSION = "version";
+    private static final String USE_CUSTOM = "useCustom";
+    private static final String JQL = "jql";
+    private static final String USER_PER_MINUTE = "userPerMinute";
+    private static final String IP_PER_MINUTE = "ipPerMinute";
+    // The JQL check is stored flat, its fields prefixed with this
+    private static final String CHECK_PREFIX = "check.";
+
+    private final String projectKey;
+    private final long version;
+    private final boolean useCustomJql;
+    private final String customJql;
+    private final JqlCheck jqlCheck;
+    private final Integer userPerMinute;
+    private final Integer ipPerMinute;
+    private final RateLimits rateLimits;
+    private final long loadedAt;
+
+    ProjectSettings(String projectKey, long version, boolean useCustomJql, String customJql, JqlCheck jqlCheck,
+                    Integer userPerMinute, Integer ipPerMinute, long loadedAt) {
+        this.projectKey = projectKey;
+        this.version = version;
+        this.useCustomJql = useCustomJql;
+        this.customJql = customJql;
+        this.jqlCheck = jqlCheck;
+        this.userPerMinute = userPerMinute;
+        this.ipPerMinute = ipPerMinute;
+        this.rateLimits = RateLimits.of(userPerMinute, ipPerMinute);
+        this.loadedAt = loadedAt;
+    }
+
+    /**
+     * Settings of a project nobody has configured: the default JQL and limits, version 0.
+     */
+    public static ProjectSettings defaults(String projectKey) {
+        return new ProjectSettings(projectKey, 0L, false, null, null, null, null, System.currentTimeMillis());
+    }
+
+    /**
+     * Copy with new JQL settings. The custom JQL and its check are stored even while the default query is in use,
+     * so switching back to the custom query doesn't lose it.
+     */
+    public ProjectSettings withJql(boolean useCustom, String jql, JqlCheck check) {
+        return new ProjectSettings(projectKey, version, useCustom, jql, check, userPerMinute, ipPerMinute, loadedAt);
+    }
+
+    /**
+     * Copy with new rate limits; null keeps the default.
+     */
+    public ProjectSettings withRateLimits(Integer userRequestsPerMinute, Integer ipRequestsPerMinute) {
+        return new ProjectSettings(projectKey, version, useCustomJql, customJql, jqlCheck, userRequestsPerMinute,
+                ipRequestsPerMinute, loadedAt);
+    }
+
+    ProjectSettings withVersion(long newVersion, long now) {
+        return new ProjectSettings(projectKey, newVersion, useCustomJql, customJql, jqlCheck, userPerMinute,
+                ipPerMinute, now);
+    }
+
+    public String getProjectKey() {
+        return projectKey;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isUseCustomJql() {
+        return useCustomJql;
+    }
+
+    /**
+     * The custom JQL, whether or not it is in use, or null when none was ever saved.
+     */
+    public String getCustomJql() {
+        return customJql;
+    }
+
+    /**
+     * The JQL the project's requests are searched with: the custom JQL when one is in use, otherwise the default.
+     */
+    public String getEffectiveJql() {
+        return useCustomJql && customJql != null && !customJql.trim().isEmpty()
+                ? customJql : RecentRequestsService.DEFAULT_JQL;
+    }
+
+    /**
+     * Outcome of the check made when the custom JQL was saved, or null.
+     */
+    public JqlCheck getJqlCheck() {
+        return jqlCheck;
+    }
+
+    public Integer getUserPerMinute() {
+        return userPerMinute;
+    }
+
+    public Integer getIpPerMinute() {
+        return ipPerMinute;
+    }
+
+    public RateLimits getRateLimits() {
+        return rateLimits;
+    }
+
+    long getLoadedAt() {
+        return loadedAt;
+    }
+
+    boolean isConfigured() {
+        return version > 0L;
+    }
+
+    Map<String, String> toSettings() {
+        Map<String, String> settings = new HashMap<>();
+        settings.put(VERSION, String.valueOf(version));
+        settings.put(USE_CUSTOM, String.valueOf(useCustomJql));
+        if (customJql != null) {
+            settings.put(JQL, customJql);
+        }
+        if (jqlCheck != null) {
+            for (Map.Entry<String, String> entry : jqlCheck.toSettings().entrySet()) {
+                settings.put(CHECK_PREFIX + entry.getKey(), entry.getValue());
+            }
+        }
+        if (userPerMinute != null) {
+            settings.put(USER_PER_MINUTE, String.valueOf(userPerMinute));
+        }
+        if (ipPerMinute != null) {
+            settings.put(IP_PER_MINUTE, String.valueOf(ipPerMinute));
+        }
+        return settings;
+    }
+
+    /**
+     * Reads a record stored with {@link #toSettings()}; unreadable values fall back to their defaults.
+     */
+    static ProjectSettings fromSettings(String projectKey, Map<?, ?> settings, long now) {
+        Map<String, String> check = new HashMap<>();
+        for (Map.Entry<?, ?> entry : settings.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            if (key.startsWith(CHECK_PREFIX) && entry.getValue() instanceof String) {
+                check.put(key.substring(CHECK_PREFIX.length()), (String) entry.getValue());
+            }
+        }
+        return new ProjectSettings(projectKey, number(settings.get(VERSION), 0L),
+                "true".equals(settings.get(USE_CUSTOM)), string(settings.get(JQL)),
+                check.isEmpty() ? null : JqlCheck.fromSettings(check),
+                rate(settings.get(USER_PER_MINUTE)), rate(settings.get(IP_PER_MINUTE)), now);
+    }
+
+    /**
+     * Builds version 1 from the separate keys used before records existed; {@code useCustom} was stored as a
+     * Boolean by some versions and as a String by others.
+     */
+    static ProjectSettings fromLegacy(String projectKey, Object useCustom, Object jql, Object check,
+                                      Object rateLimit, long now) {
+        boolean useCustomJql = useCustom instanceof Boolean ? (Boolean) useCustom : "true".equals(useCustom);
+        Integer user = null;
+        Integer ip = null;
+        if (rateLimit instanceof Map) {
+            user = rate(((Map<?, ?>) rateLimit).get(USER_PER_MINUTE));
+            ip = rate(((Map<?, ?>) rateLimit).get(IP_PER_MINUTE));
+        }
+        return new ProjectSettings(projectKey, 1L, useCustomJql, string(jql), JqlCheck.fromSettings(check), user, ip,
+                now);
+    }
+
+    private static String string(Object value) {
+        return value instanceof String ? (String) value : null;
+    }
+
+    private static long number(Object value, long defaultValue) {
+        try {
+            return value instanceof String ? Long.parseLong(((String) value).trim()) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static Integer rate(Object value) {
+        long rate = number(value, -1L);
+        return rate < 0 || rate > Integer.MAX_VALUE ? null : (int) rate;
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.wmpr.settings;
+
+import com.atlassian.jira.project.Project;
+import com.atlassian.jira.project.ProjectManager;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.example.wmpr.service.RecentRequestsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads and writes {@link ProjectSettings}, one plugin settings record per project under
+ * {@code wmpr.settings.<key>}, plus an index of the configured projects. Every configured project is loaded
+ * once at startup and then served from memory; records are re-read after a few minutes in case a save on
+ * another node was missed.
+ *
+ * Projects configured before records existed kept their settings in separate {@code .useCustom}, {@code .jql},
+ * {@code .jqlCheck} and {@code .rateLimit} keys. Those are moved into records once at startup, and any left
+ * over are moved the first time the project is read.
+ */
+@Named
+public class ProjectSettingsStore implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ProjectSettingsStore.class);
+
+    static final String KEY_PREFIX = RecentRequestsService.SETTINGS_KEY_PREFIX;
+    // Project keys are upper case, so these can't clash with a project's record
+    static final String INDEX_KEY = KEY_PREFIX + "index";
+    static final String FORMAT_KEY = KEY_PREFIX + "format";
+    static final String RECORD_FORMAT = "2";
+    static final long TTL_MILLIS = 5 * 60_000L;
+
+    private static final String[] LEGACY_SUFFIXES = {".useCustom", ".jql", ".jqlCheck", ".rateLimit"};
+
+    // Calls without a project use the defaults
+    private static final String NO_PROJECT = "";
+
+    @ComponentImport
+    private final PluginSettingsFactory pluginSettingsFactory;
+
+    @JiraImport
+    private final ProjectManager projectManager;
+
+    private final Map<String, ProjectSettings> records = new ConcurrentHashMap<>();
+    private final Set<String> configured = new ConcurrentSkipListSet<>();
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong saves = new AtomicLong();
+    private final AtomicLong migrated = new AtomicLong();
+
+    @Inject
+    public ProjectSettingsStore(PluginSettingsFactory pluginSettingsFactory, ProjectManager projectManager) {
+        this.pluginSettingsFactory = pluginSettingsFactory;
+        this.projectManager = projectManager;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            PluginSettings settings = pluginSettingsFactory.createGlobalSettings();
+            if (!RECORD_FORMAT.equals(settings.get(FORMAT_KEY))) {
+                migrateAll(settings);
+            }
+            long now = System.currentTimeMillis();
+            for (String projectKey : index(settings)) {
+                records.put(projectKey, load(settings, projectKey, now));
+            }
+            log.info("Loaded the settings of {} configured projects", configured.size());
+        } catch (RuntimeException e) {
+            // Projects are then loaded one by one as they are read
+            log.warn("Could not load project settings at startup", e);
+        }
+    }
+
+    /**
+     * The settings of the project, or the defaults for a project nobody configured, a project that doesn't exist
+     * or a null key. Only the first are kept, so made-up keys cost neither a read nor memory.
+     */
+    public ProjectSettings get(String projectKey) {
+        String key = projectKey == null ? NO_PROJECT : projectKey.trim();
+        ProjectSettings cached = records.get(key);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.getLoadedAt() < TTL_MILLIS) {
+            return cached;
+        }
+        if (cached == null && !key.isEmpty() && projectManager.getProjectByCurrentKey(key) == null) {
+            // Keys come from clients, so only projects that exist get a record of their own
+            return ProjectSettings.defaults(key);
+        }
+        ProjectSettings loaded;
+        try {
+            loaded = key.isEmpty() ? ProjectSettings.defaults(NO_PROJECT)
+                    : load(pluginSettingsFactory.createGlobalSettings(), key, now);
+        } catch (RuntimeException e) {
+            log.warn("Could not read the settings of project {}: {}", key, e.getMessage());
+            // Keep serving what we had rather than switching the project to the defaults
+            loaded = cached != null ? cached.withVersion(cached.getVersion(), now) : ProjectSettings.defaults(key);
+        }
+        records.put(key, loaded);
+        return loaded;
+    }
+
+    /**
+     * Stores the settings as the next version of the project's record and returns what was stored.
+     *
+     * @throws IllegalArgumentException when no project has the key, as only projects that exist get a record
+     */
+    public ProjectSettings save(ProjectSettings settings) {
+        String projectKey = settings.getProjectKey();
+        if (projectKey == null || projectManager.getProjectByCurrentKey(projectKey) == null) {
+            throw new IllegalArgumentException("No project with key " + projectKey);
+        }
+        PluginSettings pluginSettings = pluginSettingsFactory.createGlobalSettings();
+        long now = System.currentTimeMillis();
+        // Read the stored version rather than ours, which may be behind a save made on another node
+        long storedVersion = Math.max(settings.getVersion(), load(pluginSettings, projectKey, now).getVersion());
+        ProjectSettings saved = settings.withVersion(storedVersion + 1, now);
+        pluginSettings.put(KEY_PREFIX + projectKey, saved.toSettings());
+        addToIndex(pluginSettings, projectKey);
+        records.put(projectKey, saved);
+        saves.incrementAndGet();
+        return saved;
+    }
+
+    /**
+     * Forgets the project's settings, so the next read loads them again; for saves made on another node.
+     */
+    public void invalidate(String projectKey) {
+        if (projectKey != null) {
+            records.remove(projectKey.trim());
+        }
+    }
+
+    /**
+     * Keys of every project that has settings of its own, sorted.
+     */
+    public List<String> getConfiguredProjects() {
+        return new ArrayList<>(configured);
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("configuredProjects", configured.size());
+        stats.put("loaded", records.size());
+        stats.put("loads", loads.get());
+        stats.put("saves", saves.get());
+        stats.put("migrated", migrated.get());
+        return stats;
+    }
+
+    private ProjectSettings load(PluginSettings settings, String projectKey, long now) {
+        loads.incrementAndGet();
+        Object stored = settings.get(KEY_PREFIX + projectKey);
+        ProjectSettings loaded;
+        if (stored instanceof Map) {
+            loaded = ProjectSettings.fromSettings(projectKey, (Map<?, ?>) stored, now);
+        } else {
+            loaded = migrate(settings, projectKey, now);
+        }
+        if (loaded.isConfigured()) {
+            configured.add(projectKey);
+        }
+        return loaded;
+    }
+
+    /**
+     * Moves the project's separate keys into a record, or returns the defaults when it has none.
+     */
+    private ProjectSettings migrate(PluginSettings settings, String projectKey, long now) {
+        Object[] legacy = new Object[LEGACY_SUFFIXES.length];
+        boolean found = false;
+        for (int i = 0; i < LEGACY_SUFFIXES.length; i++) {
+            legacy[i] = settings.get(KEY_PREFIX + projectKey + LEGACY_SUFFIXES[i]);
+            found |= legacy[i] != null;
+        }
+        if (!found) {
+            return ProjectSettings.defaults(projectKey);
+        }
+        ProjectSettings migratedSettings = ProjectSettings.fromLegacy(projectKey, legacy[0], legacy[1], legacy[2],
+                legacy[3], now);
+        settings.put(KEY_PREFIX + projectKey, migratedSettings.toSettings());
+        addToIndex(settings, projectKey);
+        for (String suffix : LEGACY_SUFFIXES) {
+            settings.remove(KEY_PREFIX + projectKey + suffix);
+        }
+        migrated.incrementAndGet();
+        log.info("Moved the settings of project {} into a single record", projectKey);
+        return migratedSettings;
+    }
+
+    /**
+     * Looks for separate keys of every project once; projects added later can only have records.
+     */
+    private void migrateAll(PluginSettings settings) {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (Project project : projectManager.getProjectObjects()) {
+            if (!(settings.get(KEY_PREFIX + project.getKey()) instanceof Map)
+                    && migrate(settings, project.getKey(), now).isConfigured()) {
+                count++;
+            }
+        }
+        settings.put(FORMAT_KEY, RECORD_FORMAT);
+        log.info("Moved the settings of {} projects into records", count);
+    }
+
+    private List<String> index(PluginSettings settings) {
+        Object stored = settings.get(INDEX_KEY);
+        if (!(stored instanceof List)) {
+            return Collections.emptyList();
+        }
+        List<String> projectKeys = new ArrayList<>();
+        for (Object projectKey : (List<?>) stored) {
+            projectKeys.add(String.valueOf(projectKey));
+        }
+        return projectKeys;
+    }
+
+    private void addToIndex(PluginSettings settings, String projectKey) {
+        Set<String> projectKeys = new TreeSet<>(index(settings));
+        if (projectKeys.add(projectKey)) {
+            settings.put(INDEX_KEY, new ArrayList<>(projectKeys));
+        }
+        configured.add(projectKey);
+    }
+}
@@ -0,0 +1,399 @@
+package com.example.wmpr.typeahead;
+
+import com.atlassian.query.Query;
+import com.example.wmpr.cache.QueryScope;
+import com.example.wmpr.service.ProjectJqlConfig;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Prefix index over the key and summary of the requests one project's JQL matches. Summaries are split into
+ * lower-cased words (hyphenated words also under each part) and keys are indexed whole and by their number, so
+ * {@code WMPR-12}, {@code 12} and {@code print} each find {@code WMPR-123 Printer offline}. Words are kept in a
+ * sorted dictionary, so every word starting with a typed prefix is one range of it.
+ *
+ * Holds at most {@code maxRequests} requests; when there are more, the oldest are left out and the index is
+ * marked incomplete. Lookups take a read lock and changes a write lock.
+ */
+final class ProjectRequestIndex {
+
+    // The order matches are ranked in, and the oldest are dropped from the end of
+    private static final Comparator<IndexedRequest> NEWEST_FIRST = (a, b) -> a.created != b.created
+            ? Long.compare(b.created, a.created)
+            : Long.compare(b.id, a.id);
+
+    // Rough heap cost of the structures per request, per word and per posting, for the statistics
+    private static final int REQUEST_BYTES = 120;
+    private static final int WORD_BYTES = 120;
+    private static final int POSTING_BYTES = 4;
+
+    private final String projectKey;
+    private final String jql;
+    private final long settingsVersion;
+    private final Query query;
+    private final QueryScope scope;
+    private final int maxRequests;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, IndexedRequest> byKey = new HashMap<>();
+    private final NavigableSet<IndexedRequest> byRecency = new TreeSet<>(NEWEST_FIRST);
+    private final TreeMap<String, Postings> words = new TreeMap<>();
+    private long postings;
+    private boolean truncated;
+
+    // Keys changed by events while the index was being built, checked again once it is
+    private final Set<String> touched = new HashSet<>();
+
+    private volatile long lastReadAt;
+    private volatile boolean stale;
+    private volatile long builtAt;
+
+    ProjectRequestIndex(String projectKey, ProjectJqlConfig config, int maxRequests, long now) {
+        this.projectKey = projectKey;
+        this.jql = config.getExecutedJql();
+        this.settingsVersion = config.getSettingsVersion();
+        this.query = config.getQuery();
+        this.scope = QueryScope.of(query, jql);
+        this.maxRequests = maxRequests;
+        this.lastReadAt = now;
+    }
+
+    /**
+     * Splits typed text the way summaries are split, dropping duplicates and words that are a prefix of another
+     * one, as those can't narrow the matches any further.
+     */
+    static List<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text != null) {
+            addWords(text.toLowerCase(Locale.ROOT), tokens, false);
+        }
+        List<String> result = new ArrayList<>(tokens);
+        result.removeIf(token -> tokens.stream().anyMatch(other -> !other.equals(token) && other.startsWith(token)));
+        return result;
+    }
+
+    String getProjectKey() {
+        return projectKey;
+    }
+
+    Query getQuery() {
+        return query;
+    }
+
+    QueryScope getScope() {
+        return scope;
+    }
+
+    /**
+     * Whether the index covers what the configuration asks for.
+     */
+    boolean indexes(ProjectJqlConfig config) {
+        return settingsVersion == config.getSettingsVersion() && jql.equals(config.getExecutedJql());
+    }
+
+    void markRead(long now) {
+        lastReadAt = now;
+    }
+
+    long getLastReadAt() {
+        return lastReadAt;
+    }
+
+    /**
+     * Whether an event could not be applied, so only a rebuild makes the index right again.
+     */
+    boolean isStale() {
+        return stale;
+    }
+
+    void markStale() {
+        stale = true;
+    }
+
+    long getBuiltAt() {
+        return builtAt;
+    }
+
+    void built(long now) {
+        builtAt = now;
+    }
+
+    /**
+     * Whether requests were left out because the project has more than the index may hold.
+     */
+    boolean isTruncated() {
+        lock.readLock().lock();
+        try {
+            return truncated;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return byKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long estimateBytes() {
+        lock.readLock().lock();
+        try {
+            long wordChars = 0L;
+            for (String word : words.keySet()) {
+                wordChars += word.length();
+            }
+            return (long) byKey.size() * REQUEST_BYTES + (long) words.size() * WORD_BYTES + wordChars * 2
+                    + postings * POSTING_BYTES;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean contains(String issueKey) {
+        lock.readLock().lock();
+        try {
+            return byKey.containsKey(issueKey);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds or re-indexes the request.
+     */
+    void put(String issueKey, long issueId, long createdMillis, String summary) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(issueKey);
+            IndexedRequest request = new IndexedRequest(issueKey, issueId, createdMillis);
+            if (byRecency.size() >= maxRequests && NEWEST_FIRST.compare(request, byRecency.last()) > 0) {
+                truncated = true;
+                return;
+            }
+            Set<String> requestWords = new LinkedHashSet<>();
+            String lowerKey = issueKey.toLowerCase(Locale.ROOT);
+            requestWords.add(lowerKey);
+            int dash = lowerKey.lastIndexOf('-');
+            if (dash >= 0 && dash < lowerKey.length() - 1) {
+                requestWords.add(lowerKey.substring(dash + 1));
+            }
+            if (summary != null) {
+                addWords(summary.toLowerCase(Locale.ROOT), requestWords, true);
+            }
+            request.words = new String[requestWords.size()];
+            int i = 0;
+            for (String word : requestWords) {
+                Postings wordPostings = words.computeIfAbsent(word, Postings::new);
+                wordPostings.add(request);
+                // The dictionary's copy, so requests sharing a word share its string
+                request.words[i++] = wordPostings.word;
+            }
+            postings += request.words.length;
+            byKey.put(issueKey, request);
+            byRecency.add(request);
+            if (byRecency.size() > maxRequests) {
+                removeLocked(byRecency.last().key);
+                truncated = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String issueKey) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(issueKey);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Keys of the requests having, for every token, a word starting with it, newest first.
+     *
+     * @param tokens as returned by {@link #tokenize(String)}
+     */
+    List<String> search(List<String> tokens, int max) {
+        if (tokens.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // Longer prefixes match fewer words, so the longest token picks the candidates and the others filter them
+        String longest = tokens.get(0);
+        for (String token : tokens) {
+            if (token.length() > longest.length()) {
+                longest = token;
+            }
+        }
+        lock.readLock().lock();
+        try {
+            Collection<Postings> matchingWords = words.subMap(longest, true, longest + Character.MAX_VALUE, false)
+                    .values();
+            // A request is listed under every word of it that starts with the prefix
+            Set<IndexedRequest> candidates = new HashSet<>();
+            List<IndexedRequest> matches = new ArrayList<>();
+            for (Postings wordPostings : matchingWords) {
+                for (int i = 0; i < wordPostings.size; i++) {
+                    IndexedRequest request = wordPostings.requests[i];
+                    if (candidates.add(request) && request.matchesAll(tokens)) {
+                        matches.add(request);
+                    }
+                }
+            }
+            matches.sort(NEWEST_FIRST);
+            List<String> keys = new ArrayList<>(Math.min(max, matches.size()));
+            for (int i = 0; i < matches.size() && i < max; i++) {
+                keys.add(matches.get(i).key);
+            }
+            return keys;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    synchronized void touch(String issueKey) {
+        touched.add(issueKey);
+    }
+
+    synchronized Set<String> takeTouched() {
+        Set<String> keys = new HashSet<>(touched);
+        touched.clear();
+        return keys;
+    }
+
+    private void removeLocked(String issueKey) {
+        IndexedRequest request = byKey.remove(issueKey);
+        if (request == null) {
+            return;
+        }
+        byRecency.remove(request);
+        for (String word : request.words) {
+            Postings wordPostings = words.get(word);
+            if (wordPostings != null && wordPostings.remove(request) && wordPostings.size == 0) {
+                words.remove(word);
+            }
+        }
+        postings -= request.words.length;
+    }
+
+    /**
+     * Runs of letters, digits and hyphens; with {@code andParts}, hyphenated runs also add each part.
+     */
+    private static void addWords(String text, Set<String> words, boolean andParts) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            boolean wordChar = Character.isLetterOrDigit(c) || c == '-';
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                addWord(text.substring(start, i), words, andParts);
+                start = -1;
+            }
+        }
+    }
+
+    private static void addWord(String run, Set<String> words, boolean andParts) {
+        int from = 0;
+        int to = run.length();
+        while (from < to && run.charAt(from) == '-') {
+            from++;
+        }
+        while (to > from && run.charAt(to - 1) == '-') {
+            to--;
+        }
+        if (from == to) {
+            return;
+        }
+        String word = run.substring(from, to);
+        words.add(word);
+        if (andParts && word.indexOf('-') >= 0) {
+            for (String part : word.split("-")) {
+                if (!part.isEmpty()) {
+                    words.add(part);
+                }
+            }
+        }
+    }
+
+    private static final class IndexedRequest {
+        final String key;
+        final long id;
+        final long created;
+        String[] words;
+
+        IndexedRequest(String key, long id, long created) {
+            this.key = key;
+            this.id = id;
+            this.created = created;
+        }
+
+        boolean matchesAll(List<String> tokens) {
+            for (String token : tokens) {
+                boolean found = false;
+                for (String word : words) {
+                    if (word.startsWith(token)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The requests having one word, in no particular order.
+     */
+    private static final class Postings {
+        final String word;
+        IndexedRequest[] requests = new IndexedRequest[2];
+        int size;
+
+        Postings(String word) {
+            this.word = word;
+        }
+
+        void add(IndexedRequest request) {
+            if (size == requests.length) {
+                IndexedRequest[] grown = new IndexedRequest[size + (size >> 1) + 1];
+                System.arraycopy(requests, 0, grown, 0, size);
+                requests = grown;
+            }
+            requests[size++] = request;
+        }
+
+        boolean remove(IndexedRequest request) {
+            for (int i = 0; i < size; i++) {
+                if (requests[i] == request) {
+                    requests[i] = requests[--size];
+                    requests[size] = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package com.example.wmpr.typeahead;
+
+import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.IssueManager;
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.jql.builder.JqlQueryBuilder;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.web.bean.PagerFilter;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.atlassian.query.Query;
+import com.atlassian.query.order.SortOrder;
+import com.example.wmpr.model.ServiceDeskRequest;
+import com.example.wmpr.service.InvalidJqlException;
+import com.example.wmpr.service.IssueChangeQueue;
+import com.example.wmpr.service.ProjectJqlConfig;
+import com.example.wmpr.service.ProjectJqlConfigCache;
+import com.example.wmpr.service.SearchExecutor;
+import com.example.wmpr.service.SearchUnavailableException;
+import com.example.wmpr.service.ServiceDeskRequestMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Type-ahead over the key and summary of each project's requests, answered from an in-memory prefix index
+ * (see {@link ProjectRequestIndex}) instead of a text search per keystroke.
+ *
+ * A project is indexed in the background once someone searched it: the next run of {@link TypeaheadIndexJob}
+ * pages through its matching issues, newest first, ignoring permissions. Searches until then are turned away, as
+ * paging through a project is far too much work for a keystroke.
+ * {@link com.example.wmpr.listener.WmprIssueEventListener} reports every change after that; changes are noted on
+ * the thread making them and applied in batches on the search pool, with one search per index and batch telling
+ * which of the issues whose change touches a field the JQL filters on still match. {@link TypeaheadIndexJob}
+ * rebuilds indexes events could not keep right and, every {@code wmpr.typeahead.rebuildMillis} (default one hour),
+ * every index, and drops projects nobody searched for a day.
+ *
+ * All indexes together hold at most {@code wmpr.typeahead.maxRequests} requests (default 10000); the projects
+ * searched least recently are dropped to make room. As the index ignores permissions, its matches are narrowed
+ * to what the user may see by searches on their keys, which only look up key terms; these run on the request
+ * thread, so keystrokes never queue on the search pool, a batch of keys at a time until enough are found, for at
+ * most {@link #MAX_CANDIDATES} matches and half the search deadline. When they stop short the result is marked
+ * incomplete.
+ */
+@Named
+public class TypeaheadIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(TypeaheadIndex.class);
+
+    public static final int MAX_LIMIT = 50;
+
+    // Searches without a project key use the default JQL, like /recent
+    private static final String NO_PROJECT = "";
+
+    static final int PAGE_SIZE = 1000;
+    static final long IDLE_MILLIS = 24 * 60 * 60_000L;
+    static final long REBUILD_MILLIS = Long.getLong("wmpr.typeahead.rebuildMillis", 60 * 60_000L);
+    static final int MAX_REQUESTS = Integer.getInteger("wmpr.typeahead.maxRequests", 10_000);
+
+    // Matches checked for visibility per search, at most per lookup, and for how long
+    static final int VISIBILITY_BATCH = 50;
+    static final int MAX_CANDIDATES = 500;
+    static final long VISIBILITY_MILLIS = SearchExecutor.DEFAULT_TIMEOUT_MILLIS / 2;
+    static final int EVENT_BATCH_SIZE = 200;
+
+    @JiraImport
+    private final SearchService searchService;
+
+    @JiraImport
+    private final IssueManager issueManager;
+
+    private final ProjectJqlConfigCache jqlConfigCache;
+
+    private final ServiceDeskRequestMapper requestMapper;
+
+    private final SearchExecutor searchExecutor;
+
+    private final Map<String, ProjectRequestIndex> indexes = new ConcurrentHashMap<>();
+    // Indexes whose issues are still being searched; events only note the keys they touch
+    private final Map<String, ProjectRequestIndex> building = new ConcurrentHashMap<>();
+    // Projects searched without an index, for the next run of the job to index
+    private final Set<String> requested = ConcurrentHashMap.newKeySet();
+
+    // Changes noted by events, applied in batches on the search pool
+    private final IssueChangeQueue changes;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong eventsApplied = new AtomicLong();
+    private final AtomicLong membershipChecks = new AtomicLong();
+
+    @Inject
+    public TypeaheadIndex(SearchService searchService,
+                          IssueManager issueManager,
+                          ProjectJqlConfigCache jqlConfigCache,
+                          ServiceDeskRequestMapper requestMapper,
+                          SearchExecutor searchExecutor) {
+        this.searchService = searchService;
+        this.issueManager = issueManager;
+        this.jqlConfigCache = jqlConfigCache;
+        this.requestMapper = requestMapper;
+        this.searchExecutor = searchExecutor;
+        this.changes = new IssueChangeQueue("typeahead-events", searchExecutor, EVENT_BATCH_SIZE, this::applyChanges);
+    }
+
+    /**
+     * Up to {@code limit} requests of the project (of the default JQL when it is null) the user may see whose key
+     * or summary has a word starting with each word of the text.
+     *
+     * @throws SearchUnavailableException when nobody searched the project yet or its JQL changed since it was
+     *                                    indexed; it is indexed in the background and a later call gets the result
+     */
+    public TypeaheadResult search(ApplicationUser user, String projectKey, String text, int limit,
+                                  String requestId) throws Exception {
+        String key = projectKey == null ? NO_PROJECT : projectKey.trim();
+        ProjectJqlConfig config = jqlConfigCache.get(key);
+        if (!config.isValid()) {
+            throw new InvalidJqlException("Invalid JQL query");
+        }
+        ProjectRequestIndex index = indexes.get(key);
+        if (index == null || !index.indexes(config)) {
+            requested.add(key);
+            throw new SearchUnavailableException("The requests of this project are being indexed", false);
+        }
+        index.markRead(System.currentTimeMillis());
+
+        // One more than is checked, to tell whether there were more
+        List<String> candidates = index.search(ProjectRequestIndex.tokenize(text), MAX_CANDIDATES + 1);
+        boolean capped = candidates.size() > MAX_CANDIDATES;
+        List<String> checked = capped ? candidates.subList(0, MAX_CANDIDATES) : candidates;
+        lookups.incrementAndGet();
+        Visible visible = visible(user, index, checked, limit);
+        List<ServiceDeskRequest> requests = requestMapper.mapAll(requestId, visible.issues);
+        // Fewer than asked for is only the whole answer when every match was checked
+        boolean complete = !index.isTruncated() && (visible.issues.size() >= limit || !capped && visible.allChecked);
+        return new TypeaheadResult(requests, complete, index.getBuiltAt());
+    }
+
+    /**
+     * Notes a created or updated issue; it is applied to every index it may be part of in the background.
+     *
+     * @param changedFields normalised names of the changed fields, or null when any field may have changed
+     */
+    public void issueChanged(Issue issue, Set<String> changedFields) {
+        String issueKey = issue.getKey();
+        for (ProjectRequestIndex index : building.values()) {
+            index.touch(issueKey);
+        }
+        changes.add(issueKey, changedFields);
+    }
+
+    public void issueDeleted(String issueKey) {
+        for (ProjectRequestIndex index : building.values()) {
+            index.touch(issueKey);
+        }
+        // Gone by the time it is applied, so it leaves every index
+        changes.add(issueKey, null);
+    }
+
+    /**
+     * For changes that can't be applied one issue at a time, such as a move that changes the key; every index is
+     * rebuilt on the next run of {@link TypeaheadIndexJob}.
+     */
+    public void invalidateAll() {
+        for (ProjectRequestIndex index : indexes.values()) {
+            index.markStale();
+        }
+        for (ProjectRequestIndex index : building.values()) {
+            index.markStale();
+        }
+    }
+
+    /**
+     * Indexes the projects searched without an index, then drops idle projects and rebuilds stale indexes and
+     * those built too long ago. Called by {@link TypeaheadIndexJob}.
+     *
+     * @return the number of projects that were indexed
+     */
+    int refresh(String requestId) {
+        // Changes left pending while the search pool was full
+        changes.flush();
+        int rebuilt = 0;
+        Iterator<String> pending = requested.iterator();
+        while (pending.hasNext()) {
+            String projectKey = pending.next();
+            ProjectJqlConfig config = jqlConfigCache.get(projectKey);
+            ProjectRequestIndex index = indexes.get(projectKey);
+            try {
+                if (config.isValid() && (index == null || !index.indexes(config))) {
+                    // A build that outlives the deadline keeps running; the next run joins it
+                    searchExecutor.call("typeahead:" + projectKey, () -> rebuild(projectKey, config),
+                            SearchExecutor.DEFAULT_TIMEOUT_MILLIS);
+                    rebuilt++;
+                }
+                pending.remove();
+            } catch (SearchUnavailableException e) {
+                log.debug("[{}] Could not index project {} yet: {}", requestId, projectKey, e.getMessage());
+                return rebuilt;
+            } catch (Exception e) {
+                log.warn("[{}] Could not index project {}", requestId, projectKey, e);
+                pending.remove();
+            }
+        }
+        long now = System.currentTimeMillis();
+        Iterator<ProjectRequestIndex> it = indexes.values().iterator();
+        while (it.hasNext()) {
+            ProjectRequestIndex index = it.next();
+            String projectKey = index.getProjectKey();
+            if (now - index.getLastReadAt() >= IDLE_MILLIS) {
+                it.remove();
+                log.debug("[{}] Stopped indexing idle project {}", requestId, projectKey);
+                continue;
+            }
+            ProjectJqlConfig config = jqlConfigCache.get(projectKey);
+            try {
+                if (!config.isValid()) {
+                    it.remove();
+                } else if (index.isStale() || !index.indexes(config) || now - index.getBuiltAt() >= REBUILD_MILLIS) {
+                    searchExecutor.call("typeahead:" + projectKey, () -> rebuild(projectKey, config),
+                            SearchExecutor.DEFAULT_TIMEOUT_MILLIS);
+                    rebuilt++;
+                }
+            } catch (SearchUnavailableException e) {
+                // Leave the search pool to real requests; the next run tries again
+                log.debug("[{}] Could not refresh the index of project {}: {}", requestId, projectKey,
+                        e.getMessage());
+                break;
+            } catch (Exception e) {
+                log.warn("[{}] Could not refresh the index of project {}", requestId, projectKey, e);
+            }
+        }
+        return rebuilt;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        List<String> projects = new ArrayList<>();
+        long requests = 0L;
+        long bytes = 0L;
+        for (ProjectRequestIndex index : indexes.values()) {
+            projects.add(index.getProjectKey() + (index.isTruncated() ? " (truncated)" : ""));
+            requests += index.size();
+            bytes += index.estimateBytes();
+        }
+        stats.put("projects", projects);
+        stats.put("indexedRequests", requests);
+        stats.put("maxRequests", MAX_REQUESTS);
+        stats.put("requested", requested.size());
+        stats.put("estimatedBytes", bytes);
+        stats.put("lookups", lookups.get());
+        stats.put("rebuilds", rebuilds.get());
+        stats.put("evictions", evictions.get());
+        stats.put("eventsApplied", eventsApplied.get());
+        stats.put("membershipChecks", membershipChecks.get());
+        stats.put("events", changes.getStatistics());
+        return stats;
+    }
+
+    private ProjectRequestIndex rebuild(String projectKey, ProjectJqlConfig config) throws SearchException {
+        long start = System.currentTimeMillis();
+        ProjectRequestIndex index = new ProjectRequestIndex(projectKey, config, MAX_REQUESTS, start);
+        ProjectRequestIndex previous = indexes.get(projectKey);
+        if (previous != null) {
+            index.markRead(previous.getLastReadAt());
+        }
+        // Newest first, so a project over the limit keeps its most recent requests
+        Query query = JqlQueryBuilder.newBuilder(config.getQuery()).orderBy().clear()
+                .createdDate(SortOrder.DESC).buildQuery();
+        building.put(projectKey, index);
+        try {
+            // Pages one past the limit, so the index sees there are more and marks itself truncated
+            for (int offset = 0; offset <= MAX_REQUESTS; offset += PAGE_SIZE) {
+                List<Issue> issues = searchService.searchOverrideSecurity(null, query,
+                        new PagerFilter(offset, PAGE_SIZE)).getResults();
+                for (Issue issue : issues) {
+                    put(index, issue);
+                }
+                if (issues.size() < PAGE_SIZE) {
+                    break;
+                }
+            }
+            index.built(start);
+            indexes.put(projectKey, index);
+        } finally {
+            building.remove(projectKey, index);
+        }
+        // Issues changed while the search paged may be indexed as they were before; index them as they are now
+        Map<String, Issue> existing = new HashMap<>();
+        for (String issueKey : index.takeTouched()) {
+            Issue issue = issueManager.getIssueObject(issueKey);
+            if (issue != null) {
+                existing.put(issueKey, issue);
+            } else {
+                index.remove(issueKey);
+            }
+        }
+        Set<String> matching = matching(index, existing.keySet());
+        for (Issue issue : existing.values()) {
+            if (matching.contains(issue.getKey())) {
+                put(index, issue);
+            } else {
+                index.remove(issue.getKey());
+            }
+        }
+        rebuilds.incrementAndGet();
+        evictIdlest(projectKey);
+        log.debug("Indexed {} requests of project {} in {}ms", index.size(), projectKey,
+                System.currentTimeMillis() - start);
+        return index;
+    }
+
+    /**
+     * Drops the indexes searched least recently, other than the one just built, until all fit the limit.
+     */
+    private void evictIdlest(String keep) {
+        long total = 0L;
+        for (ProjectRequestIndex index : indexes.values()) {
+            total += index.size();
+        }
+        while (total > MAX_REQUESTS) {
+            ProjectRequestIndex idlest = null;
+            for (ProjectRequestIndex index : indexes.values()) {
+                if (!index.getProjectKey().equals(keep)
+                        && (idlest == null || index.getLastReadAt() < idlest.getLastReadAt())) {
+                    idlest = index;
+                }
+            }
+            if (idlest == null || !indexes.remove(idlest.getProjectKey(), idlest)) {
+                return;
+            }
+            total -= idlest.size();
+            evictions.incrementAndGet();
+            log.debug("Dropped the index of project {} to stay within {} requests", idlest.getProjectKey(),
+                    MAX_REQUESTS);
+        }
+    }
+
+    /**
+     * The candidates the user may see, newest first: searches of {@link #VISIBILITY_BATCH} keys each, until
+     * {@code limit} are found, every candidate was checked or {@link #VISIBILITY_MILLIS} have passed.
+     */
+    private Visible visible(ApplicationUser user, ProjectRequestIndex index, List<String> candidates, int limit)
+            throws SearchException {
+        long deadline = System.currentTimeMillis() + VISIBILITY_MILLIS;
+        List<Issue> visible = new ArrayList<>();
+        int from = 0;
+        while (from < candidates.size() && visible.size() < limit && System.currentTimeMillis() < deadline) {
+            List<String> batch = candidates.subList(from, Math.min(from + VISIBILITY_BATCH, candidates.size()));
+            // The configured JQL again, so a change the index has not caught up with yet can't show a request
+            Query query = JqlQueryBuilder.newBuilder(index.getQuery()).where().defaultAnd()
+                    .issue(batch.toArray(new String[0])).endWhere()
+                    .orderBy().clear().createdDate(SortOrder.DESC).buildQuery();
+            visible.addAll(searchService.search(user, query, new PagerFilter(limit - visible.size())).getResults());
+            from += batch.size();
+        }
+        return new Visible(visible, from >= candidates.size());
+    }
+
+    /**
+     * Applies a batch of changes noted by events: issues that may have joined or left an index are checked with
+     * one search per index, the others are only re-indexed when their summary changed.
+     */
+    private void applyChanges(Map<String, Set<String>> batch) {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        Map<String, Issue> issues = new HashMap<>();
+        for (String issueKey : batch.keySet()) {
+            issues.put(issueKey, issueManager.getIssueObject(issueKey));
+        }
+        for (ProjectRequestIndex index : indexes.values()) {
+            List<Issue> unsure = new ArrayList<>();
+            for (Map.Entry<String, Set<String>> change : batch.entrySet()) {
+                String issueKey = change.getKey();
+                Issue issue = issues.get(issueKey);
+                Set<String> changedFields = change.getValue();
+                if (issue == null || !index.getScope().mayContain(issue.getProjectObject())) {
+                    if (index.contains(issueKey)) {
+                        index.remove(issueKey);
+                        eventsApplied.incrementAndGet();
+                    }
+                } else if (changedFields != null && !index.getScope().dependsOnAny(changedFields)) {
+                    boolean member = index.contains(issueKey);
+                    if (!member || changedFields.contains("summary")) {
+                        apply(index, issue, member);
+                    }
+                } else {
+                    unsure.add(issue);
+                }
+            }
+            if (unsure.isEmpty()) {
+                continue;
+            }
+            try {
+                Set<String> unsureKeys = new HashSet<>();
+                for (Issue issue : unsure) {
+                    unsureKeys.add(issue.getKey());
+                }
+                Set<String> matching = matching(index, unsureKeys);
+                for (Issue issue : unsure) {
+                    apply(index, issue, matching.contains(issue.getKey()));
+                }
+            } catch (SearchException | RuntimeException e) {
+                log.warn("Could not tell whether {} changed requests are indexed for project {}: {}", unsure.size(),
+                        index.getProjectKey(), e.getMessage());
+                index.markStale();
+            }
+        }
+    }
+
+    /**
+     * Which of the issues the index's JQL matches, with one search.
+     */
+    private Set<String> matching(ProjectRequestIndex index, Collection<String> issueKeys) throws SearchException {
+        Set<String> matching = new HashSet<>();
+        if (issueKeys.isEmpty()) {
+            return matching;
+        }
+        membershipChecks.incrementAndGet();
+        Query query = JqlQueryBuilder.newBuilder(index.getQuery())
+                .where().defaultAnd().issue(issueKeys.toArray(new String[0])).buildQuery();
+        for (Issue issue : searchService.searchOverrideSecurity(null, query, new PagerFilter(issueKeys.size()))
+                .getResults()) {
+            matching.add(issue.getKey());
+        }
+        return matching;
+    }
+
+    private void apply(ProjectRequestIndex index, Issue issue, boolean member) {
+        if (member) {
+            put(index, issue);
+            eventsApplied.incrementAndGet();
+        } else if (index.contains(issue.getKey())) {
+            index.remove(issue.getKey());
+            eventsApplied.incrementAndGet();
+        }
+    }
+
+    private static void put(ProjectRequestIndex index, Issue issue) {
+        index.put(issue.getKey(), issue.getId(), issue.getCreated() != null ? issue.getCreated().getTime() : 0L,
+                issue.getSummary());
+    }
+
+    private static final class Visible {
+        final List<Issue> issues;
+        final boolean allChecked;
+
+        Visible(List<Issue> issues, boolean allChecked) {
+            this.issues = issues;
+            this.allChecked = allChecked;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.wmpr.typeahead;
+
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.atlassian.scheduler.JobRunner;
+import com.atlassian.scheduler.JobRunnerRequest;
+import com.atlassian.scheduler.JobRunnerResponse;
+import com.atlassian.scheduler.SchedulerService;
+import com.atlassian.scheduler.SchedulerServiceException;
+import com.atlassian.scheduler.config.JobConfig;
+import com.atlassian.scheduler.config.JobId;
+import com.atlassian.scheduler.config.JobRunnerKey;
+import com.atlassian.scheduler.config.RunMode;
+import com.atlassian.scheduler.config.Schedule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Date;
+
+/**
+ * Builds the type-ahead indexes in the background: every {@code wmpr.typeahead.intervalMillis} (default 15000)
+ * it indexes the projects searched since the last run that have no index yet, and indexes again the projects an
+ * event could not be applied to or whose index is older than {@code wmpr.typeahead.rebuildMillis}, so searches
+ * never wait for it. Runs on every node, as each keeps its own indexes.
+ */
+@Named
+public class TypeaheadIndexJob implements JobRunner, InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(TypeaheadIndexJob.class);
+
+    static final JobRunnerKey JOB_RUNNER_KEY = JobRunnerKey.of(TypeaheadIndexJob.class.getName());
+    static final JobId JOB_ID = JobId.of(TypeaheadIndexJob.class.getName());
+
+    static final long INTERVAL_MILLIS = Long.getLong("wmpr.typeahead.intervalMillis", 15_000L);
+
+    @JiraImport
+    private final SchedulerService schedulerService;
+
+    private final TypeaheadIndex typeaheadIndex;
+
+    @Inject
+    public TypeaheadIndexJob(SchedulerService schedulerService, TypeaheadIndex typeaheadIndex) {
+        this.schedulerService = schedulerService;
+        this.typeaheadIndex = typeaheadIndex;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        schedulerService.registerJobRunner(JOB_RUNNER_KEY, this);
+        try {
+            schedulerService.scheduleJob(JOB_ID, JobConfig.forJobRunnerKey(JOB_RUNNER_KEY)
+                    .withRunMode(RunMode.RUN_LOCALLY)
+                    .withSchedule(Schedule.forInterval(INTERVAL_MILLIS,
+                            new Date(System.currentTimeMillis() + INTERVAL_MILLIS))));
+        } catch (SchedulerServiceException e) {
+            log.warn("Could not schedule the type-ahead index job", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        schedulerService.unscheduleJob(JOB_ID);
+        schedulerService.unregisterJobRunner(JOB_RUNNER_KEY);
+    }
+
+    @Override
+    public JobRunnerResponse runJob(JobRunnerRequest request) {
+        String requestId = "WMPR-typeahead-" + System.currentTimeMillis();
+        try {
+            int rebuilt = typeaheadIndex.refresh(requestId);
+            return JobRunnerResponse.success("Indexed " + rebuilt + " projects");
+        } catch (RuntimeException e) {
+            log.warn("[{}] Refreshing type-ahead indexes failed", requestId, e);
+            return JobRunnerResponse.failed(e);
+        }
+    }
+}
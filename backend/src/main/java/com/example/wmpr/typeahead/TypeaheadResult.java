@@ -0,0 +1,41 @@
+package com.example.wmpr.typeahead;
+
+import com.example.wmpr.model.ServiceDeskRequest;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The requests matching typed text that the user may see, newest first.
+ */
+public final class TypeaheadResult {
+
+    private final List<ServiceDeskRequest> requests;
+    private final boolean complete;
+    private final long indexedAt;
+
+    TypeaheadResult(List<ServiceDeskRequest> requests, boolean complete, long indexedAt) {
+        this.requests = Collections.unmodifiableList(requests);
+        this.complete = complete;
+        this.indexedAt = indexedAt;
+    }
+
+    public List<ServiceDeskRequest> getRequests() {
+        return requests;
+    }
+
+    /**
+     * False when older matches may be missing: the project has more requests than the index holds, or fewer
+     * than asked for were found before the matches checked for visibility hit their cap or deadline.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * When the index was last built from a full search.
+     */
+    public long getIndexedAt() {
+        return indexedAt;
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.wmpr.warmup;
+
+import com.atlassian.jira.user.ApplicationUser;
+import com.example.wmpr.cache.RecentRequestsCache;
+import com.example.wmpr.cache.RecentRequestsCacheKey;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers which first pages are being read - one context per project and permission view, with one of the users
+ * who read it - and how often each is read and changes, so {@link WarmupJob} can recompute them before a reader
+ * misses the cache.
+ *
+ * A context whose entry changes more often than it is read would mostly be recomputed for nobody, so it is
+ * refreshed at most once per read interval; one that is read more often than it changes is refreshed as soon as
+ * its entry is gone or about to expire.
+ */
+@Named
+public class HotContextTracker {
+
+    static final int MAX_CONTEXTS = 500;
+    static final long IDLE_MILLIS = 30 * 60_000L;
+    static final long MAX_REFRESH_INTERVAL_MILLIS = 10 * 60_000L;
+
+    // Weight of the newest interval in the moving averages
+    private static final double ALPHA = 0.2;
+
+    private final RecentRequestsCache recentRequestsCache;
+
+    private final Map<RecentRequestsCacheKey, HotContext> contexts = new ConcurrentHashMap<>();
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong changesSeen = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Inject
+    public HotContextTracker(RecentRequestsCache recentRequestsCache) {
+        this.recentRequestsCache = recentRequestsCache;
+    }
+
+    /**
+     * Called for every first-page lookup; cheap enough for the request path.
+     */
+    public void recordRead(String projectKey, ApplicationUser user, RecentRequestsCacheKey cacheKey) {
+        long now = System.currentTimeMillis();
+        HotContext context = contexts.get(cacheKey);
+        if (context == null) {
+            if (contexts.size() >= MAX_CONTEXTS) {
+                return;
+            }
+            context = contexts.computeIfAbsent(cacheKey, key -> new HotContext(projectKey, user.getKey(), key, now));
+        }
+        context.read(now);
+    }
+
+    /**
+     * Starts tracking a context remembered from before a restart, due for a refresh straight away.
+     */
+    void seed(String projectKey, String userKey, RecentRequestsCacheKey cacheKey) {
+        if (contexts.size() < MAX_CONTEXTS) {
+            contexts.putIfAbsent(cacheKey, new HotContext(projectKey, userKey, cacheKey, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Contexts to recompute now, most read first. Idle contexts are dropped on the way.
+     *
+     * @param horizonMillis entries expiring within this time count as gone
+     */
+    List<HotContext> due(long now, long horizonMillis) {
+        List<HotContext> due = new ArrayList<>();
+        for (HotContext context : contexts.values()) {
+            if (now - context.getLastReadAt() > IDLE_MILLIS) {
+                contexts.remove(context.getCacheKey(), context);
+                dropped.incrementAndGet();
+                continue;
+            }
+            long expiresIn = recentRequestsCache.expiresIn(context.getCacheKey());
+            if (expiresIn < 0L && context.observeGone(now)) {
+                changesSeen.incrementAndGet();
+            }
+            if (expiresIn < horizonMillis && context.isRefreshDue(now, horizonMillis)) {
+                due.add(context);
+            }
+        }
+        due.sort(Comparator.comparingDouble(HotContext::getReadIntervalMillis));
+        return due;
+    }
+
+    /**
+     * The most read contexts, to be remembered across restarts.
+     */
+    List<HotContext> hottest(int max) {
+        List<HotContext> hottest = new ArrayList<>(contexts.values());
+        hottest.sort(Comparator.comparingDouble(HotContext::getReadIntervalMillis));
+        return hottest.size() > max ? new ArrayList<>(hottest.subList(0, max)) : hottest;
+    }
+
+    void refreshed(HotContext context, long now) {
+        context.refreshed(now);
+        refreshes.incrementAndGet();
+    }
+
+    void remove(HotContext context) {
+        contexts.remove(context.getCacheKey(), context);
+        dropped.incrementAndGet();
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("contexts", contexts.size());
+        stats.put("maxContexts", MAX_CONTEXTS);
+        stats.put("refreshes", refreshes.get());
+        stats.put("changesSeen", changesSeen.get());
+        stats.put("dropped", dropped.get());
+        return stats;
+    }
+
+    /**
+     * One tracked first page. Reads and refreshes come from different threads, hence the synchronization.
+     */
+    static final class HotContext {
+
+        private final String projectKey;
+        private final String userKey;
+        private final RecentRequestsCacheKey cacheKey;
+
+        private long lastReadAt;
+        private double readIntervalMillis = MAX_REFRESH_INTERVAL_MILLIS;
+        private long lastChangeAt;
+        private double changeIntervalMillis = MAX_REFRESH_INTERVAL_MILLIS;
+        private long lastRefreshAt;
+        // Set once an entry was seen or produced, so its disappearance can be told from never having had one
+        private boolean present;
+
+        HotContext(String projectKey, String userKey, RecentRequestsCacheKey cacheKey, long now) {
+            this.projectKey = projectKey;
+            this.userKey = userKey;
+            this.cacheKey = cacheKey;
+            this.lastReadAt = now;
+            this.lastChangeAt = now;
+        }
+
+        String getProjectKey() {
+            return projectKey;
+        }
+
+        String getUserKey() {
+            return userKey;
+        }
+
+        RecentRequestsCacheKey getCacheKey() {
+            return cacheKey;
+        }
+
+        synchronized long getLastReadAt() {
+            return lastReadAt;
+        }
+
+        synchronized double getReadIntervalMillis() {
+            return readIntervalMillis;
+        }
+
+        synchronized void read(long now) {
+            readIntervalMillis += ALPHA * ((now - lastReadAt) - readIntervalMillis);
+            lastReadAt = now;
+            present = true;
+        }
+
+        /**
+         * Notes that the entry is gone; returns whether that is news, i.e. it was invalidated or expired since
+         * it was last seen.
+         */
+        synchronized boolean observeGone(long now) {
+            if (!present) {
+                return false;
+            }
+            present = false;
+            changeIntervalMillis += ALPHA * ((now - lastChangeAt) - changeIntervalMillis);
+            lastChangeAt = now;
+            return true;
+        }
+
+        synchronized boolean isRefreshDue(long now, long minIntervalMillis) {
+            // Read more often than it changes: every refresh serves readers, so refresh right away
+            double interval = changeIntervalMillis >= readIntervalMillis ? minIntervalMillis : readIntervalMillis;
+            return now - lastRefreshAt >= Math.min(interval, MAX_REFRESH_INTERVAL_MILLIS);
+        }
+
+        synchronized void refreshed(long now) {
+            lastRefreshAt = now;
+            present = true;
+        }
+    }
+}
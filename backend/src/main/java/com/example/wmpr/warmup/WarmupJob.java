@@ -0,0 +1,217 @@
+package com.example.wmpr.warmup;
+
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.user.util.UserManager;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.atlassian.scheduler.JobRunner;
+import com.atlassian.scheduler.JobRunnerRequest;
+import com.atlassian.scheduler.JobRunnerResponse;
+import com.atlassian.scheduler.SchedulerService;
+import com.atlassian.scheduler.SchedulerServiceException;
+import com.atlassian.scheduler.config.JobConfig;
+import com.atlassian.scheduler.config.JobId;
+import com.atlassian.scheduler.config.JobRunnerKey;
+import com.atlassian.scheduler.config.RunMode;
+import com.atlassian.scheduler.config.Schedule;
+import com.example.wmpr.cache.RecentRequestsCacheKey;
+import com.example.wmpr.service.PageRequest;
+import com.example.wmpr.service.ProjectJqlConfig;
+import com.example.wmpr.service.RecentRequestsService;
+import com.example.wmpr.service.SearchUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Keeps the first pages people actually read cached, so cold searches stay off the request path.
+ *
+ * Runs on every node (the cache is per node) every {@code wmpr.warmup.intervalMillis} (default 15000) and
+ * recomputes the contexts {@link HotContextTracker} reports as due, on the shared search pool and never more
+ * than a few per run. The hottest contexts are remembered in plugin settings, so the first run after a restart or
+ * an upgrade warms the settings, the parsed JQL and the results before the first visitors arrive.
+ * Start Jira with {@code -Dwmpr.warmup.enabled=false} to turn it off.
+ */
+@Named
+public class WarmupJob implements JobRunner, InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmupJob.class);
+
+    static final JobRunnerKey JOB_RUNNER_KEY = JobRunnerKey.of(WarmupJob.class.getName());
+    static final JobId JOB_ID = JobId.of(WarmupJob.class.getName());
+
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("wmpr.warmup.enabled", "true"));
+    static final long INTERVAL_MILLIS = Long.getLong("wmpr.warmup.intervalMillis", 15_000L);
+    private static final long STARTUP_DELAY_MILLIS = 5_000L;
+
+    // Leaves most of the search pool to the request path
+    static final int MAX_REFRESHES_PER_RUN = 10;
+
+    static final String CONTEXTS_KEY = "wmpr.warmup.contexts";
+    static final int MAX_REMEMBERED = 50;
+    private static final long REMEMBER_INTERVAL_MILLIS = 5 * 60_000L;
+    private static final char SEPARATOR = '\n';
+
+    @JiraImport
+    private final SchedulerService schedulerService;
+
+    @JiraImport
+    private final UserManager userManager;
+
+    @ComponentImport
+    private final PluginSettingsFactory pluginSettingsFactory;
+
+    private final RecentRequestsService recentRequestsService;
+
+    private final HotContextTracker hotContexts;
+
+    // Only touched by the job, which the scheduler never runs concurrently on one node
+    private boolean seeded;
+    private long rememberedAt;
+
+    @Inject
+    public WarmupJob(SchedulerService schedulerService,
+                     UserManager userManager,
+                     PluginSettingsFactory pluginSettingsFactory,
+                     RecentRequestsService recentRequestsService,
+                     HotContextTracker hotContexts) {
+        this.schedulerService = schedulerService;
+        this.userManager = userManager;
+        this.pluginSettingsFactory = pluginSettingsFactory;
+        this.recentRequestsService = recentRequestsService;
+        this.hotContexts = hotContexts;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!ENABLED) {
+            log.info("Warm-up disabled");
+            return;
+        }
+        schedulerService.registerJobRunner(JOB_RUNNER_KEY, this);
+        try {
+            schedulerService.scheduleJob(JOB_ID, JobConfig.forJobRunnerKey(JOB_RUNNER_KEY)
+                    .withRunMode(RunMode.RUN_LOCALLY)
+                    .withSchedule(Schedule.forInterval(INTERVAL_MILLIS,
+                            new Date(System.currentTimeMillis() + STARTUP_DELAY_MILLIS))));
+        } catch (SchedulerServiceException e) {
+            log.warn("Could not schedule the warm-up job", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (ENABLED) {
+            schedulerService.unscheduleJob(JOB_ID);
+            schedulerService.unregisterJobRunner(JOB_RUNNER_KEY);
+        }
+    }
+
+    @Override
+    public JobRunnerResponse runJob(JobRunnerRequest request) {
+        String requestId = "WMPR-warmup-" + System.currentTimeMillis();
+        try {
+            if (!seeded) {
+                seeded = true;
+                seed(requestId);
+            }
+            int refreshed = refreshDue(requestId);
+            rememberHottest();
+            return JobRunnerResponse.success("Refreshed " + refreshed + " contexts");
+        } catch (RuntimeException e) {
+            log.warn("[{}] Warm-up failed", requestId, e);
+            return JobRunnerResponse.failed(e);
+        }
+    }
+
+    private int refreshDue(String requestId) {
+        long now = System.currentTimeMillis();
+        // Entries that would expire before the next run count as gone already
+        List<HotContextTracker.HotContext> due = hotContexts.due(now, 2 * INTERVAL_MILLIS);
+        int refreshed = 0;
+        for (HotContextTracker.HotContext context : due) {
+            if (refreshed >= MAX_REFRESHES_PER_RUN) {
+                break;
+            }
+            ApplicationUser user = userManager.getUserByKey(context.getUserKey());
+            ProjectJqlConfig config = recentRequestsService.config(context.getProjectKey());
+            // The user, their permissions or the project's JQL changed: readers will register the new context
+            if (user == null || !config.isValid() || !context.getCacheKey().equals(
+                    recentRequestsService.cacheKey(user, config.getJql(), PageRequest.FIRST_PAGE))) {
+                hotContexts.remove(context);
+                continue;
+            }
+            try {
+                recentRequestsService.refresh(user, config, requestId);
+            } catch (SearchUnavailableException e) {
+                // The pool is busy with real requests; try again next run
+                log.debug("[{}] Search pool saturated, {} refreshes left for the next run", requestId,
+                        due.size() - refreshed);
+                break;
+            }
+            hotContexts.refreshed(context, now);
+            refreshed++;
+        }
+        if (refreshed > 0) {
+            log.debug("[{}] Refreshed {} of {} due contexts", requestId, refreshed, due.size());
+        }
+        return refreshed;
+    }
+
+    /**
+     * Tracks the contexts remembered before the restart, so the first run warms them.
+     */
+    private void seed(String requestId) {
+        Object stored = pluginSettingsFactory.createGlobalSettings().get(CONTEXTS_KEY);
+        if (!(stored instanceof List)) {
+            return;
+        }
+        int count = 0;
+        for (Object entry : (List<?>) stored) {
+            String value = String.valueOf(entry);
+            int separator = value.indexOf(SEPARATOR);
+            if (separator < 0) {
+                continue;
+            }
+            String projectKey = separator == 0 ? null : value.substring(0, separator);
+            ApplicationUser user = userManager.getUserByKey(value.substring(separator + 1));
+            if (user == null) {
+                continue;
+            }
+            ProjectJqlConfig config = recentRequestsService.config(projectKey);
+            if (config.isValid()) {
+                RecentRequestsCacheKey cacheKey = recentRequestsService.cacheKey(user, config.getJql(),
+                        PageRequest.FIRST_PAGE);
+                hotContexts.seed(projectKey, user.getKey(), cacheKey);
+                count++;
+            }
+        }
+        log.info("[{}] Warming {} remembered contexts", requestId, count);
+    }
+
+    private void rememberHottest() {
+        long now = System.currentTimeMillis();
+        if (now - rememberedAt < REMEMBER_INTERVAL_MILLIS) {
+            return;
+        }
+        rememberedAt = now;
+        List<HotContextTracker.HotContext> hottest = hotContexts.hottest(MAX_REMEMBERED);
+        if (hottest.isEmpty()) {
+            return;
+        }
+        List<String> remembered = new ArrayList<>(hottest.size());
+        for (HotContextTracker.HotContext context : hottest) {
+            String projectKey = context.getProjectKey() != null ? context.getProjectKey() : "";
+            remembered.add(projectKey + SEPARATOR + context.getUserKey());
+        }
+        pluginSettingsFactory.createGlobalSettings().put(CONTEXTS_KEY, remembered);
+    }
+}
@@ -4,26 +4,148 @@ import com.atlassian.jira.plugin.webfragment.contextproviders.AbstractJiraContex
 import com.atlassian.jira.plugin.webfragment.model.JiraHelper;
 import com.atlassian.jira.user.ApplicationUser;
 import com.atlassian.plugin.PluginParseException;
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.json.Utf8JsonWriter;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.model.ServiceDeskRequest;
+import com.example.wmpr.ratelimit.RateLimitDecision;
+import com.example.wmpr.ratelimit.RequestRateLimiter;
+import com.example.wmpr.service.PageRequest;
+import com.example.wmpr.service.RecentRequestsLookup;
+import com.example.wmpr.service.RecentRequestsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Simple web panel for WMPR requests
- * Extends AbstractJiraContextProvider to work with Jira's web panel framework
+ * Web panel for WMPR requests in the Service Desk portal footer.
+ *
+ * The first page of results is looked up while the page renders and embedded twice: as pre-rendered table rows,
+ * so the footer paints without waiting for any script, and as inline JSON the table component hydrates from
+ * instead of fetching {@code /recent} again. The lookup goes through the shared cache and waits at most
+ * {@code wmpr.panel.timeoutMillis} (default 1000) for a search; when nothing can be embedded the panel renders as
+ * before and the client fetches the data itself.
  */
 public class WMPRRequestsWebPanel extends AbstractJiraContextProvider {
-    
+
+    private static final Logger log = LoggerFactory.getLogger(WMPRRequestsWebPanel.class);
+
+    static final long TIMEOUT_MILLIS = Long.getLong("wmpr.panel.timeoutMillis", 1_000L);
+
+    // Names ending in Html are written out unescaped by the template renderer; both values are escaped here
+    static final String INITIAL_ROWS = "initialRowsHtml";
+    static final String INITIAL_JSON = "initialJsonHtml";
+
+    private static final int SUMMARY_LENGTH = 60;
+
+    private final RecentRequestsService recentRequestsService;
+
+    private final RequestRateLimiter rateLimiter;
+
+    private final WmprMetrics metrics;
+
+    @Inject
+    public WMPRRequestsWebPanel(RecentRequestsService recentRequestsService, RequestRateLimiter rateLimiter,
+                                WmprMetrics metrics) {
+        this.recentRequestsService = recentRequestsService;
+        this.rateLimiter = rateLimiter;
+        this.metrics = metrics;
+    }
+
     @Override
     public void init(Map params) throws PluginParseException {
         // No special initialization needed for our simple panel
     }
-    
+
     @Override
     public Map getContextMap(ApplicationUser user, JiraHelper jiraHelper) {
-        // Return a simple context map - Velocity template can access standard Jira variables automatically
-        Map<String, Object> context = new HashMap<>();
         // The framework will add standard variables like $authContext, $date, etc.
+        Map<String, Object> context = new HashMap<>();
+        if (user == null) {
+            return context;
+        }
+        String requestId = "WMPR-panel-" + System.currentTimeMillis();
+        try {
+            HttpServletRequest request = jiraHelper != null ? jiraHelper.getRequest() : null;
+            // Charged like the /recent call it replaces; over the limit the client simply fetches later
+            RateLimitDecision decision = rateLimiter.acquire(user, RequestRateLimiter.clientAddress(request), null,
+                    1);
+            if (!decision.isAllowed()) {
+                return context;
+            }
+            // Same project and page as the table's first /recent call, so both share one cache entry
+            RecentRequestsLookup lookup = recentRequestsService.lookup(user, recentRequestsService.config(null),
+                    PageRequest.FIRST_PAGE, requestId, TIMEOUT_MILLIS);
+            CachedRecentRequests cached = lookup.getResult();
+            context.put(INITIAL_ROWS, renderRows(cached));
+            context.put(INITIAL_JSON, renderJson(cached, lookup.isStale()));
+            metrics.increment(WmprMetrics.PRERENDERED);
+        } catch (Exception e) {
+            // The panel must render regardless; the client loads the data as it did before
+            log.debug("[{}] Rendering the panel without initial data: {}", requestId, e.getMessage());
+        }
         return context;
     }
-} 
\ No newline at end of file
+
+    /**
+     * The body of a first {@code /recent} response, plus the version the long-poll continues from.
+     * The writer escapes {@code <}, {@code >} and {@code &}, so the JSON can't close the script element it sits in.
+     */
+    static String renderJson(CachedRecentRequests cached, boolean stale) {
+        Utf8JsonWriter json = Utf8JsonWriter.local().beginObject();
+        json.name("data").rawValue(cached.getEncodedRequests());
+        json.name("version").value(cached.getEtag());
+        json.name("stale").value(stale);
+        return new String(json.endObject().toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Table rows matching the ones the vanilla table builds client-side.
+     */
+    static String renderRows(CachedRecentRequests cached) {
+        if (cached.getRequests().isEmpty()) {
+            return "<tr><td colspan=\"5\" style=\"padding: 20px; text-align: center; color: #626f86;\">"
+                    + "No recent WMPR requests found.</td></tr>";
+        }
+        StringBuilder html = new StringBuilder(cached.getRequests().size() * 1024);
+        for (ServiceDeskRequest request : cached.getRequests()) {
+            String key = escapeHtml(request.getKey());
+            String summary = request.getSummary() != null ? request.getSummary() : "";
+            String shortSummary = summary.length() > SUMMARY_LENGTH ? summary.substring(0, SUMMARY_LENGTH) + "..." : summary;
+            String created = request.getCreated() != null && request.getCreated().length() >= 10
+                    ? request.getCreated().substring(0, 10) : request.getCreated();
+            html.append("<tr style=\"border-bottom: 1px solid #f1f2f4;\">")
+                .append("<td style=\"padding: 12px 10px;\"><a href=\"/browse/").append(key)
+                .append("\" target=\"_blank\" style=\"color: #0052cc; text-decoration: none; font-weight: 600; font-family: monospace;\">")
+                .append(key).append("</a></td>")
+                .append("<td style=\"padding: 12px 10px; max-width: 250px;\" title=\"").append(escapeHtml(summary)).append("\">")
+                .append(escapeHtml(shortSummary)).append("</td>")
+                .append("<td style=\"padding: 12px 10px; color: #6b778c;\">").append(escapeHtml(request.getReporter())).append("</td>")
+                .append("<td style=\"padding: 12px 10px; color: #6b778c; font-size: 12px;\">").append(escapeHtml(created)).append("</td>")
+                .append("<td style=\"padding: 12px 10px;\"><span style=\"background: ").append(statusColor(request.getStatusCategory()))
+                .append("; color: white; padding: 4px 10px; border-radius: 12px; font-size: 11px; font-weight: 500; text-transform: uppercase; letter-spacing: 0.5px;\">")
+                .append(escapeHtml(request.getStatus())).append("</span></td>")
+                .append("</tr>");
+        }
+        return html.toString();
+    }
+
+    private static String statusColor(String category) {
+        switch (category != null ? category.toLowerCase() : "") {
+            case "done": return "#36b37e";
+            case "indeterminate": return "#0052cc";
+            case "new": return "#ff5630";
+            default: return "#6b778c";
+        }
+    }
+
+    private static String escapeHtml(String value) {
+        return value == null ? "" : value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                .replace("\"", "&quot;").replace("'", "&#39;");
+    }
+}
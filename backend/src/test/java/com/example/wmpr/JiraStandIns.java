@@ -0,0 +1,141 @@
+package com.example.wmpr;
+
+import com.atlassian.cache.Cache;
+import com.atlassian.cache.CacheManager;
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.IssueManager;
+import com.atlassian.jira.jql.parser.JqlQueryParser;
+import com.atlassian.jira.project.Project;
+import com.atlassian.jira.project.ProjectManager;
+import com.atlassian.query.QueryImpl;
+import com.atlassian.query.clause.TerminalClauseImpl;
+import com.atlassian.query.operator.Operator;
+import com.atlassian.query.order.OrderByImpl;
+import com.atlassian.query.order.SearchSort;
+import com.atlassian.query.order.SortOrder;
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * In-memory stand-ins for the Jira services the tests need, like those of the benchmarks: dynamic proxies
+ * answering only the methods the plugin calls.
+ */
+public final class JiraStandIns {
+
+    public static final String PROJECT_KEY = "WMPR";
+    public static final long PROJECT_ID = 10000L;
+
+    private JiraStandIns() {
+    }
+
+    public static Project project() {
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("getId", args -> PROJECT_ID);
+        methods.put("getKey", args -> PROJECT_KEY);
+        methods.put("getName", args -> PROJECT_KEY);
+        return proxy(Project.class, methods);
+    }
+
+    /**
+     * Knows only {@link #project()}.
+     */
+    public static ProjectManager projectManager() {
+        Project project = project();
+        Function<Object[], Object> byKey = args -> PROJECT_KEY.equals(args[0]) ? project : null;
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("getProjectByCurrentKey", byKey);
+        methods.put("getProjectObjects", args -> Collections.singletonList(project));
+        return proxy(ProjectManager.class, methods);
+    }
+
+    /**
+     * An issue of {@link #project()} with just a key and an id.
+     */
+    public static Issue issue(String key, long id) {
+        Project project = project();
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("getId", args -> id);
+        methods.put("getKey", args -> key);
+        methods.put("getProjectObject", args -> project);
+        methods.put("getProjectId", args -> PROJECT_ID);
+        return proxy(Issue.class, methods);
+    }
+
+    /**
+     * Knows no issues, as if every one asked for had been deleted.
+     */
+    public static IssueManager emptyIssueManager() {
+        return proxy(IssueManager.class, Collections.singletonMap("getIssueObject", args -> null));
+    }
+
+    /**
+     * Parser that returns {@code project = WMPR ORDER BY created DESC} for any JQL.
+     */
+    public static JqlQueryParser jqlQueryParser() {
+        return proxy(JqlQueryParser.class, Collections.singletonMap("parseQuery", args -> new QueryImpl(
+                new TerminalClauseImpl("project", Operator.EQUALS, PROJECT_KEY),
+                new OrderByImpl(new SearchSort("created", SortOrder.DESC)),
+                (String) args[0])));
+    }
+
+    /**
+     * Plugin settings kept in the given map; factories over the same map share them like nodes share the database.
+     */
+    public static PluginSettingsFactory pluginSettingsFactory(Map<String, Object> store) {
+        Map<String, Function<Object[], Object>> settingsMethods = new HashMap<>();
+        settingsMethods.put("get", args -> store.get((String) args[0]));
+        settingsMethods.put("put", args -> store.put((String) args[0], args[1]));
+        settingsMethods.put("remove", args -> store.remove((String) args[0]));
+        PluginSettings settings = proxy(PluginSettings.class, settingsMethods);
+
+        Map<String, Function<Object[], Object>> factoryMethods = new HashMap<>();
+        factoryMethods.put("createGlobalSettings", args -> settings);
+        factoryMethods.put("createSettingsForKey", args -> settings);
+        return proxy(PluginSettingsFactory.class, factoryMethods);
+    }
+
+    /**
+     * Caches kept in the given map, whatever their name and settings; managers over the same map share them like
+     * nodes share a replicated cache.
+     */
+    public static CacheManager cacheManager(Map<Object, Object> store) {
+        Map<String, Function<Object[], Object>> cacheMethods = new HashMap<>();
+        cacheMethods.put("get", args -> store.get(args[0]));
+        cacheMethods.put("put", args -> store.put(args[0], args[1]));
+        cacheMethods.put("remove", args -> store.remove(args[0]));
+        cacheMethods.put("removeAll", args -> {
+            store.clear();
+            return null;
+        });
+        Cache<?, ?> cache = proxy(Cache.class, cacheMethods);
+        return proxy(CacheManager.class, Collections.singletonMap("getCache", args -> cache));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T proxy(Class<T> type, Map<String, Function<Object[], Object>> methods) {
+        return (T) Proxy.newProxyInstance(JiraStandIns.class.getClassLoader(), new Class<?>[]{type},
+                (self, method, args) -> {
+                    Function<Object[], Object> implementation = methods.get(method.getName());
+                    if (implementation != null) {
+                        return implementation.apply(args);
+                    }
+                    switch (method.getName()) {
+                        case "equals":
+                            return self == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(self);
+                        case "toString":
+                            return type.getSimpleName() + " stand-in";
+                        default:
+                            throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName()
+                                    + " is not needed by the tests");
+                    }
+                });
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.wmpr;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that each page loads only its own bundle: AtlasKit comes with the bundles' async chunks, not with the
+ * panels, and no web resource puts the bundles into every context.
+ */
+public class PluginDescriptorTest {
+
+    private static final String TABLE_ENTRY_POINT = ":entrypoint-wmprRequestsTable";
+    private static final String SETTINGS_ENTRY_POINT = ":entrypoint-wmprSettings";
+
+    @Test
+    public void webPanelsDependOnTheTableEntryPointAndNotOnAtlasKit() throws Exception {
+        NodeList panels = descriptor().getElementsByTagName("web-panel");
+
+        assertTrue(panels.getLength() > 0);
+        for (int i = 0; i < panels.getLength(); i++) {
+            List<String> dependencies = children((Element) panels.item(i), "dependency");
+            String key = ((Element) panels.item(i)).getAttribute("key");
+            assertEquals(key, 1L, dependencies.stream().filter(d -> d.endsWith(TABLE_ENTRY_POINT)).count());
+            assertFalse(key, dependencies.stream().anyMatch(d -> d.contains("atlaskit-wrapper")));
+            assertFalse(key, dependencies.stream().anyMatch(d -> d.endsWith(SETTINGS_ENTRY_POINT)));
+        }
+    }
+
+    @Test
+    public void noWebResourceShipsTheBundlesByHand() throws Exception {
+        NodeList resources = descriptor().getElementsByTagName("resource");
+
+        for (int i = 0; i < resources.getLength(); i++) {
+            String location = ((Element) resources.item(i)).getAttribute("location");
+            assertFalse(location, location.startsWith("/frontend/"));
+        }
+    }
+
+    @Test
+    public void templatesRequireOnlyTheirOwnEntryPoint() throws Exception {
+        String panel = read("/templates/wmpr-web-panel.vm");
+        String settings = read("/templates/wmpr-settings.vm");
+
+        assertTrue(panel.contains(TABLE_ENTRY_POINT));
+        assertFalse(panel.contains(SETTINGS_ENTRY_POINT));
+        assertTrue(settings.contains(SETTINGS_ENTRY_POINT));
+        assertFalse(settings.contains(TABLE_ENTRY_POINT));
+        assertFalse(settings.contains("atlaskit-wrapper"));
+    }
+
+    private static Document descriptor() throws Exception {
+        try (InputStream in = resource("/atlassian-plugin.xml")) {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+        }
+    }
+
+    private static List<String> children(Element parent, String name) {
+        List<String> values = new ArrayList<>();
+        NodeList children = parent.getElementsByTagName(name);
+        for (int i = 0; i < children.getLength(); i++) {
+            values.add(children.item(i).getTextContent().trim());
+        }
+        return values;
+    }
+
+    private static String read(String path) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = resource(path)) {
+            byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static InputStream resource(String path) {
+        InputStream in = PluginDescriptorTest.class.getResourceAsStream(path);
+        assertNotNull(path, in);
+        return in;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.wmpr.aggregate;
+
+import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.config.ConstantsManager;
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.IssueManager;
+import com.atlassian.jira.issue.MutableIssue;
+import com.atlassian.jira.issue.search.SearchResults;
+import com.atlassian.jira.issue.status.Status;
+import com.atlassian.jira.issue.status.category.StatusCategory;
+import com.atlassian.jira.web.bean.PagerFilter;
+import com.example.wmpr.JiraStandIns;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.service.IssueFieldLookups;
+import com.example.wmpr.service.ProjectJqlConfig;
+import com.example.wmpr.service.ProjectJqlConfigCache;
+import com.example.wmpr.service.SearchExecutor;
+import com.example.wmpr.settings.ProjectSettingsStore;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static com.example.wmpr.JiraStandIns.PROJECT_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StatusAggregatesTest {
+
+    private static final long WAIT_MILLIS = 5_000L;
+
+    // Status id to name and category, like the statuses of a service desk workflow
+    private static final Map<String, String[]> STATUSES = new HashMap<>();
+
+    static {
+        STATUSES.put("1", new String[]{"Open", "new"});
+        STATUSES.put("3", new String[]{"In Progress", "indeterminate"});
+        STATUSES.put("5", new String[]{"Resolved", "done"});
+        STATUSES.put("6", new String[]{"Closed", "done"});
+    }
+
+    // What the index and the database know: issue key to status id
+    private final Map<String, String> issues = new ConcurrentHashMap<>();
+    private final AtomicInteger searches = new AtomicInteger();
+
+    private final SearchExecutor searchExecutor = new SearchExecutor();
+    private final ProjectJqlConfigCache jqlConfigCache = new ProjectJqlConfigCache(new ProjectSettingsStore(
+            JiraStandIns.pluginSettingsFactory(new HashMap<>()), JiraStandIns.projectManager()),
+            JiraStandIns.jqlQueryParser(), new WmprMetrics());
+    private final StatusAggregates aggregates = new StatusAggregates(search(), issueManager(), jqlConfigCache,
+            new IssueFieldLookups(null, constantsManager()), searchExecutor);
+
+    @After
+    public void tearDown() {
+        searchExecutor.destroy();
+    }
+
+    @Test
+    public void countsAreBuiltOnceAndGroupedByStatusAndCategory() throws Exception {
+        issues.put("WMPR-1", "1");
+        issues.put("WMPR-2", "3");
+        issues.put("WMPR-3", "5");
+        issues.put("WMPR-4", "6");
+
+        StatusCounts counts = aggregates.get(PROJECT_KEY);
+
+        assertSame(counts, aggregates.get(" " + PROJECT_KEY + " "));
+        assertEquals(1, searches.get());
+        assertEquals(4L, counts.getTotal());
+        assertEquals(counts(1L, 1L, 2L), counts.getStatusCategories());
+        assertEquals(Long.valueOf(1L), counts.getStatuses().get("Resolved"));
+        assertEquals(Long.valueOf(1L), counts.getStatuses().get("Closed"));
+    }
+
+    @Test
+    public void emptyProjectStillReportsEveryCategory() throws Exception {
+        StatusCounts counts = aggregates.get(PROJECT_KEY);
+
+        assertEquals(0L, counts.getTotal());
+        assertEquals(counts(0L, 0L, 0L), counts.getStatusCategories());
+        assertTrue(counts.getStatuses().isEmpty());
+    }
+
+    @Test
+    public void statusChangesAndDeletionsMoveTheCountsWithoutASearch() throws Exception {
+        issues.put("WMPR-1", "1");
+        issues.put("WMPR-2", "1");
+        StatusCounts before = aggregates.get(PROJECT_KEY);
+
+        issues.put("WMPR-1", "5");
+        aggregates.issueChanged(issue("WMPR-1"), Collections.singleton("status"));
+        issues.remove("WMPR-2");
+        aggregates.issueDeleted("WMPR-2");
+
+        awaitTrue(() -> counts(0L, 0L, 1L).equals(aggregates.get(PROJECT_KEY).getStatusCategories()));
+        StatusCounts after = aggregates.get(PROJECT_KEY);
+        assertEquals(1L, after.getTotal());
+        assertTrue(after.getVersion() > before.getVersion());
+        assertFalse(after.getEtag().equals(before.getEtag()));
+        assertEquals(1, searches.get());
+    }
+
+    @Test
+    public void counterOnlyChangesWhenAStatusDoes() {
+        ProjectJqlConfig config = jqlConfigCache.get(PROJECT_KEY);
+        ProjectStatusCounter counter = new ProjectStatusCounter(PROJECT_KEY, config, 0L);
+
+        assertTrue(counter.set("WMPR-1", "1"));
+        assertFalse(counter.set("WMPR-1", "1"));
+        assertFalse(counter.set("WMPR-2", null));
+        assertTrue(counter.set("WMPR-1", null));
+        assertEquals(0, counter.size());
+        assertTrue(counter.counts(config));
+    }
+
+    private static Map<String, Long> counts(long open, long inProgress, long done) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put("new", open);
+        counts.put("indeterminate", inProgress);
+        counts.put("done", done);
+        return counts;
+    }
+
+    private MutableIssue issue(String key) {
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("getKey", args -> key);
+        methods.put("getStatusId", args -> issues.get(key));
+        methods.put("getProjectObject", args -> JiraStandIns.project());
+        return JiraStandIns.proxy(MutableIssue.class, methods);
+    }
+
+    private SearchService search() {
+        return JiraStandIns.proxy(SearchService.class, Collections.singletonMap("searchOverrideSecurity", args -> {
+            searches.incrementAndGet();
+            List<Issue> page = new ArrayList<>();
+            for (String key : issues.keySet()) {
+                page.add(issue(key));
+            }
+            return new SearchResults<>(page, page.size(), ((PagerFilter) args[2]).getMax(), 0);
+        }));
+    }
+
+    private IssueManager issueManager() {
+        return JiraStandIns.proxy(IssueManager.class, Collections.singletonMap("getIssueObject",
+                args -> issues.containsKey((String) args[0]) ? issue((String) args[0]) : null));
+    }
+
+    private static ConstantsManager constantsManager() {
+        return JiraStandIns.proxy(ConstantsManager.class, Collections.singletonMap("getStatus", args -> {
+            String[] status = STATUSES.get((String) args[0]);
+            Map<String, Function<Object[], Object>> categoryMethods = new HashMap<>();
+            categoryMethods.put("getKey", categoryArgs -> status[1]);
+            StatusCategory category = JiraStandIns.proxy(StatusCategory.class, categoryMethods);
+            Map<String, Function<Object[], Object>> statusMethods = new HashMap<>();
+            statusMethods.put("getName", statusArgs -> status[0]);
+            statusMethods.put("getStatusCategory", statusArgs -> category);
+            return JiraStandIns.proxy(Status.class, statusMethods);
+        }));
+    }
+
+    private static void awaitTrue(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!condition.call()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("condition not met within " + WAIT_MILLIS + "ms");
+            }
+            Thread.sleep(10L);
+        }
+    }
+}
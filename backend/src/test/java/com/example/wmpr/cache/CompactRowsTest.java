@@ -0,0 +1,98 @@
+package com.example.wmpr.cache;
+
+import com.example.wmpr.model.ServiceDeskRequest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompactRowsTest {
+
+    @Test
+    public void rowsComeBackAsTheyWereStored() {
+        List<ServiceDeskRequest> requests = Arrays.asList(
+                new ServiceDeskRequest("WMPR-3", "Printer offline", "Alex Smith", "2024-05-01 09:30:00.0",
+                        "Waiting for support", "indeterminate"),
+                new ServiceDeskRequest("WMPR-2", "VPN drops", "Sam Lee", "2024-04-30 17:05:12.345",
+                        "Open", "new"),
+                new ServiceDeskRequest("WMPR-1", "New laptop", "Alex Smith", "2024-04-29 08:00:00.0",
+                        "Waiting for support", "indeterminate"));
+
+        CompactRows rows = new CompactRows(requests);
+
+        assertEquals(3, rows.size());
+        for (int i = 0; i < requests.size(); i++) {
+            assertRow(requests.get(i), rows.get(i));
+            assertEquals(requests.get(i).getKey(), rows.getKey(i));
+        }
+        assertEquals(3, rows.asList().size());
+        assertRow(requests.get(1), rows.asList().get(1));
+    }
+
+    @Test
+    public void createdTextThatIsNotATimestampIsKeptAsIs() {
+        List<ServiceDeskRequest> requests = Arrays.asList(
+                new ServiceDeskRequest("WMPR-3", "A", "Alex", "2024-05-01T09:30:00Z", "Open", "new"),
+                new ServiceDeskRequest("WMPR-2", "B", "Alex", "2024-05-01 09:30:00", "Open", "new"),
+                new ServiceDeskRequest("WMPR-1", "C", "Alex", "", "Open", "new"));
+
+        CompactRows rows = new CompactRows(requests);
+
+        for (int i = 0; i < requests.size(); i++) {
+            assertEquals(requests.get(i).getCreated(), rows.get(i).getCreated());
+        }
+    }
+
+    @Test
+    public void missingValuesStayMissing() {
+        ServiceDeskRequest request = new ServiceDeskRequest("WMPR-1", null, null, null, null, null);
+
+        ServiceDeskRequest row = new CompactRows(Collections.singletonList(request)).get(0);
+
+        assertEquals("WMPR-1", row.getKey());
+        assertNull(row.getSummary());
+        assertNull(row.getReporter());
+        assertNull(row.getCreated());
+        assertNull(row.getStatus());
+        assertNull(row.getStatusCategory());
+    }
+
+    @Test
+    public void repeatedValuesAreSharedAcrossEntries() {
+        CompactRows first = new CompactRows(Collections.singletonList(new ServiceDeskRequest("WMPR-1", "A", "Alex",
+                null, new String("Waiting for support"), "indeterminate")));
+        CompactRows second = new CompactRows(Collections.singletonList(new ServiceDeskRequest("WMPR-2", "B", "Sam",
+                null, new String("Waiting for support"), "indeterminate")));
+
+        assertSame(first.get(0).getStatus(), second.get(0).getStatus());
+    }
+
+    @Test
+    public void compactFormIsSmallerThanTheRows() {
+        List<ServiceDeskRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            requests.add(new ServiceDeskRequest("WMPR-" + i, "Request " + i, "Reporter " + (i % 5),
+                    "2024-05-01 09:" + (10 + i % 50) + ":00.0", "Open", "new"));
+        }
+
+        CompactRows rows = new CompactRows(requests);
+
+        assertTrue(rows.getEstimatedBytes() < rows.getUncompactedBytes());
+    }
+
+    private static void assertRow(ServiceDeskRequest expected, ServiceDeskRequest actual) {
+        assertEquals(expected.getKey(), actual.getKey());
+        assertEquals(expected.getSummary(), actual.getSummary());
+        assertEquals(expected.getReporter(), actual.getReporter());
+        assertEquals(expected.getCreated(), actual.getCreated());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getStatusCategory(), actual.getStatusCategory());
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.wmpr.cache;
+
+import com.atlassian.jira.application.ApplicationRoleManager;
+import com.atlassian.jira.issue.security.IssueSecurityLevel;
+import com.atlassian.jira.issue.security.IssueSecurityLevelManager;
+import com.atlassian.jira.issue.security.IssueSecuritySchemeManager;
+import com.atlassian.jira.permission.PermissionSchemeEntry;
+import com.atlassian.jira.permission.PermissionSchemeManager;
+import com.atlassian.jira.scheme.Scheme;
+import com.atlassian.jira.security.PermissionManager;
+import com.atlassian.jira.user.ApplicationUser;
+import com.example.wmpr.JiraStandIns;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PermissionFingerprintServiceTest {
+
+    private static final String JQL = "project = WMPR ORDER BY created DESC";
+
+    // Browse Projects grants of the project's permission scheme, by grant type
+    private final List<String> browseGrants = new ArrayList<>(Collections.singletonList("group"));
+    // Security levels held, by user key
+    private final Map<String, List<IssueSecurityLevel>> levels = new HashMap<>();
+    private boolean applicationAccess = true;
+
+    @Test
+    public void usersWhoSeeTheSameShareAFingerprint() {
+        String alice = service().fingerprint(user("alice"), JQL);
+        String bob = service().fingerprint(user("bob"), JQL);
+
+        assertEquals(alice, bob);
+        assertFalse(PermissionFingerprintService.isPerUser(alice));
+    }
+
+    @Test
+    public void differentSecurityLevelsGiveDifferentFingerprints() {
+        levels.put("bob", Collections.singletonList(level(10100L)));
+
+        assertFalse(service().fingerprint(user("alice"), JQL).equals(service().fingerprint(user("bob"), JQL)));
+    }
+
+    @Test
+    public void jqlNamingTheSearcherIsNeverShared() {
+        String fingerprint = service().fingerprint(user("alice"), "assignee = currentUser()");
+
+        assertEquals("user:alice", fingerprint);
+        assertTrue(PermissionFingerprintService.isPerUser(fingerprint));
+    }
+
+    @Test
+    public void browseGrantedPerIssueIsNeverShared() {
+        browseGrants.add("reporter");
+
+        assertEquals("user:alice", service().fingerprint(user("alice"), JQL));
+    }
+
+    @Test
+    public void portalCustomersAreNeverShared() {
+        applicationAccess = false;
+
+        assertEquals("user:alice", service().fingerprint(user("alice"), JQL));
+    }
+
+    private PermissionFingerprintService service() {
+        Map<String, Function<Object[], Object>> permissions = new HashMap<>();
+        permissions.put("getProjects", args -> Collections.singletonList(JiraStandIns.project()));
+        permissions.put("hasPermission", args -> true);
+
+        Map<String, Function<Object[], Object>> levelMethods = new HashMap<>();
+        levelMethods.put("getAllSecurityLevelsForUser",
+                args -> levels.getOrDefault(((ApplicationUser) args[0]).getKey(), Collections.emptyList()));
+
+        Scheme scheme = new Scheme(10000L, "PermissionScheme", "Default", Collections.emptyList());
+        Map<String, Function<Object[], Object>> schemeMethods = new HashMap<>();
+        schemeMethods.put("getSchemeFor", args -> scheme);
+        schemeMethods.put("getPermissionSchemeEntries", args -> {
+            List<PermissionSchemeEntry> entries = new ArrayList<>();
+            for (String type : browseGrants) {
+                entries.add(grant(type));
+            }
+            return entries;
+        });
+
+        return new PermissionFingerprintService(JiraStandIns.proxy(PermissionManager.class, permissions),
+                JiraStandIns.proxy(IssueSecurityLevelManager.class, levelMethods),
+                JiraStandIns.proxy(IssueSecuritySchemeManager.class,
+                        Collections.singletonMap("getSchemeFor", args -> null)),
+                JiraStandIns.proxy(PermissionSchemeManager.class, schemeMethods),
+                JiraStandIns.proxy(ApplicationRoleManager.class,
+                        Collections.singletonMap("hasAnyRole", args -> applicationAccess)));
+    }
+
+    private static ApplicationUser user(String key) {
+        return JiraStandIns.proxy(ApplicationUser.class, Collections.singletonMap("getKey", args -> key));
+    }
+
+    private static PermissionSchemeEntry grant(String type) {
+        return JiraStandIns.proxy(PermissionSchemeEntry.class, Collections.singletonMap("getType", args -> type));
+    }
+
+    private static IssueSecurityLevel level(long id) {
+        return JiraStandIns.proxy(IssueSecurityLevel.class, Collections.singletonMap("getId", args -> id));
+    }
+}
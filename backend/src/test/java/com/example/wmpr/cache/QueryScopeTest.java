@@ -0,0 +1,111 @@
+package com.example.wmpr.cache;
+
+import com.atlassian.jira.project.Project;
+import com.atlassian.query.QueryImpl;
+import com.atlassian.query.clause.AndClause;
+import com.atlassian.query.clause.Clause;
+import com.atlassian.query.clause.OrClause;
+import com.atlassian.query.clause.TerminalClauseImpl;
+import com.atlassian.query.operand.FunctionOperand;
+import com.atlassian.query.operator.Operator;
+import com.atlassian.query.order.OrderByImpl;
+import com.atlassian.query.order.SearchSort;
+import com.atlassian.query.order.SortOrder;
+import com.example.wmpr.JiraStandIns;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QueryScopeTest {
+
+    private static final Clause IN_WMPR = new TerminalClauseImpl("project", Operator.EQUALS, "WMPR");
+    private static final Clause OPEN = new TerminalClauseImpl("status", Operator.EQUALS, "Open");
+
+    @Test
+    public void projectClauseLimitsTheResultToThatProject() {
+        QueryScope scope = scope(new AndClause(IN_WMPR, OPEN), "project = WMPR AND status = Open");
+
+        assertTrue(scope.isProjectRestricted());
+        assertTrue(scope.isLimitedTo(JiraStandIns.project()));
+        assertTrue(scope.mayContain(JiraStandIns.project()));
+        assertFalse(scope.mayContain(otherProject()));
+    }
+
+    @Test
+    public void projectListNamingAnotherProjectIsNotLimitedToOne() {
+        QueryScope scope = scope(new TerminalClauseImpl("project", "WMPR", "HR"), "project in (WMPR, HR)");
+
+        assertTrue(scope.mayContain(otherProject()));
+        assertFalse(scope.isLimitedTo(JiraStandIns.project()));
+    }
+
+    @Test
+    public void projectClauseUnderOrRestrictsNothing() {
+        QueryScope scope = scope(new OrClause(IN_WMPR, OPEN), "project = WMPR OR status = Open");
+
+        assertFalse(scope.isProjectRestricted());
+        assertTrue(scope.mayContain(otherProject()));
+    }
+
+    @Test
+    public void dependsOnTheFieldsItFiltersAndSortsBy() {
+        QueryScope scope = scope(new AndClause(IN_WMPR, new TerminalClauseImpl("type", Operator.EQUALS, "Bug")),
+                "project = WMPR AND type = Bug ORDER BY created DESC");
+
+        assertTrue(scope.dependsOnAny(Collections.singletonList("issuetype")));
+        assertTrue(scope.dependsOnAny(Collections.singletonList("created")));
+        assertFalse(scope.dependsOnAny(Arrays.asList("summary", "assignee")));
+    }
+
+    @Test
+    public void keyFunctionsAndFreeTextDependOnEveryField() {
+        QueryScope byFunction = scope(new TerminalClauseImpl("issuekey", Operator.IN,
+                new FunctionOperand("updatedBy", "alice")), "issuekey in updatedBy(alice)");
+        QueryScope byText = scope(new TerminalClauseImpl("text", Operator.LIKE, "printer"), "text ~ printer");
+
+        assertTrue(byFunction.dependsOnAny(Collections.singletonList("summary")));
+        assertTrue(byText.dependsOnAny(Collections.singletonList("summary")));
+    }
+
+    @Test
+    public void relativeDatesMakeTheResultTimeSensitive() {
+        assertTrue(scope(OPEN, "status = Open AND created >= -7d").isTimeSensitive());
+        assertTrue(scope(OPEN, "status = Open AND created >= startOfDay()").isTimeSensitive());
+        assertFalse(scope(OPEN, "status = Open").isTimeSensitive());
+    }
+
+    @Test
+    public void fieldNamesAreComparedLikeChangeHistoryNames() {
+        assertEquals("fixversion", QueryScope.normalizeField("Fix Version"));
+        assertEquals("security", QueryScope.normalizeField("level"));
+        assertEquals("status", QueryScope.normalizeField("statusCategory"));
+    }
+
+    @Test
+    public void queriesThatCannotBeAnalysedMatchEverything() {
+        assertFalse(QueryScope.UNKNOWN.isProjectRestricted());
+        assertTrue(QueryScope.UNKNOWN.dependsOnAny(Collections.singletonList("summary")));
+        assertTrue(QueryScope.of(null, "status = Open").isTimeSensitive());
+    }
+
+    private static QueryScope scope(Clause where, String jql) {
+        return QueryScope.of(new QueryImpl(where, new OrderByImpl(new SearchSort("created", SortOrder.DESC)), jql),
+                jql);
+    }
+
+    private static Project otherProject() {
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("getId", args -> 10001L);
+        methods.put("getKey", args -> "HR");
+        methods.put("getName", args -> "Human Resources");
+        return JiraStandIns.proxy(Project.class, methods);
+    }
+}
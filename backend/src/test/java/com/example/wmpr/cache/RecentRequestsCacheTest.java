@@ -0,0 +1,180 @@
+package com.example.wmpr.cache;
+
+import com.atlassian.jira.jql.parser.JqlParseException;
+import com.example.wmpr.JiraStandIns;
+import com.example.wmpr.model.ServiceDeskRequest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class RecentRequestsCacheTest {
+
+    private static final String JQL = "project = WMPR ORDER BY created DESC";
+    private static final long TTL = 60_000L;
+
+    private final RecentRequestsCache cache = new RecentRequestsCache(TTL, 2);
+
+    @Test
+    public void entriesExpireAfterTheTtl() {
+        RecentRequestsCacheKey fresh = key("perm:a");
+        RecentRequestsCacheKey old = key("perm:b");
+        cache.put(fresh, result(JQL, System.currentTimeMillis(), "WMPR-1"));
+        cache.put(old, result(JQL, System.currentTimeMillis() - TTL - 1, "WMPR-1"));
+
+        assertNotNull(cache.get(fresh));
+        assertNull(cache.get(old));
+        assertEquals(1L, cache.getStatistics().get("expirations"));
+        assertEquals(1L, cache.getStatistics().get("misses"));
+    }
+
+    @Test
+    public void relativeDatesExpireSooner() {
+        String relative = "project = WMPR AND created >= -7d";
+        RecentRequestsCacheKey key = new RecentRequestsCacheKey(relative, "perm:a", "first");
+        long createdAt = System.currentTimeMillis() - RecentRequestsCache.TIME_SENSITIVE_TTL_MILLIS - 1;
+
+        cache.put(key, result(relative, createdAt, "WMPR-1"));
+
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        RecentRequestsCacheKey first = key("perm:a");
+        RecentRequestsCacheKey second = key("perm:b");
+        RecentRequestsCacheKey third = key("perm:c");
+        cache.put(first, result(JQL, System.currentTimeMillis(), "WMPR-1"));
+        cache.put(second, result(JQL, System.currentTimeMillis(), "WMPR-1"));
+        cache.get(first);
+
+        cache.put(third, result(JQL, System.currentTimeMillis(), "WMPR-1"));
+
+        assertNotNull(cache.peek(first));
+        assertNull(cache.peek(second));
+        assertNotNull(cache.peek(third));
+        assertEquals(1L, cache.getStatistics().get("evictions"));
+    }
+
+    @Test
+    public void invalidatedRowsAreStillOfferedAsStale() {
+        RecentRequestsCacheKey key = key("perm:a");
+        cache.put(key, result(JQL, System.currentTimeMillis(), "WMPR-1"));
+
+        cache.invalidateJql(JQL);
+
+        assertNull(cache.get(key));
+        assertEquals("WMPR-1", cache.getStale(key).getRequests().get(0).getKey());
+    }
+
+    @Test
+    public void evictedIssueIsNotOfferedAsStale() {
+        RecentRequestsCacheKey key = key("perm:a");
+        cache.put(key, result(JQL, System.currentTimeMillis(), "WMPR-2", "WMPR-1"));
+
+        cache.evictIssue("WMPR-1");
+
+        assertNull(cache.get(key));
+        assertNull(cache.getStale(key));
+    }
+
+    @Test
+    public void changeSignalIsReleasedByDifferentRowsOnly() {
+        RecentRequestsCacheKey key = key("perm:a");
+        cache.put(key, result(JQL, System.currentTimeMillis(), "WMPR-1"));
+        CountDownLatch changed = cache.changeSignal(key);
+
+        cache.put(key, result(JQL, System.currentTimeMillis(), "WMPR-1"));
+        assertEquals(1L, changed.getCount());
+
+        cache.put(key, result(JQL, System.currentTimeMillis(), "WMPR-2", "WMPR-1"));
+        assertEquals(0L, changed.getCount());
+    }
+
+    @Test
+    public void changeSignalIsReleasedWhenTheEntryIsDropped() {
+        RecentRequestsCacheKey key = key("perm:a");
+        cache.put(key, result(JQL, System.currentTimeMillis(), "WMPR-1"));
+        CountDownLatch changed = cache.changeSignal(key);
+
+        cache.evictIssue("WMPR-1");
+
+        assertEquals(0L, changed.getCount());
+        assertEquals(1L, cache.changeSignal(key).getCount());
+    }
+
+    @Test
+    public void deltaHasTheChangedAndRemovedRowsAndTheNewOrder() {
+        RecentRequestsCacheKey key = key("perm:a");
+        CachedRecentRequests before = result(JQL, System.currentTimeMillis(), "WMPR-1", "WMPR-2");
+        cache.put(key, before);
+        List<ServiceDeskRequest> rows = new ArrayList<>(result(JQL, 0L, "WMPR-3").getRequests());
+        rows.add(new ServiceDeskRequest("WMPR-1", "Printer offline", "Alex Smith", "2024-05-01 09:30:00.0",
+                "Done", "done"));
+        CachedRecentRequests after = new CachedRecentRequests(rows, JQL, scope(JQL), System.currentTimeMillis(),
+                false, null, null);
+        cache.put(key, after);
+
+        RecentRequestsDelta delta = cache.delta(key, before.getEtag(), after);
+
+        assertEquals(before.getEtag(), delta.getSince());
+        assertEquals(Arrays.asList("WMPR-3", "WMPR-1"), keys(delta.getUpserts()));
+        assertEquals("Done", delta.getUpserts().get(1).getStatus());
+        assertEquals(Collections.singletonList("WMPR-2"), delta.getRemoved());
+        assertEquals(Arrays.asList("WMPR-3", "WMPR-1"), delta.getOrder());
+        assertEquals(1L, cache.getStatistics().get("deltasServed"));
+    }
+
+    @Test
+    public void deltaFromAnUnknownOrForgottenVersionIsNull() {
+        RecentRequestsCacheKey key = key("perm:a");
+        CachedRecentRequests oldest = result(JQL, System.currentTimeMillis(), "WMPR-0");
+        cache.put(key, oldest);
+        CachedRecentRequests current = oldest;
+        for (int i = 1; i <= RecentRequestsCache.HISTORY_DEPTH; i++) {
+            current = result(JQL, System.currentTimeMillis(), "WMPR-" + i);
+            cache.put(key, current);
+        }
+
+        assertNull(cache.delta(key, oldest.getEtag(), current));
+        assertNull(cache.delta(key, "no such version", current));
+        assertNull(cache.delta(key("perm:b"), oldest.getEtag(), current));
+        assertNotNull(cache.delta(key, result(JQL, 0L, "WMPR-1").getEtag(), current));
+    }
+
+    private static RecentRequestsCacheKey key(String fingerprint) {
+        return new RecentRequestsCacheKey(JQL, fingerprint, "first");
+    }
+
+    private static CachedRecentRequests result(String jql, long createdAt, String... keys) {
+        List<ServiceDeskRequest> requests = new ArrayList<>();
+        for (String key : keys) {
+            requests.add(new ServiceDeskRequest(key, "Printer offline", "Alex Smith", "2024-05-01 09:30:00.0",
+                    "Open", "new"));
+        }
+        return new CachedRecentRequests(requests, jql, scope(jql), createdAt, false, null, null);
+    }
+
+    private static List<String> keys(List<ServiceDeskRequest> requests) {
+        List<String> keys = new ArrayList<>();
+        for (ServiceDeskRequest request : requests) {
+            keys.add(request.getKey());
+        }
+        return keys;
+    }
+
+    private static QueryScope scope(String jql) {
+        try {
+            return QueryScope.of(JiraStandIns.jqlQueryParser().parseQuery(jql), jql);
+        } catch (JqlParseException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.wmpr.cluster;
+
+import com.atlassian.cache.CacheManager;
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.jira.event.issue.IssueEvent;
+import com.atlassian.jira.event.type.EventType;
+import com.atlassian.jira.issue.IssueManager;
+import com.example.wmpr.JiraStandIns;
+import com.example.wmpr.aggregate.StatusAggregates;
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.QueryScope;
+import com.example.wmpr.cache.RecentRequestsCache;
+import com.example.wmpr.cache.RecentRequestsCacheKey;
+import com.example.wmpr.listener.WmprIssueEventListener;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.model.ServiceDeskRequest;
+import com.example.wmpr.service.ProjectJqlConfig;
+import com.example.wmpr.service.ProjectJqlConfigCache;
+import com.example.wmpr.service.SearchExecutor;
+import com.example.wmpr.settings.ProjectSettings;
+import com.example.wmpr.settings.ProjectSettingsStore;
+import com.example.wmpr.typeahead.TypeaheadIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.example.wmpr.JiraStandIns.PROJECT_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Two plugin instances joined by a {@link LocalClusterTransport}, sharing their plugin settings and replicated
+ * cache: what is changed on one node must not be served stale by the other.
+ */
+public class ClusterInvalidationsTest {
+
+    private static final String CUSTOM_JQL = "project = WMPR AND status = Open ORDER BY created DESC";
+
+    private final LocalClusterTransport.Network network = new LocalClusterTransport.Network();
+    private final Map<String, Object> pluginSettings = new ConcurrentHashMap<>();
+    private final Map<Object, Object> replicated = new ConcurrentHashMap<>();
+
+    private Node a;
+    private Node b;
+
+    @Before
+    public void setUp() {
+        System.setProperty(SharedResultStore.ENABLED_PROPERTY, "true");
+        a = new Node();
+        b = new Node();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(SharedResultStore.ENABLED_PROPERTY);
+        a.stop();
+        b.stop();
+    }
+
+    @Test
+    public void settingsSavedOnOneNodeInvalidateTheOther() {
+        String previousJql = b.jqlConfigCache.get(PROJECT_KEY).getJql();
+        RecentRequestsCacheKey key = new RecentRequestsCacheKey(previousJql, "everyone", "first");
+        b.cache.put(key, cached(b.jqlConfigCache.get(PROJECT_KEY), System.currentTimeMillis(), "WMPR-1"));
+
+        a.settingsStore.save(ProjectSettings.defaults(PROJECT_KEY).withJql(true, CUSTOM_JQL, null));
+        a.settingsInvalidation.settingsSaved(PROJECT_KEY, previousJql);
+
+        assertNull("result for the old JQL", b.cache.peek(key));
+        assertEquals(CUSTOM_JQL, b.settingsStore.get(PROJECT_KEY).getEffectiveJql());
+        assertEquals(CUSTOM_JQL, b.jqlConfigCache.get(PROJECT_KEY).getJql());
+    }
+
+    @Test
+    public void issueEventOnOneNodeInvalidatesTheOther() {
+        ProjectJqlConfig config = b.jqlConfigCache.get(PROJECT_KEY);
+        RecentRequestsCacheKey showing = new RecentRequestsCacheKey(config.getExecutedJql(), "everyone", "first");
+        RecentRequestsCacheKey notShowing = new RecentRequestsCacheKey(config.getExecutedJql(), "everyone", "second");
+        long now = System.currentTimeMillis();
+        b.cache.put(showing, cached(config, now, "WMPR-2", "WMPR-1"));
+        b.cache.put(notShowing, cached(config, now, "WMPR-3"));
+
+        a.listener.onIssueEvent(new IssueEvent(JiraStandIns.issue("WMPR-1", 20001L), Collections.emptyMap(), null,
+                EventType.ISSUE_DELETED_ID));
+
+        assertNull("result showing the deleted issue", b.cache.peek(showing));
+        assertNull("stale copy showing the deleted issue", b.cache.getStale(showing));
+        assertNotNull("result not showing it", b.cache.peek(notShowing));
+    }
+
+    @Test
+    public void sharedResultOlderThanTheLastInvalidationIsRejected() {
+        ProjectJqlConfig config = a.jqlConfigCache.get(PROJECT_KEY);
+        RecentRequestsCacheKey key = new RecentRequestsCacheKey(config.getExecutedJql(), "everyone", "first");
+        a.sharedResults.put(key, cached(config, System.currentTimeMillis(), "WMPR-2", "WMPR-1"));
+        assertNotNull("result shared before any change", b.sharedResults.get(key, b.jqlConfigCache.get(PROJECT_KEY)));
+
+        a.listener.onIssueEvent(new IssueEvent(JiraStandIns.issue("WMPR-1", 20001L), Collections.emptyMap(), null,
+                EventType.ISSUE_DELETED_ID));
+        assertNull("result shared before the change", b.sharedResults.get(key, b.jqlConfigCache.get(PROJECT_KEY)));
+
+        long afterChange = b.cache.getLastInvalidatedAt() + SharedResultStore.CLOCK_SKEW_MILLIS + 1;
+        a.sharedResults.put(key, cached(config, afterChange, "WMPR-2"));
+        assertNotNull("result shared after the change", b.sharedResults.get(key, b.jqlConfigCache.get(PROJECT_KEY)));
+        assertEquals(1L, b.sharedResults.getStatistics().get("rejected"));
+    }
+
+    @Test
+    public void sharedCopiesHoldOnlyJdkTypes() {
+        ProjectJqlConfig config = a.jqlConfigCache.get(PROJECT_KEY);
+        RecentRequestsCacheKey key = new RecentRequestsCacheKey(config.getExecutedJql(), "everyone", "first");
+        List<ServiceDeskRequest> requests = Collections.singletonList(
+                new ServiceDeskRequest("WMPR-1", "Printer offline", null, "2024-05-01 09:30:00.0", "Open", "new"));
+        a.sharedResults.put(key, new CachedRecentRequests(requests, config.getExecutedJql(),
+                QueryScope.of(config.getQuery(), config.getExecutedJql()), System.currentTimeMillis() + 60_000L,
+                true, "cursor", 7L));
+
+        // Other nodes deserialize the copy with Jira's classloader, which doesn't see plugin classes
+        for (Object value : replicated.values()) {
+            assertEquals(byte[].class, value.getClass());
+        }
+        CachedRecentRequests read = b.sharedResults.get(key, b.jqlConfigCache.get(PROJECT_KEY));
+        assertEquals("Printer offline", read.getRequests().get(0).getSummary());
+        assertNull(read.getRequests().get(0).getReporter());
+        assertEquals("cursor", read.getNextCursor());
+        assertEquals(Long.valueOf(7L), read.getTotal());
+    }
+
+    private static CachedRecentRequests cached(ProjectJqlConfig config, long createdAt, String... keys) {
+        List<ServiceDeskRequest> requests = new ArrayList<>();
+        for (String key : keys) {
+            requests.add(new ServiceDeskRequest(key, "Request " + key, "reporter", "2024-05-01 09:30:00.0", "Open",
+                    "new"));
+        }
+        return new CachedRecentRequests(requests, config.getExecutedJql(),
+                QueryScope.of(config.getQuery(), config.getExecutedJql()), createdAt, false, null, null);
+    }
+
+    /**
+     * One node's plugin, wired the way Spring wires it, with only what the invalidations reach.
+     */
+    private final class Node {
+
+        final RecentRequestsCache cache = new RecentRequestsCache();
+        final ProjectSettingsStore settingsStore = new ProjectSettingsStore(
+                JiraStandIns.pluginSettingsFactory(pluginSettings), JiraStandIns.projectManager());
+        final ProjectJqlConfigCache jqlConfigCache = new ProjectJqlConfigCache(settingsStore,
+                JiraStandIns.jqlQueryParser(), new WmprMetrics());
+        final SearchExecutor searchExecutor = new SearchExecutor();
+        final ClusterInvalidations invalidations = new ClusterInvalidations(network.join());
+        final ProjectSettingsInvalidation settingsInvalidation = new ProjectSettingsInvalidation(invalidations,
+                jqlConfigCache, cache, settingsStore);
+        final SharedResultStore sharedResults;
+        final WmprIssueEventListener listener;
+
+        Node() {
+            CacheManager cacheManager = JiraStandIns.cacheManager(replicated);
+            sharedResults = new SharedResultStore(cacheManager, cache);
+            IssueManager issueManager = JiraStandIns.emptyIssueManager();
+            // Nothing is counted or indexed, so neither searches
+            listener = new WmprIssueEventListener(JiraStandIns.proxy(EventPublisher.class,
+                    Collections.singletonMap("register", args -> null)), issueManager, cache, null, invalidations,
+                    new StatusAggregates(null, issueManager, jqlConfigCache, null, searchExecutor),
+                    new TypeaheadIndex(null, issueManager, jqlConfigCache, null, searchExecutor));
+            invalidations.afterPropertiesSet();
+            settingsInvalidation.afterPropertiesSet();
+            listener.afterPropertiesSet();
+        }
+
+        void stop() {
+            invalidations.destroy();
+            searchExecutor.destroy();
+        }
+    }
+}
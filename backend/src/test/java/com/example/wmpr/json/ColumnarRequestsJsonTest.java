@@ -0,0 +1,51 @@
+package com.example.wmpr.json;
+
+import com.example.wmpr.model.ServiceDeskRequest;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ColumnarRequestsJsonTest {
+
+    private static final List<ServiceDeskRequest> ROWS = Arrays.asList(
+            new ServiceDeskRequest("WMPR-2", "Printer offline", "Alex Smith", null, "Open", "new"),
+            new ServiceDeskRequest("WMPR-1", "No toner", "Alex Smith", null, "Done", "done"));
+
+    @Test
+    public void repeatedValuesAreWrittenOnceToTheDictionary() {
+        String json = columnar(ROWS, Arrays.asList("key", "summary", "reporter", "created", "status",
+                "statusCategory"));
+
+        assertEquals("{\"columns\":[\"key\",\"summary\",\"reporter\",\"created\",\"status\",\"statusCategory\"],"
+                + "\"dictionaryColumns\":[\"reporter\",\"status\",\"statusCategory\"],"
+                + "\"dictionary\":[\"Alex Smith\",\"Open\",\"Done\",\"new\",\"done\"],"
+                + "\"rows\":[[\"WMPR-2\",\"Printer offline\",0,null,1,3],[\"WMPR-1\",\"No toner\",0,null,2,4]]}", json);
+    }
+
+    @Test
+    public void onlyTheSelectedColumnsAreWritten() {
+        String json = columnar(ROWS, Arrays.asList("key", "status"));
+
+        assertEquals("{\"columns\":[\"key\",\"status\"],\"dictionaryColumns\":[\"status\"],"
+                + "\"dictionary\":[\"Open\",\"Done\"],\"rows\":[[\"WMPR-2\",0],[\"WMPR-1\",1]]}", json);
+    }
+
+    @Test
+    public void noRowsGiveAnEmptyDictionary() {
+        String json = columnar(Collections.emptyList(), Collections.singletonList("reporter"));
+
+        assertEquals("{\"columns\":[\"reporter\"],\"dictionaryColumns\":[\"reporter\"],\"dictionary\":[],"
+                + "\"rows\":[]}", json);
+    }
+
+    private static String columnar(List<ServiceDeskRequest> rows, List<String> columns) {
+        Utf8JsonWriter writer = new Utf8JsonWriter();
+        ColumnarRequestsJson.writeRows(writer, rows, columns);
+        return new String(writer.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
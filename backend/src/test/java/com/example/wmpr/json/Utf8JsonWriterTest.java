@@ -0,0 +1,76 @@
+package com.example.wmpr.json;
+
+import com.example.wmpr.model.ServiceDeskRequest;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class Utf8JsonWriterTest {
+
+    @Test
+    public void quotesAndControlCharactersAreEscaped() {
+        assertEquals("\"say \\\"hi\\\" \\\\ bye\\n\\t\\u0001\"", json("say \"hi\" \\ bye\n\t\u0001"));
+    }
+
+    @Test
+    public void htmlCharactersAreEscapedLikeGson() {
+        assertEquals("\"\\u003cb\\u003e \\u0026 \\u003d \\u0027\"", json("<b> & = '"));
+    }
+
+    @Test
+    public void lineSeparatorsAreEscapedForJavaScript() {
+        assertEquals("\"a\\u2028b\\u2029c\"", json("a\u2028b\u2029c"));
+    }
+
+    @Test
+    public void nonAsciiTextIsWrittenAsUtf8() {
+        String text = "Drucker: gr\u00f6\u00dfer, \u6253\u5370\u673a, \uD83D\uDDA8";
+
+        assertEquals("\"" + text + "\"", json(text));
+    }
+
+    @Test
+    public void unpairedSurrogatesAreReplaced() {
+        assertEquals("\"a?b\"", json("a\uD83Db"));
+    }
+
+    @Test
+    public void mapsLeaveOutNullValuesAndSeparateMembers() {
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("size", 2);
+        page.put("hasMore", true);
+        page.put("nextCursor", null);
+        page.put("keys", Arrays.asList("WMPR-2", "WMPR-1"));
+
+        String encoded = new String(new Utf8JsonWriter().value(page).toByteArray(), StandardCharsets.UTF_8);
+
+        assertEquals("{\"size\":2,\"hasMore\":true,\"keys\":[\"WMPR-2\",\"WMPR-1\"]}", encoded);
+    }
+
+    @Test
+    public void rowsLeaveOutMissingFields() {
+        byte[] encoded = RecentRequestsJson.encodeRows(Collections.singletonList(
+                new ServiceDeskRequest("WMPR-1", "Printer offline", null, null, "Open", null)));
+
+        assertEquals("[{\"key\":\"WMPR-1\",\"summary\":\"Printer offline\",\"status\":\"Open\"}]",
+                new String(encoded, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void localWriterStartsEmpty() {
+        Utf8JsonWriter.local().beginArray().value("left over");
+
+        assertEquals("[]", new String(Utf8JsonWriter.local().beginArray().endArray().toByteArray(),
+                StandardCharsets.UTF_8));
+    }
+
+    private static String json(String value) {
+        return new String(new Utf8JsonWriter().value(value).toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.wmpr.listener;
+
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.IssueManager;
+import com.atlassian.jira.issue.MutableIssue;
+import com.example.wmpr.JiraStandIns;
+import com.example.wmpr.aggregate.StatusAggregates;
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.QueryScope;
+import com.example.wmpr.cache.RecentRequestsCache;
+import com.example.wmpr.cache.RecentRequestsCacheKey;
+import com.example.wmpr.cluster.ClusterInvalidations;
+import com.example.wmpr.cluster.LocalClusterTransport;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.model.ServiceDeskRequest;
+import com.example.wmpr.service.IssueFieldLookups;
+import com.example.wmpr.service.ProjectJqlConfig;
+import com.example.wmpr.service.ProjectJqlConfigCache;
+import com.example.wmpr.service.SearchExecutor;
+import com.example.wmpr.service.ServiceDeskRequestMapper;
+import com.example.wmpr.settings.ProjectSettingsStore;
+import com.example.wmpr.typeahead.TypeaheadIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static com.example.wmpr.JiraStandIns.PROJECT_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Issue changes as another node reports them, with the fields that changed, applied to this node's cache.
+ */
+public class WmprIssueEventListenerTest {
+
+    private static final long ISSUE_ID = 20001L;
+
+    private final LocalClusterTransport.Network network = new LocalClusterTransport.Network();
+    private final ClusterInvalidations otherNode = new ClusterInvalidations(network.join());
+    private final ClusterInvalidations invalidations = new ClusterInvalidations(network.join());
+    private final RecentRequestsCache cache = new RecentRequestsCache();
+    private final SearchExecutor searchExecutor = new SearchExecutor();
+
+    private ProjectJqlConfig config;
+
+    @Before
+    public void setUp() {
+        ProjectJqlConfigCache jqlConfigCache = new ProjectJqlConfigCache(
+                new ProjectSettingsStore(JiraStandIns.pluginSettingsFactory(new HashMap<>()),
+                        JiraStandIns.projectManager()), JiraStandIns.jqlQueryParser(), new WmprMetrics());
+        config = jqlConfigCache.get(PROJECT_KEY);
+        IssueManager issueManager = JiraStandIns.proxy(IssueManager.class,
+                Collections.singletonMap("getIssueObject", args -> args[0].equals(ISSUE_ID) ? issue() : null));
+        // Nothing is counted or indexed, so neither searches
+        WmprIssueEventListener listener = new WmprIssueEventListener(JiraStandIns.proxy(EventPublisher.class,
+                Collections.singletonMap("register", args -> null)), issueManager, cache,
+                new ServiceDeskRequestMapper(new IssueFieldLookups(null, null)), invalidations,
+                new StatusAggregates(null, issueManager, jqlConfigCache, null, searchExecutor),
+                new TypeaheadIndex(null, issueManager, jqlConfigCache, null, searchExecutor));
+        otherNode.afterPropertiesSet();
+        invalidations.afterPropertiesSet();
+        listener.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        otherNode.destroy();
+        invalidations.destroy();
+        searchExecutor.destroy();
+    }
+
+    @Test
+    public void changedRowIsPatchedWhereItShows() {
+        RecentRequestsCacheKey showing = put("perm:shared", "WMPR-2", "WMPR-1");
+        RecentRequestsCacheKey notShowing = put("user:alice", "WMPR-3");
+
+        updated("summary");
+
+        assertEquals("Printer fixed", cache.peek(showing).getRequests().get(1).getSummary());
+        assertNotNull(cache.peek(notShowing));
+    }
+
+    @Test
+    public void reporterChangeEvictsThePerUserEntriesOfTheProject() {
+        RecentRequestsCacheKey showing = put("perm:shared", "WMPR-2", "WMPR-1");
+        RecentRequestsCacheKey shared = put("perm:other", "WMPR-3");
+        RecentRequestsCacheKey perUser = put("user:alice", "WMPR-3");
+
+        updated("reporter");
+
+        assertNull("result showing the issue", cache.peek(showing));
+        assertNotNull("shared result, which can't gain the issue", cache.peek(shared));
+        assertNull("per-user result, which may gain the issue", cache.peek(perUser));
+    }
+
+    @Test
+    public void securityLevelChangeEvictsTheSharedEntriesOfTheProject() {
+        RecentRequestsCacheKey shared = put("perm:other", "WMPR-3");
+
+        updated("security");
+
+        assertNull(cache.peek(shared));
+    }
+
+    private void updated(String field) {
+        otherNode.broadcast(WmprIssueEventListener.TYPE, "updated:" + ISSUE_ID + ":" + field);
+    }
+
+    private RecentRequestsCacheKey put(String fingerprint, String... keys) {
+        List<ServiceDeskRequest> requests = new ArrayList<>();
+        for (String key : keys) {
+            requests.add(new ServiceDeskRequest(key, "Printer offline", "reporter", "2024-05-01 09:30:00.0",
+                    "Open", "new"));
+        }
+        RecentRequestsCacheKey key = new RecentRequestsCacheKey(config.getExecutedJql(), fingerprint, "first");
+        cache.put(key, new CachedRecentRequests(requests, config.getExecutedJql(),
+                QueryScope.of(config.getQuery(), config.getExecutedJql()), System.currentTimeMillis(), false, null,
+                null));
+        return key;
+    }
+
+    private static MutableIssue issue() {
+        Issue plain = JiraStandIns.issue("WMPR-1", ISSUE_ID);
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("getKey", args -> plain.getKey());
+        methods.put("getId", args -> plain.getId());
+        methods.put("getProjectObject", args -> plain.getProjectObject());
+        methods.put("getProjectId", args -> plain.getProjectId());
+        methods.put("getSummary", args -> "Printer fixed");
+        methods.put("getReporterId", args -> null);
+        methods.put("getStatusId", args -> null);
+        methods.put("getCreated", args -> null);
+        return JiraStandIns.proxy(MutableIssue.class, methods);
+    }
+}
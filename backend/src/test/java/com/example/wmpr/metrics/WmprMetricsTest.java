@@ -0,0 +1,78 @@
+package com.example.wmpr.metrics;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WmprMetricsTest {
+
+    private final WmprMetrics metrics = new WmprMetrics();
+
+    @Test
+    public void countersAndStagesAreRecorded() {
+        metrics.increment(WmprMetrics.REQUESTS);
+        metrics.increment(WmprMetrics.REQUESTS);
+        metrics.record(WmprMetrics.Stage.SEARCH, metrics.start());
+
+        assertEquals(Long.valueOf(2L), metrics.getCounters().get(WmprMetrics.REQUESTS));
+        assertEquals(Long.valueOf(1L), metrics.getStageCounts().get("search"));
+        assertEquals(Long.valueOf(0L), metrics.getStageCounts().get("total"));
+    }
+
+    @Test
+    public void disabledMetricsRecordNothing() {
+        metrics.setEnabled(false);
+
+        long start = metrics.start();
+        metrics.increment(WmprMetrics.REQUESTS);
+        metrics.record(WmprMetrics.Stage.SEARCH, start);
+        metrics.recordResult(10, 2048);
+
+        assertEquals(0L, start);
+        assertTrue(metrics.getCounters().isEmpty());
+        assertEquals(Long.valueOf(0L), metrics.getStageCounts().get("search"));
+        assertFalse((Boolean) metrics.snapshot().get("enabled"));
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        metrics.increment(WmprMetrics.ERRORS);
+        metrics.record(WmprMetrics.Stage.MAP, metrics.start());
+
+        metrics.reset();
+
+        assertTrue(metrics.getCounters().isEmpty());
+        assertEquals(Long.valueOf(0L), metrics.getStageCounts().get("map"));
+    }
+
+    @Test
+    public void histogramQuantilesAreBucketUpperBoundsCappedAtTheMax() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(3L);
+        }
+        histogram.record(1000L);
+
+        assertEquals(3L, histogram.quantile(0.50));
+        assertEquals(3L, histogram.quantile(0.99));
+        assertEquals(1000L, histogram.quantile(1.0));
+        assertEquals(100L, histogram.getCount());
+    }
+
+    @Test
+    public void histogramSnapshotIsScaledByTheUnit() {
+        Histogram histogram = new Histogram();
+        histogram.record(2000L);
+        histogram.record(4000L);
+
+        Map<String, Object> snapshot = histogram.snapshot(1000.0);
+
+        assertEquals(2L, snapshot.get("count"));
+        assertEquals(3.0, snapshot.get("mean"));
+        assertEquals(4.0, snapshot.get("max"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.wmpr.ratelimit;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RequestRateLimiterTest {
+
+    private static final Set<String> PROXIES = new HashSet<>(Arrays.asList("10.0.0.1", "10.0.0.2"));
+
+    @Test
+    public void forwardedForIsIgnoredFromUntrustedPeers() {
+        assertEquals("203.0.113.7", RequestRateLimiter.clientAddress("203.0.113.7", "198.51.100.1", PROXIES));
+    }
+
+    @Test
+    public void withoutTrustedProxiesAddressesAreNotLimited() {
+        assertNull(RequestRateLimiter.clientAddress("10.0.0.1", "198.51.100.1", Collections.<String>emptySet()));
+        assertNull(RequestRateLimiter.clientAddress("203.0.113.7", null, Collections.<String>emptySet()));
+    }
+
+    @Test
+    public void clientIsTheHopBeforeTheTrustedProxies() {
+        assertEquals("198.51.100.1", RequestRateLimiter.clientAddress("10.0.0.1", "198.51.100.1", PROXIES));
+        assertEquals("198.51.100.1",
+                RequestRateLimiter.clientAddress("10.0.0.1", "198.51.100.1, 10.0.0.2", PROXIES));
+    }
+
+    @Test
+    public void addressesMadeUpByTheClientAreSkipped() {
+        // The client sent "1.2.3.4" itself; the proxy appended the address it really came from
+        assertEquals("198.51.100.1",
+                RequestRateLimiter.clientAddress("10.0.0.1", "1.2.3.4, 198.51.100.1", PROXIES));
+    }
+
+    @Test
+    public void whenEveryHopIsTrustedTheFarthestIsTheClient() {
+        assertEquals("10.0.0.2", RequestRateLimiter.clientAddress("10.0.0.1", " , 10.0.0.2", PROXIES));
+        assertEquals("10.0.0.1", RequestRateLimiter.clientAddress("10.0.0.1", "", PROXIES));
+    }
+
+    @Test
+    public void noForwardedForMeansThePeer() {
+        assertEquals("10.0.0.1", RequestRateLimiter.clientAddress("10.0.0.1", null, PROXIES));
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.wmpr.ratelimit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    // One token a microsecond, three at most
+    private static final long INTERVAL = 1000L;
+    private static final int BURST = 3;
+
+    @Test
+    public void fullBucketAdmitsABurstThenSaysHowLongToWait() {
+        TokenBucket bucket = new TokenBucket(0L);
+
+        for (int i = 0; i < BURST; i++) {
+            assertEquals(0L, bucket.tryAcquire(1, INTERVAL, BURST, 0L));
+        }
+        assertEquals(INTERVAL, bucket.tryAcquire(1, INTERVAL, BURST, 0L));
+        assertEquals(INTERVAL / 2, bucket.tryAcquire(1, INTERVAL, BURST, INTERVAL / 2));
+        assertEquals(0L, bucket.tryAcquire(1, INTERVAL, BURST, INTERVAL));
+    }
+
+    @Test
+    public void refusedCallTakesNothing() {
+        TokenBucket bucket = new TokenBucket(0L);
+        assertEquals(0L, bucket.tryAcquire(2, INTERVAL, BURST, 0L));
+
+        assertEquals(INTERVAL, bucket.tryAcquire(2, INTERVAL, BURST, 0L));
+        assertEquals(0L, bucket.tryAcquire(1, INTERVAL, BURST, 0L));
+    }
+
+    @Test
+    public void moreThanTheBurstIsNeverAdmitted() {
+        assertTrue(new TokenBucket(0L).tryAcquire(BURST + 1, INTERVAL, BURST, 0L) > 0L);
+    }
+
+    @Test
+    public void idleTimeRefillsNoMoreThanTheBurst() {
+        TokenBucket bucket = new TokenBucket(0L);
+        long later = 100 * INTERVAL;
+
+        for (int i = 0; i < BURST; i++) {
+            assertEquals(0L, bucket.tryAcquire(1, INTERVAL, BURST, later));
+        }
+        assertTrue(bucket.tryAcquire(1, INTERVAL, BURST, later) > 0L);
+    }
+
+    @Test
+    public void releasedPermitsCanBeTakenAgain() {
+        TokenBucket bucket = new TokenBucket(0L);
+        assertEquals(0L, bucket.tryAcquire(BURST, INTERVAL, BURST, 0L));
+
+        bucket.release(1, INTERVAL);
+
+        assertEquals(0L, bucket.tryAcquire(1, INTERVAL, BURST, 0L));
+        assertTrue(bucket.tryAcquire(1, INTERVAL, BURST, 0L) > 0L);
+    }
+
+    @Test
+    public void bucketIsFullOnceEveryTokenCameBack() {
+        TokenBucket bucket = new TokenBucket(0L);
+        assertTrue(bucket.isFull(0L));
+
+        bucket.tryAcquire(2, INTERVAL, BURST, 0L);
+
+        assertFalse(bucket.isFull(INTERVAL));
+        assertTrue(bucket.isFull(2 * INTERVAL));
+    }
+}
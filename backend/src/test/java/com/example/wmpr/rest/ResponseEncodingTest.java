@@ -0,0 +1,83 @@
+package com.example.wmpr.rest;
+
+import com.example.wmpr.cache.EncodedBody;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseEncodingTest {
+
+    @Test
+    public void plainRequestsGetPlainJson() {
+        ResponseEncoding encoding = ResponseEncoding.negotiate("application/json", "identity");
+
+        assertSame(ResponseEncoding.JSON, encoding);
+        assertEquals("application/json;charset=UTF-8", encoding.contentType());
+        assertEquals("recent/json", encoding.variant("recent"));
+    }
+
+    @Test
+    public void columnarTypeAndGzipAreNegotiatedTogether() {
+        ResponseEncoding encoding = ResponseEncoding.negotiate(
+                "Application/Vnd.WMPR.Columnar+JSON, application/json;q=0.5", "deflate, GZIP");
+
+        assertTrue(encoding.isColumnar());
+        assertEquals(ResponseEncoding.COLUMNAR_TYPE + ";charset=UTF-8", encoding.contentType());
+        assertEquals("recent/columnar/gzip", encoding.variant("recent"));
+    }
+
+    @Test
+    public void gzipWithAZeroQualityIsRefused() {
+        assertEquals("recent/json", ResponseEncoding.negotiate(null, "gzip;q=0").variant("recent"));
+        assertEquals("recent/json", ResponseEncoding.negotiate(null, "gzip; q=0.000").variant("recent"));
+        assertEquals("recent/json/gzip", ResponseEncoding.negotiate(null, "gzip;q=0.5").variant("recent"));
+        assertEquals("recent/json/gzip", ResponseEncoding.negotiate(null, "*").variant("recent"));
+    }
+
+    @Test
+    public void onlyLargeBodiesAreCompressed() throws IOException {
+        ResponseEncoding encoding = ResponseEncoding.negotiate(null, "gzip");
+        byte[] small = new byte[ResponseEncoding.MIN_GZIP_BYTES - 1];
+        byte[] large = new byte[ResponseEncoding.MIN_GZIP_BYTES];
+        Arrays.fill(large, (byte) 'a');
+
+        EncodedBody smallBody = encoding.encode(small);
+        EncodedBody largeBody = encoding.encode(large);
+
+        assertSame(small, smallBody.getBytes());
+        assertNull(smallBody.getContentEncoding());
+        assertEquals("gzip", largeBody.getContentEncoding());
+        assertArrayEquals(large, gunzip(largeBody.getBytes()));
+    }
+
+    @Test
+    public void withoutGzipLargeBodiesAreSentAsTheyAre() {
+        byte[] large = new byte[ResponseEncoding.MIN_GZIP_BYTES * 2];
+
+        EncodedBody body = ResponseEncoding.negotiate(ResponseEncoding.COLUMNAR_TYPE, null).encode(large);
+
+        assertSame(large, body.getBytes());
+        assertNull(body.getContentEncoding());
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.wmpr.rest;
+
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.QueryScope;
+import com.example.wmpr.model.ServiceDeskRequest;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WMPRRequestsRestResourceTest {
+
+    private static final String ETAG = "5d41402abc4b2a76-3";
+
+    @Test
+    public void ifNoneMatchIsComparedWeakly() {
+        assertTrue(WMPRRequestsRestResource.etagMatches("W/\"" + ETAG + "\"", ETAG));
+        assertTrue(WMPRRequestsRestResource.etagMatches("\"" + ETAG + "\"", ETAG));
+        assertTrue(WMPRRequestsRestResource.etagMatches("\"other-1\", W/\"" + ETAG + "\"", ETAG));
+        assertTrue(WMPRRequestsRestResource.etagMatches("*", ETAG));
+    }
+
+    @Test
+    public void otherOrMissingTagsDoNotMatch() {
+        assertFalse(WMPRRequestsRestResource.etagMatches("W/\"other-1\"", ETAG));
+        assertFalse(WMPRRequestsRestResource.etagMatches(null, ETAG));
+        assertFalse(WMPRRequestsRestResource.etagMatches("", ETAG));
+    }
+
+    @Test
+    public void sameRowsGiveTheSameTagWheneverTheyAreComputed() {
+        assertEquals(result("Printer offline", 1L).getEtag(), result("Printer offline", 2L).getEtag());
+    }
+
+    @Test
+    public void changedRowsGiveAnotherTag() {
+        assertFalse(result("Printer offline", 1L).getEtag().equals(result("Printer fixed", 1L).getEtag()));
+    }
+
+    private static CachedRecentRequests result(String summary, long createdAt) {
+        return new CachedRecentRequests(Collections.singletonList(new ServiceDeskRequest("WMPR-1", summary,
+                "Alex Smith", "2024-05-01 09:30:00.0", "Open", "new")), "project = WMPR", QueryScope.UNKNOWN,
+                createdAt, false, null, null);
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.wmpr.rest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class WMPRRequestsStreamResourceTest {
+
+    @Test
+    public void waiterCapFallsBackWhenNoConnectorThreadsArePublished() {
+        // No Tomcat in a unit test, so nothing to size from
+        assertEquals(WMPRRequestsStreamResource.FALLBACK_MAX_WAITERS, WMPRRequestsStreamResource.defaultMaxWaiters());
+    }
+
+    @Test
+    public void statisticsShowTheCapAndNoWaitersWhenIdle() {
+        assertEquals(WMPRRequestsStreamResource.MAX_WAITERS,
+                WMPRRequestsStreamResource.getStatistics().get("maxWaiters"));
+        assertEquals(0, WMPRRequestsStreamResource.getStatistics().get("waiters"));
+    }
+}
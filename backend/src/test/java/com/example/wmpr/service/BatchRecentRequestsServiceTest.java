@@ -0,0 +1,59 @@
+package com.example.wmpr.service;
+
+import com.atlassian.jira.user.ApplicationUser;
+import com.example.wmpr.JiraStandIns;
+import com.example.wmpr.cache.RecentRequestsCache;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.wmpr.JiraStandIns.PROJECT_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BatchRecentRequestsServiceTest {
+
+    private final ApplicationUser user = JiraStandIns.proxy(ApplicationUser.class,
+            Collections.singletonMap("getKey", args -> "alice"));
+    private final AtomicInteger searches = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final SearchExecutor searchExecutor = new SearchExecutor();
+    private final BatchRecentRequestsService batch = new BatchRecentRequestsService(RecentRequestsServiceTest.service(
+            RecentRequestsServiceTest.blockingSearch(searches, release), new RecentRequestsCache(), searchExecutor));
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        searchExecutor.destroy();
+    }
+
+    @Test
+    public void projectsWithTheSameJqlShareOneSearch() {
+        release.countDown();
+
+        Map<String, BatchLookupResult> results = batch.lookupAll(user, Arrays.asList(PROJECT_KEY, "HR", PROJECT_KEY),
+                PageRequest.FIRST_PAGE, 5_000L, "test");
+
+        assertEquals(Arrays.asList(PROJECT_KEY, "HR"), Arrays.asList(results.keySet().toArray()));
+        assertTrue(results.get(PROJECT_KEY).isSuccess());
+        assertTrue(results.get(PROJECT_KEY).isSharedSearch());
+        assertSame(results.get(PROJECT_KEY).getLookup(), results.get("HR").getLookup());
+        assertEquals(1, searches.get());
+    }
+
+    @Test
+    public void searchesPastTheDeadlineAreReportedPerProject() {
+        Map<String, BatchLookupResult> results = batch.lookupAll(user, Collections.singletonList(PROJECT_KEY),
+                PageRequest.FIRST_PAGE, 50L, "test");
+
+        assertFalse(results.get(PROJECT_KEY).isSuccess());
+        assertEquals(BatchLookupResult.TIMEOUT, results.get(PROJECT_KEY).getErrorType());
+    }
+}
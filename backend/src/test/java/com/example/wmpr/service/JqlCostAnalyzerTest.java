@@ -0,0 +1,154 @@
+package com.example.wmpr.service;
+
+import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.search.SearchResults;
+import com.atlassian.jira.jql.parser.JqlQueryParser;
+import com.atlassian.jira.util.MessageSet;
+import com.atlassian.query.QueryImpl;
+import com.atlassian.query.clause.AndClause;
+import com.atlassian.query.clause.Clause;
+import com.atlassian.query.clause.TerminalClauseImpl;
+import com.atlassian.query.operand.FunctionOperand;
+import com.atlassian.query.operator.Operator;
+import com.example.wmpr.JiraStandIns;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static com.example.wmpr.JiraStandIns.PROJECT_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JqlCostAnalyzerTest {
+
+    private static final Clause IN_PROJECT = new TerminalClauseImpl("project", Operator.EQUALS, PROJECT_KEY);
+    private static final Clause SUMMARY_LIKE = new TerminalClauseImpl("summary", Operator.LIKE, "printer");
+
+    private final SearchExecutor searchExecutor = new SearchExecutor();
+
+    @After
+    public void tearDown() {
+        searchExecutor.destroy();
+    }
+
+    @Test
+    public void cheapQueryIsTestRunAndCounted() {
+        JqlCheck check = analyzer(IN_PROJECT, search(42L)).check(null, "project = WMPR");
+
+        assertFalse(check.isBlocked());
+        assertTrue(check.getWarnings().isEmpty());
+        assertEquals(42L, check.getMatchCount());
+        assertTrue(check.getExecutionMillis() >= 0L);
+    }
+
+    @Test
+    public void textSearchInAProjectIsOnlyAWarning() {
+        JqlCheck check = analyzer(new AndClause(IN_PROJECT, SUMMARY_LIKE), search(1L))
+                .check(null, "project = WMPR AND summary ~ printer");
+
+        assertFalse(check.isBlocked());
+        assertEquals(1, check.getWarnings().size());
+        assertTrue(check.getWarnings().get(0).startsWith("Text search (~) on summary"));
+    }
+
+    @Test
+    public void textSearchAcrossEveryProjectIsBlockedWithoutARun() {
+        JqlCheck check = analyzer(SUMMARY_LIKE, search(7L)).check(null, "summary ~ printer");
+
+        assertTrue(check.isBlocked());
+        assertEquals("The query has no project clause, so it searches every project", check.getWarnings().get(0));
+        assertEquals(-1L, check.getMatchCount());
+    }
+
+    @Test
+    public void functionsThatRunTheirOwnSearchesAreFlagged() {
+        Clause linked = new TerminalClauseImpl("issue", Operator.IN, new FunctionOperand("linkedIssues", "WMPR-1"));
+
+        JqlCheck check = analyzer(new AndClause(IN_PROJECT, linked), search(3L))
+                .check(null, "project = WMPR AND issue in linkedIssues(WMPR-1)");
+
+        assertFalse(check.isBlocked());
+        assertEquals(Collections.singletonList(
+                "linkedIssues() can't be answered from the index and is evaluated on every search"),
+                check.getWarnings());
+    }
+
+    @Test
+    public void validationErrorsBlockTheQuery() {
+        SearchService invalid = search(Collections.singleton("Field 'nonsense' does not exist"), 0L, null);
+
+        JqlCheck check = analyzer(IN_PROJECT, invalid).check(null, "nonsense = 1");
+
+        assertTrue(check.isBlocked());
+        assertEquals(Collections.singletonList("Field 'nonsense' does not exist"), check.getErrors());
+    }
+
+    @Test
+    public void failedTestRunBlocksTheQuery() {
+        SearchService failing = search(Collections.emptySet(), 0L, new IllegalStateException("index closed"));
+
+        JqlCheck check = analyzer(IN_PROJECT, failing).check(null, "project = WMPR");
+
+        assertTrue(check.isBlocked());
+        assertEquals(Collections.singletonList("The query failed to run: index closed"), check.getErrors());
+    }
+
+    @Test
+    public void storedCheckKeepsItsWarningsAndMeasurements() {
+        JqlCheck check = new JqlCheck("summary ~ printer", Collections.emptyList(),
+                Arrays.asList("first warning", "second warning"), 120L, 7L, 1_000L);
+
+        JqlCheck stored = JqlCheck.fromSettings(check.toSettings());
+
+        assertEquals("summary ~ printer", stored.getJql());
+        assertEquals(check.getWarnings(), stored.getWarnings());
+        assertEquals(120L, stored.getExecutionMillis());
+        assertEquals(7L, stored.getMatchCount());
+        assertEquals(1_000L, stored.getCheckedAt());
+        assertNull(JqlCheck.fromSettings(Collections.singletonMap("jql", "summary ~ printer")));
+    }
+
+    /**
+     * Analyzer whose parser returns the given where clause for any JQL.
+     */
+    private JqlCostAnalyzer analyzer(Clause where, SearchService searchService) {
+        JqlQueryParser parser = JiraStandIns.proxy(JqlQueryParser.class, Collections.singletonMap("parseQuery",
+                args -> new QueryImpl(where, null, (String) args[0])));
+        return new JqlCostAnalyzer(parser, searchService, searchExecutor);
+    }
+
+    /**
+     * Search validating with the given errors that finds nothing and counts {@code matches}, or fails with
+     * {@code failure} when it is given.
+     */
+    private static SearchService search(Set<String> errors, long matches, RuntimeException failure) {
+        Map<String, Function<Object[], Object>> messageMethods = new HashMap<>();
+        messageMethods.put("hasAnyErrors", args -> !errors.isEmpty());
+        messageMethods.put("getErrorMessages", args -> errors);
+        MessageSet messages = JiraStandIns.proxy(MessageSet.class, messageMethods);
+
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("validateQuery", args -> messages);
+        methods.put("search", args -> new SearchResults<Issue>(Collections.emptyList(), 0, 0, 0));
+        methods.put("searchCount", args -> {
+            if (failure != null) {
+                throw failure;
+            }
+            return matches;
+        });
+        return JiraStandIns.proxy(SearchService.class, methods);
+    }
+
+    private static SearchService search(long matches) {
+        return search(Collections.emptySet(), matches, null);
+    }
+}
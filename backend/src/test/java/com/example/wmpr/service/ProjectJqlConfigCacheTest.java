@@ -0,0 +1,69 @@
+package com.example.wmpr.service;
+
+import com.example.wmpr.JiraStandIns;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.settings.ProjectSettings;
+import com.example.wmpr.settings.ProjectSettingsStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static com.example.wmpr.JiraStandIns.PROJECT_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProjectJqlConfigCacheTest {
+
+    private static final String CUSTOM_JQL = "project = WMPR AND status = Open ORDER BY created DESC";
+
+    private ProjectSettingsStore settingsStore;
+    private ProjectJqlConfigCache jqlConfigCache;
+
+    @Before
+    public void setUp() {
+        settingsStore = new ProjectSettingsStore(JiraStandIns.pluginSettingsFactory(new HashMap<>()),
+                JiraStandIns.projectManager());
+        jqlConfigCache = new ProjectJqlConfigCache(settingsStore, JiraStandIns.jqlQueryParser(), new WmprMetrics());
+    }
+
+    @Test
+    public void configIsParsedOnceAndThenServedFromTheCache() {
+        settingsStore.save(ProjectSettings.defaults(PROJECT_KEY).withJql(true, CUSTOM_JQL, null));
+
+        ProjectJqlConfig first = jqlConfigCache.get(PROJECT_KEY);
+        ProjectJqlConfig second = jqlConfigCache.get(PROJECT_KEY);
+
+        assertSame(first, second);
+        assertEquals(CUSTOM_JQL, first.getJql());
+        assertTrue(first.isValid());
+        assertFalse(first.isFallback());
+        assertEquals(1L, jqlConfigCache.getStatistics().get("misses"));
+        assertEquals(1L, jqlConfigCache.getStatistics().get("hits"));
+    }
+
+    @Test
+    public void savedSettingsReplaceTheEntryOnTheNextRead() {
+        settingsStore.save(ProjectSettings.defaults(PROJECT_KEY).withJql(true, CUSTOM_JQL, null));
+        jqlConfigCache.get(PROJECT_KEY);
+
+        ProjectSettings saved = settingsStore.get(PROJECT_KEY);
+        settingsStore.save(saved.withJql(false, saved.getCustomJql(), null));
+
+        assertEquals(RecentRequestsService.DEFAULT_JQL, jqlConfigCache.get(PROJECT_KEY).getJql());
+    }
+
+    @Test
+    public void unconfiguredProjectsShareTheDefaultEntry() {
+        ProjectJqlConfig configured = jqlConfigCache.get(PROJECT_KEY);
+        ProjectJqlConfig madeUp = jqlConfigCache.get("NOPE");
+
+        assertEquals(PROJECT_KEY, configured.getProjectKey());
+        assertEquals("NOPE", madeUp.getProjectKey());
+        assertSame(configured.getQuery(), madeUp.getQuery());
+        assertEquals(RecentRequestsService.DEFAULT_JQL, madeUp.getJql());
+        assertEquals(1, jqlConfigCache.getStatistics().get("size"));
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.wmpr.service;
+
+import com.atlassian.jira.application.ApplicationRoleManager;
+import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.search.SearchResults;
+import com.atlassian.jira.user.ApplicationUser;
+import com.example.wmpr.JiraStandIns;
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.PermissionFingerprintService;
+import com.example.wmpr.cache.QueryScope;
+import com.example.wmpr.cache.RecentRequestsCache;
+import com.example.wmpr.cache.RecentRequestsCacheKey;
+import com.example.wmpr.cluster.SharedResultStore;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.settings.ProjectSettingsStore;
+import com.example.wmpr.warmup.HotContextTracker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.wmpr.JiraStandIns.PROJECT_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RecentRequestsServiceTest {
+
+    private static final long WAIT_MILLIS = 5_000L;
+
+    private final ApplicationUser user = JiraStandIns.proxy(ApplicationUser.class,
+            Collections.singletonMap("getKey", args -> "alice"));
+    private final AtomicInteger searches = new AtomicInteger();
+    // Searches block until released, so callers can be made to overlap
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final RecentRequestsCache cache = new RecentRequestsCache();
+    private final SearchExecutor searchExecutor = new SearchExecutor();
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    private RecentRequestsService service;
+
+    @Before
+    public void setUp() {
+        service = service(blockingSearch(searches, release), cache, searchExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        callers.shutdownNow();
+        searchExecutor.destroy();
+    }
+
+    @Test
+    public void concurrentMissesShareOneSearch() throws Exception {
+        Future<RecentRequestsLookup> first = callers.submit(lookup());
+        awaitTrue(() -> searches.get() == 1);
+        Future<RecentRequestsLookup> second = callers.submit(lookup());
+        awaitTrue(() -> searchExecutor.getStatistics().get("joined").equals(1L));
+
+        release.countDown();
+
+        assertSame(first.get(WAIT_MILLIS, TimeUnit.MILLISECONDS).getResult(),
+                second.get(WAIT_MILLIS, TimeUnit.MILLISECONDS).getResult());
+        assertFalse(first.get().isCoalesced());
+        assertTrue(second.get().isCoalesced());
+        assertEquals(1, searches.get());
+    }
+
+    @Test
+    public void laterLookupsAreServedFromTheCache() throws Exception {
+        release.countDown();
+        service.lookup(user, PROJECT_KEY, "test");
+
+        RecentRequestsLookup cached = service.lookup(user, PROJECT_KEY, "test");
+
+        assertTrue(cached.isCacheHit());
+        assertEquals(1, searches.get());
+    }
+
+    @Test
+    public void searchPastTheDeadlineServesTheLastGoodRows() throws Exception {
+        ProjectJqlConfig config = service.config(PROJECT_KEY);
+        RecentRequestsCacheKey key = service.cacheKey(user, config.getJql(), PageRequest.FIRST_PAGE);
+        cache.put(key, new CachedRecentRequests(Collections.emptyList(), config.getExecutedJql(), QueryScope.UNKNOWN,
+                System.currentTimeMillis(), false, null, null));
+        cache.invalidateAll();
+
+        RecentRequestsLookup lookup = service.lookup(user, config, PageRequest.FIRST_PAGE, "test", 20L);
+
+        assertTrue(lookup.isStale());
+    }
+
+    @Test
+    public void searchPastTheDeadlineWithoutEarlierRowsIsUnavailable() throws Exception {
+        try {
+            service.lookup(user, service.config(PROJECT_KEY), PageRequest.FIRST_PAGE, "test", 20L);
+            fail("answered without a search or earlier rows");
+        } catch (SearchUnavailableException expected) {
+            assertTrue(expected.isTimeout());
+        }
+    }
+
+    /**
+     * Search that counts its calls and finds nothing once the latch is released.
+     */
+    static SearchService blockingSearch(AtomicInteger searches, CountDownLatch release) {
+        return JiraStandIns.proxy(SearchService.class, Collections.singletonMap("search", args -> {
+            searches.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new SearchResults<Issue>(Collections.emptyList(), 0, 0, 0);
+        }));
+    }
+
+    /**
+     * The service over the given search, with settings that were never saved and a fingerprint per user.
+     */
+    static RecentRequestsService service(SearchService searchService, RecentRequestsCache cache,
+                                         SearchExecutor searchExecutor) {
+        // Without application access every user gets a fingerprint of their own
+        ApplicationRoleManager roles = JiraStandIns.proxy(ApplicationRoleManager.class,
+                Collections.singletonMap("hasAnyRole", args -> false));
+        PermissionFingerprintService fingerprints = new PermissionFingerprintService(null, null, null, null, roles);
+        WmprMetrics metrics = new WmprMetrics();
+        ProjectJqlConfigCache jqlConfigCache = new ProjectJqlConfigCache(
+                new ProjectSettingsStore(JiraStandIns.pluginSettingsFactory(new HashMap<>()),
+                        JiraStandIns.projectManager()), JiraStandIns.jqlQueryParser(), metrics);
+        return new RecentRequestsService(searchService, jqlConfigCache, cache, fingerprints,
+                new ServiceDeskRequestMapper(new IssueFieldLookups(null, null)), searchExecutor, metrics,
+                new HotContextTracker(cache), new SharedResultStore(null, cache));
+    }
+
+    private Callable<RecentRequestsLookup> lookup() {
+        return () -> service.lookup(user, PROJECT_KEY, "test");
+    }
+
+    static void awaitTrue(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!condition.call()) {
+            assertTrue("condition not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(5L);
+        }
+    }
+}
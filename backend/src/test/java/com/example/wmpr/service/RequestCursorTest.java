@@ -0,0 +1,85 @@
+package com.example.wmpr.service;
+
+import com.atlassian.jira.issue.Issue;
+import com.example.wmpr.JiraStandIns;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestCursorTest {
+
+    @Test
+    public void cursorSurvivesItsToken() throws Exception {
+        RequestCursor cursor = new RequestCursor(1714555800000L, new LinkedHashSet<>(Arrays.asList(20002L, 20001L)));
+
+        RequestCursor decoded = RequestCursor.decode(cursor.encode());
+
+        assertEquals(cursor.getCreatedMillis(), decoded.getCreatedMillis());
+        assertEquals(cursor.encode(), decoded.encode());
+        assertTrue(decoded.hasServed(issue(20001L, 1714555800000L)));
+    }
+
+    @Test
+    public void rowsUpToTheLastServedOneAreSkipped() {
+        RequestCursor cursor = RequestCursor.after(Arrays.asList(issue(20003L, 3000L), issue(20002L, 2000L)), null);
+
+        assertTrue("newer row", cursor.hasServed(issue(20003L, 3000L)));
+        assertTrue("last row served", cursor.hasServed(issue(20002L, 2000L)));
+        assertFalse("same time, not served", cursor.hasServed(issue(20005L, 2000L)));
+        assertFalse("older row", cursor.hasServed(issue(20001L, 1000L)));
+    }
+
+    @Test
+    public void rowsSharingTheBoundaryAcrossPagesStaySkipped() {
+        RequestCursor first = RequestCursor.after(Arrays.asList(issue(20003L, 3000L), issue(20002L, 2000L)), null);
+
+        RequestCursor second = RequestCursor.after(Collections.singletonList(issue(20005L, 2000L)), first);
+
+        assertTrue(second.hasServed(issue(20002L, 2000L)));
+        assertTrue(second.hasServed(issue(20005L, 2000L)));
+        assertFalse(second.hasServed(issue(20006L, 2000L)));
+    }
+
+    @Test
+    public void malformedTokensAreRejected() {
+        for (String token : Arrays.asList("not a cursor!", "MTcxNDU1NTgwMDAwMA", "YWJjOjEsMg")) {
+            try {
+                RequestCursor.decode(token);
+                fail("accepted " + token);
+            } catch (InvalidPageRequestException expected) {
+                // answered with 400
+            }
+        }
+    }
+
+    @Test
+    public void cursorTakesPrecedenceOverStartAt() throws Exception {
+        String token = new RequestCursor(2000L, Collections.singleton(20002L)).encode();
+
+        PageRequest page = PageRequest.of(20, 500, token, false);
+
+        assertEquals(0, page.getStartAt());
+        assertEquals(PageRequest.MAX_LIMIT, page.getLimit());
+        assertEquals(2000L, page.getCursor().getCreatedMillis());
+        assertNull(PageRequest.of(20, null, " ", false).getCursor());
+    }
+
+    private static Issue issue(long id, long createdMillis) {
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("getId", args -> id);
+        methods.put("getCreated", args -> new Timestamp(createdMillis));
+        return JiraStandIns.proxy(Issue.class, methods);
+    }
+}
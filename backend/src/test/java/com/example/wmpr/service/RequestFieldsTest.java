@@ -0,0 +1,51 @@
+package com.example.wmpr.service;
+
+import com.example.wmpr.model.ServiceDeskRequest;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RequestFieldsTest {
+
+    private static final List<ServiceDeskRequest> ROWS = Collections.singletonList(new ServiceDeskRequest("WMPR-1",
+            "Printer offline", "Alex Smith", "2024-05-01 09:30:00.0", "Open", "new"));
+
+    @Test
+    public void missingOrEmptyListSelectsEveryField() {
+        assertSame(RequestFields.ALL, RequestFields.parse(null));
+        assertSame(RequestFields.ALL, RequestFields.parse(" "));
+        assertSame(ROWS, RequestFields.ALL.project(ROWS));
+    }
+
+    @Test
+    public void keyIsAlwaysIncludedAndUnknownNamesAreIgnored() {
+        RequestFields fields = RequestFields.parse("STATUS, nonsense,summary");
+
+        assertFalse(fields.isAll());
+        assertEquals(new LinkedHashSet<>(Arrays.asList("key", "summary", "status")), fields.getFields());
+    }
+
+    @Test
+    public void projectionCopiesRowsWithoutTheOtherFields() {
+        ServiceDeskRequest projected = RequestFields.parse("summary").project(ROWS).get(0);
+
+        assertEquals("WMPR-1", projected.getKey());
+        assertEquals("Printer offline", projected.getSummary());
+        assertNull(projected.getReporter());
+        assertNull(projected.getStatus());
+        assertEquals("Alex Smith", ROWS.get(0).getReporter());
+    }
+
+    @Test
+    public void namingEveryFieldIsTheSameAsNamingNone() {
+        assertSame(RequestFields.ALL, RequestFields.parse("key,summary,reporter,created,status,statusCategory"));
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.wmpr.service;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SearchExecutorTest {
+
+    private final SearchExecutor searchExecutor = new SearchExecutor();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        searchExecutor.destroy();
+    }
+
+    @Test
+    public void callsForARunningKeyJoinIt() throws Exception {
+        Future<String> first = searchExecutor.start("WMPR", this::blocked);
+        Future<String> second = searchExecutor.start("WMPR", () -> "second");
+        Future<String> other = searchExecutor.start("HR", () -> "other");
+
+        release.countDown();
+
+        assertSame(first, second);
+        assertEquals("blocked", second.get());
+        assertEquals("other", other.get());
+        assertEquals(1L, searchExecutor.getStatistics().get("joined"));
+    }
+
+    @Test
+    public void callPastItsDeadlineKeepsRunningForTheNextCaller() throws Exception {
+        try {
+            searchExecutor.call("WMPR", this::blocked, 20L);
+            fail("waited past the deadline");
+        } catch (SearchUnavailableException expected) {
+            assertTrue(expected.isTimeout());
+        }
+
+        Future<String> next = searchExecutor.start("WMPR", () -> "second");
+        release.countDown();
+
+        assertEquals("blocked", next.get());
+        assertEquals(1L, searchExecutor.getStatistics().get("timeouts"));
+        assertEquals(1L, searchExecutor.getStatistics().get("joined"));
+    }
+
+    @Test
+    public void workBeyondThePoolAndQueueIsRejected() throws Exception {
+        List<Future<String>> accepted = new ArrayList<>();
+        for (int i = 0; i < SearchExecutor.THREADS + SearchExecutor.QUEUE_CAPACITY; i++) {
+            accepted.add(searchExecutor.start("key-" + i, this::blocked));
+        }
+        try {
+            searchExecutor.start("one too many", this::blocked);
+            fail("accepted more work than the pool and queue hold");
+        } catch (SearchUnavailableException expected) {
+            assertFalse(expected.isTimeout());
+        }
+        assertEquals(1L, searchExecutor.getStatistics().get("rejected"));
+
+        // The rejected key isn't left behind as running
+        release.countDown();
+        for (Future<String> future : accepted) {
+            future.get();
+        }
+        assertEquals("later", searchExecutor.call("one too many", () -> "later", 5_000L));
+    }
+
+    @Test
+    public void exceptionsOfTheCallAreRethrownAsTheyAre() throws Exception {
+        try {
+            searchExecutor.call("WMPR", () -> {
+                throw new InvalidPageRequestException("bad cursor");
+            }, 5_000L);
+            fail("swallowed the exception");
+        } catch (InvalidPageRequestException expected) {
+            assertEquals("bad cursor", expected.getMessage());
+        }
+    }
+
+    private String blocked() throws InterruptedException {
+        release.await();
+        return "blocked";
+    }
+}
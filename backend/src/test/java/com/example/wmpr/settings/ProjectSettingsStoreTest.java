@@ -0,0 +1,53 @@
+package com.example.wmpr.settings;
+
+import com.example.wmpr.JiraStandIns;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProjectSettingsStoreTest {
+
+    private final Map<String, Object> pluginSettings = new ConcurrentHashMap<>();
+    private ProjectSettingsStore store;
+
+    @Before
+    public void setUp() {
+        store = new ProjectSettingsStore(JiraStandIns.pluginSettingsFactory(pluginSettings),
+                JiraStandIns.projectManager());
+    }
+
+    @Test
+    public void saveStoresTheNextVersion() {
+        ProjectSettings saved = store.save(ProjectSettings.defaults("WMPR").withRateLimits(30, null));
+
+        assertEquals(1L, saved.getVersion());
+        assertEquals(2L, store.save(saved.withRateLimits(40, null)).getVersion());
+        assertTrue(pluginSettings.containsKey(ProjectSettingsStore.KEY_PREFIX + "WMPR"));
+        assertEquals(Integer.valueOf(40), store.get("WMPR").getUserPerMinute());
+    }
+
+    @Test
+    public void saveRefusesProjectsThatDoNotExist() {
+        try {
+            store.save(ProjectSettings.defaults("NOPE").withRateLimits(0, 0));
+            fail("saved settings of a project that doesn't exist");
+        } catch (IllegalArgumentException expected) {
+            // no record, no index entry
+        }
+        assertFalse(pluginSettings.containsKey(ProjectSettingsStore.KEY_PREFIX + "NOPE"));
+        assertFalse(pluginSettings.containsKey(ProjectSettingsStore.INDEX_KEY));
+    }
+
+    @Test
+    public void unknownKeysReadTheDefaultsWithoutKeepingThem() {
+        assertEquals(0L, store.get("NOPE").getVersion());
+        assertEquals(0, store.getStatistics().get("loaded"));
+    }
+}
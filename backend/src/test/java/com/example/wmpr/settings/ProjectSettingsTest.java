@@ -0,0 +1,109 @@
+package com.example.wmpr.settings;
+
+import com.example.wmpr.service.RecentRequestsService;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProjectSettingsTest {
+
+    private static final String CUSTOM_JQL = "project = WMPR AND status = Open ORDER BY created DESC";
+
+    @Test
+    public void legacyKeysBecomeVersionOne() {
+        ProjectSettings settings = ProjectSettings.fromLegacy("WMPR", Boolean.TRUE, CUSTOM_JQL, check(),
+                rateLimit("30", "120"), 1000L);
+
+        assertEquals(1L, settings.getVersion());
+        assertTrue(settings.isUseCustomJql());
+        assertEquals(CUSTOM_JQL, settings.getEffectiveJql());
+        assertNotNull(settings.getJqlCheck());
+        assertEquals(42L, settings.getJqlCheck().getMatchCount());
+        assertEquals(Integer.valueOf(30), settings.getUserPerMinute());
+        assertEquals(Integer.valueOf(120), settings.getIpPerMinute());
+    }
+
+    @Test
+    public void useCustomStoredAsTextIsRead() {
+        assertTrue(ProjectSettings.fromLegacy("WMPR", "true", CUSTOM_JQL, null, null, 1000L).isUseCustomJql());
+        assertFalse(ProjectSettings.fromLegacy("WMPR", "false", CUSTOM_JQL, null, null, 1000L).isUseCustomJql());
+    }
+
+    @Test
+    public void customJqlIsKeptButNotUsedWithoutTheFlag() {
+        ProjectSettings settings = ProjectSettings.fromLegacy("WMPR", null, CUSTOM_JQL, check(),
+                rateLimit("30", null), 1000L);
+
+        assertFalse(settings.isUseCustomJql());
+        assertEquals(RecentRequestsService.DEFAULT_JQL, settings.getEffectiveJql());
+        assertEquals(CUSTOM_JQL, settings.getCustomJql());
+        assertNotNull(settings.getJqlCheck());
+        assertEquals(Integer.valueOf(30), settings.getUserPerMinute());
+        assertNull(settings.getIpPerMinute());
+    }
+
+    @Test
+    public void switchingBackToCustomJqlRestoresIt() {
+        ProjectSettings custom = ProjectSettings.defaults("WMPR").withJql(true, CUSTOM_JQL, null);
+
+        ProjectSettings byDefault = custom.withJql(false, custom.getCustomJql(), null);
+        assertEquals(RecentRequestsService.DEFAULT_JQL, byDefault.getEffectiveJql());
+
+        ProjectSettings read = ProjectSettings.fromSettings("WMPR", byDefault.toSettings(), 2000L);
+        assertEquals(CUSTOM_JQL, read.withJql(true, read.getCustomJql(), null).getEffectiveJql());
+    }
+
+    @Test
+    public void unreadableRateLimitsFallBackToTheDefaults() {
+        ProjectSettings settings = ProjectSettings.fromLegacy("WMPR", Boolean.TRUE, CUSTOM_JQL, "not a check",
+                rateLimit("many", "-5"), 1000L);
+
+        assertNull(settings.getJqlCheck());
+        assertNull(settings.getUserPerMinute());
+        assertNull(settings.getIpPerMinute());
+        assertNull(ProjectSettings.fromLegacy("WMPR", Boolean.TRUE, CUSTOM_JQL, null, "30", 1000L)
+                .getUserPerMinute());
+    }
+
+    @Test
+    public void migratedSettingsSurviveTheRecord() {
+        ProjectSettings migrated = ProjectSettings.fromLegacy("WMPR", Boolean.TRUE, CUSTOM_JQL, check(),
+                rateLimit("30", "120"), 1000L);
+
+        ProjectSettings read = ProjectSettings.fromSettings("WMPR", migrated.toSettings(), 2000L);
+
+        assertEquals(1L, read.getVersion());
+        assertEquals(CUSTOM_JQL, read.getEffectiveJql());
+        assertEquals(migrated.getJqlCheck().getCheckedAt(), read.getJqlCheck().getCheckedAt());
+        assertEquals(Integer.valueOf(30), read.getUserPerMinute());
+        assertEquals(Integer.valueOf(120), read.getIpPerMinute());
+    }
+
+    private static Map<String, String> check() {
+        Map<String, String> check = new HashMap<>();
+        check.put("jql", CUSTOM_JQL);
+        check.put("warnings", "");
+        check.put("executionMillis", "15");
+        check.put("matchCount", "42");
+        check.put("checkedAt", "1714550000000");
+        return check;
+    }
+
+    private static Map<String, String> rateLimit(String userPerMinute, String ipPerMinute) {
+        Map<String, String> rateLimit = new HashMap<>();
+        if (userPerMinute != null) {
+            rateLimit.put("userPerMinute", userPerMinute);
+        }
+        if (ipPerMinute != null) {
+            rateLimit.put("ipPerMinute", ipPerMinute);
+        }
+        return rateLimit;
+    }
+}
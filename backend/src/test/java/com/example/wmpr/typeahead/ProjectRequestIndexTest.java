@@ -0,0 +1,111 @@
+package com.example.wmpr.typeahead;
+
+import com.example.wmpr.JiraStandIns;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.service.ProjectJqlConfig;
+import com.example.wmpr.service.ProjectJqlConfigCache;
+import com.example.wmpr.settings.ProjectSettingsStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProjectRequestIndexTest {
+
+    private ProjectJqlConfig config;
+    private ProjectRequestIndex index;
+
+    @Before
+    public void setUp() {
+        config = new ProjectJqlConfigCache(new ProjectSettingsStore(null, JiraStandIns.projectManager()),
+                JiraStandIns.jqlQueryParser(), new WmprMetrics()).get(null);
+        index = new ProjectRequestIndex("WMPR", config, 100, System.currentTimeMillis());
+        index.put("WMPR-123", 123L, 3000L, "Printer offline on floor 2");
+        index.put("WMPR-124", 124L, 4000L, "Wi-Fi drops in the print room");
+        index.put("WMPR-99", 99L, 1000L, "New laptop for Alex");
+    }
+
+    @Test
+    public void tokenizeLowerCasesAndDropsPrefixesOfOtherTokens() {
+        assertEquals(Arrays.asList("printer", "offline"), ProjectRequestIndex.tokenize("Printer OFFLINE, print"));
+    }
+
+    @Test
+    public void tokenizeKeepsHyphenatedWordsWhole() {
+        assertEquals(Collections.singletonList("wi-fi"), ProjectRequestIndex.tokenize(" -Wi-Fi- "));
+    }
+
+    @Test
+    public void tokenizeOfNothingIsEmpty() {
+        assertTrue(ProjectRequestIndex.tokenize(null).isEmpty());
+        assertTrue(ProjectRequestIndex.tokenize("  ,;  ").isEmpty());
+    }
+
+    @Test
+    public void searchFindsPrefixesOfSummaryWordsNewestFirst() {
+        assertEquals(Arrays.asList("WMPR-124", "WMPR-123"), search("print"));
+    }
+
+    @Test
+    public void searchFindsKeysWholeAndByNumber() {
+        assertEquals(Arrays.asList("WMPR-124", "WMPR-123"), search("wmpr-12"));
+        assertEquals(Collections.singletonList("WMPR-99"), search("99"));
+    }
+
+    @Test
+    public void searchFindsPartsOfHyphenatedWords() {
+        assertEquals(Collections.singletonList("WMPR-124"), search("fi"));
+        assertEquals(Collections.singletonList("WMPR-124"), search("wi-fi"));
+    }
+
+    @Test
+    public void searchNeedsEveryToken() {
+        assertEquals(Collections.singletonList("WMPR-123"), search("print off"));
+        assertTrue(search("print laptop").isEmpty());
+    }
+
+    @Test
+    public void searchStopsAtMax() {
+        assertEquals(Collections.singletonList("WMPR-124"),
+                index.search(ProjectRequestIndex.tokenize("wmpr"), 1));
+    }
+
+    @Test
+    public void putReindexesAndRemoveForgets() {
+        index.put("WMPR-123", 123L, 3000L, "Scanner jammed");
+        assertEquals(Collections.singletonList("WMPR-124"), search("print"));
+        assertEquals(Collections.singletonList("WMPR-123"), search("scan"));
+
+        index.remove("WMPR-123");
+        assertTrue(search("scan").isEmpty());
+        assertFalse(index.contains("WMPR-123"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void fullIndexKeepsTheNewestAndIsMarkedTruncated() {
+        ProjectRequestIndex small = new ProjectRequestIndex("WMPR", config, 2, System.currentTimeMillis());
+        small.put("WMPR-2", 2L, 2000L, "Second");
+        small.put("WMPR-3", 3L, 3000L, "Third");
+        assertFalse(small.isTruncated());
+
+        small.put("WMPR-1", 1L, 1000L, "First");
+        assertFalse("older than everything held", small.contains("WMPR-1"));
+        assertTrue(small.isTruncated());
+
+        small.put("WMPR-4", 4L, 4000L, "Fourth");
+        assertEquals(2, small.size());
+        assertFalse("oldest dropped", small.contains("WMPR-2"));
+        assertTrue(small.contains("WMPR-4"));
+    }
+
+    private List<String> search(String text) {
+        return index.search(ProjectRequestIndex.tokenize(text), 10);
+    }
+}
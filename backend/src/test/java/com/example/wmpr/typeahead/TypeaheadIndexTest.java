@@ -0,0 +1,53 @@
+package com.example.wmpr.typeahead;
+
+import com.example.wmpr.JiraStandIns;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.service.ProjectJqlConfigCache;
+import com.example.wmpr.service.SearchExecutor;
+import com.example.wmpr.service.SearchUnavailableException;
+import com.example.wmpr.settings.ProjectSettingsStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static com.example.wmpr.JiraStandIns.PROJECT_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TypeaheadIndexTest {
+
+    private final SearchExecutor searchExecutor = new SearchExecutor();
+    private TypeaheadIndex typeaheadIndex;
+
+    @Before
+    public void setUp() {
+        ProjectJqlConfigCache jqlConfigCache = new ProjectJqlConfigCache(
+                new ProjectSettingsStore(JiraStandIns.pluginSettingsFactory(new HashMap<>()),
+                        JiraStandIns.projectManager()), JiraStandIns.jqlQueryParser(), new WmprMetrics());
+        // No search service: a keystroke must never search for the index itself
+        typeaheadIndex = new TypeaheadIndex(null, JiraStandIns.emptyIssueManager(), jqlConfigCache, null,
+                searchExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        searchExecutor.destroy();
+    }
+
+    @Test
+    public void unindexedProjectIsTurnedAwayAndLeftToTheJob() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            try {
+                typeaheadIndex.search(null, PROJECT_KEY, "print", 10, "test");
+                fail("searched a project that was never indexed");
+            } catch (SearchUnavailableException expected) {
+                // indexed by the next run of the job
+            }
+        }
+
+        assertEquals(1, typeaheadIndex.getStatistics().get("requested"));
+        assertEquals(0L, searchExecutor.getStatistics().get("completed"));
+    }
+}
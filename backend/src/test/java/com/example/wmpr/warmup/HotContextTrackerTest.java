@@ -0,0 +1,111 @@
+package com.example.wmpr.warmup;
+
+import com.atlassian.jira.user.ApplicationUser;
+import com.example.wmpr.JiraStandIns;
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.QueryScope;
+import com.example.wmpr.cache.RecentRequestsCache;
+import com.example.wmpr.cache.RecentRequestsCacheKey;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.example.wmpr.JiraStandIns.PROJECT_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HotContextTrackerTest {
+
+    private static final long HORIZON = 5_000L;
+
+    private final RecentRequestsCache cache = new RecentRequestsCache();
+    private final HotContextTracker tracker = new HotContextTracker(cache);
+    private final ApplicationUser user = JiraStandIns.proxy(ApplicationUser.class,
+            Collections.singletonMap("getKey", args -> "alex"));
+
+    @Test
+    public void readContextWithoutAnEntryIsDueUntilRefreshed() {
+        RecentRequestsCacheKey key = key("user:alex");
+        tracker.recordRead(PROJECT_KEY, user, key);
+        long now = System.currentTimeMillis();
+
+        List<HotContextTracker.HotContext> due = tracker.due(now, HORIZON);
+        tracker.refreshed(due.get(0), now);
+
+        assertEquals(1, due.size());
+        assertEquals("alex", due.get(0).getUserKey());
+        assertSame(key, due.get(0).getCacheKey());
+        assertTrue(tracker.due(now, HORIZON).isEmpty());
+        assertEquals(1L, tracker.getStatistics().get("refreshes"));
+    }
+
+    @Test
+    public void contextWithAFreshEntryIsNotDue() {
+        RecentRequestsCacheKey key = key("user:alex");
+        cache.put(key, cached());
+        tracker.recordRead(PROJECT_KEY, user, key);
+
+        assertTrue(tracker.due(System.currentTimeMillis(), HORIZON).isEmpty());
+    }
+
+    @Test
+    public void entryDisappearingIsCountedOnceAsAChange() {
+        RecentRequestsCacheKey key = key("user:alex");
+        tracker.recordRead(PROJECT_KEY, user, key);
+        long now = System.currentTimeMillis();
+
+        tracker.due(now, HORIZON);
+        tracker.due(now + 1_000L, HORIZON);
+
+        assertEquals(1L, tracker.getStatistics().get("changesSeen"));
+    }
+
+    @Test
+    public void idleContextsAreDropped() {
+        tracker.recordRead(PROJECT_KEY, user, key("user:alex"));
+
+        List<HotContextTracker.HotContext> due = tracker.due(System.currentTimeMillis()
+                + HotContextTracker.IDLE_MILLIS + 1_000L, HORIZON);
+
+        assertTrue(due.isEmpty());
+        assertEquals(0, tracker.getStatistics().get("contexts"));
+        assertEquals(1L, tracker.getStatistics().get("dropped"));
+    }
+
+    @Test
+    public void mostReadContextsComeFirst() {
+        RecentRequestsCacheKey rarely = key("user:rarely");
+        RecentRequestsCacheKey often = key("user:often");
+        tracker.recordRead(PROJECT_KEY, user, rarely);
+        for (int i = 0; i < 5; i++) {
+            tracker.recordRead(PROJECT_KEY, user, often);
+        }
+
+        List<HotContextTracker.HotContext> hottest = tracker.hottest(1);
+
+        assertEquals(1, hottest.size());
+        assertSame(often, hottest.get(0).getCacheKey());
+    }
+
+    @Test
+    public void contextsBeyondTheCapAreNotTracked() {
+        for (int i = 0; i < HotContextTracker.MAX_CONTEXTS; i++) {
+            tracker.seed(PROJECT_KEY, "user-" + i, key("user:" + i));
+        }
+
+        tracker.recordRead(PROJECT_KEY, user, key("user:alex"));
+
+        assertEquals(HotContextTracker.MAX_CONTEXTS, tracker.getStatistics().get("contexts"));
+    }
+
+    private static RecentRequestsCacheKey key(String fingerprint) {
+        return new RecentRequestsCacheKey("project = WMPR ORDER BY created DESC", fingerprint, "first");
+    }
+
+    private static CachedRecentRequests cached() {
+        return new CachedRecentRequests(Collections.emptyList(), "", QueryScope.UNKNOWN, System.currentTimeMillis(),
+                false, null, null);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.wmpr.webpanel;
+
+import com.example.wmpr.cache.CachedRecentRequests;
+import com.example.wmpr.cache.QueryScope;
+import com.example.wmpr.model.ServiceDeskRequest;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WMPRRequestsWebPanelTest {
+
+    @Test
+    public void rowsEscapeTheFieldsTheyShow() {
+        String html = WMPRRequestsWebPanel.renderRows(cached(new ServiceDeskRequest("WMPR-1",
+                "<script>alert('x')</script> & \"more\"", "Alex Smith", "2024-05-01 09:30:00.0", "Open", "new")));
+
+        assertTrue(html.contains("&lt;script&gt;alert(&#39;x&#39;)&lt;/script&gt; &amp; &quot;more&quot;"));
+        assertFalse(html.contains("<script>"));
+        assertTrue(html.contains(">2024-05-01<"));
+        assertTrue(html.contains("href=\"/browse/WMPR-1\""));
+    }
+
+    @Test
+    public void longSummariesAreShortenedButKeptWholeInTheTitle() {
+        String summary = "The printer on the third floor prints every page twice and then jams the paper tray";
+
+        String html = WMPRRequestsWebPanel.renderRows(cached(new ServiceDeskRequest("WMPR-1", summary, null, null,
+                "Open", "new")));
+
+        assertTrue(html.contains("title=\"" + summary + "\""));
+        assertTrue(html.contains(">" + summary.substring(0, 60) + "...<"));
+    }
+
+    @Test
+    public void noRowsRenderTheEmptyMessage() {
+        String html = WMPRRequestsWebPanel.renderRows(new CachedRecentRequests(Collections.emptyList(), "",
+                QueryScope.UNKNOWN, 0L, false, null, null));
+
+        assertTrue(html.contains("No recent WMPR requests found."));
+    }
+
+    @Test
+    public void jsonCarriesTheRowsAndTheVersionAndCannotCloseTheScriptElement() {
+        CachedRecentRequests cached = cached(new ServiceDeskRequest("WMPR-1", "</script>", null, null, "Open",
+                "new"));
+
+        String json = WMPRRequestsWebPanel.renderJson(cached, true);
+
+        assertEquals("{\"data\":[{\"key\":\"WMPR-1\",\"summary\":\"\\u003c/script\\u003e\",\"status\":\"Open\","
+                + "\"statusCategory\":\"new\"}],\"version\":\"" + cached.getEtag() + "\",\"stale\":true}", json);
+    }
+
+    private static CachedRecentRequests cached(ServiceDeskRequest request) {
+        return new CachedRecentRequests(Collections.singletonList(request), "", QueryScope.UNKNOWN, 0L, false, null,
+                null);
+    }
+}
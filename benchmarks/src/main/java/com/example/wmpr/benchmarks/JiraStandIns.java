@@ -0,0 +1,260 @@
+package com.example.wmpr.benchmarks;
+
+import com.atlassian.jira.application.ApplicationRoleManager;
+import com.atlassian.jira.config.ConstantsManager;
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.search.SearchResults;
+import com.atlassian.jira.issue.security.IssueSecurityLevelManager;
+import com.atlassian.jira.issue.security.IssueSecuritySchemeManager;
+import com.atlassian.jira.issue.status.Status;
+import com.atlassian.jira.issue.status.category.StatusCategory;
+import com.atlassian.jira.jql.parser.JqlQueryParser;
+import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.permission.PermissionSchemeManager;
+import com.atlassian.jira.project.Project;
+import com.atlassian.jira.project.ProjectManager;
+import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.security.PermissionManager;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.user.util.UserManager;
+import com.atlassian.jira.web.bean.PagerFilter;
+import com.atlassian.query.QueryImpl;
+import com.atlassian.query.clause.TerminalClauseImpl;
+import com.atlassian.query.operator.Operator;
+import com.atlassian.query.order.OrderByImpl;
+import com.atlassian.query.order.SearchSort;
+import com.atlassian.query.order.SortOrder;
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+
+import java.lang.reflect.Proxy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * In-memory stand-ins for the Jira services the plugin uses. Each is a dynamic proxy answering only the
+ * methods the plugin calls; search and settings reads can be given an artificial latency to model the
+ * index and the database.
+ */
+final class JiraStandIns {
+
+    static final String PROJECT_KEY = "WMPR";
+    static final long PROJECT_ID = 10000L;
+
+    private static final String[] STATUS_IDS = {"1", "3", "10001", "6"};
+    private static final String[] STATUS_NAMES = {"Open", "In Progress", "Waiting for support", "Closed"};
+    private static final String[] CATEGORY_KEYS = {"new", "indeterminate", "indeterminate", "done"};
+    private static final int REPORTERS = 25;
+
+    private JiraStandIns() {
+    }
+
+    static ApplicationUser user(String key) {
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("getKey", args -> key);
+        methods.put("getName", args -> key);
+        methods.put("getUsername", args -> key);
+        methods.put("getDisplayName", args -> "User " + key);
+        methods.put("getId", args -> (long) key.hashCode());
+        return proxy(ApplicationUser.class, methods);
+    }
+
+    static JiraAuthenticationContext authenticationContext(ApplicationUser user) {
+        return proxy(JiraAuthenticationContext.class, Collections.singletonMap("getLoggedInUser", args -> user));
+    }
+
+    static Project project() {
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("getId", args -> PROJECT_ID);
+        methods.put("getKey", args -> PROJECT_KEY);
+        methods.put("getName", args -> PROJECT_KEY);
+        return proxy(Project.class, methods);
+    }
+
+    /**
+     * Issues newest first, cycling through a few statuses and reporters like a real service desk queue.
+     */
+    /**
+     * Knows only {@link #project()}.
+     */
+    static ProjectManager projectManager() {
+        Project project = project();
+        Function<Object[], Object> byKey = args -> PROJECT_KEY.equals(args[0]) ? project : null;
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("getProjectByCurrentKey", byKey);
+        methods.put("getProjectObjects", args -> Collections.singletonList(project));
+        return proxy(ProjectManager.class, methods);
+    }
+
+    static List<Issue> issues(int count) {
+        Project project = project();
+        long now = System.currentTimeMillis();
+        List<Issue> issues = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long id = 20000L + count - i;
+            String key = PROJECT_KEY + "-" + (count - i);
+            Timestamp created = new Timestamp(now - i * 60_000L);
+            String reporterKey = "reporter" + (i % REPORTERS);
+            String statusId = STATUS_IDS[i % STATUS_IDS.length];
+
+            Map<String, Function<Object[], Object>> methods = new HashMap<>();
+            methods.put("getId", args -> id);
+            methods.put("getKey", args -> key);
+            methods.put("getSummary", args -> "Request " + key + ": cannot access the shared drive from the VPN");
+            methods.put("getCreated", args -> created);
+            methods.put("getUpdated", args -> created);
+            methods.put("getReporterId", args -> reporterKey);
+            methods.put("getStatusId", args -> statusId);
+            methods.put("getProjectObject", args -> project);
+            methods.put("getProjectId", args -> PROJECT_ID);
+            issues.add(proxy(Issue.class, methods));
+        }
+        return issues;
+    }
+
+    /**
+     * Search service over a fixed list of issues, taking {@code latencyMicros} per search.
+     */
+    static SearchService searchService(List<Issue> issues, long latencyMicros) {
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("search", args -> {
+            pause(latencyMicros);
+            PagerFilter pager = (PagerFilter) args[2];
+            int start = Math.min(pager.getStart(), issues.size());
+            int end = Math.min(start + pager.getMax(), issues.size());
+            return new SearchResults<>(new ArrayList<>(issues.subList(start, end)), issues.size(), pager.getMax(), start);
+        });
+        methods.put("searchCount", args -> {
+            pause(latencyMicros);
+            return (long) issues.size();
+        });
+        return proxy(SearchService.class, methods);
+    }
+
+    /**
+     * Parser that returns {@code project = WMPR ORDER BY created DESC} for any JQL.
+     */
+    static JqlQueryParser jqlQueryParser() {
+        return proxy(JqlQueryParser.class, Collections.singletonMap("parseQuery", args -> new QueryImpl(
+                new TerminalClauseImpl("project", Operator.EQUALS, PROJECT_KEY),
+                new OrderByImpl(new SearchSort("created", SortOrder.DESC)),
+                (String) args[0])));
+    }
+
+    /**
+     * Settings store backed by a map, taking {@code latencyMicros} per read like the database-backed original.
+     */
+    static PluginSettingsFactory pluginSettingsFactory(Map<String, Object> values, long latencyMicros) {
+        Map<String, Object> store = new ConcurrentHashMap<>(values);
+        Map<String, Function<Object[], Object>> settingsMethods = new HashMap<>();
+        settingsMethods.put("get", args -> {
+            pause(latencyMicros);
+            return store.get((String) args[0]);
+        });
+        settingsMethods.put("put", args -> store.put((String) args[0], args[1]));
+        settingsMethods.put("remove", args -> store.remove((String) args[0]));
+        PluginSettings settings = proxy(PluginSettings.class, settingsMethods);
+
+        Map<String, Function<Object[], Object>> factoryMethods = new HashMap<>();
+        factoryMethods.put("createGlobalSettings", args -> settings);
+        factoryMethods.put("createSettingsForKey", args -> settings);
+        return proxy(PluginSettingsFactory.class, factoryMethods);
+    }
+
+    static PermissionManager permissionManager() {
+        List<Project> projects = Collections.singletonList(project());
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("getProjects", args -> projects);
+        methods.put("hasPermission", args -> true);
+        return proxy(PermissionManager.class, methods);
+    }
+
+    static IssueSecurityLevelManager issueSecurityLevelManager() {
+        return proxy(IssueSecurityLevelManager.class,
+                Collections.singletonMap("getAllSecurityLevelsForUser", args -> Collections.emptyList()));
+    }
+
+    /**
+     * No project has issue security.
+     */
+    static IssueSecuritySchemeManager issueSecuritySchemeManager() {
+        return proxy(IssueSecuritySchemeManager.class, Collections.singletonMap("getSchemeFor", args -> null));
+    }
+
+    /**
+     * A scheme granting Browse Projects only project-wide, so users share fingerprints.
+     */
+    static PermissionSchemeManager permissionSchemeManager() {
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("getSchemeFor", args -> null);
+        methods.put("getPermissionSchemeEntries", args -> Collections.emptyList());
+        return proxy(PermissionSchemeManager.class, methods);
+    }
+
+    static ApplicationRoleManager applicationRoleManager() {
+        return proxy(ApplicationRoleManager.class, Collections.singletonMap("hasAnyRole", args -> true));
+    }
+
+    static UserManager userManager() {
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("getUserByKey", args -> user((String) args[0]));
+        methods.put("getUserByName", args -> user((String) args[0]));
+        return proxy(UserManager.class, methods);
+    }
+
+    static ConstantsManager constantsManager() {
+        Map<String, Status> statuses = new HashMap<>();
+        for (int i = 0; i < STATUS_IDS.length; i++) {
+            String id = STATUS_IDS[i];
+            String name = STATUS_NAMES[i];
+            String categoryKey = CATEGORY_KEYS[i];
+            StatusCategory category = proxy(StatusCategory.class, Collections.singletonMap("getKey", args -> categoryKey));
+
+            Map<String, Function<Object[], Object>> methods = new HashMap<>();
+            methods.put("getId", args -> id);
+            methods.put("getName", args -> name);
+            methods.put("getStatusCategory", args -> category);
+            statuses.put(id, proxy(Status.class, methods));
+        }
+        Map<String, Function<Object[], Object>> methods = new HashMap<>();
+        methods.put("getStatus", args -> statuses.get((String) args[0]));
+        methods.put("getStatuses", args -> statuses.values());
+        return proxy(ConstantsManager.class, methods);
+    }
+
+    private static void pause(long micros) {
+        if (micros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Map<String, Function<Object[], Object>> methods) {
+        return (T) Proxy.newProxyInstance(JiraStandIns.class.getClassLoader(), new Class<?>[]{type},
+                (self, method, args) -> {
+                    Function<Object[], Object> implementation = methods.get(method.getName());
+                    if (implementation != null) {
+                        return implementation.apply(args);
+                    }
+                    switch (method.getName()) {
+                        case "equals":
+                            return self == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(self);
+                        case "toString":
+                            return type.getSimpleName() + " stand-in";
+                        default:
+                            throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName()
+                                    + " is not needed by the benchmarks");
+                    }
+                });
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.wmpr.benchmarks;
+
+import com.example.wmpr.model.ServiceDeskRequest;
+import com.example.wmpr.service.IssueFieldLookups;
+import com.example.wmpr.service.ServiceDeskRequestMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issue to row mapping, with reporter/status lookups already cached ("warm") and resolved from scratch ("cold").
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MappingBenchmark {
+
+    @Param({"10", "50", "200"})
+    public int issueCount;
+
+    private PluginFixture fixture;
+
+    @Setup
+    public void setUp() {
+        fixture = new PluginFixture(issueCount, 0, 0);
+    }
+
+    @Benchmark
+    public List<ServiceDeskRequest> mapWarmLookups() {
+        return fixture.mapper.mapAll("bench", fixture.issues);
+    }
+
+    @Benchmark
+    public List<ServiceDeskRequest> mapColdLookups() {
+        ServiceDeskRequestMapper mapper = new ServiceDeskRequestMapper(
+                new IssueFieldLookups(JiraStandIns.userManager(), JiraStandIns.constantsManager()));
+        return mapper.mapAll("bench", fixture.issues);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.wmpr.benchmarks;
+
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.example.wmpr.cache.PermissionFingerprintService;
+import com.example.wmpr.cache.RecentRequestsCache;
+import com.example.wmpr.cluster.SharedResultStore;
+import com.example.wmpr.metrics.WmprMetrics;
+import com.example.wmpr.ratelimit.RequestRateLimiter;
+import com.example.wmpr.rest.WMPRRequestsRestResource;
+import com.example.wmpr.service.IssueFieldLookups;
+import com.example.wmpr.service.ProjectJqlConfigCache;
+import com.example.wmpr.service.RecentRequestsService;
+import com.example.wmpr.service.SearchExecutor;
+import com.example.wmpr.service.ServiceDeskRequestMapper;
+import com.example.wmpr.settings.ProjectSettings;
+import com.example.wmpr.settings.ProjectSettingsStore;
+import com.example.wmpr.warmup.HotContextTracker;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The plugin's REST path wired together the way Spring wires it in Jira, on top of {@link JiraStandIns}.
+ */
+final class PluginFixture {
+
+    static final String CONFIGURED_JQL = "project = WMPR ORDER BY created DESC";
+
+    final ApplicationUser user = JiraStandIns.user("agent");
+    final List<Issue> issues;
+    final ProjectSettingsStore settingsStore;
+    final ProjectJqlConfigCache jqlConfigCache;
+    final ServiceDeskRequestMapper mapper;
+    final RecentRequestsCache cache = new RecentRequestsCache();
+    final WmprMetrics metrics = new WmprMetrics();
+    final SearchExecutor searchExecutor = new SearchExecutor();
+    final RecentRequestsService service;
+    final WMPRRequestsRestResource resource;
+
+    PluginFixture(int issueCount, long searchLatencyMicros, long settingsLatencyMicros) {
+        issues = JiraStandIns.issues(issueCount);
+
+        PluginSettingsFactory settingsFactory = JiraStandIns.pluginSettingsFactory(new HashMap<>(),
+                settingsLatencyMicros);
+        settingsStore = new ProjectSettingsStore(settingsFactory, JiraStandIns.projectManager());
+        // Unlimited, so the limiter is on the measured path but never throttles the benchmark
+        settingsStore.save(ProjectSettings.defaults(JiraStandIns.PROJECT_KEY)
+                .withJql(true, CONFIGURED_JQL, null).withRateLimits(0, 0));
+        jqlConfigCache = new ProjectJqlConfigCache(settingsStore, JiraStandIns.jqlQueryParser(), metrics);
+
+        mapper = new ServiceDeskRequestMapper(
+                new IssueFieldLookups(JiraStandIns.userManager(), JiraStandIns.constantsManager()));
+        PermissionFingerprintService fingerprints = new PermissionFingerprintService(
+                JiraStandIns.permissionManager(), JiraStandIns.issueSecurityLevelManager(),
+                JiraStandIns.issueSecuritySchemeManager(), JiraStandIns.permissionSchemeManager(),
+                JiraStandIns.applicationRoleManager());
+        service = new RecentRequestsService(JiraStandIns.searchService(issues, searchLatencyMicros),
+                jqlConfigCache, cache, fingerprints, mapper, searchExecutor, metrics, new HotContextTracker(cache),
+                new SharedResultStore(null, cache));
+        resource = new WMPRRequestsRestResource(JiraStandIns.authenticationContext(user),
+                JiraStandIns.projectManager(), service, cache, metrics,
+                new RequestRateLimiter(settingsStore, metrics));
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.wmpr.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.core.Response;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end {@code GET /recent}: settings lookup, cache, search, mapping and serialization.
+ * "miss" drops the result cache before every call so each call searches and maps; "hit" measures the
+ * steady state of a busy portal footer. "encoding" picks the negotiated response format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RecentRequestsEndpointBenchmark {
+
+    @Param({"10", "50"})
+    public int issueCount;
+
+    @Param({"0", "2000"})
+    public long searchLatencyMicros;
+
+    @Param({"hit", "miss"})
+    public String cache;
+
+    @Param({"json", "gzip", "columnar"})
+    public String encoding;
+
+    private String accept;
+    private String acceptEncoding;
+
+    private PluginFixture fixture;
+
+    @Setup
+    public void setUp() {
+        fixture = new PluginFixture(issueCount, searchLatencyMicros, 0);
+        accept = "columnar".equals(encoding) ? "application/vnd.wmpr.columnar+json" : "application/json";
+        acceptEncoding = "gzip".equals(encoding) ? "gzip, deflate" : null;
+    }
+
+    @Benchmark
+    public Response recent() {
+        if ("miss".equals(cache)) {
+            fixture.cache.invalidateAll();
+        }
+        return fixture.resource.getRecentWMPRRequests(JiraStandIns.PROJECT_KEY, null, issueCount, null, false, null,
+                false, null, null, accept, acceptEncoding, null);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.wmpr.benchmarks;
+
+import com.example.wmpr.json.RecentRequestsJson;
+import com.example.wmpr.json.Utf8JsonWriter;
+import com.example.wmpr.model.ServiceDeskRequest;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the /recent response body. Run with the GC profiler (the default of {@link BenchmarkRunner}) and
+ * compare gc.alloc.rate.norm - bytes allocated per response - between:
+ * - gsonString: the previous path, response maps to a String via Gson, then getBytes() for the content length
+ * - writer: encoding rows and diagnostics straight to UTF-8
+ * - writerPreEncodedRows: same, reusing the rows a cache entry has already encoded, as cache hits do
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SerializationBenchmark {
+
+    @Param({"10", "50"})
+    public int issueCount;
+
+    private final Gson gson = new Gson();
+    private List<ServiceDeskRequest> rows;
+    private byte[] encodedRows;
+    private Map<String, Object> diagnostics;
+
+    @Setup
+    public void setUp() {
+        PluginFixture fixture = new PluginFixture(issueCount, 0, 0);
+        rows = fixture.mapper.mapAll("bench", fixture.issues);
+        encodedRows = RecentRequestsJson.encodeRows(rows);
+
+        diagnostics = new LinkedHashMap<>();
+        diagnostics.put("requestId", "WMPR-1700000000000");
+        diagnostics.put("duration", 3L);
+        diagnostics.put("user", "agent");
+        diagnostics.put("jql", PluginFixture.CONFIGURED_JQL);
+        diagnostics.put("resultCount", rows.size());
+        diagnostics.put("cacheHit", true);
+        diagnostics.put("cache", fixture.cache.getStatistics());
+    }
+
+    @Benchmark
+    public byte[] gsonString() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("data", rows);
+        response.put("diagnostics", diagnostics);
+        String json = gson.toJson(response);
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] writer() {
+        Utf8JsonWriter json = Utf8JsonWriter.local().beginObject();
+        json.name("data");
+        RecentRequestsJson.writeRows(json, rows);
+        json.name("diagnostics").value(diagnostics);
+        return json.endObject().toByteArray();
+    }
+
+    @Benchmark
+    public byte[] writerPreEncodedRows() {
+        Utf8JsonWriter json = Utf8JsonWriter.local().beginObject();
+        json.name("data").rawValue(encodedRows);
+        json.name("diagnostics").value(diagnostics);
+        return json.endObject().toByteArray();
+    }
+}
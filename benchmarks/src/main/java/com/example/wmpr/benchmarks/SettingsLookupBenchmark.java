@@ -0,0 +1,51 @@
+package com.example.wmpr.benchmarks;
+
+import com.example.wmpr.service.ProjectJqlConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolving a project's JQL: from the in-memory config cache, and from the settings record plus parsing as on a
+ * miss on a node that has not loaded the project yet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SettingsLookupBenchmark {
+
+    @Param({"0", "200"})
+    public long settingsLatencyMicros;
+
+    private PluginFixture fixture;
+
+    @Setup
+    public void setUp() {
+        fixture = new PluginFixture(10, 0, settingsLatencyMicros);
+    }
+
+    @Benchmark
+    public ProjectJqlConfig cached() {
+        return fixture.jqlConfigCache.get(JiraStandIns.PROJECT_KEY);
+    }
+
+    @Benchmark
+    public ProjectJqlConfig uncached() {
+        fixture.settingsStore.invalidate(JiraStandIns.PROJECT_KEY);
+        fixture.jqlConfigCache.invalidate(JiraStandIns.PROJECT_KEY);
+        return fixture.jqlConfigCache.get(JiraStandIns.PROJECT_KEY);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.wmpr.benchmarks;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Runs every benchmark once, so a change to the plugin that breaks the stand-ins or makes the compared variants
+ * disagree shows up in the build rather than in a misleading benchmark run.
+ */
+public class BenchmarksTest {
+
+    @Test
+    public void endpointAnswersFromCacheAndFromSearch() {
+        for (String cache : new String[]{"hit", "miss"}) {
+            for (String encoding : new String[]{"json", "gzip", "columnar"}) {
+                RecentRequestsEndpointBenchmark benchmark = new RecentRequestsEndpointBenchmark();
+                benchmark.issueCount = 10;
+                benchmark.cache = cache;
+                benchmark.encoding = encoding;
+                benchmark.setUp();
+
+                assertEquals(cache + "/" + encoding, 200L, benchmark.recent().getStatus());
+                assertEquals(cache + "/" + encoding, 200L, benchmark.recent().getStatus());
+            }
+        }
+    }
+
+    @Test
+    public void serializationVariantsWriteTheSameDocument() {
+        SerializationBenchmark benchmark = new SerializationBenchmark();
+        benchmark.issueCount = 10;
+        benchmark.setUp();
+
+        String writer = new String(benchmark.writer(), StandardCharsets.UTF_8);
+
+        assertEquals(writer, new String(benchmark.writerPreEncodedRows(), StandardCharsets.UTF_8));
+        // Gson's map is unordered, so only the size can be compared
+        assertEquals(writer.length(), new String(benchmark.gsonString(), StandardCharsets.UTF_8).length());
+    }
+
+    @Test
+    public void mappingWithColdAndWarmLookupsGivesTheSameRows() {
+        MappingBenchmark benchmark = new MappingBenchmark();
+        benchmark.issueCount = 10;
+        benchmark.setUp();
+
+        assertEquals(10, benchmark.mapWarmLookups().size());
+        assertEquals(benchmark.mapWarmLookups().get(3).getReporter(), benchmark.mapColdLookups().get(3).getReporter());
+    }
+
+    @Test
+    public void settingsLookupReadsTheConfiguredJql() {
+        SettingsLookupBenchmark benchmark = new SettingsLookupBenchmark();
+        benchmark.setUp();
+
+        assertSame(benchmark.cached(), benchmark.cached());
+        assertEquals(PluginFixture.CONFIGURED_JQL, benchmark.uncached().getJql());
+    }
+}
@@ -0,0 +1,39 @@
+import React, { useContext } from 'react';
+
+// AtlasKit components are imported on demand: each import becomes an async chunk whose web-resource depends on
+// the AtlasKit wrapper, so pages only download AtlasKit once a component that uses it is about to render.
+const loaders = {
+    DynamicTable: () => import(/* webpackChunkName: "atlaskit-dynamic-table" */ '@atlaskit/dynamic-table'),
+    Spinner: () => import(/* webpackChunkName: "atlaskit-spinner" */ '@atlaskit/spinner'),
+    Lozenge: () => import(/* webpackChunkName: "atlaskit-lozenge" */ '@atlaskit/lozenge')
+};
+
+export type AtlasKitComponent = keyof typeof loaders;
+
+export type AtlasKit = { [name in AtlasKitComponent]?: React.ComponentType<any> };
+
+const loaded: { [name: string]: Promise<React.ComponentType<any>> } = {};
+
+/**
+ * Loads the given components, each at most once per page.
+ */
+export const loadAtlasKit = (names: AtlasKitComponent[]): Promise<AtlasKit> =>
+    Promise.all(names.map(name => {
+        if (!loaded[name]) {
+            loaded[name] = loaders[name]().then((module: any) => module.default || module);
+        }
+        return loaded[name];
+    })).then(components => {
+        const atlasKit: AtlasKit = {};
+        names.forEach((name, i) => {
+            atlasKit[name] = components[i];
+        });
+        return atlasKit;
+    });
+
+export const AtlasKitContext = React.createContext<AtlasKit>({});
+
+/**
+ * The loaded components; only call below a provider whose value was loaded with {@link loadAtlasKit}.
+ */
+export const useAtlasKit = (): Required<AtlasKit> => useContext(AtlasKitContext) as Required<AtlasKit>;
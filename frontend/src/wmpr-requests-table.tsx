@@ -1,8 +1,6 @@
-import React, { useState, useEffect } from 'react'
+import React, { useState, useEffect, useRef } from 'react'
 import ReactDOM from "react-dom";
-import DynamicTable from '@atlaskit/dynamic-table';
-import Spinner from '@atlaskit/spinner';
-import Lozenge from '@atlaskit/lozenge';
+import { AtlasKitContext, loadAtlasKit, useAtlasKit } from './atlaskit';
 
 import 'wr-dependency!jira.webresources:util'
 
@@ -44,8 +42,62 @@ interface APIResponse {
     };
     error?: string;
     requestId?: string;
+    version?: string;
+    // Set when the server sent only what changed since the version we passed
+    delta?: boolean;
+    upserts?: ServiceDeskRequest[];
+    removed?: string[];
+    order?: string[];
 }
 
+const RECENT_URL = '/rest/wmpr-requests/1.0/recent';
+const STREAM_URL = '/rest/wmpr-requests/1.0/stream';
+const SEARCH_URL = '/rest/wmpr-requests/1.0/search';
+const SEARCH_DEBOUNCE_MS = 150;
+const SEARCH_MAX_LIMIT = 50;
+const POLL_MODE_HEADER = 'X-WMPR-Poll-Mode';
+const POLL_INTERVAL_MS = 30000;
+const INITIAL_DATA_ID = 'wmpr-initial-data';
+
+// The server compares bare versions, so strip the weak prefix and quotes from the ETag header
+const parseVersion = (etag: string | null): string | null => {
+    if (!etag) {
+        return null;
+    }
+    return etag.replace(/^W\//, '').replace(/^"|"$/g, '');
+};
+
+// First page embedded by the web panel while the page rendered, so the table can show it without a fetch
+const readInitialData = (): APIResponse | null => {
+    const element = document.getElementById(INITIAL_DATA_ID);
+    if (!element || !element.textContent) {
+        return null;
+    }
+    try {
+        return JSON.parse(element.textContent);
+    } catch (err) {
+        console.warn('[WMPR React] Ignoring unreadable initial data:', err);
+        return null;
+    }
+};
+
+// Patches the shown rows with a delta; null when a row it refers to is missing and a full fetch is needed
+const applyDelta = (current: ServiceDeskRequest[], delta: APIResponse): ServiceDeskRequest[] | null => {
+    const byKey = new Map<string, ServiceDeskRequest>();
+    current.forEach(request => byKey.set(request.key, request));
+    (delta.removed || []).forEach(key => byKey.delete(key));
+    (delta.upserts || []).forEach(request => byKey.set(request.key, request));
+    const patched: ServiceDeskRequest[] = [];
+    for (const key of delta.order || []) {
+        const request = byKey.get(key);
+        if (!request) {
+            return null;
+        }
+        patched.push(request);
+    }
+    return patched;
+};
+
 // Configuration interface
 interface WMPRConfig {
     maxRequests?: number;
@@ -124,24 +176,84 @@ const WMPRRequestsTable: React.FC<WMPRConfig> = ({
     showStatus = true, 
     theme = 'light' 
 }) => {
-    const [requests, setRequests] = useState<ServiceDeskRequest[]>([]);
-    const [loading, setLoading] = useState(true);
+    const initialData = useRef<APIResponse | null | undefined>(undefined);
+    if (initialData.current === undefined) {
+        initialData.current = readInitialData();
+    }
+    const { DynamicTable, Spinner, Lozenge } = useAtlasKit();
+    const [requests, setRequests] = useState<ServiceDeskRequest[]>(initialData.current?.data || []);
+    const [loading, setLoading] = useState(!initialData.current);
     const [error, setError] = useState<string | null>(null);
     const [diagnostics, setDiagnostics] = useState<any>(null);
+    // Version (ETag) of the list currently shown, used as the long-poll cursor
+    const versionRef = useRef<string | null>(initialData.current?.version || null);
+    // Rows currently shown, which deltas are applied to
+    const requestsRef = useRef<ServiceDeskRequest[]>(requests);
+
+    const showRequests = (next: ServiceDeskRequest[]) => {
+        requestsRef.current = next;
+        setRequests(next);
+    };
+
+    // Type-ahead: while the filter has text, the table shows its matches instead of the recent requests
+    const [query, setQuery] = useState('');
+    const [matches, setMatches] = useState<ServiceDeskRequest[] | null>(null);
+    const [searchNotice, setSearchNotice] = useState<string | null>(null);
+
+    useEffect(() => {
+        const text = query.trim();
+        if (!text) {
+            setMatches(null);
+            setSearchNotice(null);
+            return;
+        }
+        const controller = typeof AbortController !== 'undefined' ? new AbortController() : null;
+        const timer = window.setTimeout(async () => {
+            try {
+                const limit = Math.min(maxRequests, SEARCH_MAX_LIMIT);
+                const response = await fetch(`${SEARCH_URL}?q=${encodeURIComponent(text)}&limit=${limit}`,
+                    { signal: controller?.signal });
+                if (response.status === 503) {
+                    setSearchNotice('Search is getting ready, please try again in a moment');
+                    return;
+                }
+                if (!response.ok) {
+                    throw new Error(`HTTP ${response.status}: ${response.statusText}`);
+                }
+                const result = await response.json();
+                setMatches(result.data || []);
+                setSearchNotice(result.complete === false ? 'Only the most recent requests are searched' : null);
+            } catch (err) {
+                if (!(err instanceof Error && err.name === 'AbortError')) {
+                    setSearchNotice(`Search failed: ${err instanceof Error ? err.message : String(err)}`);
+                }
+            }
+        }, SEARCH_DEBOUNCE_MS);
+        return () => {
+            window.clearTimeout(timer);
+            controller?.abort();
+        };
+    }, [query]);
 
     console.log('[IKKKKKKE-COMPONENT-003] WMPR React Component Instance Created');
 
-    const fetchRequests = async () => {
+    const fetchRequests = async (incremental: boolean = false) => {
         console.log('[WMPR React] Starting fetchRequests...');
         console.log('[IKKKKKKE-API-004] Starting API Request to WMPR Endpoint');
         try {
             setLoading(true);
             setError(null);
             
-            const response = await fetch('/rest/wmpr-requests/1.0/recent');
+            // Ask only for what changed since the rows on screen; the server answers in full if it can't tell
+            const since = incremental ? versionRef.current : null;
+            const response = await fetch(since ? `${RECENT_URL}?since=${encodeURIComponent(since)}` : RECENT_URL);
             console.log('[WMPR React] Response status:', response.status);
             console.log('[IKKKKKKE-API-005] API Response Status:', response.status);
             
+            if (response.status === 304) {
+                console.log('[WMPR React] Requests unchanged');
+                return;
+            }
             if (!response.ok) {
                 throw new Error(`HTTP ${response.status}: ${response.statusText}`);
             }
@@ -154,10 +266,17 @@ const WMPRRequestsTable: React.FC<WMPRConfig> = ({
                 throw new Error(data.error);
             }
             
+            const patched = data.delta ? applyDelta(requestsRef.current, data) : null;
+            if (data.delta && !patched) {
+                // Our rows no longer match the version we sent; start over
+                await fetchRequests();
+                return;
+            }
             // Handle both old format (array) and new format (object with data property)
-            const requestsData = Array.isArray(data) ? data : (data.data || []);
-            setRequests(requestsData);
+            const requestsData = patched || (Array.isArray(data) ? data : (data.data || []));
+            showRequests(requestsData);
             setDiagnostics(data.diagnostics || null);
+            versionRef.current = parseVersion(response.headers.get('ETag'));
             
             console.log('[WMPR React] Successfully loaded', requestsData.length, 'requests');
             console.log('[IKKKKKKE-API-007] Successfully Loaded', requestsData.length, 'requests');
@@ -166,7 +285,7 @@ const WMPRRequestsTable: React.FC<WMPRConfig> = ({
             console.error('[WMPR React] Failed to fetch WMPR requests:', err);
             console.error('[IKKKKKKE-API-008] API Request Failed:', err);
             setError(err instanceof Error ? err.message : 'Failed to load requests');
-            setRequests([]);
+            showRequests([]);
         } finally {
             setLoading(false);
         }
@@ -175,19 +294,85 @@ const WMPRRequestsTable: React.FC<WMPRConfig> = ({
     useEffect(() => {
         console.log('[WMPR React] Component mounting, starting initial fetch...');
         console.log('[IKKKKKKE-COMPONENT-009] Component Mounting - useEffect Triggered');
-        fetchRequests();
-        
-        // Auto-refresh every 30 seconds
-        const interval = setInterval(() => {
-            console.log('[WMPR React] Auto-refresh triggered');
-            console.log('[IKKKKKKE-COMPONENT-010] Auto-refresh Interval Triggered');
-            fetchRequests();
-        }, 30000);
+        let cancelled = false;
+        let pollTimer: number | undefined;
+        const controller = typeof AbortController !== 'undefined' ? new AbortController() : null;
+
+        // Plain 30 second polling, used whenever long-polling is unavailable; retries long-polling afterwards
+        const fallbackToPolling = () => {
+            if (cancelled) {
+                return;
+            }
+            pollTimer = window.setTimeout(async () => {
+                console.log('[WMPR React] Auto-refresh triggered');
+                console.log('[IKKKKKKE-COMPONENT-010] Auto-refresh Interval Triggered');
+                await fetchRequests(true);
+                longPoll();
+            }, POLL_INTERVAL_MS);
+        };
+
+        // The server holds each request until the list differs from our version, so idle tabs cost nothing
+        const longPoll = async () => {
+            while (!cancelled) {
+                try {
+                    const version = versionRef.current;
+                    const url = version
+                        ? `${STREAM_URL}?version=${encodeURIComponent(version)}&delta=true`
+                        : STREAM_URL;
+                    const response = await fetch(url, { cache: 'no-store', signal: controller?.signal });
+
+                    if (response.status === 204) {
+                        if (response.headers.get(POLL_MODE_HEADER) === 'poll') {
+                            console.log('[WMPR React] Server asked for polling, backing off');
+                            fallbackToPolling();
+                            return;
+                        }
+                        continue;
+                    }
+                    if (!response.ok) {
+                        throw new Error(`HTTP ${response.status}: ${response.statusText}`);
+                    }
+
+                    const data: APIResponse = await response.json();
+                    if (data.error) {
+                        throw new Error(data.error);
+                    }
+                    if (data.delta) {
+                        const patched = applyDelta(requestsRef.current, data);
+                        if (!patched) {
+                            versionRef.current = null;
+                            continue;
+                        }
+                        showRequests(patched);
+                    } else {
+                        showRequests(data.data || []);
+                    }
+                    versionRef.current = data.version || parseVersion(response.headers.get('ETag'));
+                    setError(null);
+                } catch (err) {
+                    if (cancelled) {
+                        return;
+                    }
+                    console.warn('[WMPR React] Long-poll failed, falling back to polling:', err);
+                    fallbackToPolling();
+                    return;
+                }
+            }
+        };
+
+        if (initialData.current) {
+            // Hydrated from the server-rendered data: go straight to waiting for changes
+            longPoll();
+        } else {
+            fetchRequests().then(() => longPoll());
+        }
         
         return () => {
-            console.log('[WMPR React] Component unmounting, clearing interval');
+            console.log('[WMPR React] Component unmounting, stopping updates');
             console.log('[IKKKKKKE-COMPONENT-011] Component Unmounting - Cleanup');
-            clearInterval(interval);
+            cancelled = true;
+            window.clearTimeout(pollTimer);
+            controller?.abort();
         };
     }, []);
 
@@ -222,7 +407,7 @@ const WMPRRequestsTable: React.FC<WMPRConfig> = ({
         ]
     };
 
-    const rows = requests.map((request, index) => ({
+    const rows = (matches || requests).map((request, index) => ({
         key: `request-${index}`,
         cells: [
             {
@@ -284,7 +469,7 @@ const WMPRRequestsTable: React.FC<WMPRConfig> = ({
                 <br />
                 <small style={{ color: '#666' }}>IKKKKKKE-RENDER-013: Error State</small>
                 <button 
-                    onClick={fetchRequests}
+                    onClick={() => fetchRequests()}
                     style={{ 
                         marginLeft: '10px', 
                         padding: '5px 10px', 
@@ -351,21 +536,39 @@ const WMPRRequestsTable: React.FC<WMPRConfig> = ({
                         </span>
                     )}
                 </h4>
-                <button 
-                    onClick={fetchRequests}
-                    disabled={loading}
-                    style={{ 
-                        padding: '3px 8px', 
-                        fontSize: '11px',
-                        backgroundColor: '#F4F5F7',
-                        border: '1px solid #DFE1E6',
-                        borderRadius: '3px',
-                        cursor: 'pointer'
-                    }}
-                >
-                    Refresh
-                </button>
+                <div style={{ display: 'flex', alignItems: 'center', gap: '6px' }}>
+                    <input
+                        type="search"
+                        value={query}
+                        onChange={event => setQuery(event.target.value)}
+                        placeholder="Filter by key or summary"
+                        aria-label="Filter requests by key or summary"
+                        style={{
+                            padding: '3px 6px',
+                            fontSize: '11px',
+                            border: '1px solid #DFE1E6',
+                            borderRadius: '3px'
+                        }}
+                    />
+                    <button 
+                        onClick={() => fetchRequests(true)}
+                        disabled={loading}
+                        style={{ 
+                            padding: '3px 8px', 
+                            fontSize: '11px',
+                            backgroundColor: '#F4F5F7',
+                            border: '1px solid #DFE1E6',
+                            borderRadius: '3px',
+                            cursor: 'pointer'
+                        }}
+                    >
+                        Refresh
+                    </button>
+                </div>
             </div>
+            {searchNotice && (
+                <div style={{ marginBottom: '8px', fontSize: '11px', color: '#666' }}>{searchNotice}</div>
+            )}
             <DynamicTable
                 head={head}
                 rows={rows}
@@ -396,10 +599,21 @@ const initWMPRRequestsTable = (containerId: string, config: WMPRConfig = {}) =>
             return null;
         }
 
-        // Use React 16 compatible ReactDOM.render
-        ReactDOM.render(<WMPRErrorBoundary><WMPRRequestsTable {...config} /></WMPRErrorBoundary>, container);
-        
-        console.log('[WMPR-REQUESTS-005] Component rendered successfully');
+        // The server-rendered rows stay in the container until AtlasKit has loaded and React replaces them
+        loadAtlasKit(['DynamicTable', 'Spinner', 'Lozenge']).then(atlasKit => {
+            // Use React 16 compatible ReactDOM.render
+            ReactDOM.render(
+                <WMPRErrorBoundary>
+                    <AtlasKitContext.Provider value={atlasKit}>
+                        <WMPRRequestsTable {...config} />
+                    </AtlasKitContext.Provider>
+                </WMPRErrorBoundary>,
+                container
+            );
+            console.log('[WMPR-REQUESTS-005] Component rendered successfully');
+        }).catch(error => {
+            console.error('[WMPR-REQUESTS-006] Could not load AtlasKit, keeping the server-rendered table:', error);
+        });
         return { container };
     } catch (error) {
         console.error('[WMPR-REQUESTS-006] Error initializing component:', error);
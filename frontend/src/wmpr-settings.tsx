@@ -1,7 +1,6 @@
 import React, { useState } from 'react';
 import ReactDOM from 'react-dom';
-import Spinner from '@atlaskit/spinner';
-import Lozenge from '@atlaskit/lozenge';
+import { AtlasKitContext, loadAtlasKit, useAtlasKit } from './atlaskit';
 
 import 'wr-dependency!jira.webresources:util'
 
@@ -90,6 +89,7 @@ interface WMPRSettingsTestProps {
 const WMPRSettingsTest: React.FC<WMPRSettingsTestProps> = ({ message = "WMPR Settings" }) => {
     const [clickCount, setClickCount] = useState(0);
     const [showSpinner, setShowSpinner] = useState(false);
+    const { Spinner, Lozenge } = useAtlasKit();
 
     console.log('[WMPR-SETTINGS-COMPONENT-002] Component rendering, click count:', clickCount);
 
@@ -216,10 +216,6 @@ const initWMPRSettings = (containerId: string, message?: string): void => {
     console.log('[WMPR-SETTINGS-INIT-007] React version:', React.version);
     console.log('[WMPR-SETTINGS-INIT-008] ReactDOM available:', typeof ReactDOM);
     
-    // Enhanced dependency checking
-    console.log('[WMPR-SETTINGS-INIT-008a] AtlasKit Spinner:', typeof Spinner);
-    console.log('[WMPR-SETTINGS-INIT-008b] AtlasKit Lozenge:', typeof Lozenge);
-    
     // Check for alternative AtlasKit paths
     if (typeof window.AJS !== 'undefined' && window.AJS?.AtlasKit) {
         console.log('[WMPR-SETTINGS-INIT-008c] AJS.AtlasKit available:', Object.keys(window.AJS.AtlasKit));
@@ -235,16 +231,18 @@ const initWMPRSettings = (containerId: string, message?: string): void => {
 
     console.log('[WMPR-SETTINGS-INIT-011] ✅ Container found:', container);
     
-    try {
+    loadAtlasKit(['Spinner', 'Lozenge']).then(atlasKit => {
         console.log('[WMPR-SETTINGS-INIT-012] Starting React render...');
         ReactDOM.render(
             <WMPRSettingsErrorBoundary>
-                <WMPRSettingsTest message={message} />
+                <AtlasKitContext.Provider value={atlasKit}>
+                    <WMPRSettingsTest message={message} />
+                </AtlasKitContext.Provider>
             </WMPRSettingsErrorBoundary>, 
             container
         );
         console.log('[WMPR-SETTINGS-INIT-013] ✅ ===== REACT COMPONENT RENDERED SUCCESSFULLY =====');
-    } catch (error) {
+    }).catch(error => {
         console.error('[WMPR-SETTINGS-INIT-014] ❌ ===== REACT RENDER ERROR =====');
         console.error('[WMPR-SETTINGS-INIT-015] Error details:', error);
         
@@ -266,7 +264,7 @@ const initWMPRSettings = (containerId: string, message?: string): void => {
                 <p><strong>ReactDOM Available:</strong> ${typeof ReactDOM !== 'undefined'}</p>
             </div>
         `;
-    }
+    });
 };
 
 // Global exposure for multiple access patterns
@@ -6,6 +6,17 @@ const xmlOutPath = path.resolve(
     '..', 'backend', 'src', 'main', 'resources', 'META-INF', 'plugin-descriptors', 'wr-defs.xml'
 )
 
+// AtlasKit as provided by Jira's AtlasKit wrapper web resource
+const atlasKit = (pkg, name) => ({
+    [`@atlaskit/${pkg}`]: {
+        dependency: 'com.atlassian.auiplugin:aui-experimental-atlaskit-wrapper',
+        import: {
+            var: `AJS.AtlasKit.${name}`,
+            amd: `@atlaskit/${pkg}`
+        }
+    }
+});
+
 module.exports = (_, { mode }) => {
     const watch = mode !== 'production'
     const isProduction = mode === 'production'
@@ -36,67 +47,21 @@ module.exports = (_, { mode }) => {
             'wmprRequestsTable': './src/wmpr-requests-table.tsx',
             'wmprSettings': './src/wmpr-settings.tsx'
         },
-        // Simplified optimization since we're using externals
         optimization: {
             usedExports: true,
-            sideEffects: false
+            sideEffects: false,
+            // Code shared by the lazily loaded chunks is split out; each entry point stays a single file
+            splitChunks: {
+                chunks: 'async'
+            }
         },
-        // Configure externals for Jira-provided dependencies
+        // Configure externals for Jira-provided dependencies; AtlasKit is mapped in providedDependencies below
         externals: {
             'react': 'React',
             'react-dom': 'ReactDOM',
             // CRITICAL: Add jQuery external - was missing!
             'jquery': 'jQuery',
-            '$': 'jQuery',
-            // UPDATED: More reliable AtlasKit external mappings
-            '@atlaskit/button': {
-                root: ['AJS', 'AtlasKit', 'Button'],
-                commonjs: '@atlaskit/button',
-                commonjs2: '@atlaskit/button',
-                amd: '@atlaskit/button'
-            },
-            '@atlaskit/spinner': {
-                root: ['AJS', 'AtlasKit', 'Spinner'],
-                commonjs: '@atlaskit/spinner',
-                commonjs2: '@atlaskit/spinner',
-                amd: '@atlaskit/spinner'
-            },
-            '@atlaskit/lozenge': {
-                root: ['AJS', 'AtlasKit', 'Lozenge'],
-                commonjs: '@atlaskit/lozenge',
-                commonjs2: '@atlaskit/lozenge',
-                amd: '@atlaskit/lozenge'
-            },
-            '@atlaskit/textfield': {
-                root: ['AJS', 'AtlasKit', 'TextField'],
-                commonjs: '@atlaskit/textfield',
-                commonjs2: '@atlaskit/textfield',
-                amd: '@atlaskit/textfield'
-            },
-            '@atlaskit/form': {
-                root: ['AJS', 'AtlasKit', 'Form'],
-                commonjs: '@atlaskit/form',
-                commonjs2: '@atlaskit/form',
-                amd: '@atlaskit/form'
-            },
-            '@atlaskit/select': {
-                root: ['AJS', 'AtlasKit', 'Select'],
-                commonjs: '@atlaskit/select',
-                commonjs2: '@atlaskit/select',
-                amd: '@atlaskit/select'
-            },
-            '@atlaskit/toggle': {
-                root: ['AJS', 'AtlasKit', 'Toggle'],
-                commonjs: '@atlaskit/toggle',
-                commonjs2: '@atlaskit/toggle',
-                amd: '@atlaskit/toggle'
-            },
-            '@atlaskit/dynamic-table': {
-                root: ['AJS', 'AtlasKit', 'DynamicTable'],
-                commonjs: '@atlaskit/dynamic-table',
-                commonjs2: '@atlaskit/dynamic-table',
-                amd: '@atlaskit/dynamic-table'
-            }
+            '$': 'jQuery'
         },
         plugins: [
             // Add tracking identifier banner
@@ -111,20 +76,11 @@ module.exports = (_, { mode }) => {
                 pluginKey: 'com.example.wmpr.backend',
                 xmlDescriptors: xmlOutPath,
                 contextMap: {
-                    'wmprRequestsTable': [
-                        'servicedesk.portal.footer', 
-                        'atl.general',
-                        'atl.admin',  // For admin/project config pages
-                        'jira.project.sidebar'  // For project-specific contexts
-                    ],  // Load in multiple contexts including project config
-                    'wmprSettings': [
-                        'atl.admin',  // For admin/project config pages
-                        'jira.project.sidebar',  // For project-specific contexts
-                        'atl.general'  // General context for testing
-                    ]  // Settings component for project configuration
+                    // Only the portal footer shows the table; other pages require it through the web panels
+                    'wmprRequestsTable': ['servicedesk.portal.footer'],
+                    // The settings page requires its own entry point (templates/wmpr-settings.vm)
+                    'wmprSettings': []
                 },
-                // REMOVE: dependencies property doesn't seem to work with this version of WrmPlugin
-                // Will rely on manual fallback web resource in atlassian-plugin.xml instead
                 // Jira provides these dependencies
                 providedDependencies: {
                     'AJS': {
@@ -142,12 +98,23 @@ module.exports = (_, { mode }) => {
                     'jQuery': {
                         dependency: 'jira.webresources:jira-global',
                         import: 'jQuery'
-                    }
+                    },
+                    // Only imported from async chunks (src/atlaskit.tsx), so only those depend on the wrapper
+                    ...atlasKit('button', 'Button'),
+                    ...atlasKit('spinner', 'Spinner'),
+                    ...atlasKit('lozenge', 'Lozenge'),
+                    ...atlasKit('textfield', 'TextField'),
+                    ...atlasKit('form', 'Form'),
+                    ...atlasKit('select', 'Select'),
+                    ...atlasKit('toggle', 'Toggle'),
+                    ...atlasKit('dynamic-table', 'DynamicTable')
                 }
             }),
         ],
         output: {
-            filename: 'bundled.[name].js', // Hardcoded filename for consistent loading
+            // Content hashes let browsers and proxies keep a bundle until it actually changes
+            filename: isProduction ? 'bundled.[name].[contenthash:8].js' : 'bundled.[name].js',
+            chunkFilename: isProduction ? 'bundled.[name].[contenthash:8].js' : 'bundled.[name].js',
             path: path.resolve("../backend/src/main/resources/frontend"),
             // FIXED: Simpler library exposure that should work more reliably
             library: {
@@ -161,11 +128,12 @@ module.exports = (_, { mode }) => {
             // Add clean option for consistent builds
             clean: true
         },
-        // Performance budgets to catch large bundles
+        // Size budget: a production build fails when an entry point or chunk grows past it
         performance: {
-            maxAssetSize: 50000, // Much smaller since we're using externals
-            maxEntrypointSize: 100000, 
-            hints: 'warning'
+            maxAssetSize: 40000,
+            maxEntrypointSize: 50000,
+            hints: isProduction ? 'error' : 'warning',
+            assetFilter: (assetFilename) => assetFilename.endsWith('.js')
         }
     };
-};
\ No newline at end of file
+};